@@ -313,6 +313,10 @@ public interface IExceptionMessage {
   /** Batch realize fixed asset lines */
   static final String BATCH_REALIZED_FIXED_ASSET_LINE = /*$$(*/ "Realized fixed asset lines" /*)*/;
 
+  /** Batch reconcile move lines */
+  static final String BATCH_RECONCILE_MOVE_LINES = /*$$(*/
+      "account/partner groups reconciled (%s move lines, %s lines/s)" /*)*/;
+
   /** Cfonb export service */
   static final String CFONB_EXPORT_1 = /*$$(*/
       "You must configure a RIB for the reimbursement" /*)*/;
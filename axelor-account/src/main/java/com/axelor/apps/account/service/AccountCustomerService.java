@@ -39,7 +39,9 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.Query;
 import javax.persistence.TemporalType;
 import org.slf4j.Logger;
@@ -49,6 +51,10 @@ public class AccountCustomerService {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  public static final int BALANCE = 1;
+  public static final int BALANCE_DUE = 2;
+  public static final int BALANCE_DUE_DEBT_RECOVERY = 3;
+
   protected AccountingSituationService accountingSituationService;
   protected AccountingSituationRepository accSituationRepo;
   protected AppBaseService appBaseService;
@@ -78,34 +84,7 @@ public class AccountCustomerService {
   public BigDecimal getBalance(Partner partner, Company company) {
     log.debug("Compute balance (Partner : {}, Company : {})", partner.getName(), company.getName());
 
-    Query query =
-        JPA.em()
-            .createNativeQuery(
-                "SELECT SUM(COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line AS ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0  GROUP BY moveline.id, moveline.amount_remaining) AS m1 ON (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0  GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "WHERE ml.partner = ?1 AND move.company = ?2 AND move.ignore_in_accounting_ok IN ('false', null)"
-                    + "AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = ?3 or move.status_select = ?4) AND ml.amount_remaining > 0 ")
-            .setParameter(1, partner)
-            .setParameter(2, company)
-            .setParameter(3, MoveRepository.STATUS_VALIDATED)
-            .setParameter(4, MoveRepository.STATUS_DAYBOOK);
-
-    BigDecimal balance = (BigDecimal) query.getSingleResult();
-
-    if (balance == null) {
-      balance = BigDecimal.ZERO;
-    }
+    BigDecimal balance = getBalance(computeBalances(BALANCE, partner, company), partner);
 
     log.debug("Balance : {}", balance);
 
@@ -126,46 +105,7 @@ public class AccountCustomerService {
     log.debug(
         "Compute balance due (Partner : {}, Company : {})", partner.getName(), company.getName());
 
-    Query query =
-        JPA.em()
-            .createNativeQuery(
-                "SELECT SUM( COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line AS ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0 "
-                    + "AND ((moveline.due_date IS NULL AND moveline.date_val <= ?1) OR (moveline.due_date IS NOT NULL AND moveline.due_date <= ?1)) "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m1 on (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0 "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "WHERE ml.partner = ?2 AND move.company = ?3 AND move.ignore_in_debt_recovery_ok IN ('false', null) "
-                    + "AND move.ignore_in_accounting_ok IN ('false', null) AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = ?4 OR move.status_select = ?5) AND ml.amount_remaining > 0 ")
-            .setParameter(
-                1,
-                Date.from(
-                    appBaseService
-                        .getTodayDate()
-                        .atStartOfDay()
-                        .atZone(ZoneOffset.UTC)
-                        .toInstant()),
-                TemporalType.DATE)
-            .setParameter(2, partner)
-            .setParameter(3, company)
-            .setParameter(4, MoveRepository.STATUS_VALIDATED)
-            .setParameter(5, MoveRepository.STATUS_DAYBOOK);
-
-    BigDecimal balance = (BigDecimal) query.getSingleResult();
-
-    if (balance == null) {
-      balance = BigDecimal.ZERO;
-    }
+    BigDecimal balance = getBalance(computeBalances(BALANCE_DUE, partner, company), partner);
 
     log.debug("Balance due : {}", balance);
 
@@ -177,8 +117,8 @@ public class AccountCustomerService {
    * *****************************************
    */
   /**
-   * solde des factures exigibles non bloquées en relance et dont « la date de facture » + « délai
-   * d’acheminement(X) » <« date du jour » si la date de facture = date d'échéance de facture, sinon
+   * solde des factures exigibles non bloquées en relance et dont « la date de facture » + « délai
+   * d’acheminement(X) » <« date du jour » si la date de facture = date d'échéance de facture, sinon
    * pas de prise en compte du délai d'acheminement **
    */
   /**
@@ -191,62 +131,117 @@ public class AccountCustomerService {
         partner.getName(),
         company.getName());
 
-    int mailTransitTime = 0;
+    BigDecimal balance =
+        getBalance(computeBalances(BALANCE_DUE_DEBT_RECOVERY, partner, company), partner);
+
+    log.debug("Balance due debt recovery : {}", balance);
+
+    return balance;
+  }
+
+  /**
+   * Compute the balances of all the partners of a company at once.
+   *
+   * @param balanceType {@link #BALANCE}, {@link #BALANCE_DUE} or {@link
+   *     #BALANCE_DUE_DEBT_RECOVERY}
+   * @param company Une société
+   * @return the balances by partner id, partners without any remaining amount are missing
+   */
+  public Map<Long, BigDecimal> getBalances(int balanceType, Company company) {
+    log.debug("Compute balances (Type : {}, Company : {})", balanceType, company.getName());
+
+    return computeBalances(balanceType, null, company);
+  }
 
-    AccountConfig accountConfig = company.getAccountConfig();
+  protected BigDecimal getBalance(Map<Long, BigDecimal> balanceMap, Partner partner) {
+    BigDecimal balance = balanceMap.get(partner.getId());
+    return balance != null ? balance : BigDecimal.ZERO;
+  }
 
-    if (accountConfig != null) {
-      mailTransitTime = accountConfig.getMailTransitTime();
+  /**
+   * Compute partner balances in a single pass over the move lines: the remaining amount of debit
+   * lines, only if due for balances due, minus the remaining amount of credit lines.
+   *
+   * @param balanceType
+   * @param partner Un tiers, or null to compute the balances of every partner of the company
+   * @param company Une société
+   * @return the balances by partner id
+   */
+  @SuppressWarnings("unchecked")
+  protected Map<Long, BigDecimal> computeBalances(
+      int balanceType, Partner partner, Company company) {
+
+    String debitCondition = "";
+    if (balanceType == BALANCE_DUE) {
+      debitCondition =
+          "AND ((ml.due_date IS NULL AND ml.date_val <= :today) OR (ml.due_date IS NOT NULL AND ml.due_date <= :today)) ";
+    } else if (balanceType == BALANCE_DUE_DEBT_RECOVERY) {
+      debitCondition =
+          "AND (( ml.date_val = ml.due_date AND (ml.due_date + :mailTransitTime ) < :today ) "
+              + "OR (ml.due_date IS NOT NULL AND ml.date_val != ml.due_date AND ml.due_date < :today)"
+              + "OR (ml.due_date IS NULL AND ml.date_val < :today)) ";
     }
 
-    // TODO: Replace native query to standard JPQL query
+    StringBuilder queryStr =
+        new StringBuilder(
+            "SELECT ml.partner, SUM( "
+                + "(CASE WHEN ml.debit > 0 "
+                + debitCondition
+                + "THEN ml.amount_remaining ELSE 0 END) "
+                + "- (CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END) ) "
+                + "FROM public.account_move_line AS ml "
+                + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
+                + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) ");
+    if (balanceType == BALANCE_DUE_DEBT_RECOVERY) {
+      queryStr.append(
+          "LEFT JOIN public.account_invoice AS invoice ON (move.invoice = invoice.id) ");
+    }
+    queryStr.append(
+        "WHERE move.company = :company AND move.ignore_in_accounting_ok IN ('false', null) "
+            + "AND account.use_for_partner_balance = 'true' "
+            + "AND (move.status_select = :statusValidated OR move.status_select = :statusDaybook) "
+            + "AND ml.amount_remaining > 0 ");
+    if (balanceType != BALANCE) {
+      queryStr.append("AND move.ignore_in_debt_recovery_ok IN ('false', null) ");
+    }
+    if (balanceType == BALANCE_DUE_DEBT_RECOVERY) {
+      queryStr.append("AND invoice.debt_recovery_blocking_ok = FALSE ");
+    }
+    queryStr.append(partner != null ? "AND ml.partner = :partner " : "AND ml.partner IS NOT NULL ");
+    queryStr.append("GROUP BY ml.partner");
+
     Query query =
         JPA.em()
-            .createNativeQuery(
-                "SELECT SUM( COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line as ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0 AND (( moveline.date_val = moveline.due_date AND (moveline.due_date + ?1 ) < ?2 ) "
-                    + "OR (moveline.due_date IS NOT NULL AND moveline.date_val != moveline.due_date AND moveline.due_date < ?2)"
-                    + "OR (moveline.due_date IS NULL AND moveline.date_val < ?2)) "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m1 ON (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0 "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "LEFT JOIN public.account_invoice AS invoice ON (move.invoice = invoice.id) "
-                    + "WHERE ml.partner = ?3 AND move.company = ?4 AND move.ignore_in_debt_recovery_ok in ('false', null) "
-                    + "AND move.ignore_in_accounting_ok IN ('false', null) AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = ?5 OR move.status_select = ?6) AND ml.amount_remaining > 0 AND invoice.debt_recovery_blocking_ok = FALSE ")
-            .setParameter(1, mailTransitTime)
-            .setParameter(
-                2,
-                Date.from(
-                    appBaseService
-                        .getTodayDate()
-                        .atStartOfDay()
-                        .atZone(ZoneOffset.UTC)
-                        .toInstant()),
-                TemporalType.DATE)
-            .setParameter(3, partner)
-            .setParameter(4, company)
-            .setParameter(5, MoveRepository.STATUS_VALIDATED)
-            .setParameter(6, MoveRepository.STATUS_DAYBOOK);
-
-    BigDecimal balance = (BigDecimal) query.getSingleResult();
-
-    if (balance == null) {
-      balance = BigDecimal.ZERO;
+            .createNativeQuery(queryStr.toString())
+            .setParameter("company", company.getId())
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setParameter("statusDaybook", MoveRepository.STATUS_DAYBOOK);
+
+    if (partner != null) {
+      query.setParameter("partner", partner.getId());
+    }
+    if (balanceType != BALANCE) {
+      query.setParameter(
+          "today",
+          Date.from(
+              appBaseService.getTodayDate().atStartOfDay().atZone(ZoneOffset.UTC).toInstant()),
+          TemporalType.DATE);
+    }
+    if (balanceType == BALANCE_DUE_DEBT_RECOVERY) {
+      AccountConfig accountConfig = company.getAccountConfig();
+      query.setParameter(
+          "mailTransitTime", accountConfig != null ? accountConfig.getMailTransitTime() : 0);
     }
 
-    log.debug("Balance due debt recovery : {}", balance);
+    Map<Long, BigDecimal> balanceMap = new HashMap<>();
 
-    return balance;
+    for (Object[] result : (List<Object[]>) query.getResultList()) {
+      if (result[1] != null) {
+        balanceMap.put(((Number) result[0]).longValue(), (BigDecimal) result[1]);
+      }
+    }
+
+    return balanceMap;
   }
 
   /**
@@ -328,15 +323,39 @@ public class AccountCustomerService {
         updateDueCustAccount,
         updateDueDebtRecoveryCustAccount);
 
-    if (updateCustAccount) {
-      accountingSituation.setBalanceCustAccount(this.getBalance(partner, company));
+    return this.updateAccountingSituationCustomerAccount(
+        accountingSituation,
+        updateCustAccount ? this.getBalance(partner, company) : null,
+        updateDueCustAccount ? this.getBalanceDue(partner, company) : null,
+        updateDueDebtRecoveryCustAccount ? this.getBalanceDueDebtRecovery(partner, company) : null);
+  }
+
+  /**
+   * Update the customer account balances of an accounting situation with already computed values.
+   *
+   * @param accountingSituation
+   * @param balance the balance, or null to leave it unchanged
+   * @param balanceDue the balance due, or null to leave it unchanged
+   * @param balanceDueDebtRecovery the balance due debt recovery, or null to leave it unchanged
+   * @return
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public AccountingSituation updateAccountingSituationCustomerAccount(
+      AccountingSituation accountingSituation,
+      BigDecimal balance,
+      BigDecimal balanceDue,
+      BigDecimal balanceDueDebtRecovery)
+      throws AxelorException {
+
+    if (balance != null) {
+      accountingSituation.setBalanceCustAccount(balance);
     }
-    if (updateDueCustAccount) {
-      accountingSituation.setBalanceDueCustAccount(this.getBalanceDue(partner, company));
+    if (balanceDue != null) {
+      accountingSituation.setBalanceDueCustAccount(balanceDue);
     }
-    if (updateDueDebtRecoveryCustAccount) {
-      accountingSituation.setBalanceDueDebtRecoveryCustAccount(
-          this.getBalanceDueDebtRecovery(partner, company));
+    if (balanceDueDebtRecovery != null) {
+      accountingSituation.setBalanceDueDebtRecoveryCustAccount(balanceDueDebtRecovery);
     }
     accountingSituation.setCustAccountMustBeUpdateOk(false);
     accSituationRepo.save(accountingSituation);
@@ -49,6 +49,7 @@ import com.axelor.meta.MetaFiles;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.opencsv.CSVWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -60,8 +61,15 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import javax.persistence.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +92,7 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
   protected static final String DATE_FORMAT_YYYYMMDD = "yyyyMMdd";
   protected static final String DATE_FORMAT_YYYYMMDDHHMMSS = "yyyyMMddHHmmss";
+  protected static final int EXPORT_PAGE_SIZE = 500;
 
   @Inject
   public MoveLineExportServiceImpl(
@@ -117,14 +126,28 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       LocalDate localDate,
       String exportToAgressoNumber) {
 
+    List<Long> moveIdList = new ArrayList<>();
+    for (Move move : moveList) {
+      moveIdList.add(move.getId());
+    }
+
+    this.updateMoveIdList(moveIdList, accountingReport, localDate, exportToAgressoNumber);
+  }
+
+  protected void updateMoveIdList(
+      Collection<Long> moveIdList,
+      AccountingReport accountingReport,
+      LocalDate localDate,
+      String exportToAgressoNumber) {
+
     int i = 0;
 
-    int moveListSize = moveList.size();
+    int moveListSize = moveIdList.size();
 
-    for (Move move : moveList) {
+    for (Long moveId : moveIdList) {
 
       this.updateMove(
-          moveRepo.find(move.getId()),
+          moveRepo.find(moveId),
           accountingReportRepo.find(accountingReport.getId()),
           localDate,
           exportToAgressoNumber);
@@ -1125,7 +1148,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       throws AxelorException, IOException {
 
     log.info("In Export type 1000 service : ");
-    List<String[]> allMoveLineData = new ArrayList<>();
     Company company = accountingReport.getCompany();
 
     LocalDate interfaceDate = accountingReport.getDate();
@@ -1170,93 +1192,131 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       }
     }
 
-    List<MoveLine> moveLineList =
-        moveLineRepo
-            .all()
-            .filter(
-                "(self.move.statusSelect = ?1 OR self.move.statusSelect = ?2) " + moveLineQueryStr,
-                MoveRepository.STATUS_VALIDATED,
-                MoveRepository.STATUS_DAYBOOK)
-            .order("move.validationDate")
-            .order("date")
-            .order("name")
-            .fetch();
-    if (!moveLineList.isEmpty()) {
-      List<Move> moveList = new ArrayList<>();
-      for (MoveLine moveLine : moveLineList) {
-        String[] items = new String[18];
-        Move move = moveLine.getMove();
-        if (!moveList.contains(move)) {
-          moveList.add(move);
-        }
-        Journal journal = move.getJournal();
-        items[0] = journal.getCode();
-        items[1] = journal.getName();
-        items[2] = moveLine.getMove().getReference();
-        items[3] = moveLine.getDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
-        items[4] = moveLine.getAccount().getCode();
-        items[5] = moveLine.getAccount().getName();
-        items[6] = "";
-        items[7] = "";
-        Partner partner = moveLine.getPartner();
-        if (partner != null) {
-          items[6] = partner.getPartnerSeq();
-          items[7] = partner.getName();
-        }
-        items[8] = moveLine.getOrigin();
-        if (moveLine.getOriginDate() != null) {
-          items[9] =
-              moveLine.getOriginDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
-        }
-        items[10] = moveLine.getDescription();
-        items[11] = moveLine.getDebit().toString().replace('.', ',');
-        items[12] = moveLine.getCredit().toString().replace('.', ',');
-
-        ReconcileGroup reconcileGroup = moveLine.getReconcileGroup();
-        if (reconcileGroup != null
-            && reconcileGroup.getStatusSelect() == ReconcileGroupRepository.STATUS_FINAL) {
-          items[13] = reconcileGroup.getCode();
-          items[14] =
-              reconcileGroup
-                  .getDateOfLettering()
-                  .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD))
-                  .toString();
-        } else {
-          items[13] = "";
-          items[14] = "";
-        }
+    String moveLineJpql =
+        "SELECT self FROM MoveLine self WHERE self.move.statusSelect IN (:statusList)"
+            + moveLineQueryStr
+            + " ORDER BY self.move.validationDate, self.date, self.name, self.id";
 
-        if (move.getValidationDate() != null) {
-          items[15] =
-              move.getValidationDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
-        }
+    Long accountingReportId = accountingReport.getId();
+    Long companyId = company.getId();
+    String fileName = this.setFileName(accountingReport);
+    String filePath = this.getExportFilePath(company);
 
-        items[16] = moveLine.getCurrencyAmount().toString().replace('.', ',');
-        if (moveLine.getCurrencyAmount().compareTo(BigDecimal.ZERO) > 0
-            && moveLine.getCredit().compareTo(BigDecimal.ZERO) > 0) {
-          items[16] = "-" + items[16];
-        }
+    // lines are read through a forward only cursor and written one by one, only the ids of their
+    // moves are kept
+    Set<Long> moveIdSet = new LinkedHashSet<>();
+    int count = 0;
 
-        if (move.getCurrency() != null) {
-          items[17] = move.getCurrency().getCode();
-        }
-        allMoveLineData.add(items);
-      }
+    try (CSVWriter csvWriter = CsvTool.setCsvFile(filePath, fileName, '|')) {
+      csvWriter.writeNext(this.createHeaderForJournalEntry());
 
-      if (!administration) {
-        String exportNumber = this.getSaleExportNumber(company);
-        this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
+      ScrollableResults moveLineResults =
+          JPA.em()
+              .unwrap(Session.class)
+              .createQuery(moveLineJpql)
+              .setParameterList(
+                  "statusList",
+                  Arrays.asList(MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK))
+              .setFetchSize(EXPORT_PAGE_SIZE)
+              .setReadOnly(true)
+              .scroll(ScrollMode.FORWARD_ONLY);
+
+      try {
+        while (moveLineResults.next()) {
+          MoveLine moveLine = (MoveLine) moveLineResults.get(0);
+          moveIdSet.add(moveLine.getMove().getId());
+          csvWriter.writeNext(this.createJournalEntryItems(moveLine));
+
+          if (++count % EXPORT_PAGE_SIZE == 0) {
+            JPA.clear();
+            log.debug("Process : {} lines exported", count);
+          }
+        }
+      } finally {
+        moveLineResults.close();
       }
     }
 
-    accountingReport = accountingReportRepo.find(accountingReport.getId());
+    // read-only lines must not stay in the session while their moves are updated
+    JPA.clear();
 
-    String fileName = this.setFileName(accountingReport);
-    writeMoveLineToCsvFile(
-        company, fileName, this.createHeaderForJournalEntry(), allMoveLineData, accountingReport);
+    accountingReport = accountingReportRepo.find(accountingReportId);
+
+    if (!moveIdSet.isEmpty() && !administration) {
+      company = JPA.find(Company.class, companyId);
+      String exportNumber = this.getSaleExportNumber(company);
+      this.updateMoveIdList(moveIdSet, accountingReport, interfaceDate, exportNumber);
+      accountingReport = accountingReportRepo.find(accountingReportId);
+    }
+
+    this.attachExportFile(filePath, fileName, accountingReport);
     accountingReportRepo.save(accountingReport);
   }
 
+  /**
+   * Build the FEC row of a move line.
+   *
+   * @param moveLine
+   * @return
+   */
+  protected String[] createJournalEntryItems(MoveLine moveLine) {
+
+    String[] items = new String[18];
+    Move move = moveLine.getMove();
+    Journal journal = move.getJournal();
+    items[0] = journal.getCode();
+    items[1] = journal.getName();
+    items[2] = moveLine.getMove().getReference();
+    items[3] = moveLine.getDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
+    items[4] = moveLine.getAccount().getCode();
+    items[5] = moveLine.getAccount().getName();
+    items[6] = "";
+    items[7] = "";
+    Partner partner = moveLine.getPartner();
+    if (partner != null) {
+      items[6] = partner.getPartnerSeq();
+      items[7] = partner.getName();
+    }
+    items[8] = moveLine.getOrigin();
+    if (moveLine.getOriginDate() != null) {
+      items[9] =
+          moveLine.getOriginDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
+    }
+    items[10] = moveLine.getDescription();
+    items[11] = moveLine.getDebit().toString().replace('.', ',');
+    items[12] = moveLine.getCredit().toString().replace('.', ',');
+
+    ReconcileGroup reconcileGroup = moveLine.getReconcileGroup();
+    if (reconcileGroup != null
+        && reconcileGroup.getStatusSelect() == ReconcileGroupRepository.STATUS_FINAL) {
+      items[13] = reconcileGroup.getCode();
+      items[14] =
+          reconcileGroup
+              .getDateOfLettering()
+              .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD))
+              .toString();
+    } else {
+      items[13] = "";
+      items[14] = "";
+    }
+
+    if (move.getValidationDate() != null) {
+      items[15] =
+          move.getValidationDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
+    }
+
+    items[16] = moveLine.getCurrencyAmount().toString().replace('.', ',');
+    if (moveLine.getCurrencyAmount().compareTo(BigDecimal.ZERO) > 0
+        && moveLine.getCredit().compareTo(BigDecimal.ZERO) > 0) {
+      items[16] = "-" + items[16];
+    }
+
+    if (move.getCurrency() != null) {
+      items[17] = move.getCurrency().getCode();
+    }
+    return items;
+  }
+
   /**
    * Méthode réalisant l'export SI - Agresso des fichiers détails
    *
@@ -1333,136 +1393,158 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("dates : {}", dates);
 
-    List<String[]> allMoveLineData = new ArrayList<String[]>();
+    Long accountingReportId = accountingReport.getId();
+    String filePath = this.getExportFilePath(company);
 
-    for (LocalDate localDate : dates) {
+    // rows are written as soon as they are built, and the session is cleared after each date
+    try (CSVWriter csvWriter = CsvTool.setCsvFile(filePath, fileName, '|')) {
+      csvWriter.writeNext(this.createHeaderForDetailFile(typeSelect));
 
-      Query queryExportAgressoRef =
-          JPA.em()
-              .createQuery(
-                  "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
-                      + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                      + localDate.toString()
-                      + "'"
-                      + moveLineQueryStr);
-      List<String> exportAgressoRefs = new ArrayList<String>();
-      exportAgressoRefs = queryExportAgressoRef.getResultList();
-      for (String exportAgressoRef : exportAgressoRefs) {
-
-        if (exportAgressoRef != null && !exportAgressoRef.isEmpty()) {
-
-          int sequence = 1;
-
-          Query query =
-              JPA.em()
-                  .createQuery(
-                      "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
-                          + "AND self.date = '"
-                          + localDate.toString()
-                          + "' AND self.move.exportNumber = '"
-                          + exportAgressoRef
-                          + "'"
-                          + moveLineQueryStr
-                          + " group by self.account.id");
-
-          List<Long> accountIds = new ArrayList<Long>();
-          accountIds = query.getResultList();
-
-          log.debug("accountIds : {}", accountIds);
-
-          for (Long accountId : accountIds) {
-            if (accountId != null) {
-              String accountCode = accountRepo.find(accountId).getCode();
-              List<MoveLine> moveLines =
-                  moveLineRepo
-                      .all()
-                      .filter(
-                          "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                              + localDate.toString()
-                              + "' AND self.move.exportNumber = '"
-                              + exportAgressoRef
-                              + "'"
-                              + moveLineQueryStr,
-                          accountId)
-                      .fetch();
-
-              log.debug("movelines  : {} ", moveLines);
-
-              if (moveLines.size() > 0) {
-
-                List<MoveLine> moveLineList = moveLineService.consolidateMoveLines(moveLines);
-
-                List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
-
-                for (MoveLine moveLine3 : sortMoveLineList) {
-
-                  Journal journal = moveLine3.getMove().getJournal();
-                  LocalDate date = moveLine3.getDate();
-                  String items[] = null;
-
-                  if (typeSelect == 9) {
-                    items = new String[13];
-                  } else {
-                    items = new String[12];
-                  }
-
-                  items[0] = companyCode;
-                  items[1] = journal.getExportCode();
-                  items[2] = moveLine3.getMove().getExportNumber();
-                  items[3] = String.format("%s", sequence);
-                  sequence++;
-                  items[4] = accountCode;
-
-                  BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
-                  String moveLineSign = "C";
-                  if (totAmt.compareTo(BigDecimal.ZERO) == -1) {
-                    moveLineSign = "D";
-                    totAmt = totAmt.negate();
-                  }
-                  items[5] = moveLineSign;
-                  items[6] = totAmt.toString();
-
-                  String analyticAccounts = "";
-                  for (AnalyticMoveLine analyticDistributionLine :
-                      moveLine3.getAnalyticMoveLineList()) {
-                    analyticAccounts =
-                        analyticAccounts
-                            + analyticDistributionLine.getAnalyticAccount().getCode()
-                            + "/";
-                  }
-
-                  if (typeSelect == 9) {
-                    items[7] = "";
-                    items[8] = analyticAccounts;
-                    items[9] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  } else {
-                    items[7] = analyticAccounts;
-                    items[8] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  }
-
-                  allMoveLineData.add(items);
+      for (LocalDate localDate : dates) {
+        this.exportMoveLinesAllTypeSelectFILE2(
+            csvWriter, localDate, companyCode, typeSelect, moveLineQueryStr);
+        JPA.clear();
+      }
+    }
+
+    this.attachExportFile(filePath, fileName, accountingReportRepo.find(accountingReportId));
+  }
+
+  /**
+   * Write the detail rows of the move lines of a date, grouped by export number and account.
+   *
+   * @param csvWriter
+   * @param localDate
+   * @param companyCode
+   * @param typeSelect
+   * @param moveLineQueryStr
+   */
+  @SuppressWarnings("unchecked")
+  protected void exportMoveLinesAllTypeSelectFILE2(
+      CSVWriter csvWriter,
+      LocalDate localDate,
+      String companyCode,
+      int typeSelect,
+      String moveLineQueryStr) {
+
+    Query queryExportAgressoRef =
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
+                    + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
+                    + localDate.toString()
+                    + "'"
+                    + moveLineQueryStr);
+    List<String> exportAgressoRefs = new ArrayList<String>();
+    exportAgressoRefs = queryExportAgressoRef.getResultList();
+    for (String exportAgressoRef : exportAgressoRefs) {
+
+      if (exportAgressoRef != null && !exportAgressoRef.isEmpty()) {
+
+        int sequence = 1;
+
+        Query query =
+            JPA.em()
+                .createQuery(
+                    "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
+                        + "AND self.date = '"
+                        + localDate.toString()
+                        + "' AND self.move.exportNumber = '"
+                        + exportAgressoRef
+                        + "'"
+                        + moveLineQueryStr
+                        + " group by self.account.id");
+
+        List<Long> accountIds = new ArrayList<Long>();
+        accountIds = query.getResultList();
+
+        log.debug("accountIds : {}", accountIds);
+
+        for (Long accountId : accountIds) {
+          if (accountId != null) {
+            String accountCode = accountRepo.find(accountId).getCode();
+            List<MoveLine> moveLines =
+                moveLineRepo
+                    .all()
+                    .filter(
+                        "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
+                            + localDate.toString()
+                            + "' AND self.move.exportNumber = '"
+                            + exportAgressoRef
+                            + "'"
+                            + moveLineQueryStr,
+                        accountId)
+                    .fetch();
+
+            log.debug("movelines  : {} ", moveLines);
+
+            if (moveLines.size() > 0) {
+
+              List<MoveLine> moveLineList = moveLineService.consolidateMoveLines(moveLines);
+
+              List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
+
+              for (MoveLine moveLine3 : sortMoveLineList) {
+
+                Journal journal = moveLine3.getMove().getJournal();
+                LocalDate date = moveLine3.getDate();
+                String items[] = null;
+
+                if (typeSelect == 9) {
+                  items = new String[13];
+                } else {
+                  items = new String[12];
+                }
+
+                items[0] = companyCode;
+                items[1] = journal.getExportCode();
+                items[2] = moveLine3.getMove().getExportNumber();
+                items[3] = String.format("%s", sequence);
+                sequence++;
+                items[4] = accountCode;
+
+                BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
+                String moveLineSign = "C";
+                if (totAmt.compareTo(BigDecimal.ZERO) == -1) {
+                  moveLineSign = "D";
+                  totAmt = totAmt.negate();
                 }
+                items[5] = moveLineSign;
+                items[6] = totAmt.toString();
+
+                String analyticAccounts = "";
+                for (AnalyticMoveLine analyticDistributionLine :
+                    moveLine3.getAnalyticMoveLineList()) {
+                  analyticAccounts =
+                      analyticAccounts
+                          + analyticDistributionLine.getAnalyticAccount().getCode()
+                          + "/";
+                }
+
+                if (typeSelect == 9) {
+                  items[7] = "";
+                  items[8] = analyticAccounts;
+                  items[9] =
+                      String.format(
+                          "%s DU %s",
+                          journal.getCode(),
+                          date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                } else {
+                  items[7] = analyticAccounts;
+                  items[8] =
+                      String.format(
+                          "%s DU %s",
+                          journal.getCode(),
+                          date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                }
+
+                csvWriter.writeNext(items);
               }
             }
           }
         }
       }
     }
-
-    writeMoveLineToCsvFile(
-        company,
-        fileName,
-        this.createHeaderForDetailFile(typeSelect),
-        allMoveLineData,
-        accountingReport);
   }
 
   private void writeMoveLineToCsvFile(
@@ -1472,14 +1554,24 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       List<String[]> allMoveData,
       AccountingReport accountingReport)
       throws AxelorException, IOException {
+    String filePath = this.getExportFilePath(company);
+    CsvTool.csvWriter(filePath, fileName, '|', columnHeader, allMoveData);
+    this.attachExportFile(filePath, fileName, accountingReport);
+  }
+
+  protected String getExportFilePath(Company company) throws AxelorException {
     String filePath = accountConfigService.getAccountConfig(company).getExportPath();
     if (filePath == null) {
       filePath = Files.createTempDir().getAbsolutePath();
     } else {
       new File(filePath).mkdirs();
     }
+    return filePath;
+  }
+
+  protected void attachExportFile(
+      String filePath, String fileName, AccountingReport accountingReport) throws IOException {
     log.debug("Full path to export : {}{}", filePath, fileName);
-    CsvTool.csvWriter(filePath, fileName, '|', columnHeader, allMoveData);
     Path path = Paths.get(filePath, fileName);
     try (InputStream is = new FileInputStream(path.toFile())) {
       Beans.get(MetaFiles.class).attach(is, fileName, accountingReport);
@@ -28,6 +28,7 @@ import com.google.inject.Inject;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
@@ -37,6 +38,10 @@ public class RejectImportService {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  // reject dates of the CFONB records (JJMMAA), see CfonbImportLayout
+  private static final DateTimeFormatter REJECT_DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("ddMMyy");
+
   protected AppAccountService appAccountService;
   protected CfonbImportService cfonbImportService;
   protected InterbankCodeLineRepository interbankCodeLineRepo;
@@ -197,9 +202,6 @@ public class RejectImportService {
    * @return
    */
   public LocalDate createRejectDate(String dateReject) {
-    return LocalDate.of(
-        Integer.parseInt(dateReject.substring(4, 6)) + 2000,
-        Integer.parseInt(dateReject.substring(2, 4)),
-        Integer.parseInt(dateReject.substring(0, 2)));
+    return LocalDate.parse(dateReject, REJECT_DATE_FORMATTER);
   }
 }
@@ -0,0 +1,91 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.bankorder.file.cfonb;
+
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.FORMAT_ALPHA_NUMERIC;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.FORMAT_NUMERIC;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.STATUS_MANDATORY;
+
+/**
+ * Zones of the records of a CFONB reject or return file (240 caractères) read by {@link
+ * CfonbImportService}.
+ */
+public final class CfonbImportLayout {
+
+  private CfonbImportLayout() {}
+
+  // Code enregistrement
+  public static final CfonbZone RECORD_CODE =
+      new CfonbZone("Record code", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 1, 2);
+  // Code opération
+  public static final CfonbZone OPERATION_CODE =
+      new CfonbZone("Operation code", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 3, 2);
+  // Code opération, lorsqu'aucune opération optionnelle n'est recherchée
+  public static final CfonbZone SECONDARY_OPERATION_CODE =
+      new CfonbZone("Secondary operation code", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 9, 2);
+
+  /** The zones used to find the records of a lot, common to all the records. */
+  public static final CfonbRecordLayout RECORD_LAYOUT =
+      new CfonbRecordLayout("Record", RECORD_CODE, OPERATION_CODE, SECONDARY_OPERATION_CODE);
+
+  /** Enregistrement "en-tête". */
+  public static final class Header {
+
+    private Header() {}
+
+    // Date de rejet du lot (JJMMAA)
+    public static final CfonbZone DATE =
+        new CfonbZone("Header date", STATUS_MANDATORY, FORMAT_NUMERIC, 11, 6);
+
+    public static final CfonbRecordLayout LAYOUT = new CfonbRecordLayout("Header", DATE);
+  }
+
+  /** Enregistrement "détail". */
+  public static final class Detail {
+
+    private Detail() {}
+
+    // Référence du prélèvement ou du remboursement
+    public static final CfonbZone REFERENCE =
+        new CfonbZone("Reference", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 153, 31);
+    // Date de rejet (JJMMAA)
+    public static final CfonbZone REJECT_DATE =
+        new CfonbZone("Reject date", STATUS_MANDATORY, FORMAT_NUMERIC, 215, 6);
+    // Motif du rejet
+    public static final CfonbZone REJECT_REASON =
+        new CfonbZone("Reject reason", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 227, 2);
+    // Montant rejeté, en centimes
+    public static final CfonbZone AMOUNT =
+        new CfonbZone("Amount", STATUS_MANDATORY, FORMAT_NUMERIC, 229, 12);
+
+    public static final CfonbRecordLayout LAYOUT =
+        new CfonbRecordLayout("Detail", REFERENCE, REJECT_DATE, REJECT_REASON, AMOUNT);
+  }
+
+  /** Enregistrement "fin". */
+  public static final class Ending {
+
+    private Ending() {}
+
+    // Montant total du lot, en centimes
+    public static final CfonbZone TOTAL_AMOUNT =
+        new CfonbZone("Total amount", STATUS_MANDATORY, FORMAT_NUMERIC, 229, 12);
+
+    public static final CfonbRecordLayout LAYOUT = new CfonbRecordLayout("Ending", TOTAL_AMOUNT);
+  }
+}
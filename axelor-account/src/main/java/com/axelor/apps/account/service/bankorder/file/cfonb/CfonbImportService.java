@@ -20,6 +20,9 @@ package com.axelor.apps.account.service.bankorder.file.cfonb;
 import com.axelor.apps.account.db.CfonbConfig;
 import com.axelor.apps.account.exception.IExceptionMessage;
 import com.axelor.apps.account.service.app.AppAccountService;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbImportLayout.Detail;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbImportLayout.Ending;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbImportLayout.Header;
 import com.axelor.apps.account.service.config.CfonbConfigService;
 import com.axelor.apps.base.db.Company;
 import com.axelor.apps.tool.file.FileTool;
@@ -46,6 +49,8 @@ public class CfonbImportService {
   protected CfonbConfig cfonbConfig;
   protected List<String> importFile;
 
+  protected final CfonbRecordReader recordReader = new CfonbRecordReader();
+
   @Inject
   public CfonbImportService(
       CfonbConfigService cfonbConfigService, AppAccountService appAccountService) {
@@ -282,13 +287,13 @@ public class CfonbImportService {
         for (String detailCFONB : multiDetailsCFONB) {
           importDataList.add(this.getDetailData(detailCFONB));
         }
-        this.checkTotalAmount(multiDetailsCFONB, endingCFONB, fileName, 228, 240);
+        this.checkTotalAmount(multiDetailsCFONB, endingCFONB, fileName);
         break;
       case 1:
         for (String detailCFONB : multiDetailsCFONB) {
           importDataList.add(this.getDetailData(detailCFONB));
         }
-        this.checkTotalAmount(multiDetailsCFONB, endingCFONB, fileName, 228, 240);
+        this.checkTotalAmount(multiDetailsCFONB, endingCFONB, fileName);
         break;
       default:
         break;
@@ -297,18 +302,14 @@ public class CfonbImportService {
   }
 
   private void checkTotalAmount(
-      List<String> multiDetailsCFONB,
-      String endingCFONB,
-      String fileName,
-      int amountPosStart,
-      int amountPosEnd)
+      List<String> multiDetailsCFONB, String endingCFONB, String fileName)
       throws AxelorException {
-    int totalAmount = 0;
+    long totalAmount = 0;
     for (String detailCFONB : multiDetailsCFONB) {
-      totalAmount += Integer.parseInt(detailCFONB.substring(amountPosStart, amountPosEnd));
+      totalAmount += recordReader.read(detailCFONB, Detail.LAYOUT).getLong(Detail.AMOUNT);
     }
 
-    int totalRecord = Integer.parseInt(endingCFONB.substring(amountPosStart, amountPosEnd));
+    long totalRecord = recordReader.read(endingCFONB, Ending.LAYOUT).getLong(Ending.TOTAL_AMOUNT);
 
     log.debug(
         "Controle du montant total des enregistrement détail ({}) et du montant de l'enregistrement total ({})",
@@ -340,18 +341,18 @@ public class CfonbImportService {
    * @param detailCFONB Un enregistrement 'détail' d'un rejet de prélèvement au format CFONB
    * @return Les infos de rejet d'un prélèvement ou virement
    */
-  private String[] getDetailData(String detailCFONB) {
+  private String[] getDetailData(String detailCFONB) throws AxelorException {
     String[] detailData = new String[4];
     log.debug("detailCFONB : {}", detailCFONB);
 
-    detailData[0] = detailCFONB.substring(214, 220); // Date de rejet
-    detailData[1] =
-        detailCFONB.substring(152, 183).split("/")[0].trim(); // Ref prélèvement ou remboursement
-    detailData[2] =
-        detailCFONB.substring(228, 240).substring(0, 10)
-            + "."
-            + detailCFONB.substring(228, 240).substring(10); // Montant rejeté
-    detailData[3] = detailCFONB.substring(226, 228); // Motif du rejet
+    CfonbRecordReader reader = recordReader.read(detailCFONB, Detail.LAYOUT);
+    String amount = reader.getString(Detail.AMOUNT);
+
+    detailData[0] = reader.getString(Detail.REJECT_DATE); // Date de rejet
+    // Ref prélèvement ou remboursement
+    detailData[1] = reader.getString(Detail.REFERENCE).split("/")[0].trim();
+    detailData[2] = amount.substring(0, 10) + "." + amount.substring(10); // Montant rejeté
+    detailData[3] = reader.getString(Detail.REJECT_REASON); // Motif du rejet
 
     log.debug(
         "Obtention des données d'un enregistrement détail CFONB: Date de rejet = {}, Ref prélèvement = {}, Montant rejeté = {}, Motif du rejet = {}",
@@ -367,8 +368,8 @@ public class CfonbImportService {
    * @param detailCFONB Un enregistrement 'détail' d'un rejet de prélèvement au format CFONB
    * @return Les infos de rejet d'un prélèvement ou virement
    */
-  private String getHeaderDate(String headerCFONB) {
-    return headerCFONB.substring(10, 16);
+  private String getHeaderDate(String headerCFONB) throws AxelorException {
+    return recordReader.read(headerCFONB, Header.LAYOUT).getString(Header.DATE);
   }
 
   /**
@@ -400,7 +401,8 @@ public class CfonbImportService {
    *
    * @return
    */
-  private String getHeaderCFONB(List<String> file, int operation, int optionalOperation) {
+  private String getHeaderCFONB(List<String> file, int operation, int optionalOperation)
+      throws AxelorException {
     String recordCode = this.getHeaderRecordCode(operation);
     String optionalRecordCode = this.getHeaderRecordCode(optionalOperation);
     String operationCode = this.getImportOperationCode(operation);
@@ -412,13 +414,9 @@ public class CfonbImportService {
 
     for (String s : file) {
       log.debug("file line : {}", s);
-      log.debug("s.substring(0, 2) : {}", s.substring(0, 2));
-      if (s.substring(0, 2).equals(recordCode) || s.substring(0, 2).equals(optionalRecordCode)) {
-        log.debug("s.substring(8, 10) : {}", s.substring(8, 10));
-        log.debug("s.substring(2, 4) : {}", s.substring(2, 4));
-        if ((s.substring(8, 10).equals(operationCode) && optionalOperation == 999)
-            || s.substring(2, 4).equals(operationCode)
-            || s.substring(2, 4).equals(optionalOperationCode)) {
+      recordReader.read(s, CfonbImportLayout.RECORD_LAYOUT);
+      if (hasRecordCode(recordCode, optionalRecordCode)) {
+        if (hasOperationCode(operationCode, optionalOperationCode, optionalOperation)) {
           return s;
         }
       } else {
@@ -460,7 +458,8 @@ public class CfonbImportService {
    *
    * @return
    */
-  private List<String> getDetailsCFONB(List<String> file, int operation, int optionalOperation) {
+  private List<String> getDetailsCFONB(List<String> file, int operation, int optionalOperation)
+      throws AxelorException {
 
     List<String> stringList = new ArrayList<String>();
     String recordCode = this.getDetailRecordCode(operation);
@@ -473,10 +472,9 @@ public class CfonbImportService {
         new Object[] {recordCode, operationCode, optionalRecordCode, optionalOperationCode});
 
     for (String s : file) {
-      if (s.substring(0, 2).equals(recordCode) || s.substring(0, 2).equals(optionalRecordCode)) {
-        if ((s.substring(8, 10).equals(operationCode) && optionalOperation == 999)
-            || s.substring(2, 4).equals(operationCode)
-            || s.substring(2, 4).equals(optionalOperationCode)) {
+      recordReader.read(s, CfonbImportLayout.RECORD_LAYOUT);
+      if (hasRecordCode(recordCode, optionalRecordCode)) {
+        if (hasOperationCode(operationCode, optionalOperationCode, optionalOperation)) {
           stringList.add(s);
         }
       } else {
@@ -519,7 +517,8 @@ public class CfonbImportService {
    *
    * @return
    */
-  private String getEndingCFONB(List<String> file, int operation, int optionalOperation) {
+  private String getEndingCFONB(List<String> file, int operation, int optionalOperation)
+      throws AxelorException {
     String operationCode = this.getImportOperationCode(operation);
     String recordCode = this.getEndingRecordCode(operation);
     String optionalRecordCode = this.getEndingRecordCode(optionalOperation);
@@ -529,10 +528,9 @@ public class CfonbImportService {
         "Obtention enregistrement fin CFONB: recordCode = {}, operationCode = {}, optionalRecordCode = {}, optionalOperationCode = {}",
         new Object[] {recordCode, operationCode, optionalRecordCode, optionalOperationCode});
     for (String s : file) {
-      if (s.substring(0, 2).equals(recordCode) || s.substring(0, 2).equals(optionalRecordCode)) {
-        if ((s.substring(8, 10).equals(operationCode) && optionalOperation == 999)
-            || s.substring(2, 4).equals(operationCode)
-            || s.substring(2, 4).equals(optionalOperationCode)) {
+      recordReader.read(s, CfonbImportLayout.RECORD_LAYOUT);
+      if (hasRecordCode(recordCode, optionalRecordCode)) {
+        if (hasOperationCode(operationCode, optionalOperationCode, optionalOperation)) {
           return s;
         }
       } else {
@@ -590,4 +588,26 @@ public class CfonbImportService {
     }
     return operationCode;
   }
+
+  /** Whether the record read has one of the given record codes. */
+  private boolean hasRecordCode(String recordCode, String optionalRecordCode)
+      throws AxelorException {
+    return isZoneEqual(CfonbImportLayout.RECORD_CODE, recordCode)
+        || isZoneEqual(CfonbImportLayout.RECORD_CODE, optionalRecordCode);
+  }
+
+  /** Whether the record read has one of the given operation codes. */
+  private boolean hasOperationCode(
+      String operationCode, String optionalOperationCode, int optionalOperation)
+      throws AxelorException {
+    return (isZoneEqual(CfonbImportLayout.SECONDARY_OPERATION_CODE, operationCode)
+            && optionalOperation == 999)
+        || isZoneEqual(CfonbImportLayout.OPERATION_CODE, operationCode)
+        || isZoneEqual(CfonbImportLayout.OPERATION_CODE, optionalOperationCode);
+  }
+
+  /** Whether the zone of the record read is not blank and equals the code. */
+  private boolean isZoneEqual(CfonbZone zone, String code) throws AxelorException {
+    return !recordReader.isBlank(zone) && recordReader.getString(zone).equals(code);
+  }
 }
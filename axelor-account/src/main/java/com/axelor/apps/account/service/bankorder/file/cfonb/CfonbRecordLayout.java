@@ -0,0 +1,55 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.bankorder.file.cfonb;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+
+/** The zones of a type of CFONB record which are checked as soon as a record is read. */
+@Immutable
+public class CfonbRecordLayout {
+
+  private final String name;
+  private final List<CfonbZone> zones;
+  private final int length;
+
+  public CfonbRecordLayout(String name, CfonbZone... zones) {
+    this.name = name;
+    this.zones = ImmutableList.copyOf(zones);
+
+    int end = 0;
+    for (CfonbZone zone : zones) {
+      end = Math.max(end, zone.getEnd());
+    }
+    this.length = end;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<CfonbZone> getZones() {
+    return zones;
+  }
+
+  /** Minimum number of characters of a record, to contain all the zones of the layout. */
+  public int getLength() {
+    return length;
+  }
+}
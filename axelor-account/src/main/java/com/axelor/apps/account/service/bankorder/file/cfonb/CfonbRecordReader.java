@@ -0,0 +1,209 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.bankorder.file.cfonb;
+
+import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Reads the zones of fixed-width CFONB records by offset, with the same rules as the {@code
+ * CfonbToolService.readZone} method of the bank payment module.
+ *
+ * <p>The zones of the layout are all checked once when a record is read, without extracting them.
+ * A string is then only built for the zones that are actually read, and numbers are read directly
+ * from the record. The same reader is meant to be reused for all the records of a file.
+ */
+@NotThreadSafe
+public class CfonbRecordReader {
+
+  private CharSequence record;
+
+  /**
+   * Read a new record, checking the length of the record and the format of the zones of the
+   * layout.
+   *
+   * @param record a line of a CFONB file
+   * @param layout the layout of the record
+   * @return this reader, positioned on the record
+   * @throws AxelorException if the record is too short or if a numeric zone is not numeric
+   */
+  public CfonbRecordReader read(CharSequence record, CfonbRecordLayout layout)
+      throws AxelorException {
+
+    this.record = record;
+    checkLength(layout.getLength());
+
+    for (CfonbZone zone : layout.getZones()) {
+      check(zone);
+    }
+    return this;
+  }
+
+  /**
+   * Get the value of a zone of the current record.
+   *
+   * @param zone
+   * @return the value, trimmed unless the zone is numeric, or null if the zone is not used or is
+   *     an optional zone left blank
+   * @throws AxelorException
+   */
+  public String getString(CfonbZone zone) throws AxelorException {
+
+    checkLength(zone.getEnd());
+
+    if (isIgnored(zone)) {
+      return null;
+    }
+
+    switch (zone.getFormat()) {
+      case CfonbZone.FORMAT_ALPHA_NUMERIC:
+      case CfonbZone.FORMAT_ALPHA:
+        int start = trimStart(zone);
+        return substring(start, trimEnd(zone, start));
+      default:
+        return substring(zone.getOffset(), zone.getEnd());
+    }
+  }
+
+  /**
+   * Get the value of a zone of the current record holding a positive integer.
+   *
+   * @param zone
+   * @return the value
+   * @throws AxelorException if the zone does not only contain digits
+   */
+  public int getInt(CfonbZone zone) throws AxelorException {
+    long value = getLong(zone);
+    if (value > Integer.MAX_VALUE) {
+      throw notNumeric(zone, zone.getOffset(), zone.getEnd());
+    }
+    return (int) value;
+  }
+
+  /**
+   * Get the value of a zone of the current record holding a positive integer, such as an amount in
+   * cents.
+   *
+   * @param zone
+   * @return the value
+   * @throws AxelorException if the zone does not only contain digits
+   */
+  public long getLong(CfonbZone zone) throws AxelorException {
+
+    checkLength(zone.getEnd());
+
+    int start = trimStart(zone);
+    int end = trimEnd(zone, start);
+    if (start == end || end - start > 18) {
+      throw notNumeric(zone, start, end);
+    }
+
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = Character.digit(record.charAt(i), 10);
+      if (digit < 0) {
+        throw notNumeric(zone, start, end);
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /** Whether the zone of the current record only contains spaces. */
+  public boolean isBlank(CfonbZone zone) throws AxelorException {
+
+    checkLength(zone.getEnd());
+
+    for (int i = zone.getOffset(); i < zone.getEnd(); i++) {
+      if (record.charAt(i) != ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  protected void check(CfonbZone zone) throws AxelorException {
+
+    if (!CfonbZone.FORMAT_NUMERIC.equals(zone.getFormat()) || isIgnored(zone)) {
+      return;
+    }
+
+    int start = trimStart(zone);
+    int end = trimEnd(zone, start);
+    for (int i = start; i < end; i++) {
+      if (!Character.isDigit(record.charAt(i))) {
+        throw notNumeric(zone, start, end);
+      }
+    }
+  }
+
+  protected boolean isIgnored(CfonbZone zone) throws AxelorException {
+
+    switch (zone.getStatus()) {
+      case CfonbZone.STATUS_NOT_USED:
+        return true;
+      case CfonbZone.STATUS_OPTIONAL:
+      case CfonbZone.STATUS_DEPENDENT:
+        return isBlank(zone);
+      default:
+        return false;
+    }
+  }
+
+  protected void checkLength(int length) throws AxelorException {
+
+    if (record.length() < length) {
+      throw new AxelorException(
+          TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+          I18n.get(IExceptionMessage.CFONB_TOOL_NB_OF_CHAR_PER_LINE),
+          length);
+    }
+  }
+
+  protected AxelorException notNumeric(CfonbZone zone, int start, int end) {
+    return new AxelorException(
+        TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+        I18n.get(IExceptionMessage.CFONB_TOOL_DIGITAL_ZONE_NOT_CORRECT),
+        zone.getName(),
+        substring(start, end));
+  }
+
+  // same characters as String#trim
+  protected int trimStart(CfonbZone zone) {
+    int start = zone.getOffset();
+    while (start < zone.getEnd() && record.charAt(start) <= ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  protected int trimEnd(CfonbZone zone, int start) {
+    int end = zone.getEnd();
+    while (end > start && record.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  protected String substring(int start, int end) {
+    return record.subSequence(start, end).toString();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.bankorder.file.cfonb;
+
+import com.google.common.base.Preconditions;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A zone of a fixed-width CFONB record, as described in the tables of the CFONB specifications.
+ *
+ * <p>Zones are meant to be declared once as constants and read with a {@link CfonbRecordReader}.
+ */
+@Immutable
+public class CfonbZone {
+
+  /** "M" = Obligatoire (Mandatory) */
+  public static final String STATUS_MANDATORY = "M";
+  /** "O" = Optionnel (Optional) */
+  public static final String STATUS_OPTIONAL = "O";
+  /**
+   * "D" = Dépendant (Dependent), la condition de présence de la donnée est précisée dans les
+   * tableaux de description des enregistrements
+   */
+  public static final String STATUS_DEPENDENT = "D";
+  /**
+   * "N" = Non utilisée (zone que le CFONB se réserve le droit d'utiliser ultérieurement qui doit
+   * alors être à blanc, ou zone non utilisée pour ce type de remise qui est alors ignorée par la
+   * banque).
+   */
+  public static final String STATUS_NOT_USED = "N";
+
+  /** "AN" = alphanumérique */
+  public static final String FORMAT_ALPHA_NUMERIC = "AN";
+  /** "N" = numérique */
+  public static final String FORMAT_NUMERIC = "N";
+  /** "A" = Alphabétique */
+  public static final String FORMAT_ALPHA = "A";
+
+  private final String name;
+  private final String status;
+  private final String format;
+  private final int offset;
+  private final int length;
+
+  /**
+   * @param name the name of the zone, used in error messages
+   * @param status one of the {@code STATUS_*} values
+   * @param format one of the {@code FORMAT_*} values
+   * @param position the position of the first character of the zone, starting at 1
+   * @param length the number of characters of the zone
+   */
+  public CfonbZone(String name, String status, String format, int position, int length) {
+    Preconditions.checkArgument(position >= 1, "Position of zone %s must start at 1", name);
+    Preconditions.checkArgument(length >= 1, "Length of zone %s must be positive", name);
+    this.name = Preconditions.checkNotNull(name);
+    this.status = Preconditions.checkNotNull(status);
+    this.format = Preconditions.checkNotNull(format);
+    this.offset = position - 1;
+    this.length = length;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  /** Index of the first character of the zone in the record, starting at 0. */
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /** Index following the last character of the zone in the record. */
+  public int getEnd() {
+    return offset + length;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
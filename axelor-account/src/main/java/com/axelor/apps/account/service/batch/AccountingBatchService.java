@@ -70,6 +70,9 @@ public class AccountingBatchService extends AbstractBatchService {
       case AccountingBatchRepository.ACTION_REALIZE_FIXED_ASSET_LINES:
         batch = realizeFixedAssetLines(accountingBatch);
         break;
+      case AccountingBatchRepository.ACTION_RECONCILE_MOVE_LINES:
+        batch = reconcileMoveLines(accountingBatch);
+        break;
       default:
         throw new AxelorException(
             TraceBackRepository.CATEGORY_INCONSISTENCY,
@@ -151,4 +154,9 @@ public class AccountingBatchService extends AbstractBatchService {
 
     return Beans.get(BatchRealizeFixedAssetLine.class).run(accountingBatch);
   }
+
+  public Batch reconcileMoveLines(AccountingBatch accountingBatch) {
+
+    return Beans.get(BatchReconcileMoveLines.class).run(accountingBatch);
+  }
 }
@@ -30,7 +30,9 @@ import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.google.inject.Inject;
 import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,6 +71,21 @@ public class BatchAccountCustomer extends BatchStrategy {
     boolean updateDueDebtRecoveryCustAccountOk =
         accountingBatch.getUpdateDueDebtRecoveryCustAccountOk();
 
+    // balances of every partner are computed at once instead of partner by partner
+    Map<Long, BigDecimal> balanceMap =
+        updateCustAccountOk
+            ? accountCustomerService.getBalances(AccountCustomerService.BALANCE, company)
+            : null;
+    Map<Long, BigDecimal> balanceDueMap =
+        updateDueCustAccountOk
+            ? accountCustomerService.getBalances(AccountCustomerService.BALANCE_DUE, company)
+            : null;
+    Map<Long, BigDecimal> balanceDueDebtRecoveryMap =
+        updateDueDebtRecoveryCustAccountOk
+            ? accountCustomerService.getBalances(
+                AccountCustomerService.BALANCE_DUE_DEBT_RECOVERY, company)
+            : null;
+
     List<AccountingSituation> accountingSituationList =
         (List<AccountingSituation>)
             accountingSituationRepo.all().filter("self.company = ?1", company).fetch();
@@ -77,12 +94,15 @@ public class BatchAccountCustomer extends BatchStrategy {
     for (AccountingSituation accountingSituation : accountingSituationList) {
       try {
 
+        accountingSituation = accountingSituationRepo.find(accountingSituation.getId());
+        Long partnerId = accountingSituation.getPartner().getId();
+
         accountingSituation =
             accountCustomerService.updateAccountingSituationCustomerAccount(
-                accountingSituationRepo.find(accountingSituation.getId()),
-                updateCustAccountOk,
-                updateDueCustAccountOk,
-                updateDueDebtRecoveryCustAccountOk);
+                accountingSituation,
+                getBalance(balanceMap, partnerId),
+                getBalance(balanceDueMap, partnerId),
+                getBalance(balanceDueDebtRecoveryMap, partnerId));
 
         if (accountingSituation != null) {
           this.updateAccountingSituation(accountingSituation);
@@ -115,6 +135,14 @@ public class BatchAccountCustomer extends BatchStrategy {
     }
   }
 
+  protected BigDecimal getBalance(Map<Long, BigDecimal> balanceMap, Long partnerId) {
+    if (balanceMap == null) {
+      return null;
+    }
+    BigDecimal balance = balanceMap.get(partnerId);
+    return balance != null ? balance : BigDecimal.ZERO;
+  }
+
   /**
    * As {@code batch} entity can be detached from the session, call {@code Batch.find()} get the
    * entity in the persistant context. Warning : {@code batch} entity have to be saved before.
@@ -0,0 +1,92 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.batch;
+
+import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.move.MoveLineService;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.db.JPA;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+import java.util.List;
+
+/**
+ * Reconcile the open move lines of the company of the batch, one account and partner at a time.
+ */
+public class BatchReconcileMoveLines extends AbstractBatch {
+
+  protected MoveLineService moveLineService;
+
+  private int moveLineCount;
+  private long processMillis;
+
+  @Inject
+  public BatchReconcileMoveLines(MoveLineService moveLineService) {
+    this.moveLineService = moveLineService;
+  }
+
+  @Override
+  protected void process() {
+
+    long start = System.currentTimeMillis();
+
+    Company company = batch.getAccountingBatch().getCompany();
+    List<Object[]> keyList = moveLineService.findReconciliableKeys(company);
+
+    for (Object[] keys : keyList) {
+      try {
+        company = JPA.find(Company.class, company.getId());
+        moveLineCount +=
+            moveLineService.reconcileMoveLines(company, (Long) keys[0], (Long) keys[1]);
+        incrementDone();
+      } catch (Exception e) {
+        incrementAnomaly();
+        TraceBackService.trace(e, null, batch.getId());
+      }
+      JPA.clear();
+    }
+
+    processMillis = Math.max(System.currentTimeMillis() - start, 1);
+    LOG.debug(
+        "{} move lines reconciled in {} groups in {} ms ({} lines/s)",
+        moveLineCount,
+        keyList.size(),
+        processMillis,
+        moveLineCount * 1000L / processMillis);
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s " + I18n.get(IExceptionMessage.BATCH_RECONCILE_MOVE_LINES) + "\n",
+            batch.getDone(),
+            moveLineCount,
+            moveLineCount * 1000L / Math.max(processMillis, 1));
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+    addComment(comment);
+    super.stop();
+  }
+}
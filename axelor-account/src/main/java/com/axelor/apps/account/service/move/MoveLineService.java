@@ -31,6 +31,8 @@ import com.axelor.apps.account.db.TaxLine;
 import com.axelor.apps.account.db.repo.AccountTypeRepository;
 import com.axelor.apps.account.db.repo.AnalyticMoveLineRepository;
 import com.axelor.apps.account.db.repo.InvoiceRepository;
+import com.axelor.apps.account.db.repo.MoveLineRepository;
+import com.axelor.apps.account.db.repo.MoveRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
 import com.axelor.apps.account.service.AccountManagementAccountService;
 import com.axelor.apps.account.service.AnalyticMoveLineService;
@@ -44,6 +46,9 @@ import com.axelor.apps.base.db.Currency;
 import com.axelor.apps.base.db.Partner;
 import com.axelor.apps.base.service.CurrencyService;
 import com.axelor.apps.base.service.config.CompanyConfigService;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -54,11 +59,16 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -586,6 +596,11 @@ public class MoveLineService {
     return moveLines;
   }
 
+  /**
+   * @deprecated lines are now consolidated on a key which includes the analytic distribution, see
+   *     {@link #getConsolidateKeys(MoveLine)}.
+   */
+  @Deprecated
   public MoveLine findConsolidateMoveLine(
       Map<List<Object>, MoveLine> map, MoveLine moveLine, List<Object> keys) {
     if (map != null && !map.isEmpty()) {
@@ -646,6 +661,102 @@ public class MoveLineService {
     return null;
   }
 
+  /**
+   * Get the key on which move lines are consolidated: the account, the tax line, the analytic
+   * distribution template and a fingerprint of the analytic move lines.
+   *
+   * @param moveLine
+   * @return
+   */
+  protected List<Object> getConsolidateKeys(MoveLine moveLine) {
+
+    List<Object> keys = new ArrayList<Object>(4);
+
+    keys.add(moveLine.getAccount());
+    keys.add(moveLine.getTaxLine());
+    keys.add(moveLine.getAnalyticDistributionTemplate());
+    keys.add(this.getAnalyticFingerprint(moveLine.getAnalyticMoveLineList()));
+
+    return keys;
+  }
+
+  /**
+   * Get a fingerprint of an analytic distribution, equal for two lists holding the same analytic
+   * move lines whatever their order and amounts: the number of analytic move lines by analytic
+   * key.
+   *
+   * @param analyticMoveLineList
+   * @return
+   */
+  protected Map<List<Object>, Integer> getAnalyticFingerprint(
+      List<AnalyticMoveLine> analyticMoveLineList) {
+
+    if (analyticMoveLineList == null || analyticMoveLineList.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Map<List<Object>, Integer> fingerprint = new HashMap<>();
+    for (AnalyticMoveLine analyticMoveLine : analyticMoveLineList) {
+      fingerprint.merge(this.getAnalyticKey(analyticMoveLine), 1, Integer::sum);
+    }
+
+    return fingerprint;
+  }
+
+  protected List<Object> getAnalyticKey(AnalyticMoveLine analyticMoveLine) {
+
+    BigDecimal percentage = analyticMoveLine.getPercentage();
+
+    return Arrays.asList(
+        getKeyPart(analyticMoveLine.getAnalyticAxis()),
+        getKeyPart(analyticMoveLine.getAnalyticAccount()),
+        getKeyPart(analyticMoveLine.getAccount()),
+        percentage != null ? percentage.stripTrailingZeros() : null,
+        getKeyPart(analyticMoveLine.getAnalyticJournal()));
+  }
+
+  /** The id of a saved record, or the record itself, which is only equal to itself, if unsaved. */
+  private Object getKeyPart(Model model) {
+    if (model == null) {
+      return null;
+    }
+    return model.getId() != null ? model.getId() : model;
+  }
+
+  /**
+   * Add the analytic amounts of a move line to the matching analytic move lines of the line it is
+   * consolidated in.
+   *
+   * @param consolidateMoveLine
+   * @param moveLine
+   */
+  protected void consolidateAnalyticMoveLines(MoveLine consolidateMoveLine, MoveLine moveLine) {
+
+    if (consolidateMoveLine.getAnalyticMoveLineList() == null
+        || consolidateMoveLine.getAnalyticMoveLineList().isEmpty()) {
+      return;
+    }
+
+    Map<List<Object>, Deque<AnalyticMoveLine>> analyticMoveLineMap = new HashMap<>();
+    for (AnalyticMoveLine analyticMoveLine : moveLine.getAnalyticMoveLineList()) {
+      analyticMoveLineMap
+          .computeIfAbsent(this.getAnalyticKey(analyticMoveLine), key -> new ArrayDeque<>())
+          .add(analyticMoveLine);
+    }
+
+    for (AnalyticMoveLine analyticDistributionLine :
+        consolidateMoveLine.getAnalyticMoveLineList()) {
+      Deque<AnalyticMoveLine> analyticMoveLines =
+          analyticMoveLineMap.get(this.getAnalyticKey(analyticDistributionLine));
+      AnalyticMoveLine analyticDistributionLineIt =
+          analyticMoveLines != null ? analyticMoveLines.poll() : null;
+      if (analyticDistributionLineIt != null) {
+        analyticDistributionLine.setAmount(
+            analyticDistributionLine.getAmount().add(analyticDistributionLineIt.getAmount()));
+      }
+    }
+  }
+
   /**
    * Consolider des lignes d'écritures par compte comptable.
    *
@@ -653,18 +764,14 @@ public class MoveLineService {
    */
   public List<MoveLine> consolidateMoveLines(List<MoveLine> moveLines) {
 
-    Map<List<Object>, MoveLine> map = new HashMap<List<Object>, MoveLine>();
+    Map<List<Object>, MoveLine> map = new LinkedHashMap<List<Object>, MoveLine>();
     MoveLine consolidateMoveLine = null;
 
     for (MoveLine moveLine : moveLines) {
 
-      List<Object> keys = new ArrayList<Object>();
-
-      keys.add(moveLine.getAccount());
-      keys.add(moveLine.getTaxLine());
-      keys.add(moveLine.getAnalyticDistributionTemplate());
+      List<Object> keys = this.getConsolidateKeys(moveLine);
 
-      consolidateMoveLine = this.findConsolidateMoveLine(map, moveLine, keys);
+      consolidateMoveLine = map.get(keys);
       if (consolidateMoveLine != null) {
 
         BigDecimal consolidateCurrencyAmount = BigDecimal.ZERO;
@@ -695,37 +802,8 @@ public class MoveLineService {
         consolidateMoveLine.setCredit(consolidateMoveLine.getCredit().add(moveLine.getCredit()));
         consolidateMoveLine.setDebit(consolidateMoveLine.getDebit().add(moveLine.getDebit()));
 
-        if (consolidateMoveLine.getAnalyticMoveLineList() != null
-            && !consolidateMoveLine.getAnalyticMoveLineList().isEmpty()) {
-          for (AnalyticMoveLine analyticDistributionLine :
-              consolidateMoveLine.getAnalyticMoveLineList()) {
-            for (AnalyticMoveLine analyticDistributionLineIt : moveLine.getAnalyticMoveLineList()) {
-              if (analyticDistributionLine
-                      .getAnalyticAxis()
-                      .equals(analyticDistributionLineIt.getAnalyticAxis())
-                  && analyticDistributionLine
-                      .getAnalyticAccount()
-                      .equals(analyticDistributionLineIt.getAnalyticAccount())
-                  && analyticDistributionLine
-                      .getAccount()
-                      .equals(analyticDistributionLineIt.getAccount())
-                  && analyticDistributionLine
-                      .getPercentage()
-                      .equals(analyticDistributionLineIt.getPercentage())
-                  && ((analyticDistributionLine.getAnalyticJournal() == null
-                          && analyticDistributionLineIt.getAnalyticJournal() == null)
-                      || analyticDistributionLine
-                          .getAnalyticJournal()
-                          .equals(analyticDistributionLineIt.getAnalyticJournal()))) {
-                analyticDistributionLine.setAmount(
-                    analyticDistributionLine
-                        .getAmount()
-                        .add(analyticDistributionLineIt.getAmount()));
-                break;
-              }
-            }
-          }
-        }
+        this.consolidateAnalyticMoveLines(consolidateMoveLine, moveLine);
+
       } else {
         map.put(keys, moveLine);
       }
@@ -957,6 +1035,114 @@ public class MoveLineService {
     }
   }
 
+  /**
+   * Method used to reconcile the open move lines of a company for an account and a partner, in
+   * their own transaction when called outside of one. Used along with {@link
+   * #findReconciliableKeys(Company)} to reconcile all the move lines of a company without loading
+   * them at once. If a reconciliation fails, none of the reconciliations of the account and
+   * partner are kept.
+   *
+   * @param company
+   * @param accountId
+   * @param partnerId may be null
+   * @return the number of move lines reconciled, fully or partly
+   * @throws AxelorException if a reconciliation fails
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public int reconcileMoveLines(Company company, Long accountId, Long partnerId)
+      throws AxelorException {
+
+    List<MoveLine> moveLineList = findReconciliableMoveLines(company, accountId, partnerId);
+
+    List<MoveLine> debitMoveLineList = getReconciliableDebitMoveLines(moveLineList);
+    List<MoveLine> creditMoveLineList = getReconciliableCreditMoveLines(moveLineList);
+
+    BigDecimal[] amountRemainingList = new BigDecimal[moveLineList.size()];
+    for (int i = 0; i < moveLineList.size(); i++) {
+      amountRemainingList[i] = moveLineList.get(i).getAmountRemaining();
+    }
+
+    Beans.get(PaymentService.class)
+        .useExcessPaymentOnMoveLines(debitMoveLineList, creditMoveLineList);
+
+    // the reconciliations add to the amount paid of the lines they use
+    int reconciledCount = 0;
+    for (int i = 0; i < moveLineList.size(); i++) {
+      if (moveLineList.get(i).getAmountRemaining().compareTo(amountRemainingList[i]) < 0) {
+        reconciledCount++;
+      }
+    }
+    return reconciledCount;
+  }
+
+  /**
+   * Find the account and partner ids of the company having both open debit and open credit
+   * reconciliable move lines.
+   *
+   * @param company
+   * @return a list of [account id, partner id], partner id may be null
+   */
+  @SuppressWarnings("unchecked")
+  public List<Object[]> findReconciliableKeys(Company company) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self.account.id, partner.id FROM MoveLine self "
+                + "LEFT JOIN self.partner partner "
+                + "WHERE self.move.company = :company "
+                + "AND self.move.statusSelect IN (:statusList) "
+                + "AND self.account.reconcileOk = true "
+                + "AND self.amountRemaining > 0 "
+                + "GROUP BY self.account.id, partner.id "
+                + "HAVING SUM(CASE WHEN self.debit > 0 AND self.credit = 0 "
+                + "THEN 1 ELSE 0 END) > 0 "
+                + "AND SUM(CASE WHEN self.credit > 0 AND self.debit = 0 "
+                + "THEN 1 ELSE 0 END) > 0 "
+                + "ORDER BY self.account.id, partner.id")
+        .setParameter("company", company)
+        .setParameter(
+            "statusList",
+            Arrays.asList(MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK))
+        .getResultList();
+  }
+
+  /**
+   * Find the open reconciliable move lines of the company for an account and a partner, ordered
+   * by date.
+   *
+   * @param company
+   * @param accountId
+   * @param partnerId may be null
+   * @return
+   */
+  protected List<MoveLine> findReconciliableMoveLines(
+      Company company, Long accountId, Long partnerId) {
+
+    StringBuilder filter =
+        new StringBuilder(
+            "self.move.company = :company "
+                + "AND self.move.statusSelect IN (:statusList) "
+                + "AND self.account.id = :accountId "
+                + "AND self.amountRemaining > 0 ");
+    filter.append(
+        partnerId == null ? "AND self.partner IS NULL" : "AND self.partner.id = :partnerId");
+
+    Query<MoveLine> query =
+        Beans.get(MoveLineRepository.class)
+            .all()
+            .filter(filter.toString())
+            .bind("company", company)
+            .bind(
+                "statusList",
+                Arrays.asList(MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK))
+            .bind("accountId", accountId)
+            .order("date")
+            .order("id");
+    if (partnerId != null) {
+      query.bind("partnerId", partnerId);
+    }
+    return query.fetch();
+  }
+
   private void populateCredit(
       Map<List<Object>, Pair<List<MoveLine>, List<MoveLine>>> moveLineMap,
       List<MoveLine> reconciliableMoveLineList) {
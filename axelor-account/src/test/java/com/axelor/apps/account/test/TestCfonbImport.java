@@ -0,0 +1,228 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.test;
+
+import com.axelor.apps.account.db.CfonbConfig;
+import com.axelor.apps.account.db.InterbankCode;
+import com.axelor.apps.account.service.RejectImportService;
+import com.axelor.apps.account.service.app.AppAccountService;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbImportService;
+import com.axelor.apps.account.service.config.CfonbConfigService;
+import com.axelor.apps.base.db.AppAccount;
+import com.axelor.apps.base.db.Company;
+import com.axelor.exception.AxelorException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCfonbImport {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final CfonbConfig cfonbConfig = createCfonbConfig();
+
+  private final AppAccountService appAccountService = createAppAccountService();
+
+  private final CfonbImportService cfonbImportService =
+      new CfonbImportService(
+          new CfonbConfigService() {
+            @Override
+            public CfonbConfig getCfonbConfig(Company company) {
+              return cfonbConfig;
+            }
+          },
+          appAccountService);
+
+  private static CfonbConfig createCfonbConfig() {
+    CfonbConfig cfonbConfig = new CfonbConfig();
+    cfonbConfig.setHeaderRecordCodeImportCFONB("31");
+    cfonbConfig.setDetailRecordCodeImportCFONB("34");
+    cfonbConfig.setEndingRecordCodeImportCFONB("39");
+    cfonbConfig.setTransferOperationCodeImportCFONB("21");
+    cfonbConfig.setDirectDebitOperationCodeImportCFONB("81");
+    return cfonbConfig;
+  }
+
+  private static AppAccountService createAppAccountService() {
+    AppAccount appAccount = new AppAccount();
+    appAccount.setTransferAndDirectDebitInterbankCode(new InterbankCode());
+    ZonedDateTime today = ZonedDateTime.of(2019, 1, 16, 9, 30, 0, 0, ZoneOffset.UTC);
+
+    return (AppAccountService)
+        Proxy.newProxyInstance(
+            AppAccountService.class.getClassLoader(),
+            new Class<?>[] {AppAccountService.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getAppAccount":
+                  return appAccount;
+                case "getTodayDateTime":
+                  return today;
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  private static String record(String recordCode, String operationCode) {
+    StringBuilder record = new StringBuilder(new String(new char[240]).replace('\0', ' '));
+    put(record, 1, recordCode);
+    put(record, 3, operationCode);
+    return record.toString();
+  }
+
+  private static String header(String date) {
+    StringBuilder record = new StringBuilder(record("31", "21"));
+    put(record, 11, date);
+    put(record, 23, "AXELOR SAS");
+    return record.toString();
+  }
+
+  private static String detail(String reference, String rejectDate, String reason, String amount) {
+    StringBuilder record = new StringBuilder(record("34", "21"));
+    put(record, 31, "DUPONT JEAN");
+    put(record, 55, "LA BANQUE POSTALE");
+    put(record, 153, reference);
+    put(record, 215, rejectDate);
+    put(record, 227, reason);
+    put(record, 229, amount);
+    return record.toString();
+  }
+
+  private static String ending(String totalAmount) {
+    StringBuilder record = new StringBuilder(record("39", "21"));
+    put(record, 229, totalAmount);
+    return record.toString();
+  }
+
+  private static void put(StringBuilder record, int position, String value) {
+    record.replace(position - 1, position - 1 + value.length(), value);
+  }
+
+  private String createFile(String... lines) throws IOException {
+    File file = folder.newFile("rejects.txt");
+    Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file.getPath();
+  }
+
+  @Test
+  public void testImportRejects() throws AxelorException, IOException {
+    String fileName =
+        createFile(
+            header("150119"),
+            detail("RMB0001/2019", "140119", "AC", "000000012345"),
+            detail("RMB0002", "140119", "MS", "000000100000"),
+            ending("000000112345"));
+
+    List<String[]> rejectList = cfonbImportService.importCFONB(fileName, new Company(), 0);
+
+    Assert.assertEquals(2, rejectList.size());
+    Assert.assertArrayEquals(
+        new String[] {"140119", "RMB0001", "0000000123.45", "AC"}, rejectList.get(0));
+    Assert.assertArrayEquals(
+        new String[] {"140119", "RMB0002", "0000001000.00", "MS"}, rejectList.get(1));
+  }
+
+  @Test
+  public void testImportRejectsByLot() throws AxelorException, IOException {
+    String fileName =
+        createFile(
+            header("150119"),
+            detail("RMB0001", "140119", "AC", "000000012345"),
+            ending("000000012345"),
+            header("160119"),
+            detail("RMB0002", "150119", "MS", "000000100000"),
+            ending("000000100000"));
+
+    Map<List<String[]>, String> rejectMap =
+        cfonbImportService.importCFONBByLot(fileName, new Company(), 0);
+
+    Assert.assertEquals(2, rejectMap.size());
+    for (Map.Entry<List<String[]>, String> entry : rejectMap.entrySet()) {
+      Assert.assertEquals(1, entry.getKey().size());
+      String reference = entry.getKey().get(0)[1];
+      Assert.assertEquals(reference.equals("RMB0001") ? "150119" : "160119", entry.getValue());
+    }
+  }
+
+  /** The total of large lots does not fit in an int. */
+  @Test
+  public void testLargeTotalAmount() throws AxelorException, IOException {
+    String fileName =
+        createFile(
+            header("150119"),
+            detail("RMB0001", "140119", "AC", "200000000000"),
+            detail("RMB0002", "140119", "AC", "100000000000"),
+            ending("300000000000"));
+
+    Assert.assertEquals(2, cfonbImportService.importCFONB(fileName, new Company(), 0).size());
+  }
+
+  @Test(expected = AxelorException.class)
+  public void testWrongTotalAmount() throws AxelorException, IOException {
+    String fileName =
+        createFile(
+            header("150119"),
+            detail("RMB0001", "140119", "AC", "000000012345"),
+            ending("000000012346"));
+
+    cfonbImportService.importCFONB(fileName, new Company(), 0);
+  }
+
+  @Test(expected = AxelorException.class)
+  public void testShortDetail() throws AxelorException, IOException {
+    String fileName =
+        createFile(
+            header("150119"),
+            detail("RMB0001", "140119", "AC", "000000012345").substring(0, 200),
+            ending("000000012345"));
+
+    cfonbImportService.importCFONB(fileName, new Company(), 0);
+  }
+
+  @Test
+  public void testRejectImport() throws AxelorException, IOException {
+    RejectImportService rejectImportService =
+        new RejectImportService(appAccountService, cfonbImportService, null);
+    String fileName =
+        createFile(
+            header("150119"),
+            detail("RMB0001", "140119", "AC", "000000012345"),
+            ending("000000012345"));
+    String temp = new File(folder.newFolder("temp"), "rejects.txt").getPath();
+
+    List<String[]> rejectList =
+        rejectImportService.getCFONBFile(fileName, temp, new Company(), 0);
+
+    Assert.assertEquals(1, rejectList.size());
+    Assert.assertEquals(
+        LocalDate.of(2019, 1, 14), rejectImportService.createRejectDate(rejectList.get(0)[0]));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.test;
+
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbRecordLayout;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbRecordReader;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone;
+import com.axelor.exception.AxelorException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCfonbRecordReader {
+
+  private static final CfonbZone CODE =
+      new CfonbZone("Code", CfonbZone.STATUS_MANDATORY, CfonbZone.FORMAT_NUMERIC, 1, 4);
+  private static final CfonbZone LABEL =
+      new CfonbZone("Label", CfonbZone.STATUS_MANDATORY, CfonbZone.FORMAT_ALPHA_NUMERIC, 5, 8);
+  private static final CfonbZone REFERENCE =
+      new CfonbZone("Reference", CfonbZone.STATUS_OPTIONAL, CfonbZone.FORMAT_ALPHA_NUMERIC, 13, 4);
+
+  private static final CfonbRecordLayout LAYOUT = new CfonbRecordLayout("Test", CODE, LABEL);
+
+  @Test
+  public void testReadZones() throws AxelorException {
+    CfonbRecordReader reader = new CfonbRecordReader().read("0042 LABEL      ", LAYOUT);
+
+    Assert.assertEquals("0042", reader.getString(CODE));
+    Assert.assertEquals(42, reader.getInt(CODE));
+    Assert.assertEquals("LABEL", reader.getString(LABEL));
+    Assert.assertTrue(reader.isBlank(REFERENCE));
+    Assert.assertNull(reader.getString(REFERENCE));
+  }
+
+  @Test
+  public void testReadAmount() throws AxelorException {
+    CfonbZone amount =
+        new CfonbZone("Amount", CfonbZone.STATUS_MANDATORY, CfonbZone.FORMAT_NUMERIC, 1, 12);
+    CfonbRecordReader reader =
+        new CfonbRecordReader().read("003000000012", new CfonbRecordLayout("Amount", amount));
+
+    Assert.assertEquals(3000000012L, reader.getLong(amount));
+  }
+
+  @Test(expected = AxelorException.class)
+  public void testIntOverflow() throws AxelorException {
+    CfonbZone amount =
+        new CfonbZone("Amount", CfonbZone.STATUS_MANDATORY, CfonbZone.FORMAT_NUMERIC, 1, 12);
+    new CfonbRecordReader()
+        .read("003000000012", new CfonbRecordLayout("Amount", amount))
+        .getInt(amount);
+  }
+
+  @Test(expected = AxelorException.class)
+  public void testNumericZone() throws AxelorException {
+    new CfonbRecordReader().read("00A2 LABEL      ", LAYOUT);
+  }
+
+  @Test(expected = AxelorException.class)
+  public void testRecordLength() throws AxelorException {
+    new CfonbRecordReader().read("0042", LAYOUT);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.test;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AnalyticAccount;
+import com.axelor.apps.account.db.AnalyticMoveLine;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.service.move.MoveLineService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMoveLineConsolidation {
+
+  private final MoveLineService moveLineService =
+      new MoveLineService(null, null, null, null, null, null, null);
+
+  private final Account account = createAccount(1L);
+
+  @Test
+  public void testSameDistributionInAnotherOrder() {
+    AnalyticAccount analyticAccount1 = createAnalyticAccount(10L);
+    AnalyticAccount analyticAccount2 = createAnalyticAccount(11L);
+
+    MoveLine moveLine1 = createMoveLine("100");
+    addAnalyticMoveLine(moveLine1, analyticAccount1, "60.00", "60");
+    addAnalyticMoveLine(moveLine1, analyticAccount2, "40", "40");
+    MoveLine moveLine2 = createMoveLine("50");
+    addAnalyticMoveLine(moveLine2, analyticAccount2, "40.0", "20");
+    addAnalyticMoveLine(moveLine2, analyticAccount1, "60", "30");
+
+    List<MoveLine> moveLines = consolidate(moveLine1, moveLine2);
+
+    Assert.assertEquals(1, moveLines.size());
+    Assert.assertEquals(0, new BigDecimal("150").compareTo(moveLines.get(0).getDebit()));
+    List<AnalyticMoveLine> analyticMoveLines = moveLines.get(0).getAnalyticMoveLineList();
+    Assert.assertEquals(0, new BigDecimal("90").compareTo(analyticMoveLines.get(0).getAmount()));
+    Assert.assertEquals(0, new BigDecimal("60").compareTo(analyticMoveLines.get(1).getAmount()));
+  }
+
+  @Test
+  public void testDifferentDistributions() {
+    MoveLine moveLine1 = createMoveLine("100");
+    addAnalyticMoveLine(moveLine1, createAnalyticAccount(10L), "100", "100");
+    MoveLine moveLine2 = createMoveLine("50");
+    addAnalyticMoveLine(moveLine2, createAnalyticAccount(11L), "100", "50");
+    MoveLine moveLine3 = createMoveLine("20");
+
+    Assert.assertEquals(3, consolidate(moveLine1, moveLine2, moveLine3).size());
+  }
+
+  @Test
+  public void testUnsavedAnalyticAccounts() {
+    AnalyticAccount analyticAccount = createAnalyticAccount(null);
+
+    MoveLine moveLine1 = createMoveLine("100");
+    addAnalyticMoveLine(moveLine1, analyticAccount, "100", "100");
+    MoveLine moveLine2 = createMoveLine("50");
+    addAnalyticMoveLine(moveLine2, analyticAccount, "100", "50");
+    MoveLine moveLine3 = createMoveLine("20");
+    addAnalyticMoveLine(moveLine3, createAnalyticAccount(null), "100", "20");
+
+    List<MoveLine> moveLines = consolidate(moveLine1, moveLine2, moveLine3);
+
+    Assert.assertEquals(2, moveLines.size());
+    Assert.assertEquals(0, new BigDecimal("150").compareTo(moveLines.get(0).getDebit()));
+    Assert.assertEquals(0, new BigDecimal("20").compareTo(moveLines.get(1).getDebit()));
+  }
+
+  private List<MoveLine> consolidate(MoveLine... moveLines) {
+    return moveLineService.consolidateMoveLines(new ArrayList<>(Arrays.asList(moveLines)));
+  }
+
+  private Account createAccount(Long id) {
+    Account account = new Account();
+    account.setId(id);
+    return account;
+  }
+
+  private AnalyticAccount createAnalyticAccount(Long id) {
+    AnalyticAccount analyticAccount = new AnalyticAccount();
+    analyticAccount.setId(id);
+    return analyticAccount;
+  }
+
+  private MoveLine createMoveLine(String debit) {
+    MoveLine moveLine = new MoveLine();
+    moveLine.setAccount(account);
+    moveLine.setDebit(new BigDecimal(debit));
+    moveLine.setCurrencyAmount(new BigDecimal(debit));
+    return moveLine;
+  }
+
+  private void addAnalyticMoveLine(
+      MoveLine moveLine, AnalyticAccount analyticAccount, String percentage, String amount) {
+    AnalyticMoveLine analyticMoveLine = new AnalyticMoveLine();
+    analyticMoveLine.setAnalyticAccount(analyticAccount);
+    analyticMoveLine.setPercentage(new BigDecimal(percentage));
+    analyticMoveLine.setAmount(new BigDecimal(amount));
+    moveLine.addAnalyticMoveLineListItem(analyticMoveLine);
+  }
+}
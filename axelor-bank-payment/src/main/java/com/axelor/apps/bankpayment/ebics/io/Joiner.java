@@ -23,17 +23,31 @@ import com.axelor.apps.bankpayment.ebics.service.EbicsUserService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.inject.Beans;
-import java.io.ByteArrayOutputStream;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.security.GeneralSecurityException;
+import java.util.zip.InflaterInputStream;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 
 /**
  * A simple mean to join downloaded segments from the bank ebics server.
  *
+ * <p>Segments are appended to a temporary file, which is decrypted and uncompressed as a stream
+ * once all of them are downloaded. The temporary file is deleted by {@link #close()}.
+ *
  * @author Hachani
  */
-public class Joiner {
+public class Joiner implements Closeable {
 
   /**
    * Constructs a new <code>Joiner</code> object.
@@ -42,13 +56,12 @@ public class Joiner {
    */
   public Joiner(EbicsUser user) {
     this.user = user;
-    buffer = new ByteArrayOutputStream();
   }
 
   public void append(byte[] data) throws AxelorException {
     try {
+      openBuffer();
       buffer.write(data);
-      buffer.flush();
     } catch (IOException e) {
       throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
     }
@@ -63,12 +76,20 @@ public class Joiner {
    */
   public void writeTo(OutputStream output, byte[] transactionKey) throws AxelorException {
     try {
-      byte[] decrypted;
+      Cipher cipher =
+          EbicsUtils.createCipher(
+              Cipher.DECRYPT_MODE,
+              Beans.get(EbicsUserService.class).decryptTransactionKey(user, transactionKey));
 
+      openBuffer();
       buffer.close();
-      decrypted =
-          Beans.get(EbicsUserService.class).decrypt(user, buffer.toByteArray(), transactionKey);
-      output.write(EbicsUtils.unzip(decrypted));
+
+      try (InputStream input =
+          new InflaterInputStream(
+              new CipherInputStream(
+                  new BufferedInputStream(new FileInputStream(bufferFile)), cipher))) {
+        ByteStreams.copy(input, output);
+      }
       output.close();
     } catch (GeneralSecurityException e) {
       throw new AxelorException(
@@ -78,10 +99,31 @@ public class Joiner {
     }
   }
 
+  private void openBuffer() throws IOException {
+    if (buffer == null) {
+      bufferFile = File.createTempFile("ebics", ".segments");
+      buffer = new BufferedOutputStream(new FileOutputStream(bufferFile));
+    }
+  }
+
+  /** Deletes the temporary file holding the downloaded segments. */
+  @Override
+  public void close() throws IOException {
+    if (buffer != null) {
+      buffer.close();
+      buffer = null;
+    }
+    if (bufferFile != null) {
+      Files.deleteIfExists(bufferFile.toPath());
+      bufferFile = null;
+    }
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
   private EbicsUser user;
-  private ByteArrayOutputStream buffer;
+  private File bufferFile;
+  private OutputStream buffer;
 }
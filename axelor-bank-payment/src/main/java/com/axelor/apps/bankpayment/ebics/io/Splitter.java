@@ -21,14 +21,35 @@ import com.axelor.apps.bankpayment.ebics.client.EbicsUtils;
 import com.axelor.apps.bankpayment.ebics.interfaces.ContentFactory;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
  * A mean to split a given input file to 1MB portions. this i useful to handle big file uploading.
  *
+ * <p>The compressed and encrypted content is written to a temporary file, and each segment is only
+ * read from it when it is sent. The temporary file is deleted by {@link #close()}.
+ *
  * @author Hachani
  */
-public class Splitter {
+public class Splitter implements Closeable {
+
+  /**
+   * Maximum size of a segment before base64 encoding, so that the encoded segment does not exceed 1
+   * MB = 1,048,576 bytes. Being a multiple of 3, segments are cut in a base64-conformant manner.
+   */
+  public static final int MAX_SEGMENT_SIZE = 1048576 / 4 * 3;
 
   /**
    * Constructs a new <code>FileSplitter</code> with a given file.
@@ -65,15 +86,31 @@ public class Splitter {
    */
   public final void readInput(boolean isCompressionEnabled, SecretKeySpec keySpec)
       throws AxelorException {
+    Cipher cipher = EbicsUtils.createCipher(Cipher.ENCRYPT_MODE, keySpec);
+    Deflater compressor = new Deflater(Deflater.BEST_COMPRESSION);
+
     try {
+      close();
+      contentFile = File.createTempFile("ebics", ".segments");
+
+      OutputStream output =
+          new CipherOutputStream(
+              new BufferedOutputStream(new FileOutputStream(contentFile)), cipher);
       if (isCompressionEnabled) {
-        input = EbicsUtils.zip(input);
+        output = new DeflaterOutputStream(output, compressor);
       }
-      content = EbicsUtils.encrypt(input, keySpec);
-      segmentation();
-    } catch (Exception e) {
+      try {
+        output.write(input);
+      } finally {
+        output.close();
+      }
+
+      segmentation(contentFile.length());
+    } catch (IOException e) {
       throw new AxelorException(
           e.getCause(), TraceBackRepository.CATEGORY_CONFIGURATION_ERROR, e.getMessage());
+    } finally {
+      compressor.end();
     }
   }
 
@@ -86,15 +123,14 @@ public class Splitter {
    * space in compressed, encrypted and base64-coded form MUST be segmented before transmission,
    * irrespective of the transfer direction (upload/download).
    */
-  private void segmentation() {
+  private void segmentation(long length) {
 
-    numSegments = content.length / 1048576; // (1024 * 1024)
+    contentLength = length;
+    numSegments = (int) ((contentLength + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
 
-    if (content.length % 1048576 != 0) {
-      numSegments++;
+    if (numSegments == 0) {
+      numSegments = 1;
     }
-
-    segmentSize = content.length / numSegments;
   }
 
   /**
@@ -103,18 +139,17 @@ public class Splitter {
    * @param segmentNumber the segment number
    * @return
    */
-  public ContentFactory getContent(int segmentNumber) {
-    byte[] segment;
-    int offset;
-
-    offset = segmentSize * (segmentNumber - 1);
-    if (content.length < segmentSize + offset) {
-      segment = new byte[content.length - offset];
-    } else {
-      segment = new byte[segmentSize];
+  public ContentFactory getContent(int segmentNumber) throws AxelorException {
+    long offset = (long) MAX_SEGMENT_SIZE * (segmentNumber - 1);
+    byte[] segment = new byte[(int) Math.min(MAX_SEGMENT_SIZE, contentLength - offset)];
+
+    try (RandomAccessFile file = new RandomAccessFile(contentFile, "r")) {
+      file.seek(offset);
+      file.readFully(segment);
+    } catch (IOException e) {
+      throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
     }
 
-    System.arraycopy(content, offset, segment, 0, segment.length);
     return new ByteArrayContentFactory(segment);
   }
 
@@ -123,8 +158,12 @@ public class Splitter {
    *
    * @return the input content.
    */
-  public byte[] getContent() {
-    return content;
+  public byte[] getContent() throws AxelorException {
+    try {
+      return Files.readAllBytes(contentFile.toPath());
+    } catch (IOException e) {
+      throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
+    }
   }
 
   /**
@@ -136,12 +175,21 @@ public class Splitter {
     return numSegments;
   }
 
+  /** Deletes the temporary file holding the content. */
+  @Override
+  public void close() throws IOException {
+    if (contentFile != null) {
+      Files.deleteIfExists(contentFile.toPath());
+      contentFile = null;
+    }
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
   private byte[] input;
-  private byte[] content;
-  private int segmentSize;
+  private File contentFile;
+  private long contentLength;
   private int numSegments;
 }
@@ -187,6 +187,19 @@ public class EbicsUserService {
    */
   public byte[] decrypt(EbicsUser user, byte[] encryptedData, byte[] transactionKey)
       throws AxelorException, GeneralSecurityException, IOException {
+    return decryptData(encryptedData, decryptTransactionKey(user, transactionKey));
+  }
+
+  /**
+   * Decrypts the transaction key with the private key of the user, to decrypt the order data as a
+   * stream.
+   *
+   * @param user the user the order data is sent to
+   * @param transactionKey the transaction key sent by the bank
+   * @return the secret key of the order data
+   */
+  public SecretKeySpec decryptTransactionKey(EbicsUser user, byte[] transactionKey)
+      throws AxelorException, GeneralSecurityException, IOException {
     Cipher cipher;
     int blockSize;
     ByteArrayOutputStream outputStream;
@@ -200,7 +213,7 @@ public class EbicsUserService {
       outputStream.write(cipher.doFinal(transactionKey, j * blockSize, blockSize));
     }
 
-    return decryptData(encryptedData, outputStream.toByteArray());
+    return new SecretKeySpec(outputStream.toByteArray(), "EAS");
   }
 
   /**
@@ -226,8 +239,8 @@ public class EbicsUserService {
    * @throws GeneralSecurityException
    * @throws IOException
    */
-  private byte[] decryptData(byte[] input, byte[] key) throws AxelorException {
-    return EbicsUtils.decrypt(input, new SecretKeySpec(key, "EAS"));
+  private byte[] decryptData(byte[] input, SecretKeySpec key) throws AxelorException {
+    return EbicsUtils.decrypt(input, key);
   }
 
   @Transactional
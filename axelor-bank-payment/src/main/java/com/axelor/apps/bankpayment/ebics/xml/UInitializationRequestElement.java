@@ -47,6 +47,7 @@ import com.axelor.apps.bankpayment.ebics.interfaces.ContentFactory;
 import com.axelor.apps.bankpayment.ebics.io.Splitter;
 import com.axelor.exception.AxelorException;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -269,7 +270,7 @@ public class UInitializationRequestElement extends InitializationRequestElement
    * @param segment the segment number
    * @return the content of the given segment
    */
-  public ContentFactory getContent(int segment) {
+  public ContentFactory getContent(int segment) throws AxelorException {
     return splitter.getContent(segment);
   }
 
@@ -282,6 +283,15 @@ public class UInitializationRequestElement extends InitializationRequestElement
     return splitter.getSegmentNumber();
   }
 
+  /**
+   * Deletes the temporary content of the segments, once they are sent.
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    splitter.close();
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
@@ -203,6 +203,14 @@ public interface IExceptionMessage {
       "Missing bank statement file format" /*)*/;
   static final String BANK_STATEMENT_EBICS_PARTNER = /*$$(*/
       "Error with EBICS partner %s: %s" /*)*/;
+  static final String BANK_STATEMENT_COMPLEMENT_WITHOUT_MOVEMENT = /*$$(*/
+      "Complementary record without a movement record before it" /*)*/;
+
+  /*
+   * Bank reconciliation
+   */
+  static final String BANK_RECONCILIATION_AUTO_MATCH_RESULT = /*$$(*/
+      "%s of %s lines matched with a move line (%s lines per second)" /*)*/;
 
   /*
    * Batch direct debit
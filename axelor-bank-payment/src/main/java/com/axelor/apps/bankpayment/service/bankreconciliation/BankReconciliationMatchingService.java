@@ -0,0 +1,371 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankreconciliation;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.repo.MoveLineRepository;
+import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.bankpayment.db.BankPaymentConfig;
+import com.axelor.apps.bankpayment.db.BankReconciliation;
+import com.axelor.apps.bankpayment.db.BankReconciliationLine;
+import com.axelor.apps.bankpayment.db.repo.BankReconciliationRepository;
+import com.axelor.apps.bankpayment.service.config.BankPaymentConfigService;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.google.common.base.Strings;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Proposes a move line for the lines of a bank reconciliation which are not reconciled yet.
+ *
+ * <p>The unreconciled move lines of the cash account are loaded once and indexed by side and
+ * remaining amount. A move line is a candidate for a line when its remaining amount is the amount
+ * of the line and its date is within the date tolerance of the bank payment configuration. The
+ * candidates sharing the most reference tokens, then the closest in time, are kept first. A line is
+ * left to the user when its best candidates are tied.
+ */
+public class BankReconciliationMatchingService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{Alnum}]+");
+
+  /** Shorter tokens are too common to tell move lines apart. */
+  protected static final int MIN_TOKEN_LENGTH = 4;
+
+  protected BankReconciliationRepository bankReconciliationRepository;
+  protected MoveLineRepository moveLineRepository;
+  protected BankPaymentConfigService bankPaymentConfigService;
+
+  @Inject
+  public BankReconciliationMatchingService(
+      BankReconciliationRepository bankReconciliationRepository,
+      MoveLineRepository moveLineRepository,
+      BankPaymentConfigService bankPaymentConfigService) {
+
+    this.bankReconciliationRepository = bankReconciliationRepository;
+    this.moveLineRepository = moveLineRepository;
+    this.bankPaymentConfigService = bankPaymentConfigService;
+  }
+
+  /** An unreconciled move line, reduced to what is needed to match it. */
+  protected static class Candidate {
+
+    private final Long id;
+    private final LocalDate date;
+    private final Set<String> tokens;
+
+    protected Candidate(Long id, LocalDate date, Set<String> tokens) {
+      this.id = id;
+      this.date = date;
+      this.tokens = tokens;
+    }
+  }
+
+  protected static class Match {
+
+    private final BankReconciliationLine line;
+    private final Candidate candidate;
+    private final long score;
+
+    protected Match(BankReconciliationLine line, Candidate candidate, long score) {
+      this.line = line;
+      this.candidate = candidate;
+      this.score = score;
+    }
+  }
+
+  public static class AutoMatchResult {
+
+    private final int lineCount;
+    private final int matchCount;
+    private final long duration;
+
+    protected AutoMatchResult(int lineCount, int matchCount, long duration) {
+      this.lineCount = lineCount;
+      this.matchCount = matchCount;
+      this.duration = duration;
+    }
+
+    /** Number of lines which could be matched. */
+    public int getLineCount() {
+      return lineCount;
+    }
+
+    /** Number of lines a move line has been set on. */
+    public int getMatchCount() {
+      return matchCount;
+    }
+
+    /** Duration of the matching, in milliseconds. */
+    public long getDuration() {
+      return duration;
+    }
+
+    public long getLinesPerSecond() {
+      return lineCount * 1000L / Math.max(duration, 1);
+    }
+  }
+
+  /**
+   * Set a move line on the lines of the bank reconciliation which are not posted and have neither a
+   * move line nor an account. Lines are then reconciled by the validation of the bank
+   * reconciliation.
+   *
+   * @param bankReconciliation
+   * @return the number of lines and of matched lines
+   * @throws AxelorException if the company has no bank payment configuration
+   */
+  @Transactional(rollbackOn = {AxelorException.class, RuntimeException.class})
+  public AutoMatchResult autoMatch(BankReconciliation bankReconciliation) throws AxelorException {
+
+    long start = System.currentTimeMillis();
+
+    List<BankReconciliationLine> lineList = new ArrayList<>();
+    Set<Long> usedMoveLineIds = new HashSet<>();
+    LocalDate fromDate = null;
+    LocalDate toDate = null;
+
+    for (BankReconciliationLine line : bankReconciliation.getBankReconciliationLineList()) {
+      if (line.getMoveLine() != null) {
+        usedMoveLineIds.add(line.getMoveLine().getId());
+      } else if (isToMatch(line)) {
+        lineList.add(line);
+        LocalDate date = line.getEffectDate();
+        fromDate = fromDate == null || date.isBefore(fromDate) ? date : fromDate;
+        toDate = toDate == null || date.isAfter(toDate) ? date : toDate;
+      }
+    }
+
+    if (lineList.isEmpty()
+        || bankReconciliation.getCashAccount() == null
+        || bankReconciliation.getJournal() == null) {
+      return new AutoMatchResult(lineList.size(), 0, System.currentTimeMillis() - start);
+    }
+
+    BankPaymentConfig bankPaymentConfig =
+        bankPaymentConfigService.getBankPaymentConfig(bankReconciliation.getCompany());
+    int dateTolerance = bankPaymentConfig.getAutoMatchDateTolerance();
+    boolean requireReference = bankPaymentConfig.getAutoMatchRequireReference();
+
+    // remaining amount -> candidates, for move lines to match with bank debits and credits
+    Map<BigDecimal, List<Candidate>> creditIndex = new HashMap<>();
+    Map<BigDecimal, List<Candidate>> debitIndex = new HashMap<>();
+    loadCandidates(
+        bankReconciliation,
+        fromDate.minusDays(dateTolerance),
+        toDate.plusDays(dateTolerance),
+        usedMoveLineIds,
+        creditIndex,
+        debitIndex);
+
+    List<Match> matchList =
+        findMatches(lineList, creditIndex, debitIndex, dateTolerance, requireReference);
+
+    int matchCount = applyMatches(matchList);
+    bankReconciliationRepository.save(bankReconciliation);
+
+    AutoMatchResult result =
+        new AutoMatchResult(lineList.size(), matchCount, System.currentTimeMillis() - start);
+    log.debug(
+        "Bank reconciliation {}: {} of {} lines matched in {} ms",
+        bankReconciliation.getName(),
+        result.getMatchCount(),
+        result.getLineCount(),
+        result.getDuration());
+    return result;
+  }
+
+  protected boolean isToMatch(BankReconciliationLine line) {
+    return !line.getIsPosted()
+        && line.getAccount() == null
+        && line.getEffectDate() != null
+        && line.getDebit().signum() + line.getCredit().signum() == 1;
+  }
+
+  protected void loadCandidates(
+      BankReconciliation bankReconciliation,
+      LocalDate fromDate,
+      LocalDate toDate,
+      Set<Long> excludedMoveLineIds,
+      Map<BigDecimal, List<Candidate>> creditIndex,
+      Map<BigDecimal, List<Candidate>> debitIndex) {
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, self.date, self.debit, self.credit, self.bankReconciledAmount, "
+                    + "self.name, self.origin, self.description "
+                    + "FROM MoveLine self "
+                    + "WHERE self.account = :cashAccount "
+                    + "AND self.move.journal = :journal "
+                    + "AND self.move.company = :company "
+                    + "AND self.move.statusSelect != :canceledStatus "
+                    + "AND self.date BETWEEN :fromDate AND :toDate "
+                    + "AND ((self.debit > 0 AND self.bankReconciledAmount < self.debit) "
+                    + "OR (self.credit > 0 AND self.bankReconciledAmount < self.credit))",
+                Object[].class)
+            .setParameter("cashAccount", bankReconciliation.getCashAccount())
+            .setParameter("journal", bankReconciliation.getJournal())
+            .setParameter("company", bankReconciliation.getCompany())
+            .setParameter("canceledStatus", MoveRepository.STATUS_CANCELED)
+            .setParameter("fromDate", fromDate)
+            .setParameter("toDate", toDate)
+            .getResultList();
+
+    for (Object[] result : resultList) {
+      Long id = (Long) result[0];
+      if (excludedMoveLineIds.contains(id)) {
+        continue;
+      }
+
+      BigDecimal debit = (BigDecimal) result[2];
+      BigDecimal credit = (BigDecimal) result[3];
+      BigDecimal bankReconciledAmount = (BigDecimal) result[4];
+      boolean isDebit = debit.signum() > 0;
+      BigDecimal remainingAmount = (isDebit ? debit : credit).subtract(bankReconciledAmount);
+
+      Candidate candidate =
+          new Candidate(
+              id,
+              (LocalDate) result[1],
+              tokenize((String) result[5], (String) result[6], (String) result[7]));
+      (isDebit ? debitIndex : creditIndex)
+          .computeIfAbsent(remainingAmount.stripTrailingZeros(), amount -> new ArrayList<>())
+          .add(candidate);
+    }
+  }
+
+  /**
+   * Score the candidates of each line: a candidate must have the amount of the line and a date
+   * within the tolerance. Each common reference token counts more than any number of days apart.
+   *
+   * @param lineList
+   * @param creditIndex candidates for the bank debits, by remaining amount
+   * @param debitIndex candidates for the bank credits, by remaining amount
+   * @param dateTolerance maximum number of days between a line and a move line
+   * @param requireReference whether a candidate must share a reference token with the line
+   * @return
+   */
+  protected List<Match> findMatches(
+      List<BankReconciliationLine> lineList,
+      Map<BigDecimal, List<Candidate>> creditIndex,
+      Map<BigDecimal, List<Candidate>> debitIndex,
+      int dateTolerance,
+      boolean requireReference) {
+
+    List<Match> matchList = new ArrayList<>();
+    for (BankReconciliationLine line : lineList) {
+      boolean isDebit = line.getDebit().signum() > 0;
+      BigDecimal amount = isDebit ? line.getDebit() : line.getCredit();
+      List<Candidate> candidateList =
+          (isDebit ? creditIndex : debitIndex)
+              .getOrDefault(amount.stripTrailingZeros(), Collections.emptyList());
+      Set<String> tokens = tokenize(line.getReference(), line.getName());
+
+      for (Candidate candidate : candidateList) {
+        long days = Math.abs(ChronoUnit.DAYS.between(line.getEffectDate(), candidate.date));
+        if (days > dateTolerance) {
+          continue;
+        }
+        long commonTokens = tokens.stream().filter(candidate.tokens::contains).count();
+        if (requireReference && commonTokens == 0) {
+          continue;
+        }
+        matchList.add(new Match(line, candidate, commonTokens * 1000 - days));
+      }
+    }
+    return matchList;
+  }
+
+  /**
+   * Set the best move line on each line, unless another move line is as good for the line. A move
+   * line is set on one line at most.
+   *
+   * @return the number of matched lines
+   */
+  protected int applyMatches(List<Match> matchList) {
+
+    matchList.sort(Comparator.comparingLong((Match match) -> match.score).reversed());
+
+    Set<BankReconciliationLine> doneLines = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<Long> usedMoveLineIds = new HashSet<>();
+    int matchCount = 0;
+
+    for (int i = 0; i < matchList.size(); i++) {
+      Match match = matchList.get(i);
+      if (doneLines.contains(match.line) || usedMoveLineIds.contains(match.candidate.id)) {
+        continue;
+      }
+
+      boolean tied = false;
+      for (int j = i + 1; j < matchList.size() && matchList.get(j).score == match.score; j++) {
+        Match other = matchList.get(j);
+        if (other.line == match.line && !usedMoveLineIds.contains(other.candidate.id)) {
+          tied = true;
+          break;
+        }
+      }
+
+      doneLines.add(match.line);
+      if (tied) {
+        continue;
+      }
+
+      MoveLine moveLine = moveLineRepository.find(match.candidate.id);
+      match.line.setMoveLine(moveLine);
+      usedMoveLineIds.add(match.candidate.id);
+      matchCount++;
+    }
+
+    return matchCount;
+  }
+
+  protected Set<String> tokenize(String... values) {
+
+    Set<String> tokens = new HashSet<>();
+    for (String value : values) {
+      if (Strings.isNullOrEmpty(value)) {
+        continue;
+      }
+      for (String token : TOKEN_SEPARATOR.split(value.toUpperCase())) {
+        if (token.length() >= MIN_TOKEN_LENGTH) {
+          tokens.add(token);
+        }
+      }
+    }
+    return tokens;
+  }
+}
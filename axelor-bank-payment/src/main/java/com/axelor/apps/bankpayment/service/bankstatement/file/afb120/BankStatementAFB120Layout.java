@@ -0,0 +1,260 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankstatement.file.afb120;
+
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.FORMAT_ALPHA;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.FORMAT_ALPHA_NUMERIC;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.FORMAT_NUMERIC;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.STATUS_DEPENDENT;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.STATUS_MANDATORY;
+import static com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone.STATUS_OPTIONAL;
+
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbRecordLayout;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone;
+
+/** Zones of the records of an AFB120 bank statement (relevé de compte 120 caractères). */
+public final class BankStatementAFB120Layout {
+
+  private BankStatementAFB120Layout() {}
+
+  // Code enregistrement
+  public static final CfonbZone RECORD_CODE =
+      new CfonbZone("Record code", STATUS_MANDATORY, FORMAT_NUMERIC, 1, 2);
+
+  public static final CfonbRecordLayout RECORD_CODE_LAYOUT =
+      new CfonbRecordLayout("Record code", RECORD_CODE);
+
+  /** Enregistrement "ancien solde" (code 01). */
+  public static final class PreviousBalance {
+
+    private PreviousBalance() {}
+
+    // Zone 1-B : Code banque
+    public static final CfonbZone BANK_CODE =
+        new CfonbZone("1-B : bank code", STATUS_MANDATORY, FORMAT_NUMERIC, 3, 5);
+    // Zone 1-D : Code guichet
+    public static final CfonbZone SORT_CODE =
+        new CfonbZone("1-D : sort code", STATUS_MANDATORY, FORMAT_NUMERIC, 12, 5);
+    // Zone 1-E : Code devise ISO
+    public static final CfonbZone CURRENCY_CODE =
+        new CfonbZone("1-E : currency code", STATUS_MANDATORY, FORMAT_ALPHA, 17, 3);
+    // Zone 1-F : Nombre de décimales du montant de l'ancien solde
+    public static final CfonbZone DECIMAL_NUMBER =
+        new CfonbZone("1-F : decimal number", STATUS_MANDATORY, FORMAT_NUMERIC, 20, 1);
+    // Zone 1-H : Numéro de compte
+    public static final CfonbZone ACCOUNT_NUMBER =
+        new CfonbZone("1-H : account number", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 22, 11);
+    // Zone 1-J : Date de l'ancien solde (JJMMAA)
+    public static final CfonbZone DATE =
+        new CfonbZone("1-J : date", STATUS_MANDATORY, FORMAT_NUMERIC, 35, 6);
+    // Zone 1-L : Montant de l'ancien solde
+    public static final CfonbZone AMOUNT =
+        new CfonbZone("1-L : amount", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 91, 14);
+
+    public static final CfonbRecordLayout LAYOUT =
+        new CfonbRecordLayout(
+            "Previous balance",
+            BANK_CODE,
+            SORT_CODE,
+            CURRENCY_CODE,
+            DECIMAL_NUMBER,
+            ACCOUNT_NUMBER,
+            DATE,
+            AMOUNT);
+  }
+
+  /** Enregistrement "mouvement" (code 04). */
+  public static final class Movement {
+
+    private Movement() {}
+
+    // Zone 2-B : Code banque
+    public static final CfonbZone BANK_CODE =
+        new CfonbZone("2-B : bank code", STATUS_MANDATORY, FORMAT_NUMERIC, 3, 5);
+    // Zone 2-D : Code guichet
+    public static final CfonbZone SORT_CODE =
+        new CfonbZone("2-D : sort code", STATUS_MANDATORY, FORMAT_NUMERIC, 12, 5);
+    // Zone 2-E : Code devise ISO
+    public static final CfonbZone CURRENCY_CODE =
+        new CfonbZone("2-E : currency code", STATUS_MANDATORY, FORMAT_ALPHA, 17, 3);
+    // Zone 2-F : Nombre de décimales du montant du mouvement
+    public static final CfonbZone DECIMAL_NUMBER =
+        new CfonbZone("2-F : decimal number", STATUS_MANDATORY, FORMAT_NUMERIC, 20, 1);
+    // Zone 2-H : Numéro de compte
+    public static final CfonbZone ACCOUNT_NUMBER =
+        new CfonbZone("2-H : account number", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 22, 11);
+    // Zone 2-I : Code opération interbancaire
+    public static final CfonbZone INTERBANK_OPERATION_CODE =
+        new CfonbZone(
+            "2-I : interbank operation code", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 33, 2);
+    // Zone 2-J : Date de comptabilisation de l'opération (JJMMAA)
+    public static final CfonbZone OPERATION_DATE =
+        new CfonbZone("2-J : operation date", STATUS_MANDATORY, FORMAT_NUMERIC, 35, 6);
+    // Zone 2-K : Code motif de rejet
+    public static final CfonbZone INTERBANK_REJECT_CODE =
+        new CfonbZone("2-K : interbank reject code", STATUS_DEPENDENT, FORMAT_NUMERIC, 41, 2);
+    // Zone 2-L : Date de valeur (JJMMAA)
+    public static final CfonbZone VALUE_DATE =
+        new CfonbZone("2-L : value date", STATUS_MANDATORY, FORMAT_NUMERIC, 43, 6);
+    // Zone 2-M : Libellé
+    public static final CfonbZone LABEL =
+        new CfonbZone("2-M : label", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 49, 31);
+    // Zone 2-O : Numéro d'écriture
+    public static final CfonbZone MOVE_NUMBER =
+        new CfonbZone("2-O : move number", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 82, 7);
+    // Zone 2-P : Indice d'exonération de commission de mouvement de compte
+    public static final CfonbZone COMMISSION_EXEMPTION_INDEX =
+        new CfonbZone(
+            "2-P : turnover commission exemption index",
+            STATUS_OPTIONAL,
+            FORMAT_ALPHA_NUMERIC,
+            89,
+            1);
+    // Zone 2-Q : Indice d'indisponibilité
+    public static final CfonbZone UNAVAILABILITY_INDEX =
+        new CfonbZone("2-Q : unavailability index", STATUS_OPTIONAL, FORMAT_ALPHA_NUMERIC, 90, 1);
+    // Zone 2-R : Montant du mouvement
+    public static final CfonbZone AMOUNT =
+        new CfonbZone("2-R : amount", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 91, 14);
+    // Zone 2-S : Zone référence
+    public static final CfonbZone REFERENCE =
+        new CfonbZone("2-S : reference zone", STATUS_OPTIONAL, FORMAT_ALPHA_NUMERIC, 105, 16);
+
+    public static final CfonbRecordLayout LAYOUT =
+        new CfonbRecordLayout(
+            "Movement",
+            BANK_CODE,
+            SORT_CODE,
+            CURRENCY_CODE,
+            DECIMAL_NUMBER,
+            ACCOUNT_NUMBER,
+            INTERBANK_OPERATION_CODE,
+            OPERATION_DATE,
+            INTERBANK_REJECT_CODE,
+            VALUE_DATE,
+            LABEL,
+            MOVE_NUMBER,
+            COMMISSION_EXEMPTION_INDEX,
+            UNAVAILABILITY_INDEX,
+            AMOUNT,
+            REFERENCE);
+  }
+
+  /** Enregistrement "complément d'information" (code 05). */
+  public static final class ComplementMovement {
+
+    private ComplementMovement() {}
+
+    // Zone 2b-B : Code banque
+    public static final CfonbZone BANK_CODE =
+        new CfonbZone("2b-B : bank code", STATUS_MANDATORY, FORMAT_NUMERIC, 3, 5);
+    // Zone 2b-D : Code guichet
+    public static final CfonbZone SORT_CODE =
+        new CfonbZone("2b-D : sort code", STATUS_MANDATORY, FORMAT_NUMERIC, 12, 5);
+    // Zone 2b-E : Code devise ISO
+    public static final CfonbZone CURRENCY_CODE =
+        new CfonbZone("2b-E : currency code", STATUS_MANDATORY, FORMAT_ALPHA, 17, 3);
+    // Zone 2b-F : Nombre de décimales du montant du mouvement
+    public static final CfonbZone DECIMAL_NUMBER =
+        new CfonbZone("2b-F : decimal number", STATUS_MANDATORY, FORMAT_NUMERIC, 20, 1);
+    // Zone 2b-H : Numéro de compte
+    public static final CfonbZone ACCOUNT_NUMBER =
+        new CfonbZone("2b-H : account number", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 22, 11);
+    // Zone 2b-I : Code opération interbancaire
+    public static final CfonbZone INTERBANK_OPERATION_CODE =
+        new CfonbZone(
+            "2b-I : interbank operation code", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 33, 2);
+    // Zone 2b-J : Date de comptabilisation de l'opération (JJMMAA)
+    public static final CfonbZone OPERATION_DATE =
+        new CfonbZone("2b-J : operation date", STATUS_MANDATORY, FORMAT_NUMERIC, 35, 6);
+    // Zone 2b-L : Qualifiant de la zone "Informations complémentaires"
+    public static final CfonbZone ADDITIONAL_INFORMATION_TYPE =
+        new CfonbZone(
+            "2b-L : qualifying of additional information zone",
+            STATUS_MANDATORY,
+            FORMAT_ALPHA_NUMERIC,
+            46,
+            3);
+    // Zone 2b-M : Informations complémentaires
+    public static final CfonbZone ADDITIONAL_INFORMATION =
+        new CfonbZone(
+            "2b-M : additional informations", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 49, 70);
+    // 2b-M-1 : Code devise ISO (norme ISO4217 (NF K 10 020)) du montant d'origine
+    public static final CfonbZone ORIGINAL_CURRENCY_CODE =
+        new CfonbZone("2b-M-1 : currency code", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 49, 3);
+    // 2b-M-2 : nombre de décimales du montant d'origine
+    public static final CfonbZone ORIGINAL_DECIMAL_NUMBER =
+        new CfonbZone(
+            "2b-M-2 : decimal digit number", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 52, 1);
+    // 2b-M-3 : Montant d'origine (non signé)
+    public static final CfonbZone ORIGINAL_AMOUNT =
+        new CfonbZone("2b-M-3 : original amount", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 53, 14);
+
+    // the zone 2b-M depends on the qualifier, it is checked when read
+    public static final CfonbRecordLayout LAYOUT =
+        new CfonbRecordLayout(
+            "Complement movement",
+            BANK_CODE,
+            SORT_CODE,
+            CURRENCY_CODE,
+            DECIMAL_NUMBER,
+            ACCOUNT_NUMBER,
+            INTERBANK_OPERATION_CODE,
+            OPERATION_DATE,
+            ADDITIONAL_INFORMATION_TYPE);
+  }
+
+  /** Enregistrement "nouveau solde" (code 07). */
+  public static final class NewBalance {
+
+    private NewBalance() {}
+
+    // Zone 3-B : Code banque
+    public static final CfonbZone BANK_CODE =
+        new CfonbZone("3-B : bank code", STATUS_MANDATORY, FORMAT_NUMERIC, 3, 5);
+    // Zone 3-D : Code guichet
+    public static final CfonbZone SORT_CODE =
+        new CfonbZone("3-D : sort code", STATUS_MANDATORY, FORMAT_NUMERIC, 12, 5);
+    // Zone 3-E : Code devise ISO
+    public static final CfonbZone CURRENCY_CODE =
+        new CfonbZone("3-E : currency code", STATUS_MANDATORY, FORMAT_ALPHA, 17, 3);
+    // Zone 3-F : Nombre de décimales du montant du nouveau solde
+    public static final CfonbZone DECIMAL_NUMBER =
+        new CfonbZone("3-F : decimal number", STATUS_MANDATORY, FORMAT_NUMERIC, 20, 1);
+    // Zone 3-H : Numéro de compte
+    public static final CfonbZone ACCOUNT_NUMBER =
+        new CfonbZone("3-H : account number", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 22, 11);
+    // Zone 3-J : Date du nouveau solde (JJMMAA)
+    public static final CfonbZone DATE =
+        new CfonbZone("3-J : date", STATUS_MANDATORY, FORMAT_NUMERIC, 35, 6);
+    // Zone 3-L : Montant du nouveau solde
+    public static final CfonbZone AMOUNT =
+        new CfonbZone("3-L : amount", STATUS_MANDATORY, FORMAT_ALPHA_NUMERIC, 91, 14);
+
+    public static final CfonbRecordLayout LAYOUT =
+        new CfonbRecordLayout(
+            "New balance",
+            BANK_CODE,
+            SORT_CODE,
+            CURRENCY_CODE,
+            DECIMAL_NUMBER,
+            ACCOUNT_NUMBER,
+            DATE,
+            AMOUNT);
+  }
+}
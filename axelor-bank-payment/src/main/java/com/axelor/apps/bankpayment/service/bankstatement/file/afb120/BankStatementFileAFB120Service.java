@@ -19,30 +19,41 @@ package com.axelor.apps.bankpayment.service.bankstatement.file.afb120;
 
 import com.axelor.apps.account.db.InterbankCodeLine;
 import com.axelor.apps.account.db.repo.InterbankCodeLineRepository;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbRecordReader;
 import com.axelor.apps.bankpayment.db.BankStatementLineAFB120;
 import com.axelor.apps.bankpayment.db.repo.BankStatementLineAFB120Repository;
+import com.axelor.apps.bankpayment.exception.IExceptionMessage;
 import com.axelor.apps.bankpayment.service.bankstatement.BankStatementService;
 import com.axelor.apps.bankpayment.service.bankstatement.file.BankStatementFileService;
+import com.axelor.apps.bankpayment.service.bankstatement.file.afb120.BankStatementAFB120Layout.ComplementMovement;
+import com.axelor.apps.bankpayment.service.bankstatement.file.afb120.BankStatementAFB120Layout.Movement;
+import com.axelor.apps.bankpayment.service.bankstatement.file.afb120.BankStatementAFB120Layout.NewBalance;
+import com.axelor.apps.bankpayment.service.bankstatement.file.afb120.BankStatementAFB120Layout.PreviousBalance;
 import com.axelor.apps.bankpayment.service.cfonb.CfonbToolService;
 import com.axelor.apps.base.db.BankDetails;
 import com.axelor.apps.base.db.Currency;
 import com.axelor.apps.base.db.repo.BankDetailsRepository;
 import com.axelor.apps.base.db.repo.CurrencyRepository;
-import com.axelor.apps.tool.file.FileTool;
 import com.axelor.db.JPA;
+import com.axelor.db.Model;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
+import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.beust.jcommander.internal.Lists;
 import com.beust.jcommander.internal.Maps;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
@@ -66,246 +77,279 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("ddMMyy");
 
+  /** Number of lines created in each transaction. */
+  protected static final int LINE_BATCH_SIZE = 100;
+
+  // ids of the currencies and bank details found in the file, null if there is none
+  protected final Map<String, Long> currencyIdMap = new HashMap<>();
+  protected final Map<String, Long> bankDetailsIdMap = new HashMap<>();
+
+  protected final CfonbRecordReader recordReader = new CfonbRecordReader();
+
   @Inject
   public BankStatementFileAFB120Service(BankStatementService bankStatementService) {
 
+    this(
+        bankStatementService,
+        Beans.get(CfonbToolService.class),
+        Beans.get(CurrencyRepository.class),
+        Beans.get(BankDetailsRepository.class),
+        Beans.get(InterbankCodeLineRepository.class),
+        Beans.get(BankStatementLineAFB120Service.class),
+        Beans.get(BankStatementLineAFB120Repository.class));
+  }
+
+  protected BankStatementFileAFB120Service(
+      BankStatementService bankStatementService,
+      CfonbToolService cfonbToolService,
+      CurrencyRepository currencyRepository,
+      BankDetailsRepository bankDetailsRepository,
+      InterbankCodeLineRepository interbankCodeLineRepository,
+      BankStatementLineAFB120Service bankStatementLineAFB120Service,
+      BankStatementLineAFB120Repository bankStatementLineAFB120Repository) {
+
     super(bankStatementService);
 
-    this.cfonbToolService = Beans.get(CfonbToolService.class);
-    this.currencyRepository = Beans.get(CurrencyRepository.class);
-    this.bankDetailsRepository = Beans.get(BankDetailsRepository.class);
-    this.interbankCodeLineRepository = Beans.get(InterbankCodeLineRepository.class);
+    this.cfonbToolService = cfonbToolService;
+    this.currencyRepository = currencyRepository;
+    this.bankDetailsRepository = bankDetailsRepository;
+    this.interbankCodeLineRepository = interbankCodeLineRepository;
 
-    this.bankStatementLineAFB120Service = Beans.get(BankStatementLineAFB120Service.class);
-    this.bankStatementLineAFB120Repository = Beans.get(BankStatementLineAFB120Repository.class);
+    this.bankStatementLineAFB120Service = bankStatementLineAFB120Service;
+    this.bankStatementLineAFB120Repository = bankStatementLineAFB120Repository;
   }
 
   @Override
   public void process() throws IOException, AxelorException {
     super.process();
 
-    List<Map<String, Object>> structuredContentFile = readFile();
+    currencyIdMap.clear();
+    bankDetailsIdMap.clear();
+    findBankStatement();
 
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      readLines(reader);
+    }
+
+    JPA.clear();
+  }
+
+  /**
+   * Read the records of the file and create a bank statement line for each balance and movement,
+   * with the additional information of the complement records that follow it. When a record cannot
+   * be read, its complement records are rejected too.
+   */
+  protected void readLines(BufferedReader reader) throws IOException {
+
+    List<Map<String, Object>> structuredContentLineList = Lists.newArrayList();
+    Map<String, Object> pendingContentLine = null;
     int sequence = 0;
-    findBankStatement();
+    int lineNumber = 0;
 
-    for (Map<String, Object> structuredContentLine : structuredContentFile) {
+    String lineContent;
+    while ((lineContent = reader.readLine()) != null) {
+
+      lineNumber++;
+      log.debug("Read line : {}", lineContent);
 
       try {
-        createBankStatementLine(structuredContentLine, sequence++);
-      } catch (Exception e) {
-        TraceBackService.trace(
-            new Exception(String.format("Line %s : %s", sequence, e), e), IException.IMPORT);
-        findBankStatement();
-      } finally {
-        if (sequence % 10 == 0) {
-          JPA.clear();
-          findBankStatement();
+        String operationCode = readOperationCode(lineContent);
+
+        switch (operationCode) {
+          case PREVIOUS_BALANCE_OPERATION_CODE:
+          case MOVEMENT_OPERATION_CODE:
+          case NEW_BALANCE_OPERATION_CODE:
+            if (pendingContentLine != null) {
+              addBankStatementLine(structuredContentLineList, pendingContentLine);
+              pendingContentLine = null;
+            }
+            Map<String, Object> structuredContentLine = readRecord(operationCode, lineContent);
+            structuredContentLine.put("sequence", sequence++);
+            pendingContentLine = structuredContentLine;
+            break;
+          case COMPLEMENT_MOVEMENT_OPERATION_CODE:
+            if (pendingContentLine == null) {
+              throw new AxelorException(
+                  TraceBackRepository.CATEGORY_INCONSISTENCY,
+                  I18n.get(IExceptionMessage.BANK_STATEMENT_COMPLEMENT_WITHOUT_MOVEMENT));
+            }
+            addAdditionalInformation(pendingContentLine, lineContent);
+            break;
+          default:
+            break;
         }
+      } catch (Exception e) {
+        traceLine(lineNumber, e);
       }
     }
 
-    JPA.clear();
+    if (pendingContentLine != null) {
+      structuredContentLineList.add(pendingContentLine);
+    }
+    createBankStatementLines(structuredContentLineList);
   }
 
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  public void createBankStatementLine(Map<String, Object> structuredContentLine, int sequence) {
+  protected String readOperationCode(String lineContent) throws AxelorException {
+    return recordReader
+        .read(lineContent, BankStatementAFB120Layout.RECORD_CODE_LAYOUT)
+        .getString(BankStatementAFB120Layout.RECORD_CODE);
+  }
 
-    String description = (String) structuredContentLine.get("description");
+  protected Map<String, Object> readRecord(String operationCode, String lineContent)
+      throws AxelorException {
+    switch (operationCode) {
+      case PREVIOUS_BALANCE_OPERATION_CODE:
+        return readPreviousBalanceRecord(lineContent);
+      case MOVEMENT_OPERATION_CODE:
+        return readMovementRecord(lineContent);
+      default:
+        return readNewBalanceRecord(lineContent);
+    }
+  }
 
-    if (structuredContentLine.containsKey("additionalInformation")
-        && structuredContentLine.get("additionalInformation") != null) {
-      description += "\n" + (String) structuredContentLine.get("additionalInformation");
+  protected void addAdditionalInformation(Map<String, Object> movementLine, String lineContent)
+      throws AxelorException {
+    String additionalInformation = "";
+    if (movementLine.containsKey("additionalInformation")) {
+      additionalInformation = (String) movementLine.get("additionalInformation") + "\n";
     }
+    additionalInformation +=
+        (String) readAdditionalMovementRecord(lineContent).get("additionalInformation");
+
+    movementLine.put("additionalInformation", additionalInformation);
+  }
 
-    BankDetails bankDetails = null;
-    if (structuredContentLine.containsKey("bankDetails")
-        && structuredContentLine.get("bankDetails") != null) {
-      bankDetails =
-          bankDetailsRepository.find(
-              ((BankDetails) structuredContentLine.get("bankDetails")).getId());
+  /** Add a complete line to the ones to create, creating them once there are enough. */
+  protected void addBankStatementLine(
+      List<Map<String, Object>> structuredContentLineList,
+      Map<String, Object> structuredContentLine) {
+    structuredContentLineList.add(structuredContentLine);
+    if (structuredContentLineList.size() >= LINE_BATCH_SIZE) {
+      createBankStatementLines(structuredContentLineList);
+      structuredContentLineList.clear();
     }
+  }
+
+  /**
+   * Create the given lines in one transaction. If it fails, the lines are created one by one, so
+   * that only the faulty ones are left out.
+   */
+  protected void createBankStatementLines(List<Map<String, Object>> structuredContentLineList) {
 
-    Currency currency = null;
-    if (structuredContentLine.containsKey("currency")
-        && structuredContentLine.get("currency") != null) {
-      currency =
-          currencyRepository.find(((Currency) structuredContentLine.get("currency")).getId());
+    if (structuredContentLineList.isEmpty()) {
+      return;
     }
 
-    InterbankCodeLine operationInterbankCodeLine = null;
-    if (structuredContentLine.containsKey("operationInterbankCodeLine")
-        && structuredContentLine.get("operationInterbankCodeLine") != null) {
-      operationInterbankCodeLine =
-          interbankCodeLineRepository.find(
-              ((InterbankCodeLine) structuredContentLine.get("operationInterbankCodeLine"))
-                  .getId());
+    try {
+      createBankStatementLineList(structuredContentLineList);
+    } catch (Exception batchException) {
+      JPA.clear();
+      findBankStatement();
+      for (Map<String, Object> structuredContentLine : structuredContentLineList) {
+        int sequence = (int) structuredContentLine.get("sequence");
+        try {
+          createBankStatementLine(structuredContentLine, sequence);
+        } catch (Exception e) {
+          TraceBackService.trace(
+              new Exception(String.format("Line %s : %s", sequence + 1, e), e), IException.IMPORT);
+          JPA.clear();
+          findBankStatement();
+        }
+      }
     }
 
-    InterbankCodeLine rejectInterbankCodeLine = null;
-    if (structuredContentLine.containsKey("rejectInterbankCodeLine")
-        && structuredContentLine.get("rejectInterbankCodeLine") != null) {
-      rejectInterbankCodeLine =
-          interbankCodeLineRepository.find(
-              ((InterbankCodeLine) structuredContentLine.get("rejectInterbankCodeLine")).getId());
+    JPA.clear();
+    findBankStatement();
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void createBankStatementLineList(List<Map<String, Object>> structuredContentLineList) {
+    for (Map<String, Object> structuredContentLine : structuredContentLineList) {
+      bankStatementLineAFB120Repository.save(
+          buildBankStatementLine(
+              structuredContentLine, (int) structuredContentLine.get("sequence")));
     }
+  }
 
-    BankStatementLineAFB120 bankStatementLineAFB120 =
-        bankStatementLineAFB120Service.createBankStatementLine(
-            findBankStatement(),
-            sequence,
-            bankDetails,
-            (BigDecimal) structuredContentLine.get("debit"),
-            (BigDecimal) structuredContentLine.get("credit"),
-            currency,
-            description,
-            (LocalDate) structuredContentLine.get("operationDate"),
-            (LocalDate) structuredContentLine.get("valueDate"),
-            operationInterbankCodeLine,
-            rejectInterbankCodeLine,
-            (String) structuredContentLine.get("origin"),
-            (String) structuredContentLine.get("reference"),
-            (int) structuredContentLine.get("lineType"),
-            (String) structuredContentLine.get("unavailabilityIndexSelect"),
-            (String) structuredContentLine.get("commissionExemptionIndexSelect"));
-
-    bankStatementLineAFB120Repository.save(bankStatementLineAFB120);
+  protected void traceLine(int lineNumber, Exception e) {
+    TraceBackService.trace(
+        new Exception(String.format("Line %s : %s", lineNumber, e), e), IException.IMPORT);
   }
 
-  protected List<Map<String, Object>> readFile() throws IOException, AxelorException {
-
-    List<Map<String, Object>> structuredContent = Lists.newArrayList();
-
-    List<String> fileContent = FileTool.reader(file.getPath());
-
-    for (String lineContent : fileContent) {
-
-      log.info("Read line : {}", lineContent);
-
-      // Code enregistrement
-      String operationCode =
-          cfonbToolService.readZone(
-              "Record code",
-              lineContent,
-              cfonbToolService.STATUS_MANDATORY,
-              cfonbToolService.FORMAT_NUMERIC,
-              1,
-              2);
-
-      switch (operationCode) {
-        case PREVIOUS_BALANCE_OPERATION_CODE:
-          structuredContent.add(readPreviousBalanceRecord(lineContent));
-          break;
-        case MOVEMENT_OPERATION_CODE:
-          structuredContent.add(readMovementRecord(lineContent));
-          break;
-        case COMPLEMENT_MOVEMENT_OPERATION_CODE:
-          Map<String, Object> movementLine = structuredContent.get(structuredContent.size() - 1);
-          String additionalInformation = "";
-          if (movementLine.containsKey("additionalInformation")) {
-            additionalInformation = (String) movementLine.get("additionalInformation") + "\n";
-          }
-          additionalInformation +=
-              (String) readAdditionalMovementRecord(lineContent).get("additionalInformation");
-
-          movementLine.put("additionalInformation", additionalInformation);
-
-          break;
-        case NEW_BALANCE_OPERATION_CODE:
-          structuredContent.add(readNewBalanceRecord(lineContent));
-          break;
-        default:
-          break;
-      }
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void createBankStatementLine(Map<String, Object> structuredContentLine, int sequence) {
+    bankStatementLineAFB120Repository.save(
+        buildBankStatementLine(structuredContentLine, sequence));
+  }
+
+  protected BankStatementLineAFB120 buildBankStatementLine(
+      Map<String, Object> structuredContentLine, int sequence) {
+
+    String description = (String) structuredContentLine.get("description");
+
+    if (structuredContentLine.containsKey("additionalInformation")
+        && structuredContentLine.get("additionalInformation") != null) {
+      description += "\n" + (String) structuredContentLine.get("additionalInformation");
     }
 
-    return structuredContent;
+    // references to the cached entities, without reading them again
+    BankDetails bankDetails = getReference(BankDetails.class, structuredContentLine, "bankDetails");
+    Currency currency = getReference(Currency.class, structuredContentLine, "currency");
+    InterbankCodeLine operationInterbankCodeLine =
+        getReference(InterbankCodeLine.class, structuredContentLine, "operationInterbankCodeLine");
+    InterbankCodeLine rejectInterbankCodeLine =
+        getReference(InterbankCodeLine.class, structuredContentLine, "rejectInterbankCodeLine");
+
+    return bankStatementLineAFB120Service.createBankStatementLine(
+        findBankStatement(),
+        sequence,
+        bankDetails,
+        (BigDecimal) structuredContentLine.get("debit"),
+        (BigDecimal) structuredContentLine.get("credit"),
+        currency,
+        description,
+        (LocalDate) structuredContentLine.get("operationDate"),
+        (LocalDate) structuredContentLine.get("valueDate"),
+        operationInterbankCodeLine,
+        rejectInterbankCodeLine,
+        (String) structuredContentLine.get("origin"),
+        (String) structuredContentLine.get("reference"),
+        (int) structuredContentLine.get("lineType"),
+        (String) structuredContentLine.get("unavailabilityIndexSelect"),
+        (String) structuredContentLine.get("commissionExemptionIndexSelect"));
+  }
+
+  protected <T extends Model> T getReference(
+      Class<T> klass, Map<String, Object> structuredContentLine, String key) {
+    Model model = (Model) structuredContentLine.get(key);
+    return model != null ? JPA.em().getReference(klass, model.getId()) : null;
   }
 
   protected Map<String, Object> readPreviousBalanceRecord(String lineContent)
       throws AxelorException {
 
+    CfonbRecordReader reader = recordReader.read(lineContent, PreviousBalance.LAYOUT);
     Map<String, Object> structuredLineContent = Maps.newHashMap();
 
     structuredLineContent.put(
         "lineType", BankStatementLineAFB120Repository.LINE_TYPE_INITIAL_BALANCE);
 
-    // Zone 1-B : Code banque
-    String bankCode =
-        cfonbToolService.readZone(
-            "1-B : bank code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            3,
-            5);
-
-    // Zone 1-D : Code guichet
-    String sortCode =
-        cfonbToolService.readZone(
-            "1-D : sort code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            12,
-            5);
-
-    // Zone 1-E : Code devise ISO
-    String currencyCode =
-        cfonbToolService.readZone(
-            "1-E : currency code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA,
-            17,
-            3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
-
-    // Zone 1-F : Nombre de décimales du montant de l'ancien solde
-    int decimalDigitNumber =
-        Integer.parseInt(
-            cfonbToolService.readZone(
-                "1-F : decimal number",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_NUMERIC,
-                20,
-                1));
-
-    // Zone 1-H : Numéro de compte
-    String accountNumber =
-        cfonbToolService.readZone(
-            "1-H : account number",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            22,
-            11);
-
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
-
-    // Zone 1-J : Date de l'ancien solde (JJMMAA)
-    String date =
-        cfonbToolService.readZone(
-            "1-J : date",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            35,
-            6);
-    structuredLineContent.put("operationDate", getDate(date));
-
-    // Zone 1-L : Montant de l'ancien solde
-    String amountStr =
-        cfonbToolService.readZone(
-            "1-L : amount",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            91,
-            14);
-
-    BigDecimal amount = getAmount(amountStr, decimalDigitNumber);
+    structuredLineContent.put(
+        "currency", getCurrency(reader.getString(PreviousBalance.CURRENCY_CODE)));
+
+    structuredLineContent.put(
+        "bankDetails",
+        getBankDetails(
+            reader.getString(PreviousBalance.ACCOUNT_NUMBER),
+            reader.getString(PreviousBalance.BANK_CODE),
+            reader.getString(PreviousBalance.SORT_CODE)));
+
+    structuredLineContent.put("operationDate", getDate(reader.getString(PreviousBalance.DATE)));
+
+    BigDecimal amount =
+        getAmount(
+            reader.getString(PreviousBalance.AMOUNT),
+            reader.getInt(PreviousBalance.DECIMAL_NUMBER));
 
     if (amount.signum() == 1) {
       structuredLineContent.put("debit", BigDecimal.ZERO);
@@ -320,164 +364,45 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
   protected Map<String, Object> readMovementRecord(String lineContent) throws AxelorException {
 
+    CfonbRecordReader reader = recordReader.read(lineContent, Movement.LAYOUT);
     Map<String, Object> structuredLineContent = Maps.newHashMap();
 
     structuredLineContent.put("lineType", BankStatementLineAFB120Repository.LINE_TYPE_MOVEMENT);
 
-    // Zone 2-B : Code banque
-    String bankCode =
-        cfonbToolService.readZone(
-            "2-B : bank code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            3,
-            5);
-
-    // Zone 2-D : Code guichet
-    String sortCode =
-        cfonbToolService.readZone(
-            "2-D : sort code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            12,
-            5);
-
-    // Zone 2-E : Code devise ISO
-    String currencyCode =
-        cfonbToolService.readZone(
-            "2-E : currency code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA,
-            17,
-            3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
-
-    // Zone 2-F : Nombre de décimales du montant du mouvement
-    int decimalDigitNumber =
-        Integer.parseInt(
-            cfonbToolService.readZone(
-                "2-F : decimal number",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_NUMERIC,
-                20,
-                1));
-
-    // Zone 2-H : Numéro de compte
-    String accountNumber =
-        cfonbToolService.readZone(
-            "2-H : account number",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            22,
-            11);
-
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
-
-    // Zone 2-I : Code opération interbancaire
-    String operationInterbankCode =
-        cfonbToolService.readZone(
-            "2-I : interbank operation code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            33,
-            2);
-    structuredLineContent.put(
-        "operationInterbankCodeLine", getInterbankCodeLine(operationInterbankCode));
-
-    // Zone 2-J : Date de comptabilisation de l'opération (JJMMAA)
-    String movementDate =
-        cfonbToolService.readZone(
-            "2-J : operation date",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            35,
-            6);
-    structuredLineContent.put("operationDate", getDate(movementDate));
-
-    // Zone 2-K : Code motif de rejet
-    String rejectInterbankCodeLine =
-        cfonbToolService.readZone(
-            "2-K : interbank reject code",
-            lineContent,
-            cfonbToolService.STATUS_DEPENDENT,
-            cfonbToolService.FORMAT_NUMERIC,
-            41,
-            2);
+    structuredLineContent.put("currency", getCurrency(reader.getString(Movement.CURRENCY_CODE)));
+
     structuredLineContent.put(
-        "rejectInterbankCodeLine", getInterbankCodeLine(rejectInterbankCodeLine));
-
-    // Zone 2-L : Date de valeur (JJMMAA)
-    String valueDate =
-        cfonbToolService.readZone(
-            "2-L : value date",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            43,
-            6);
-    structuredLineContent.put("valueDate", getDate(valueDate));
-
-    // Zone 2-M : Libellé
+        "bankDetails",
+        getBankDetails(
+            reader.getString(Movement.ACCOUNT_NUMBER),
+            reader.getString(Movement.BANK_CODE),
+            reader.getString(Movement.SORT_CODE)));
+
     structuredLineContent.put(
-        "description",
-        cfonbToolService.readZone(
-            "2-M : label",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            49,
-            31));
-
-    // Zone 2-O : Numéro d'écriture
+        "operationInterbankCodeLine",
+        getInterbankCodeLine(reader.getString(Movement.INTERBANK_OPERATION_CODE)));
+
+    structuredLineContent.put("operationDate", getDate(reader.getString(Movement.OPERATION_DATE)));
+
     structuredLineContent.put(
-        "origin",
-        cfonbToolService.readZone(
-            "2-O : move number",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            82,
-            7));
-
-    // Zone 2-P : Indice d'exonération de commission de mouvement de compte
+        "rejectInterbankCodeLine",
+        getInterbankCodeLine(reader.getString(Movement.INTERBANK_REJECT_CODE)));
+
+    structuredLineContent.put("valueDate", getDate(reader.getString(Movement.VALUE_DATE)));
+
+    structuredLineContent.put("description", reader.getString(Movement.LABEL));
+
+    structuredLineContent.put("origin", reader.getString(Movement.MOVE_NUMBER));
+
     structuredLineContent.put(
         "commissionExemptionIndexSelect",
-        cfonbToolService.readZone(
-            "2-P : turnover commission exemption index",
-            lineContent,
-            cfonbToolService.STATUS_OPTIONAL,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            89,
-            1));
-
-    // Zone 2-Q : Indice d'indisponibilité
+        reader.getString(Movement.COMMISSION_EXEMPTION_INDEX));
+
     structuredLineContent.put(
-        "unavailabilityIndexSelect",
-        cfonbToolService.readZone(
-            "2-Q : unavailability index",
-            lineContent,
-            cfonbToolService.STATUS_OPTIONAL,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            90,
-            1));
-
-    // Zone 2-R : Montant du mouvement
-    String amountStr =
-        cfonbToolService.readZone(
-            "2-R : amount",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            91,
-            14);
-    BigDecimal amount = getAmount(amountStr, decimalDigitNumber);
+        "unavailabilityIndexSelect", reader.getString(Movement.UNAVAILABILITY_INDEX));
+
+    BigDecimal amount =
+        getAmount(reader.getString(Movement.AMOUNT), reader.getInt(Movement.DECIMAL_NUMBER));
 
     if (amount.signum() == 1) {
       structuredLineContent.put("debit", BigDecimal.ZERO);
@@ -487,16 +412,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
       structuredLineContent.put("debit", amount.abs());
     }
 
-    // Zone 2-S : Zone référence
-    structuredLineContent.put(
-        "reference",
-        cfonbToolService.readZone(
-            "2-S : reference zone",
-            lineContent,
-            cfonbToolService.STATUS_OPTIONAL,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            105,
-            16));
+    structuredLineContent.put("reference", reader.getString(Movement.REFERENCE));
 
     return structuredLineContent;
   }
@@ -504,155 +420,42 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
   protected Map<String, Object> readAdditionalMovementRecord(String lineContent)
       throws AxelorException {
 
+    CfonbRecordReader reader = recordReader.read(lineContent, ComplementMovement.LAYOUT);
     Map<String, Object> structuredLineContent = Maps.newHashMap();
 
-    // Zone 2b-B : Code banque
-    String bankCode =
-        cfonbToolService.readZone(
-            "2b-B : bank code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            3,
-            5);
-
-    // Zone 2b-D : Code guichet
-    String sortCode =
-        cfonbToolService.readZone(
-            "2b-D : sort code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            12,
-            5);
-
-    // Zone 2b-E : Code devise ISO
-    String currencyCode =
-        cfonbToolService.readZone(
-            "2b-E : currency code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA,
-            17,
-            3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
-
-    // Zone 2b-F : Nombre de décimales du montant du mouvement
-    cfonbToolService.readZone(
-        "2b-F : decimal number",
-        lineContent,
-        cfonbToolService.STATUS_MANDATORY,
-        cfonbToolService.FORMAT_NUMERIC,
-        20,
-        1);
-
-    // Zone 2b-H : Numéro de compte
-    String accountNumber =
-        cfonbToolService.readZone(
-            "2b-H : account number",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            22,
-            11);
-
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
-
-    // Zone 2b-I : Code opération interbancaire
-    String operationInterbankCode =
-        cfonbToolService.readZone(
-            "2b-I : interbank operation code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            33,
-            2);
     structuredLineContent.put(
-        "operationInterbankCodeLine", getInterbankCodeLine(operationInterbankCode));
-
-    // Zone 2b-J : Date de comptabilisation de l'opération (JJMMAA)
-    String date =
-        cfonbToolService.readZone(
-            "2b-J : operation date",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            35,
-            6);
-    structuredLineContent.put("operationDate", getDate(date));
-
-    // Zone 2b-L : Qualifiant de la zone "Informations complémentaires"
-    String additionalInformationType =
-        cfonbToolService.readZone(
-            "2b-L : qualifying of additional information zone",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            46,
-            3);
-
-    switch (additionalInformationType) {
-      case "LIB":
-        // Zone 2b-M : Informations complémentaires
-        structuredLineContent.put(
-            "additionalInformation",
-            cfonbToolService.readZone(
-                "2b-M : additional informations",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                49,
-                70));
-        break;
+        "currency", getCurrency(reader.getString(ComplementMovement.CURRENCY_CODE)));
+
+    structuredLineContent.put(
+        "bankDetails",
+        getBankDetails(
+            reader.getString(ComplementMovement.ACCOUNT_NUMBER),
+            reader.getString(ComplementMovement.BANK_CODE),
+            reader.getString(ComplementMovement.SORT_CODE)));
+
+    structuredLineContent.put(
+        "operationInterbankCodeLine",
+        getInterbankCodeLine(reader.getString(ComplementMovement.INTERBANK_OPERATION_CODE)));
+
+    structuredLineContent.put(
+        "operationDate", getDate(reader.getString(ComplementMovement.OPERATION_DATE)));
+
+    switch (reader.getString(ComplementMovement.ADDITIONAL_INFORMATION_TYPE)) {
       case "MMO":
-        // Zone 2b-M : Informations complémentaires
-        // 2b-M-1 : Code devise ISO (norme ISO4217 (NF K 10 020)) du montant d'origine
-        String origineCurrencyCode =
-            cfonbToolService.readZone(
-                "2b-M-1 : currency code",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                49,
-                3);
-        // 2b-M-2 : nombre de décimales du montant d'origine
-        int decimalDigitNumber =
-            Integer.parseInt(
-                cfonbToolService.readZone(
-                    "2b-M-2 : decimal digit number",
-                    lineContent,
-                    cfonbToolService.STATUS_MANDATORY,
-                    cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                    52,
-                    1));
-        // 2b-M-3 : Montant d'origine (non signé)
-        String amountInCurrency =
-            cfonbToolService.readZone(
-                "2b-M-3 : original amount",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                53,
-                14);
+        String originalCurrencyCode = reader.getString(ComplementMovement.ORIGINAL_CURRENCY_CODE);
+        int decimalDigitNumber = reader.getInt(ComplementMovement.ORIGINAL_DECIMAL_NUMBER);
+        String amountInCurrency = reader.getString(ComplementMovement.ORIGINAL_AMOUNT);
         String integerPartOfAmount =
             amountInCurrency.substring(0, amountInCurrency.length() - decimalDigitNumber);
         String decimalPartOfAmount =
             amountInCurrency.substring(amountInCurrency.length() - decimalDigitNumber);
         String correctAmount = integerPartOfAmount + "." + decimalPartOfAmount;
         structuredLineContent.put(
-            "additionalInformation", correctAmount + " " + origineCurrencyCode);
+            "additionalInformation", correctAmount + " " + originalCurrencyCode);
         break;
       default:
-        // Zone 2b-M : Informations complémentaires
         structuredLineContent.put(
-            "additionalInformation",
-            cfonbToolService.readZone(
-                "2b-M : additional informations",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                49,
-                70));
+            "additionalInformation", reader.getString(ComplementMovement.ADDITIONAL_INFORMATION));
         break;
     }
 
@@ -661,87 +464,25 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
   protected Map<String, Object> readNewBalanceRecord(String lineContent) throws AxelorException {
 
+    CfonbRecordReader reader = recordReader.read(lineContent, NewBalance.LAYOUT);
     Map<String, Object> structuredLineContent = Maps.newHashMap();
 
     structuredLineContent.put(
         "lineType", BankStatementLineAFB120Repository.LINE_TYPE_FINAL_BALANCE);
 
-    // Zone 1-B : Code banque
-    String bankCode =
-        cfonbToolService.readZone(
-            "3-B : bank code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            3,
-            5);
-
-    // Zone 1-D : Code guichet
-    String sortCode =
-        cfonbToolService.readZone(
-            "3-D : sort code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            12,
-            5);
-
-    // Zone 1-E : Code devise ISO
-    String currencyCode =
-        cfonbToolService.readZone(
-            "3-E : currency code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA,
-            17,
-            3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
-
-    // Zone 1-F : Nombre de décimales du montant du nouveau solde
-    int nbDecimalDigit =
-        Integer.parseInt(
-            cfonbToolService.readZone(
-                "3-F : decimal number",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_NUMERIC,
-                20,
-                1));
-
-    // Zone 1-H : Numéro de compte
-    String accountNumber =
-        cfonbToolService.readZone(
-            "3-H : account number",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            22,
-            11);
-
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
-
-    // Zone 1-J : Date du nouveau solde (JJMMAA)
-    String date =
-        cfonbToolService.readZone(
-            "3-J : date",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            35,
-            6);
-    structuredLineContent.put("operationDate", getDate(date));
-
-    // Zone 1-L : Montant du nouveau solde
-    String amountStr =
-        cfonbToolService.readZone(
-            "3-L : amount",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            91,
-            14);
-
-    BigDecimal amount = getAmount(amountStr, nbDecimalDigit);
+    structuredLineContent.put("currency", getCurrency(reader.getString(NewBalance.CURRENCY_CODE)));
+
+    structuredLineContent.put(
+        "bankDetails",
+        getBankDetails(
+            reader.getString(NewBalance.ACCOUNT_NUMBER),
+            reader.getString(NewBalance.BANK_CODE),
+            reader.getString(NewBalance.SORT_CODE)));
+
+    structuredLineContent.put("operationDate", getDate(reader.getString(NewBalance.DATE)));
+
+    BigDecimal amount =
+        getAmount(reader.getString(NewBalance.AMOUNT), reader.getInt(NewBalance.DECIMAL_NUMBER));
 
     if (amount.signum() == 1) {
       structuredLineContent.put("debit", BigDecimal.ZERO);
@@ -756,19 +497,35 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
   protected Currency getCurrency(String isoCode) {
 
-    return currencyRepository.findByCode(isoCode);
+    if (currencyIdMap.containsKey(isoCode)) {
+      Long currencyId = currencyIdMap.get(isoCode);
+      return currencyId != null ? JPA.em().getReference(Currency.class, currencyId) : null;
+    }
+
+    Currency currency = currencyRepository.findByCode(isoCode);
+    currencyIdMap.put(isoCode, currency != null ? currency.getId() : null);
+    return currency;
   }
 
   protected BankDetails getBankDetails(String accountNumber, String bankCode, String sortCode) {
 
-    return bankDetailsRepository
-        .all()
-        .filter(
-            "self.accountNbr = ?1 and self.bankCode = ?2 and self.sortCode = ?3",
-            accountNumber,
-            bankCode,
-            sortCode)
-        .fetchOne();
+    String key = accountNumber + ":" + bankCode + ":" + sortCode;
+    if (bankDetailsIdMap.containsKey(key)) {
+      Long bankDetailsId = bankDetailsIdMap.get(key);
+      return bankDetailsId != null ? JPA.em().getReference(BankDetails.class, bankDetailsId) : null;
+    }
+
+    BankDetails bankDetails =
+        bankDetailsRepository
+            .all()
+            .filter(
+                "self.accountNbr = ?1 and self.bankCode = ?2 and self.sortCode = ?3",
+                accountNumber,
+                bankCode,
+                sortCode)
+            .fetchOne();
+    bankDetailsIdMap.put(key, bankDetails != null ? bankDetails.getId() : null);
+    return bankDetails;
   }
 
   protected LocalDate getDate(String date) {
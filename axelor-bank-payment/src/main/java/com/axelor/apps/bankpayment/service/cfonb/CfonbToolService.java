@@ -18,6 +18,7 @@
 package com.axelor.apps.bankpayment.service.cfonb;
 
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.bankorder.file.cfonb.CfonbZone;
 import com.axelor.apps.tool.StringTool;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -119,27 +120,27 @@ public class CfonbToolService {
   }
 
   /** "M" = Obligatoire (Mandatory) */
-  public final String STATUS_MANDATORY = "M";
+  public static final String STATUS_MANDATORY = CfonbZone.STATUS_MANDATORY;
   /** "O" = Optionnel (Optional) */
-  public final String STATUS_OPTIONAL = "O";
+  public static final String STATUS_OPTIONAL = CfonbZone.STATUS_OPTIONAL;
   /**
    * "D" = Dépendant (Dependent), la condition de présence de la donnée est précisée dans les
    * tableaux de description des enregistrements
    */
-  public final String STATUS_DEPENDENT = "D";
+  public static final String STATUS_DEPENDENT = CfonbZone.STATUS_DEPENDENT;
   /**
    * "N" = Non utilisée (zone que le CFONB se réserve le droit d'utiliser ultérieurement qui doit
    * alors être à blanc, ou zone non utilisée pour ce type de remise qui est alors ignorée par la
    * banque).
    */
-  public final String STATUS_NOT_USED = "N";
+  public static final String STATUS_NOT_USED = CfonbZone.STATUS_NOT_USED;
 
   /** "AN" = alphanumérique */
-  public final String FORMAT_ALPHA_NUMERIC = "AN";
+  public static final String FORMAT_ALPHA_NUMERIC = CfonbZone.FORMAT_ALPHA_NUMERIC;
   /** "N" = numérique */
-  public final String FORMAT_NUMERIC = "N";
+  public static final String FORMAT_NUMERIC = CfonbZone.FORMAT_NUMERIC;
   /** "A" = Alphabétique */
-  public final String FORMAT_ALPHA = "A";
+  public static final String FORMAT_ALPHA = CfonbZone.FORMAT_ALPHA;
 
   public String createZone(String numOfZone, String value, String status, String format, int length)
       throws AxelorException {
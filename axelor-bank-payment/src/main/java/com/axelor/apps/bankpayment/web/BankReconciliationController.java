@@ -22,11 +22,15 @@ import com.axelor.apps.bankpayment.db.BankReconciliation;
 import com.axelor.apps.bankpayment.db.BankReconciliationLine;
 import com.axelor.apps.bankpayment.db.repo.BankReconciliationLineRepository;
 import com.axelor.apps.bankpayment.db.repo.BankReconciliationRepository;
+import com.axelor.apps.bankpayment.exception.IExceptionMessage;
 import com.axelor.apps.bankpayment.report.IReport;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMatchingService;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMatchingService.AutoMatchResult;
 import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationService;
 import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationValidateService;
 import com.axelor.apps.report.engine.ReportSettings;
 import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
 import com.axelor.meta.schema.actions.ActionView;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
@@ -44,6 +48,8 @@ public class BankReconciliationController {
 
   @Inject BankReconciliationValidateService bankReconciliationValidateService;
 
+  @Inject BankReconciliationMatchingService bankReconciliationMatchingService;
+
   @Inject BankReconciliationRepository bankReconciliationRepo;
 
   @Inject BankReconciliationLineRepository bankReconciliationLineRepo;
@@ -84,6 +90,25 @@ public class BankReconciliationController {
     }
   }
 
+  public void autoMatch(ActionRequest request, ActionResponse response) {
+
+    try {
+      BankReconciliation bankReconciliation = request.getContext().asType(BankReconciliation.class);
+      AutoMatchResult result =
+          bankReconciliationMatchingService.autoMatch(
+              bankReconciliationRepo.find(bankReconciliation.getId()));
+      response.setFlash(
+          String.format(
+              I18n.get(IExceptionMessage.BANK_RECONCILIATION_AUTO_MATCH_RESULT),
+              result.getMatchCount(),
+              result.getLineCount(),
+              result.getLinesPerSecond()));
+      response.setReload(true);
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+    }
+  }
+
   public void validate(ActionRequest request, ActionResponse response) {
 
     try {
@@ -0,0 +1,145 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankreconciliation;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.repo.MoveLineRepository;
+import com.axelor.apps.bankpayment.db.BankReconciliationLine;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMatchingService.Candidate;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMatchingService.Match;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBankReconciliationMatching {
+
+  private static final LocalDate DATE = LocalDate.of(2019, 3, 10);
+
+  private static final BigDecimal AMOUNT = new BigDecimal("100.00");
+
+  private final BankReconciliationMatchingService service =
+      new BankReconciliationMatchingService(
+          null,
+          new MoveLineRepository() {
+            @Override
+            public MoveLine find(Long id) {
+              MoveLine moveLine = new MoveLine();
+              moveLine.setId(id);
+              return moveLine;
+            }
+          },
+          null);
+
+  // candidates for the bank debits, by remaining amount
+  private final Map<BigDecimal, List<Candidate>> creditIndex = new HashMap<>();
+
+  @Test
+  public void testTokenize() {
+    Set<String> tokens = service.tokenize("Inv-2019/0042 abc", null, "", "payment");
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("2019", "0042", "PAYMENT")), tokens);
+  }
+
+  @Test
+  public void testTieLeftUnmatched() {
+    BankReconciliationLine line = createLine(DATE, "INV 0042");
+    addCandidate(1L, DATE, "INV 0042");
+    addCandidate(2L, DATE, "INV 0042");
+
+    Assert.assertEquals(0, match(3, Collections.singletonList(line)));
+    Assert.assertNull(line.getMoveLine());
+  }
+
+  @Test
+  public void testTieBrokenByReference() {
+    BankReconciliationLine line = createLine(DATE, "INV 0042");
+    addCandidate(1L, DATE, "INV 0041");
+    addCandidate(2L, DATE.plusDays(2), "INV 0042");
+
+    Assert.assertEquals(1, match(3, Collections.singletonList(line)));
+    Assert.assertEquals(Long.valueOf(2L), line.getMoveLine().getId());
+  }
+
+  @Test
+  public void testMoveLineMatchedOnce() {
+    BankReconciliationLine closeLine = createLine(DATE, null);
+    BankReconciliationLine farLine = createLine(DATE.plusDays(2), null);
+    addCandidate(1L, DATE, null);
+
+    Assert.assertEquals(1, match(3, Arrays.asList(farLine, closeLine)));
+    Assert.assertEquals(Long.valueOf(1L), closeLine.getMoveLine().getId());
+    Assert.assertNull(farLine.getMoveLine());
+  }
+
+  @Test
+  public void testDateTolerance() {
+    BankReconciliationLine line = createLine(DATE, null);
+    addCandidate(1L, DATE.plusDays(4), null);
+
+    Assert.assertEquals(0, match(3, Collections.singletonList(line)));
+    Assert.assertNull(line.getMoveLine());
+
+    addCandidate(2L, DATE.minusDays(3), null);
+
+    Assert.assertEquals(1, match(3, Collections.singletonList(line)));
+    Assert.assertEquals(Long.valueOf(2L), line.getMoveLine().getId());
+  }
+
+  @Test
+  public void testReferenceRequired() {
+    BankReconciliationLine line = createLine(DATE, "INV 0042");
+    addCandidate(1L, DATE, null);
+
+    List<Match> matchList =
+        service.findMatches(
+            Collections.singletonList(line), creditIndex, new HashMap<>(), 3, true);
+
+    Assert.assertTrue(matchList.isEmpty());
+  }
+
+  private int match(int dateTolerance, List<BankReconciliationLine> lineList) {
+    List<Match> matchList =
+        service.findMatches(lineList, creditIndex, new HashMap<>(), dateTolerance, false);
+    return service.applyMatches(matchList);
+  }
+
+  /** A bank debit of the amount, to match with a credit move line. */
+  private BankReconciliationLine createLine(LocalDate effectDate, String reference) {
+    BankReconciliationLine line = new BankReconciliationLine();
+    line.setDebit(AMOUNT);
+    line.setCredit(BigDecimal.ZERO);
+    line.setEffectDate(effectDate);
+    line.setReference(reference);
+    return line;
+  }
+
+  private void addCandidate(Long id, LocalDate date, String reference) {
+    creditIndex
+        .computeIfAbsent(AMOUNT.stripTrailingZeros(), amount -> new ArrayList<>())
+        .add(new Candidate(id, date, service.tokenize(reference)));
+  }
+}
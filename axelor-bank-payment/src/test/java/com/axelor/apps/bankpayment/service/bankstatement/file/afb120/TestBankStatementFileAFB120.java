@@ -0,0 +1,148 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankstatement.file.afb120;
+
+import com.axelor.apps.base.db.BankDetails;
+import com.axelor.apps.base.db.Currency;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBankStatementFileAFB120 {
+
+  /** Reads the records without database, keeping the lines to create and the rejected lines. */
+  private static class TestService extends BankStatementFileAFB120Service {
+
+    private final List<Map<String, Object>> createdLineList = new ArrayList<>();
+    private final List<Integer> rejectedLineNumberList = new ArrayList<>();
+
+    TestService() {
+      super(null, null, null, null, null, null, null);
+    }
+
+    @Override
+    protected void createBankStatementLines(List<Map<String, Object>> structuredContentLineList) {
+      createdLineList.addAll(structuredContentLineList);
+    }
+
+    @Override
+    protected void traceLine(int lineNumber, Exception e) {
+      rejectedLineNumberList.add(lineNumber);
+    }
+
+    @Override
+    protected Currency getCurrency(String isoCode) {
+      return null;
+    }
+
+    @Override
+    protected BankDetails getBankDetails(String accountNumber, String bankCode, String sortCode) {
+      return null;
+    }
+  }
+
+  private static StringBuilder record(String code, String bankCode) {
+    StringBuilder record = new StringBuilder(new String(new char[120]).replace('\0', ' '));
+    put(record, 1, code);
+    put(record, 3, bankCode);
+    put(record, 12, "01234");
+    put(record, 17, "EUR");
+    put(record, 20, "2");
+    put(record, 22, "00012345678");
+    put(record, 33, "05");
+    put(record, 35, "150119");
+    return record;
+  }
+
+  private static String movement(String bankCode, String label) {
+    StringBuilder record = record("04", bankCode);
+    put(record, 43, "160119");
+    put(record, 49, label);
+    put(record, 82, "0000001");
+    put(record, 91, "0000000001234{");
+    return record.toString();
+  }
+
+  private static String complement(String additionalInformation) {
+    StringBuilder record = record("05", "30004");
+    put(record, 46, "LIB");
+    put(record, 49, additionalInformation);
+    return record.toString();
+  }
+
+  private static void put(StringBuilder record, int position, String value) {
+    record.replace(position - 1, position - 1 + value.length(), value);
+  }
+
+  private static TestService read(String... lines) throws IOException {
+    TestService service = new TestService();
+    service.readLines(new BufferedReader(new StringReader(String.join("\n", lines))));
+    return service;
+  }
+
+  @Test
+  public void testMovementWithComplements() throws IOException {
+    TestService service =
+        read(
+            movement("30004", "TRANSFER"),
+            complement("FIRST INFORMATION"),
+            complement("SECOND INFORMATION"));
+
+    Assert.assertTrue(service.rejectedLineNumberList.isEmpty());
+    Assert.assertEquals(1, service.createdLineList.size());
+
+    Map<String, Object> line = service.createdLineList.get(0);
+    Assert.assertEquals("TRANSFER", line.get("description"));
+    Assert.assertEquals(0, new BigDecimal("123.40").compareTo((BigDecimal) line.get("credit")));
+    Assert.assertEquals(
+        "FIRST INFORMATION\nSECOND INFORMATION", line.get("additionalInformation"));
+  }
+
+  @Test
+  public void testComplementOfMalformedMovement() throws IOException {
+    TestService service =
+        read(
+            movement("30004", "FIRST"),
+            complement("FIRST INFORMATION"),
+            movement("3A004", "MALFORMED"),
+            complement("MALFORMED INFORMATION"),
+            movement("30004", "SECOND"),
+            complement("SECOND INFORMATION"));
+
+    // the malformed movement and its complement are rejected
+    Assert.assertEquals(Arrays.asList(3, 4), service.rejectedLineNumberList);
+    Assert.assertEquals(2, service.createdLineList.size());
+
+    Map<String, Object> firstLine = service.createdLineList.get(0);
+    Assert.assertEquals("FIRST", firstLine.get("description"));
+    Assert.assertEquals("FIRST INFORMATION", firstLine.get("additionalInformation"));
+    Assert.assertEquals(0, firstLine.get("sequence"));
+
+    Map<String, Object> secondLine = service.createdLineList.get(1);
+    Assert.assertEquals("SECOND", secondLine.get("description"));
+    Assert.assertEquals("SECOND INFORMATION", secondLine.get("additionalInformation"));
+    Assert.assertEquals(1, secondLine.get("sequence"));
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.test;
+
+import com.axelor.apps.bankpayment.ebics.client.EbicsUtils;
+import com.axelor.apps.bankpayment.ebics.interfaces.ContentFactory;
+import com.axelor.apps.bankpayment.ebics.io.IOUtils;
+import com.axelor.apps.bankpayment.ebics.io.Splitter;
+import com.axelor.exception.AxelorException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.Security;
+import java.util.Random;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestEbicsSplitter {
+
+  @BeforeClass
+  public static void addProvider() {
+    Security.addProvider(new BouncyCastleProvider());
+  }
+
+  @Test
+  public void testSegments() throws AxelorException, IOException {
+    // random data does not compress, so that it takes several segments
+    byte[] input = new byte[2 * 1024 * 1024];
+    new Random(42).nextBytes(input);
+    SecretKeySpec keySpec = new SecretKeySpec(EbicsUtils.generateNonce(), "EAS");
+
+    try (Splitter splitter = new Splitter(input)) {
+      splitter.readInput(true, keySpec);
+      Assert.assertEquals(3, splitter.getSegmentNumber());
+
+      ByteArrayOutputStream joined = new ByteArrayOutputStream();
+      for (int i = 1; i <= splitter.getSegmentNumber(); i++) {
+        ContentFactory segment = splitter.getContent(i);
+        byte[] content = IOUtils.getFactoryContent(segment);
+        Assert.assertTrue(content.length <= Splitter.MAX_SEGMENT_SIZE);
+        joined.write(content);
+      }
+
+      Assert.assertArrayEquals(
+          input, EbicsUtils.unzip(EbicsUtils.decrypt(joined.toByteArray(), keySpec)));
+    }
+  }
+}
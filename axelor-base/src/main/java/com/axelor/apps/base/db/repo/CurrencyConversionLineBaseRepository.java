@@ -0,0 +1,48 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.db.repo;
+
+import com.axelor.apps.base.db.CurrencyConversionLine;
+import com.axelor.apps.base.service.CurrencyConversionLineIndex;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.inject.Beans;
+
+public class CurrencyConversionLineBaseRepository extends CurrencyConversionLineRepository {
+
+  @Override
+  public CurrencyConversionLine save(CurrencyConversionLine currencyConversionLine) {
+
+    // lines are added without touching the base app, whose version is not enough to detect them
+    invalidateIndex();
+
+    return super.save(currencyConversionLine);
+  }
+
+  @Override
+  public void remove(CurrencyConversionLine currencyConversionLine) {
+
+    invalidateIndex();
+
+    super.remove(currencyConversionLine);
+  }
+
+  /** Drop the index once committed, so that it is not rebuilt from the old lines meanwhile. */
+  protected void invalidateIndex() {
+    TransactionTool.afterCommit(() -> Beans.get(CurrencyConversionLineIndex.class).invalidate());
+  }
+}
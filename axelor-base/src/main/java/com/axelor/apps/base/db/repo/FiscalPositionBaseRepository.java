@@ -0,0 +1,49 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.db.repo;
+
+import com.axelor.apps.account.db.FiscalPosition;
+import com.axelor.apps.account.db.repo.FiscalPositionRepository;
+import com.axelor.apps.base.service.tax.TaxIndex;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.inject.Beans;
+
+public class FiscalPositionBaseRepository extends FiscalPositionRepository {
+
+  @Override
+  public FiscalPosition save(FiscalPosition fiscalPosition) {
+
+    invalidateIndex(fiscalPosition.getId());
+
+    return super.save(fiscalPosition);
+  }
+
+  @Override
+  public void remove(FiscalPosition fiscalPosition) {
+
+    invalidateIndex(fiscalPosition.getId());
+
+    super.remove(fiscalPosition);
+  }
+
+  /** Drop the tax equivalences of the fiscal position from the index once committed. */
+  protected void invalidateIndex(Long fiscalPositionId) {
+    TransactionTool.afterCommit(
+        () -> Beans.get(TaxIndex.class).invalidateFiscalPosition(fiscalPositionId));
+  }
+}
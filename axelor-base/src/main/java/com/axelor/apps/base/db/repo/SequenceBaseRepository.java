@@ -18,6 +18,10 @@
 package com.axelor.apps.base.db.repo;
 
 import com.axelor.apps.base.db.Sequence;
+import com.axelor.apps.base.service.administration.SequenceBlockAllocator;
+import com.axelor.apps.base.service.administration.SequenceService;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.inject.Beans;
 
 public class SequenceBaseRepository extends SequenceRepository {
 
@@ -30,4 +34,20 @@ public class SequenceBaseRepository extends SequenceRepository {
 
     return copy;
   }
+
+  @Override
+  public Sequence save(Sequence sequence) {
+
+    Long sequenceId = sequence.getId();
+
+    // numbers already reserved may no longer match the sequence definition, dropped once the
+    // changes are committed so that they are not reserved again from the old state
+    TransactionTool.afterCommit(
+        () -> {
+          Beans.get(SequenceBlockAllocator.class).invalidate(sequenceId);
+          Beans.get(SequenceService.class).invalidateTemplates(sequenceId);
+        });
+
+    return super.save(sequence);
+  }
 }
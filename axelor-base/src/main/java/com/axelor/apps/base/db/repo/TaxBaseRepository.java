@@ -19,6 +19,9 @@ package com.axelor.apps.base.db.repo;
 
 import com.axelor.apps.account.db.Tax;
 import com.axelor.apps.account.db.repo.TaxRepository;
+import com.axelor.apps.base.service.tax.TaxIndex;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.inject.Beans;
 
 public class TaxBaseRepository extends TaxRepository {
 
@@ -28,4 +31,25 @@ public class TaxBaseRepository extends TaxRepository {
     copy.setActiveTaxLine(null);
     return copy;
   }
+
+  @Override
+  public Tax save(Tax tax) {
+
+    invalidateIndex(tax.getId());
+
+    return super.save(tax);
+  }
+
+  @Override
+  public void remove(Tax tax) {
+
+    invalidateIndex(tax.getId());
+
+    super.remove(tax);
+  }
+
+  /** Drop the lines of the tax from the index once committed. */
+  protected void invalidateIndex(Long taxId) {
+    TransactionTool.afterCommit(() -> Beans.get(TaxIndex.class).invalidateTax(taxId));
+  }
 }
@@ -0,0 +1,53 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.db.repo;
+
+import com.axelor.apps.account.db.TaxLine;
+import com.axelor.apps.account.db.repo.TaxLineRepository;
+import com.axelor.apps.base.service.tax.TaxIndex;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.inject.Beans;
+
+public class TaxLineBaseRepository extends TaxLineRepository {
+
+  @Override
+  public TaxLine save(TaxLine taxLine) {
+
+    // a line saved on its own does not change the version of its tax
+    invalidateIndex(taxLine);
+
+    return super.save(taxLine);
+  }
+
+  @Override
+  public void remove(TaxLine taxLine) {
+
+    invalidateIndex(taxLine);
+
+    super.remove(taxLine);
+  }
+
+  /** Drop the lines of the tax of the line from the index once committed. */
+  protected void invalidateIndex(TaxLine taxLine) {
+    if (taxLine.getTax() == null) {
+      return;
+    }
+    Long taxId = taxLine.getTax().getId();
+    TransactionTool.afterCommit(() -> Beans.get(TaxIndex.class).invalidateTax(taxId));
+  }
+}
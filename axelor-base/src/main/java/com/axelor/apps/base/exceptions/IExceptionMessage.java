@@ -320,4 +320,8 @@ public interface IExceptionMessage {
       "Import completed successfully. Please check the log for more details." /*)*/;
   public static final String INVALID_DATA_FORMAT_ERROR = /*$$(*/
       "Invalid data format. Please check log for more details." /*)*/;
+
+  /** Sequence block allocation */
+  public static final String SEQUENCE_BLOCK_ALLOCATION_STATS = /*$$(*/
+      "%s block reservations since startup, %s ms spent waiting, %.2f ms on average." /*)*/;
 }
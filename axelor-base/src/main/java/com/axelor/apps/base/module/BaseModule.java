@@ -18,6 +18,9 @@
 package com.axelor.apps.base.module;
 
 import com.axelor.app.AxelorModule;
+import com.axelor.apps.account.db.repo.FiscalPositionRepository;
+import com.axelor.apps.account.db.repo.TaxEquivRepository;
+import com.axelor.apps.account.db.repo.TaxLineRepository;
 import com.axelor.apps.account.db.repo.TaxRepository;
 import com.axelor.apps.base.db.PartnerAddress;
 import com.axelor.apps.base.db.repo.AddressBaseRepository;
@@ -30,8 +33,11 @@ import com.axelor.apps.base.db.repo.BankBaseRepository;
 import com.axelor.apps.base.db.repo.BankRepository;
 import com.axelor.apps.base.db.repo.BaseBatchBaseRepository;
 import com.axelor.apps.base.db.repo.BaseBatchRepository;
+import com.axelor.apps.base.db.repo.CurrencyConversionLineBaseRepository;
+import com.axelor.apps.base.db.repo.CurrencyConversionLineRepository;
 import com.axelor.apps.base.db.repo.DurationBaseRepository;
 import com.axelor.apps.base.db.repo.DurationRepository;
+import com.axelor.apps.base.db.repo.FiscalPositionBaseRepository;
 import com.axelor.apps.base.db.repo.ICalendarEventManagementRepository;
 import com.axelor.apps.base.db.repo.ICalendarEventRepository;
 import com.axelor.apps.base.db.repo.MailBatchBaseRepository;
@@ -44,6 +50,10 @@ import com.axelor.apps.base.db.repo.ProductRepository;
 import com.axelor.apps.base.db.repo.SequenceBaseRepository;
 import com.axelor.apps.base.db.repo.SequenceRepository;
 import com.axelor.apps.base.db.repo.TaxBaseRepository;
+import com.axelor.apps.base.db.repo.TaxEquivBaseRepository;
+import com.axelor.apps.base.db.repo.TaxLineBaseRepository;
+import com.axelor.apps.base.db.repo.UnitConversionBaseRepository;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
 import com.axelor.apps.base.db.repo.UserBaseRepository;
 import com.axelor.apps.base.db.repo.YearBaseRepository;
 import com.axelor.apps.base.db.repo.YearRepository;
@@ -124,6 +134,8 @@ public class BaseModule extends AxelorModule {
     bind(DurationService.class).to(DurationServiceImpl.class);
     bind(AppBaseService.class).to(AppBaseServiceImpl.class);
     bind(SequenceRepository.class).to(SequenceBaseRepository.class);
+    bind(CurrencyConversionLineRepository.class).to(CurrencyConversionLineBaseRepository.class);
+    bind(UnitConversionRepository.class).to(UnitConversionBaseRepository.class);
     bind(ProductRepository.class).to(ProductBaseRepository.class);
     bind(WeeklyPlanningService.class).to(WeeklyPlanningServiceImp.class);
     bind(MailServiceMessageImpl.class).to(MailServiceBaseImpl.class);
@@ -153,5 +165,8 @@ public class BaseModule extends AxelorModule {
     bind(ImportDemoDataService.class).to(ImportDemoDataServiceImpl.class);
     bind(MapRestService.class).to(MapRestServiceImpl.class);
     bind(TaxRepository.class).to(TaxBaseRepository.class);
+    bind(FiscalPositionRepository.class).to(FiscalPositionBaseRepository.class);
+    bind(TaxLineRepository.class).to(TaxLineBaseRepository.class);
+    bind(TaxEquivRepository.class).to(TaxEquivBaseRepository.class);
   }
 }
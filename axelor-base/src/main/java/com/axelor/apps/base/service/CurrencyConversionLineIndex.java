@@ -0,0 +1,233 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.AppBase;
+import com.axelor.apps.base.db.CurrencyConversionLine;
+import com.axelor.apps.base.service.app.AppBaseService;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the currency conversion lines of the base app, by currency pair and date.
+ *
+ * <p>The index is rebuilt on the next lookup after {@link #invalidate()} has been called, which is
+ * done once a saved or removed line is committed, or when the version of the base app changes.
+ */
+@ThreadSafe
+@Singleton
+public class CurrencyConversionLineIndex {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Scale used for inverse rates, same as in {@link CurrencyService}. */
+  public static final int INVERSE_RATE_SCALE = 10;
+
+  protected AppBaseService appBaseService;
+
+  private volatile Snapshot snapshot;
+
+  @Inject
+  public CurrencyConversionLineIndex(AppBaseService appBaseService) {
+    this.appBaseService = appBaseService;
+  }
+
+  /** A conversion line, reduced to what is needed to convert. */
+  public static class Rate {
+
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+    private final BigDecimal exchangeRate;
+    private final BigDecimal inverseRate;
+
+    protected Rate(CurrencyConversionLine ccl) {
+      this.fromDate = ccl.getFromDate();
+      this.toDate = ccl.getToDate();
+      this.exchangeRate = ccl.getExchangeRate();
+      this.inverseRate =
+          exchangeRate == null || exchangeRate.signum() == 0
+              ? null
+              : BigDecimal.ONE.divide(exchangeRate, INVERSE_RATE_SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    public LocalDate getFromDate() {
+      return fromDate;
+    }
+
+    public LocalDate getToDate() {
+      return toDate;
+    }
+
+    /** Rate of the line, may be null or zero if badly configured. */
+    public BigDecimal getExchangeRate() {
+      return exchangeRate;
+    }
+
+    /** Rate to use for the opposite conversion, null if the rate is null or zero. */
+    public BigDecimal getInverseRate() {
+      return inverseRate;
+    }
+
+    protected boolean contains(LocalDate date) {
+      return !fromDate.isAfter(date) && (toDate == null || !toDate.isBefore(date));
+    }
+  }
+
+  protected static class Snapshot {
+
+    private final Long appBaseId;
+    private final Integer appBaseVersion;
+
+    // start currency code -> end currency code -> rates sorted by from date
+    private final Map<String, Map<String, Rate[]>> rates;
+
+    protected Snapshot(
+        Long appBaseId, Integer appBaseVersion, Map<String, Map<String, Rate[]>> rates) {
+      this.appBaseId = appBaseId;
+      this.appBaseVersion = appBaseVersion;
+      this.rates = rates;
+    }
+
+    protected boolean isValid(AppBase appBase) {
+      if (appBase == null) {
+        return appBaseId == null;
+      }
+      return Objects.equals(appBase.getId(), appBaseId)
+          && Objects.equals(appBase.getVersion(), appBaseVersion);
+    }
+  }
+
+  /**
+   * Find the conversion line from the start currency to the end currency valid at the given date.
+   *
+   * @param startCurrencyCode
+   * @param endCurrencyCode
+   * @param date
+   * @return the rate or null if there is none
+   */
+  public Rate find(String startCurrencyCode, String endCurrencyCode, LocalDate date) {
+
+    Map<String, Rate[]> ratesByEndCurrency = getSnapshot().rates.get(startCurrencyCode);
+    if (ratesByEndCurrency == null) {
+      return null;
+    }
+    Rate[] rates = ratesByEndCurrency.get(endCurrencyCode);
+    if (rates == null) {
+      return null;
+    }
+
+    // last line starting on or before the date
+    int low = 0;
+    int high = rates.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (rates[mid].fromDate.isAfter(date)) {
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+
+    // lines should not overlap, but an older line without end date can still cover the date
+    for (int i = high; i >= 0; i--) {
+      if (rates[i].contains(date)) {
+        return rates[i];
+      }
+    }
+    return null;
+  }
+
+  /** Drop the index, it is rebuilt on next lookup. */
+  public void invalidate() {
+    snapshot = null;
+  }
+
+  protected Snapshot getSnapshot() {
+
+    AppBase appBase = appBaseService.getAppBase();
+    Snapshot current = snapshot;
+
+    if (current == null || !current.isValid(appBase)) {
+      synchronized (this) {
+        current = snapshot;
+        if (current == null || !current.isValid(appBase)) {
+          current = build(appBase);
+          snapshot = current;
+        }
+      }
+    }
+
+    return current;
+  }
+
+  protected Snapshot build(AppBase appBase) {
+
+    if (appBase == null) {
+      return new Snapshot(null, null, Collections.emptyMap());
+    }
+
+    Map<String, Map<String, List<Rate>>> lists = new HashMap<>();
+    List<CurrencyConversionLine> currencyConversionLineList =
+        appBase.getCurrencyConversionLineList();
+
+    if (currencyConversionLineList != null) {
+      for (CurrencyConversionLine ccl : currencyConversionLineList) {
+        if (ccl.getStartCurrency() == null
+            || ccl.getEndCurrency() == null
+            || ccl.getFromDate() == null) {
+          continue;
+        }
+        lists
+            .computeIfAbsent(ccl.getStartCurrency().getCode(), code -> new HashMap<>())
+            .computeIfAbsent(ccl.getEndCurrency().getCode(), code -> new ArrayList<>())
+            .add(new Rate(ccl));
+      }
+    }
+
+    Map<String, Map<String, Rate[]>> rates = new HashMap<>();
+    int count = 0;
+    for (Map.Entry<String, Map<String, List<Rate>>> start : lists.entrySet()) {
+      Map<String, Rate[]> ratesByEndCurrency = new HashMap<>();
+      for (Map.Entry<String, List<Rate>> end : start.getValue().entrySet()) {
+        List<Rate> list = end.getValue();
+        list.sort(Comparator.comparing(Rate::getFromDate));
+        ratesByEndCurrency.put(end.getKey(), list.toArray(new Rate[list.size()]));
+        count += list.size();
+      }
+      rates.put(start.getKey(), ratesByEndCurrency);
+    }
+
+    log.debug("Currency conversion index built with {} lines", count);
+
+    return new Snapshot(appBase.getId(), appBase.getVersion(), rates);
+  }
+}
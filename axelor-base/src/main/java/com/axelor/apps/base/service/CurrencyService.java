@@ -18,7 +18,6 @@
 package com.axelor.apps.base.service;
 
 import com.axelor.apps.base.db.Currency;
-import com.axelor.apps.base.db.CurrencyConversionLine;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
@@ -31,7 +30,11 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,20 +73,20 @@ public class CurrencyService {
     if (startCurrency != null && endCurrency != null && !startCurrency.equals(endCurrency)) {
 
       LocalDate dateToConvert = this.getDateToConvert(date);
-      boolean isInverse = true;
       BigDecimal exchangeRate = null;
 
-      CurrencyConversionLine currencyConversionLine =
+      CurrencyConversionLineIndex.Rate rate =
           this.getCurrencyConversionLine(startCurrency, endCurrency, dateToConvert);
-      if (currencyConversionLine != null) {
-        exchangeRate = currencyConversionLine.getExchangeRate();
-        isInverse = false;
+      if (rate != null) {
+        exchangeRate = rate.getExchangeRate();
+        if (exchangeRate != null && exchangeRate.signum() == 0) {
+          exchangeRate = null;
+        }
 
       } else {
-        currencyConversionLine =
-            this.getCurrencyConversionLine(endCurrency, startCurrency, dateToConvert);
+        rate = this.getCurrencyConversionLine(endCurrency, startCurrency, dateToConvert);
 
-        if (currencyConversionLine == null) {
+        if (rate == null) {
           throw new AxelorException(
               TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
               I18n.get(IExceptionMessage.CURRENCY_1),
@@ -91,10 +94,10 @@ public class CurrencyService {
               endCurrency.getName(),
               dateToConvert);
         }
-        exchangeRate = currencyConversionLine.getExchangeRate();
+        exchangeRate = rate.getInverseRate();
       }
 
-      if (exchangeRate == null || exchangeRate.compareTo(BigDecimal.ZERO) == 0) {
+      if (exchangeRate == null) {
         throw new AxelorException(
             TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
             I18n.get(IExceptionMessage.CURRENCY_2),
@@ -103,45 +106,20 @@ public class CurrencyService {
             dateToConvert);
       }
 
-      return isInverse
-          ? BigDecimal.ONE.divide(exchangeRate, 10, RoundingMode.HALF_EVEN)
-          : exchangeRate;
+      return exchangeRate;
     }
 
     return BigDecimal.ONE;
   }
 
-  private CurrencyConversionLine getCurrencyConversionLine(
+  private CurrencyConversionLineIndex.Rate getCurrencyConversionLine(
       Currency startCurrency, Currency endCurrency, LocalDate localDate) {
 
-    List<CurrencyConversionLine> currencyConversionLineList =
-        appBaseService.getCurrencyConfigurationLineList();
-
-    if (currencyConversionLineList == null) {
-      return null;
-    }
-
     log.debug(
         "Currency from: {}, Currency to: {}, localDate: {}", startCurrency, endCurrency, localDate);
 
-    for (CurrencyConversionLine ccl : currencyConversionLineList) {
-
-      String cclStartCode = ccl.getStartCurrency().getCode();
-      String cclEndCode = ccl.getEndCurrency().getCode();
-      String startCode = startCurrency.getCode();
-      String endCode = endCurrency.getCode();
-      LocalDate fromDate = ccl.getFromDate();
-      LocalDate toDate = ccl.getToDate();
-
-      if (cclStartCode.equals(startCode) && cclEndCode.equals(endCode)) {
-        if ((fromDate.isBefore(localDate) || fromDate.equals(localDate))
-            && (toDate == null || toDate.isAfter(localDate) || toDate.isEqual(localDate))) {
-          return ccl;
-        }
-      }
-    }
-
-    return null;
+    return Beans.get(CurrencyConversionLineIndex.class)
+        .find(startCurrency.getCode(), endCurrency.getCode(), localDate);
   }
 
   /**
@@ -169,6 +147,45 @@ public class CurrencyService {
     return amount;
   }
 
+  /**
+   * Convert a list of amounts in start currency into the end currency, each one according to its
+   * date. Exchange rates are looked up once per distinct date.
+   *
+   * @param startCurrency
+   * @param endCurrency
+   * @param amountList pairs of amount and date to convert
+   * @return the converted amounts, in the same order
+   * @throws AxelorException
+   */
+  public List<BigDecimal> getAmountsCurrencyConvertedAtDate(
+      Currency startCurrency, Currency endCurrency, List<Pair<BigDecimal, LocalDate>> amountList)
+      throws AxelorException {
+
+    List<BigDecimal> convertedAmountList = new ArrayList<>(amountList.size());
+
+    if (startCurrency == null || endCurrency == null || startCurrency.equals(endCurrency)) {
+      for (Pair<BigDecimal, LocalDate> amount : amountList) {
+        convertedAmountList.add(amount.getLeft());
+      }
+      return convertedAmountList;
+    }
+
+    Map<LocalDate, BigDecimal> rateByDate = new HashMap<>();
+
+    for (Pair<BigDecimal, LocalDate> amount : amountList) {
+      LocalDate dateToConvert = this.getDateToConvert(amount.getRight());
+      BigDecimal exchangeRate = rateByDate.get(dateToConvert);
+      if (exchangeRate == null) {
+        exchangeRate = this.getCurrencyConversionRate(startCurrency, endCurrency, dateToConvert);
+        rateByDate.put(dateToConvert, exchangeRate);
+      }
+      convertedAmountList.add(
+          this.getAmountCurrencyConvertedUsingExchangeRate(amount.getLeft(), exchangeRate));
+    }
+
+    return convertedAmountList;
+  }
+
   /**
    * Convert the amount in start currency into the end currency according to the exchange rate
    *
@@ -0,0 +1,272 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import javax.annotation.concurrent.ThreadSafe;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit conversions loaded once in memory, by start and end unit.
+ *
+ * <p>Besides the configured conversions, coefficients between units that are only linked through
+ * other units are derived from coefficient conversions and kept once computed. Compiled formula
+ * scripts are kept as well, by formula: product values are given to the script through its
+ * binding, so that a formula is only compiled once whatever the product. Everything is dropped by
+ * {@link #invalidate()}, which is called once a unit conversion is saved or removed.
+ */
+@ThreadSafe
+@Singleton
+public class UnitConversionGraph {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int DEFAULT_COEFFICIENT_SCALE = 12;
+  private static final int SCRIPT_CACHE_SIZE = 1000;
+
+  /** Name of the variable holding the product in formula scripts. */
+  public static final String PRODUCT_VARIABLE = "Product";
+
+  // $Product.field$ template expressions of the formulas
+  private static final Pattern TEMPLATE_EXPRESSION = Pattern.compile("\\$([^$]*)\\$");
+
+  protected UnitConversionRepository unitConversionRepo;
+
+  private volatile Snapshot snapshot;
+
+  private final CompilerConfiguration compilerConfiguration;
+
+  private final Cache<String, Class<? extends Script>> scriptCache =
+      CacheBuilder.newBuilder().maximumSize(SCRIPT_CACHE_SIZE).build();
+
+  @Inject
+  public UnitConversionGraph(UnitConversionRepository unitConversionRepo) {
+    this.unitConversionRepo = unitConversionRepo;
+
+    ImportCustomizer customizer = new ImportCustomizer();
+    customizer.addStaticStars("java.lang.Math");
+    compilerConfiguration = new CompilerConfiguration();
+    compilerConfiguration.addCompilationCustomizers(customizer);
+  }
+
+  /** A configured unit conversion, reduced to what is needed to convert. */
+  public static class Conversion {
+
+    private final int typeSelect;
+    private final BigDecimal coef;
+    private final String formula;
+
+    protected Conversion(UnitConversion unitConversion) {
+      this.typeSelect = unitConversion.getTypeSelect();
+      this.coef = unitConversion.getCoef();
+      this.formula = unitConversion.getFormula();
+    }
+
+    public boolean isCoefficient() {
+      return typeSelect == UnitConversionRepository.TYPE_COEFF;
+    }
+
+    public BigDecimal getCoef() {
+      return coef;
+    }
+
+    public String getFormula() {
+      return formula;
+    }
+  }
+
+  protected static class Snapshot {
+
+    // start unit id -> end unit id -> conversion
+    private final Map<Long, Map<Long, Conversion>> conversions;
+
+    // derived coefficients, keyed by start and end unit ids
+    private final ConcurrentMap<String, Optional<BigDecimal>> derivedCoefficients =
+        new ConcurrentHashMap<>();
+
+    protected Snapshot(Map<Long, Map<Long, Conversion>> conversions) {
+      this.conversions = conversions;
+    }
+  }
+
+  /**
+   * Get the conversion configured from the start unit to the end unit.
+   *
+   * @param startUnitId
+   * @param endUnitId
+   * @return the conversion or null if there is none
+   */
+  public Conversion find(Long startUnitId, Long endUnitId) {
+    Map<Long, Conversion> conversions = getSnapshot().conversions.get(startUnitId);
+    return conversions != null ? conversions.get(endUnitId) : null;
+  }
+
+  /**
+   * Get the coefficient between two units which are not directly converted, by chaining
+   * coefficient conversions.
+   *
+   * @param startUnitId
+   * @param endUnitId
+   * @return the coefficient or null if the units are not linked
+   */
+  public BigDecimal findDerivedCoefficient(Long startUnitId, Long endUnitId) {
+    Snapshot current = getSnapshot();
+    return current
+        .derivedCoefficients
+        .computeIfAbsent(
+            startUnitId + ":" + endUnitId,
+            key -> Optional.ofNullable(computeDerivedCoefficient(current, startUnitId, endUnitId)))
+        .orElse(null);
+  }
+
+  /**
+   * Get the compiled script of a formula. The product is read from the {@link #PRODUCT_VARIABLE}
+   * variable of the script binding.
+   *
+   * @param formula
+   * @return
+   * @throws ExecutionException if the formula does not compile
+   */
+  public Class<? extends Script> getScriptClass(String formula) throws ExecutionException {
+    return scriptCache.get(formula, () -> compile(formula));
+  }
+
+  /** Drop the loaded conversions, they are reloaded on next use. */
+  public void invalidate() {
+    snapshot = null;
+    scriptCache.invalidateAll();
+  }
+
+  @SuppressWarnings("unchecked")
+  protected Class<? extends Script> compile(String formula) {
+    // one class loader per script, so that it is collected with the script class
+    GroovyClassLoader classLoader =
+        new GroovyClassLoader(getClass().getClassLoader(), compilerConfiguration);
+    return (Class<? extends Script>) classLoader.parseClass(toScript(formula));
+  }
+
+  /** Turn the template expressions of a formula into property accesses on the bound product. */
+  protected String toScript(String formula) {
+    return TEMPLATE_EXPRESSION.matcher(formula).replaceAll("($1)");
+  }
+
+  protected Snapshot getSnapshot() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      synchronized (this) {
+        current = snapshot;
+        if (current == null) {
+          current = build();
+          snapshot = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  protected Snapshot build() {
+
+    List<UnitConversion> unitConversionList = unitConversionRepo.all().fetch();
+    Map<Long, Map<Long, Conversion>> conversions = new HashMap<>();
+
+    for (UnitConversion unitConversion : unitConversionList) {
+      conversions
+          .computeIfAbsent(unitConversion.getStartUnit().getId(), id -> new HashMap<>())
+          .putIfAbsent(unitConversion.getEndUnit().getId(), new Conversion(unitConversion));
+    }
+
+    log.debug("Unit conversion graph built with {} conversions", unitConversionList.size());
+
+    return new Snapshot(conversions);
+  }
+
+  /** Breadth first search of the shortest chain of coefficient conversions. */
+  protected BigDecimal computeDerivedCoefficient(
+      Snapshot current, Long startUnitId, Long endUnitId) {
+
+    // coefficient conversions in both directions
+    Map<Long, Map<Long, BigDecimal>> edges = new HashMap<>();
+    for (Map.Entry<Long, Map<Long, Conversion>> start : current.conversions.entrySet()) {
+      for (Map.Entry<Long, Conversion> end : start.getValue().entrySet()) {
+        Conversion conversion = end.getValue();
+        if (!conversion.isCoefficient()
+            || conversion.getCoef() == null
+            || conversion.getCoef().signum() == 0) {
+          continue;
+        }
+        edges
+            .computeIfAbsent(start.getKey(), id -> new HashMap<>())
+            .putIfAbsent(end.getKey(), conversion.getCoef());
+        edges
+            .computeIfAbsent(end.getKey(), id -> new HashMap<>())
+            .putIfAbsent(
+                start.getKey(),
+                BigDecimal.ONE.divide(
+                    conversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN));
+      }
+    }
+
+    Map<Long, BigDecimal> coefficients = new HashMap<>();
+    Deque<Long> queue = new ArrayDeque<>();
+    coefficients.put(startUnitId, BigDecimal.ONE);
+    queue.add(startUnitId);
+
+    while (!queue.isEmpty()) {
+      Long unitId = queue.poll();
+      BigDecimal coefficient = coefficients.get(unitId);
+      for (Map.Entry<Long, BigDecimal> edge :
+          edges.getOrDefault(unitId, Collections.emptyMap()).entrySet()) {
+        if (coefficients.containsKey(edge.getKey())) {
+          continue;
+        }
+        BigDecimal next = coefficient.multiply(edge.getValue());
+        if (edge.getKey().equals(endUnitId)) {
+          return next.setScale(DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
+        }
+        coefficients.put(edge.getKey(), next);
+        queue.add(edge.getKey());
+      }
+    }
+
+    return null;
+  }
+}
@@ -26,20 +26,19 @@ import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
-import com.axelor.tool.template.TemplateMaker;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import com.google.inject.servlet.RequestScoped;
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
+import groovy.lang.Script;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 import org.codehaus.groovy.control.CompilationFailedException;
-import org.codehaus.groovy.control.CompilerConfiguration;
-import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,14 +47,14 @@ public class UnitConversionService {
   private static final Logger logger =
       LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private static final char TEMPLATE_DELIMITER = '$';
   private static final int DEFAULT_COEFFICIENT_SCALE = 12;
-  protected TemplateMaker maker;
 
   @Inject protected AppBaseService appBaseService;
 
   @Inject protected UnitConversionRepository unitConversionRepo;
 
+  @Inject protected UnitConversionGraph unitConversionGraph;
+
   /**
    * Convert a value from a unit to another
    *
@@ -79,8 +78,7 @@ public class UnitConversionService {
     if (startUnit.equals(endUnit)) return value;
     else {
       try {
-        BigDecimal coefficient =
-            this.getCoefficient(unitConversionRepo.all().fetch(), startUnit, endUnit, product);
+        BigDecimal coefficient = this.getCoefficient(startUnit, endUnit, product);
 
         return value.multiply(coefficient).setScale(scale, RoundingMode.HALF_EVEN);
       } catch (IOException | ClassNotFoundException e) {
@@ -90,6 +88,88 @@ public class UnitConversionService {
     return value;
   }
 
+  /**
+   * Get the conversion coefficient between two units from the unit conversions kept in memory. If
+   * there is no conversion from the start unit to the end unit, the conversion from the end unit to
+   * the start unit is used, then a chain of coefficient conversions. If there still isn't any
+   * result, an Exception is thrown.
+   *
+   * @param startUnit The start unit
+   * @param endUnit The end unit
+   * @param product Optionnal, a product used for complex conversions. Input null if needless.
+   * @return A conversion coefficient to convert from startUnit to endUnit.
+   * @throws AxelorException The required units are not linked by any conversion.
+   * @throws CompilationFailedException
+   * @throws ClassNotFoundException
+   * @throws IOException
+   */
+  public BigDecimal getCoefficient(Unit startUnit, Unit endUnit, Product product)
+      throws AxelorException, CompilationFailedException, ClassNotFoundException, IOException {
+
+    UnitConversionGraph.Conversion conversion =
+        unitConversionGraph.find(startUnit.getId(), endUnit.getId());
+
+    if (conversion != null) {
+      if (conversion.isCoefficient()) {
+        return conversion.getCoef();
+      } else if (product != null) {
+        return this.evaluateFormula(conversion.getFormula(), product);
+      }
+    }
+
+    /* The endUnit become the start unit and the startUnit become the end unit */
+    conversion = unitConversionGraph.find(endUnit.getId(), startUnit.getId());
+
+    if (conversion != null) {
+      if (conversion.isCoefficient() && conversion.getCoef().compareTo(BigDecimal.ZERO) != 0) {
+        return BigDecimal.ONE.divide(
+            conversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
+      } else if (!conversion.isCoefficient() && product != null) {
+        BigDecimal result = this.evaluateFormula(conversion.getFormula(), product);
+        if (result.compareTo(BigDecimal.ZERO) != 0) {
+          return BigDecimal.ONE.divide(result, DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
+        }
+      }
+    }
+
+    BigDecimal coefficient =
+        unitConversionGraph.findDerivedCoefficient(startUnit.getId(), endUnit.getId());
+
+    if (coefficient != null) {
+      return coefficient;
+    }
+
+    throw new AxelorException(
+        TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+        I18n.get(IExceptionMessage.UNIT_CONVERSION_1),
+        startUnit.getName(),
+        endUnit.getName());
+  }
+
+  /**
+   * Evaluate a conversion formula for a product. The product is bound to the script, which is
+   * compiled only once per formula.
+   *
+   * @param formula
+   * @param product
+   * @return
+   * @throws AxelorException The formula can not be compiled.
+   */
+  protected BigDecimal evaluateFormula(String formula, Product product) throws AxelorException {
+
+    Binding binding = new Binding();
+    binding.setVariable(UnitConversionGraph.PRODUCT_VARIABLE, product);
+
+    try {
+      Script script =
+          InvokerHelper.createScript(unitConversionGraph.getScriptClass(formula), binding);
+      return new BigDecimal(script.run().toString());
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new AxelorException(
+          e.getCause(), TraceBackRepository.CATEGORY_CONFIGURATION_ERROR, e.getCause().getMessage());
+    }
+  }
+
   /**
    * Get the conversion coefficient between two units from a conversion list. If the start unit and
    * the end unit can not be found in the list, then the units are swapped. If there still isn't any
@@ -112,11 +192,6 @@ public class UnitConversionService {
       Product product)
       throws AxelorException, CompilationFailedException, ClassNotFoundException, IOException {
     /* Looking for the start unit and the end unit in the unitConversionList to get the coefficient */
-    if (product != null) {
-      this.maker = new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
-      this.maker.setContext(product, "Product");
-    }
-    String eval = null;
     for (UnitConversion unitConversion : unitConversionList) {
 
       if (unitConversion.getStartUnit().equals(startUnit)
@@ -124,15 +199,7 @@ public class UnitConversionService {
         if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF) {
           return unitConversion.getCoef();
         } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          return new BigDecimal(shell.evaluate(eval).toString());
+          return this.evaluateFormula(unitConversion.getFormula(), product);
         }
       }
 
@@ -145,15 +212,7 @@ public class UnitConversionService {
           return BigDecimal.ONE.divide(
               unitConversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
         } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          BigDecimal result = new BigDecimal(shell.evaluate(eval).toString());
+          BigDecimal result = this.evaluateFormula(unitConversion.getFormula(), product);
           if (result.compareTo(BigDecimal.ZERO) != 0) {
             return BigDecimal.ONE.divide(result, DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
           }
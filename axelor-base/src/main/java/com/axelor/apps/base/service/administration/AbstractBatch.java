@@ -32,6 +32,8 @@ import com.google.common.base.Preconditions;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import javax.inject.Inject;
@@ -43,6 +45,12 @@ public abstract class AbstractBatch {
 
   public static final int FETCH_LIMIT = 10;
 
+  /** Number of processed records after which the batch progress is saved. */
+  public static final int CHECKPOINT_RECORDS = 100;
+
+  /** Time in milliseconds after which the batch progress is saved. */
+  public static final long CHECKPOINT_MILLIS = 10_000;
+
   @Inject protected AppBaseService appBaseService;
 
   protected static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -55,6 +63,13 @@ public abstract class AbstractBatch {
   private int done;
   private int anomaly;
 
+  // progress not yet saved on the batch
+  private int pendingRecords;
+  private long lastCheckPointMillis;
+
+  private long startPhaseMillis;
+  private long processPhaseMillis;
+
   protected AbstractBatch() {
     this.batch = new Batch();
 
@@ -102,11 +117,18 @@ public abstract class AbstractBatch {
     if (isRunnable(model)) {
       try {
         threadBatchId.set(batch.getId());
+        long phaseStart = System.currentTimeMillis();
         start();
+        startPhaseMillis = System.currentTimeMillis() - phaseStart;
+        phaseStart = System.currentTimeMillis();
+        lastCheckPointMillis = phaseStart;
         process();
+        processPhaseMillis = System.currentTimeMillis() - phaseStart;
+        saveProgress();
         stop();
         return batch;
       } catch (Exception e) {
+        saveProgressQuietly();
         throw new RuntimeException(e);
       } finally {
         threadBatchId.remove();
@@ -141,6 +163,11 @@ public abstract class AbstractBatch {
 
     batch.setEndDate(ZonedDateTime.now());
     batch.setDuration(getDuring());
+    batch.setDone(done);
+    batch.setAnomaly(anomaly);
+    batch.setStartPhaseDuration(startPhaseMillis);
+    batch.setProcessPhaseDuration(processPhaseMillis);
+    batch.setThroughput(computeThroughput());
 
     checkPoint();
 
@@ -148,29 +175,75 @@ public abstract class AbstractBatch {
   }
 
   protected void incrementDone() {
-    findBatch();
     _incrementDone();
   }
 
+  /**
+   * Count a processed record. The counters are only saved on the batch every {@link
+   * #CHECKPOINT_RECORDS} records or {@link #CHECKPOINT_MILLIS} milliseconds, but pending changes
+   * of the record are still committed, as they used to be along with the batch. The batch is
+   * always found again in the session, so that subclasses clearing the session can still link it
+   * to new records.
+   */
   protected void _incrementDone() {
     done += 1;
-    batch.setDone(done);
-    checkPoint();
+    progress();
 
     LOG.debug("Done ::: {}", done);
   }
 
   protected void incrementAnomaly() {
-    findBatch();
     _incrementAnomaly();
   }
 
   protected void _incrementAnomaly() {
     anomaly += 1;
+    progress();
+
+    LOG.debug("Anomaly ::: {}", anomaly);
+  }
+
+  private void progress() {
+    findBatch();
+
+    pendingRecords += 1;
+    if (pendingRecords >= CHECKPOINT_RECORDS
+        || System.currentTimeMillis() - lastCheckPointMillis >= CHECKPOINT_MILLIS) {
+      saveProgress();
+    } else {
+      commit();
+    }
+  }
+
+  /** Save the counters on the batch. */
+  protected void saveProgress() {
+    findBatch();
+    batch.setDone(done);
     batch.setAnomaly(anomaly);
     checkPoint();
 
-    LOG.debug("Anomaly ::: {}", anomaly);
+    pendingRecords = 0;
+    lastCheckPointMillis = System.currentTimeMillis();
+  }
+
+  private void saveProgressQuietly() {
+    try {
+      saveProgress();
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e);
+    }
+  }
+
+  /** Commit the pending changes, if no transaction is already running. */
+  @Transactional
+  protected void commit() {}
+
+  /** Processed records per second, from the start of the process phase. */
+  protected BigDecimal computeThroughput() {
+    long millis = processPhaseMillis > 0 ? processPhaseMillis : 1;
+    return BigDecimal.valueOf(done + anomaly)
+        .multiply(BigDecimal.valueOf(1000))
+        .divide(BigDecimal.valueOf(millis), 2, RoundingMode.HALF_EVEN);
   }
 
   protected void addComment(String comment) {
@@ -0,0 +1,276 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.administration;
+
+import com.axelor.apps.base.db.Sequence;
+import com.axelor.apps.base.db.SequenceVersion;
+import com.axelor.apps.base.db.repo.SequenceRepository;
+import com.axelor.apps.base.db.repo.SequenceVersionRepository;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.google.common.util.concurrent.Striped;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.UnitOfWork;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out sequence numbers from blocks reserved in advance.
+ *
+ * <p>A block is reserved by moving the {@link SequenceVersion#getNextNum()} forward by {@link
+ * Sequence#getAllocationBlockSize()} increments, in its own transaction, so that the version row
+ * is only locked once per block instead of once per number. Numbers left in a block when the
+ * server stops, or when the sequence is edited, are lost: this allocation mode is not gap-free and
+ * must only be enabled on sequences where that is acceptable.
+ *
+ * <p>Blocks are kept by sequence and by version, so that numbers taken alternately for dates of
+ * different versions each come from the block of their own version.
+ */
+@ThreadSafe
+@Singleton
+public class SequenceBlockAllocator {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int RESERVATION_THREADS = 2;
+  private static final int LOCK_STRIPES = 64;
+
+  // sequence id -> period or version key -> block
+  private final ConcurrentMap<Long, ConcurrentMap<String, Block>> blocks =
+      new ConcurrentHashMap<>();
+
+  private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+  // block reservations are committed from a separate thread so that they do not depend on the
+  // caller transaction
+  private final ExecutorService executor = Executors.newFixedThreadPool(RESERVATION_THREADS);
+
+  private final LongAdder waitCount = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+
+  private SequenceRepository sequenceRepo;
+
+  private SequenceVersionRepository sequenceVersionRepository;
+
+  @Inject
+  public SequenceBlockAllocator(
+      SequenceRepository sequenceRepo, SequenceVersionRepository sequenceVersionRepository) {
+    this.sequenceRepo = sequenceRepo;
+    this.sequenceVersionRepository = sequenceVersionRepository;
+  }
+
+  /**
+   * Return the next number of the sequence version matching the given date, reserving a new block
+   * when the current one is exhausted.
+   *
+   * @param sequence
+   * @param refDate
+   * @return
+   */
+  public long nextNum(Sequence sequence, LocalDate refDate) {
+
+    ConcurrentMap<String, Block> sequenceBlocks =
+        blocks.computeIfAbsent(sequence.getId(), id -> new ConcurrentHashMap<>());
+
+    long nextNum = next(sequence, sequenceBlocks, refDate);
+    if (nextNum > 0) {
+      return nextNum;
+    }
+
+    long start = System.nanoTime();
+    Lock lock = locks.get(sequence.getId());
+    lock.lock();
+    try {
+      nextNum = next(sequence, sequenceBlocks, refDate);
+      if (nextNum > 0) {
+        return nextNum;
+      }
+      Block block = reserveBlock(sequence.getId(), refDate);
+      sequenceBlocks.put(block.key, block);
+      return block.next(refDate);
+    } finally {
+      lock.unlock();
+      waitCount.increment();
+      waitNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Drop the blocks reserved for the given sequence, the remaining numbers are lost.
+   *
+   * @param sequenceId
+   */
+  public void invalidate(Long sequenceId) {
+    if (sequenceId != null) {
+      blocks.remove(sequenceId);
+    }
+  }
+
+  /** Number of callers which had to wait for a block reservation. */
+  public long getWaitCount() {
+    return waitCount.sum();
+  }
+
+  /** Total time, in milliseconds, spent by callers waiting for block reservations. */
+  public long getWaitMillis() {
+    return waitNanos.sum() / 1_000_000;
+  }
+
+  /** Average time, in milliseconds, spent by callers waiting for a block reservation. */
+  public double getAverageWaitMillis() {
+    long count = waitCount.sum();
+    return count == 0 ? 0 : waitNanos.sum() / 1_000_000d / count;
+  }
+
+  /** Take the next number from the block covering the date, or return -1 if there is none. */
+  protected long next(Sequence sequence, Map<String, Block> sequenceBlocks, LocalDate refDate) {
+
+    if (sequence.getMonthlyResetOk() || sequence.getYearlyResetOk()) {
+      Block block = sequenceBlocks.get(computePeriodKey(sequence, refDate));
+      return block != null ? block.next(refDate) : -1;
+    }
+
+    // blocks of the versions used so far, few enough to be scanned
+    for (Block block : sequenceBlocks.values()) {
+      if (block.contains(refDate)) {
+        return block.next(refDate);
+      }
+    }
+    return -1;
+  }
+
+  protected String computePeriodKey(Sequence sequence, LocalDate refDate) {
+    if (sequence.getMonthlyResetOk()) {
+      return refDate.getYear() + "-" + refDate.getMonthValue();
+    }
+    return Integer.toString(refDate.getYear());
+  }
+
+  protected Block reserveBlock(Long sequenceId, LocalDate refDate) {
+
+    Future<Block> future = executor.submit(() -> doReserveBlock(sequenceId, refDate));
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  protected Block doReserveBlock(Long sequenceId, LocalDate refDate) {
+
+    EntityManager em = JPA.em();
+    EntityTransaction transaction = em.getTransaction();
+
+    try {
+      transaction.begin();
+
+      Sequence sequence = sequenceRepo.find(sequenceId);
+      SequenceVersion sequenceVersion =
+          Beans.get(SequenceService.class).getVersion(sequence, refDate);
+      if (sequenceVersion.getId() != null) {
+        em.refresh(sequenceVersion, LockModeType.PESSIMISTIC_WRITE);
+      }
+
+      long step = sequence.getToBeAdded();
+      long size = Math.max(sequence.getAllocationBlockSize(), 1);
+      long first = sequenceVersion.getNextNum();
+      sequenceVersion.setNextNum(first + size * step);
+      sequenceVersionRepository.save(sequenceVersion);
+
+      transaction.commit();
+
+      log.debug(
+          "Reserved block of {} numbers from {} for sequence {}", size, first, sequence.getCode());
+
+      if (sequence.getMonthlyResetOk() || sequence.getYearlyResetOk()) {
+        return new Block(computePeriodKey(sequence, refDate), null, null, first, size, step);
+      }
+      return new Block(
+          "v" + sequenceVersion.getId(),
+          sequenceVersion.getStartDate(),
+          sequenceVersion.getEndDate(),
+          first,
+          size,
+          step);
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+      // close the entity manager of the worker thread
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  protected static class Block {
+
+    private final String key;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final AtomicLong next;
+    private final long limit;
+    private final long step;
+
+    protected Block(
+        String key, LocalDate startDate, LocalDate endDate, long first, long size, long step) {
+      this.key = key;
+      this.startDate = startDate;
+      this.endDate = endDate;
+      this.next = new AtomicLong(first);
+      this.limit = first + size * step;
+      this.step = step;
+    }
+
+    protected boolean contains(LocalDate refDate) {
+      return (startDate == null || !refDate.isBefore(startDate))
+          && (endDate == null || !refDate.isAfter(endDate));
+    }
+
+    /** Return the next number of the block, or -1 if the block is exhausted or out of range. */
+    protected long next(LocalDate refDate) {
+      if (!contains(refDate)) {
+        return -1;
+      }
+      long nextNum = next.getAndAdd(step);
+      return nextNum < limit ? nextNum : -1;
+    }
+  }
+}
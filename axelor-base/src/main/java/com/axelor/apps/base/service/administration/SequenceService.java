@@ -40,9 +40,8 @@ import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoField;
-import java.time.temporal.IsoFields;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -70,6 +69,8 @@ public class SequenceService {
 
   @Inject private SequenceRepository sequenceRepo;
 
+  private final ConcurrentMap<Long, SequenceTemplate[]> templateCache = new ConcurrentHashMap<>();
+
   @Inject
   public SequenceService(
       SequenceVersionRepository sequenceVersionRepository, AppBaseService appBaseService) {
@@ -191,46 +192,84 @@ public class SequenceService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public String getSequenceNumber(Sequence sequence, LocalDate refDate) {
 
-    SequenceVersion sequenceVersion = getVersion(sequence, refDate);
+    long nextNum;
 
-    String seqPrefixe = StringUtils.defaultString(sequence.getPrefixe(), ""),
-        seqSuffixe = StringUtils.defaultString(sequence.getSuffixe(), ""),
-        sequenceValue;
+    if (sequence.getBlockAllocationOk() && sequence.getId() != null) {
+      nextNum = Beans.get(SequenceBlockAllocator.class).nextNum(sequence, refDate);
+    } else {
+      SequenceVersion sequenceVersion = getVersion(sequence, refDate);
+      nextNum = sequenceVersion.getNextNum();
+      sequenceVersion.setNextNum(nextNum + sequence.getToBeAdded());
+      sequenceVersionRepository.save(sequenceVersion);
+    }
+
+    String sequenceValue;
 
     if (sequence.getSequenceTypeSelect() == SequenceTypeSelect.NUMBERS) {
       sequenceValue =
-          StringUtils.leftPad(
-              sequenceVersion.getNextNum().toString(), sequence.getPadding(), PADDING_STRING);
+          StringUtils.leftPad(Long.toString(nextNum), sequence.getPadding(), PADDING_STRING);
     } else {
-      sequenceValue = findNextLetterSequence(sequenceVersion);
+      sequenceValue = findNextLetterSequence(nextNum, sequence);
     }
-    sequenceVersion.setNextNum(sequenceVersion.getNextNum() + sequence.getToBeAdded());
-    String nextSeq =
-        (seqPrefixe + sequenceValue + seqSuffixe)
-            .replaceAll(PATTERN_FULL_YEAR, Integer.toString(refDate.get(ChronoField.YEAR_OF_ERA)))
-            .replaceAll(PATTERN_YEAR, refDate.format(DateTimeFormatter.ofPattern("yy")))
-            .replaceAll(PATTERN_MONTH, Integer.toString(refDate.getMonthValue()))
-            .replaceAll(PATTERN_FULL_MONTH, refDate.format(DateTimeFormatter.ofPattern("MM")))
-            .replaceAll(PATTERN_DAY, Integer.toString(refDate.getDayOfMonth()))
-            .replaceAll(
-                PATTERN_WEEK, Integer.toString(refDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)));
+
+    SequenceTemplate[] templates = getTemplates(sequence);
+    StringBuilder sb = new StringBuilder(32);
+    templates[0].render(sb, refDate).append(sequenceValue);
+    String nextSeq = templates[1].render(sb, refDate).toString();
 
     log.debug("nextSeq : : : : {}", nextSeq);
 
-    sequenceVersionRepository.save(sequenceVersion);
     return nextSeq;
   }
 
-  private String findNextLetterSequence(SequenceVersion sequenceVersion) {
-    long n = sequenceVersion.getNextNum();
+  /**
+   * Get the compiled prefix and suffix of the sequence, compiling them on first use.
+   *
+   * @param sequence
+   * @return an array holding the prefix and the suffix templates
+   */
+  protected SequenceTemplate[] getTemplates(Sequence sequence) {
+
+    String seqPrefixe = StringUtils.defaultString(sequence.getPrefixe(), ""),
+        seqSuffixe = StringUtils.defaultString(sequence.getSuffixe(), "");
+
+    SequenceTemplate[] templates =
+        sequence.getId() != null ? templateCache.get(sequence.getId()) : null;
+
+    if (templates == null
+        || !templates[0].getSource().equals(seqPrefixe)
+        || !templates[1].getSource().equals(seqSuffixe)) {
+      templates =
+          new SequenceTemplate[] {
+            SequenceTemplate.compile(seqPrefixe), SequenceTemplate.compile(seqSuffixe)
+          };
+      if (sequence.getId() != null) {
+        templateCache.put(sequence.getId(), templates);
+      }
+    }
+
+    return templates;
+  }
+
+  /**
+   * Drop the compiled prefix and suffix of the sequence.
+   *
+   * @param sequenceId
+   */
+  public void invalidateTemplates(Long sequenceId) {
+    if (sequenceId != null) {
+      templateCache.remove(sequenceId);
+    }
+  }
+
+  private String findNextLetterSequence(long n, Sequence sequence) {
     char[] buf = new char[(int) Math.floor(Math.log(25 * (n + 1)) / Math.log(26))];
     for (int i = buf.length - 1; i >= 0; i--) {
       n--;
       buf[i] = (char) ('A' + n % 26);
       n /= 26;
     }
-    if (sequenceVersion.getSequence().getSequenceLettersTypeSelect()
-        == SequenceLettersTypeSelect.UPPERCASE) {
+    if (sequence.getSequenceLettersTypeSelect() == SequenceLettersTypeSelect.UPPERCASE) {
       return new String(buf);
     }
     return new String(buf).toLowerCase();
@@ -0,0 +1,176 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.administration;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Sequence prefix or suffix parsed once into literal and date parts.
+ *
+ * <p>Supported tags are the ones documented on the sequence form: %YYYY, %YY, %M, %FM, %D and %WY.
+ * Rendering gives the same result as replacing every tag in turn, without regular expressions nor
+ * formatters.
+ */
+@Immutable
+public class SequenceTemplate {
+
+  public static final SequenceTemplate EMPTY = new SequenceTemplate("", new Part[0]);
+
+  protected enum Tag {
+    // longest tags first, so that %YYYY is not read as %YY
+    FULL_YEAR("%YYYY"),
+    YEAR("%YY"),
+    FULL_MONTH("%FM"),
+    MONTH("%M"),
+    DAY("%D"),
+    WEEK("%WY");
+
+    private final String pattern;
+
+    Tag(String pattern) {
+      this.pattern = pattern;
+    }
+  }
+
+  protected static class Part {
+
+    private final String literal;
+    private final Tag tag;
+
+    protected Part(String literal, Tag tag) {
+      this.literal = literal;
+      this.tag = tag;
+    }
+  }
+
+  private final String source;
+
+  private final Part[] parts;
+
+  private final boolean dateDependent;
+
+  protected SequenceTemplate(String source, Part[] parts) {
+    this.source = source;
+    this.parts = parts;
+
+    boolean hasTag = false;
+    for (Part part : parts) {
+      hasTag |= part.tag != null;
+    }
+    this.dateDependent = hasTag;
+  }
+
+  public static SequenceTemplate compile(String source) {
+
+    if (source == null || source.isEmpty()) {
+      return EMPTY;
+    }
+
+    List<Part> parts = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+
+    while (i < source.length()) {
+      Tag tag = source.charAt(i) == '%' ? findTag(source, i) : null;
+      if (tag == null) {
+        literal.append(source.charAt(i++));
+        continue;
+      }
+      if (literal.length() > 0) {
+        parts.add(new Part(literal.toString(), null));
+        literal.setLength(0);
+      }
+      parts.add(new Part(null, tag));
+      i += tag.pattern.length();
+    }
+    if (literal.length() > 0) {
+      parts.add(new Part(literal.toString(), null));
+    }
+
+    return new SequenceTemplate(source, parts.toArray(new Part[parts.size()]));
+  }
+
+  protected static Tag findTag(String source, int index) {
+    for (Tag tag : Tag.values()) {
+      if (source.startsWith(tag.pattern, index)) {
+        return tag;
+      }
+    }
+    return null;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  /** Whether rendering depends on the date. */
+  public boolean isDateDependent() {
+    return dateDependent;
+  }
+
+  public StringBuilder render(StringBuilder sb, LocalDate refDate) {
+    for (Part part : parts) {
+      if (part.tag == null) {
+        sb.append(part.literal);
+        continue;
+      }
+      switch (part.tag) {
+        case FULL_YEAR:
+          sb.append(refDate.get(ChronoField.YEAR_OF_ERA));
+          break;
+        case YEAR:
+          appendTwoDigits(sb, Math.floorMod(refDate.getYear(), 100));
+          break;
+        case FULL_MONTH:
+          appendTwoDigits(sb, refDate.getMonthValue());
+          break;
+        case MONTH:
+          sb.append(refDate.getMonthValue());
+          break;
+        case DAY:
+          sb.append(refDate.getDayOfMonth());
+          break;
+        case WEEK:
+          sb.append(refDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+          break;
+        default:
+          break;
+      }
+    }
+    return sb;
+  }
+
+  public String render(LocalDate refDate) {
+    if (!dateDependent) {
+      return source;
+    }
+    return render(new StringBuilder(source.length() + 8), refDate).toString();
+  }
+
+  private static void appendTwoDigits(StringBuilder sb, int value) {
+    if (value < 10) {
+      sb.append('0');
+    }
+    sb.append(value);
+  }
+}
@@ -20,11 +20,15 @@ package com.axelor.apps.base.service.tax;
 import com.axelor.apps.account.db.FiscalPosition;
 import com.axelor.apps.account.db.Tax;
 import com.axelor.apps.account.db.TaxEquiv;
+import com.axelor.db.JPA;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 @Singleton
 public class FiscalPositionServiceImpl implements FiscalPositionService {
 
+  @Inject protected TaxIndex taxIndex;
+
   @Override
   public Tax getTax(FiscalPosition fiscalPosition, Tax tax) {
     TaxEquiv taxEquiv = getTaxEquiv(fiscalPosition, tax);
@@ -34,6 +38,11 @@ public class FiscalPositionServiceImpl implements FiscalPositionService {
 
   @Override
   public TaxEquiv getTaxEquiv(FiscalPosition fiscalPosition, Tax tax) {
+    if (fiscalPosition != null && tax != null && fiscalPosition.getId() != null) {
+      Long taxEquivId = taxIndex.findTaxEquivId(fiscalPosition, tax);
+      return taxEquivId != null ? JPA.find(TaxEquiv.class, taxEquivId) : null;
+    }
+
     if (fiscalPosition != null && fiscalPosition.getTaxEquivList() != null && tax != null) {
       for (TaxEquiv taxEquiv : fiscalPosition.getTaxEquivList()) {
         if (taxEquiv.getFromTax() != null
@@ -0,0 +1,193 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.tax;
+
+import com.axelor.apps.account.db.FiscalPosition;
+import com.axelor.apps.account.db.Tax;
+import com.axelor.apps.account.db.TaxEquiv;
+import com.axelor.apps.account.db.TaxLine;
+import com.google.inject.Singleton;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Tax lines by date and tax equivalences by tax, shared between sessions.
+ *
+ * <p>Entries are kept by tax and by fiscal position, and are built on first use from the lines of
+ * the given record. They are only rebuilt once invalidated, which the repositories of taxes, tax
+ * lines, fiscal positions and tax equivalences do after the commit of a save or a removal. Only ids
+ * are kept, so that callers get back entities attached to their own session.
+ */
+@ThreadSafe
+@Singleton
+public class TaxIndex {
+
+  private final ConcurrentMap<Long, TaxEntry> taxEntries = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Long, FiscalPositionEntry> fiscalPositionEntries =
+      new ConcurrentHashMap<>();
+
+  protected static class TaxLineEntry {
+
+    private final Long id;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    protected TaxLineEntry(TaxLine taxLine) {
+      this.id = taxLine.getId();
+      this.startDate = taxLine.getStartDate();
+      this.endDate = taxLine.getEndDate();
+    }
+
+    protected boolean contains(LocalDate date) {
+      return !startDate.isAfter(date) && (endDate == null || !endDate.isBefore(date));
+    }
+  }
+
+  protected static class TaxEntry {
+
+    // sorted by start date
+    private final TaxLineEntry[] taxLines;
+
+    protected TaxEntry(TaxLineEntry[] taxLines) {
+      this.taxLines = taxLines;
+    }
+  }
+
+  protected static class FiscalPositionEntry {
+
+    // from tax id -> tax equivalence id
+    private final Map<Long, Long> taxEquivs;
+
+    protected FiscalPositionEntry(Map<Long, Long> taxEquivs) {
+      this.taxEquivs = taxEquivs;
+    }
+  }
+
+  /**
+   * Find the id of the tax line of the tax which applies at the given date.
+   *
+   * @param tax a saved tax
+   * @param date
+   * @return the id of the tax line or null if there is none
+   */
+  public Long findTaxLineId(Tax tax, LocalDate date) {
+
+    TaxEntry entry = taxEntries.get(tax.getId());
+    if (entry == null) {
+      entry = buildTaxEntry(tax);
+      taxEntries.put(tax.getId(), entry);
+    }
+
+    TaxLineEntry[] taxLines = entry.taxLines;
+
+    // last line starting on or before the date
+    int low = 0;
+    int high = taxLines.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (taxLines[mid].startDate.isAfter(date)) {
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+
+    // lines should not overlap, but an older line without end date can still cover the date
+    for (int i = high; i >= 0; i--) {
+      if (taxLines[i].contains(date)) {
+        return taxLines[i].id;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find the id of the tax equivalence of the fiscal position which replaces the given tax.
+   *
+   * @param fiscalPosition a saved fiscal position
+   * @param tax
+   * @return the id of the tax equivalence or null if there is none
+   */
+  public Long findTaxEquivId(FiscalPosition fiscalPosition, Tax tax) {
+
+    FiscalPositionEntry entry = fiscalPositionEntries.get(fiscalPosition.getId());
+    if (entry == null) {
+      entry = buildFiscalPositionEntry(fiscalPosition);
+      fiscalPositionEntries.put(fiscalPosition.getId(), entry);
+    }
+
+    return entry.taxEquivs.get(tax.getId());
+  }
+
+  public void invalidateTax(Long taxId) {
+    if (taxId != null) {
+      taxEntries.remove(taxId);
+    }
+  }
+
+  public void invalidateFiscalPosition(Long fiscalPositionId) {
+    if (fiscalPositionId != null) {
+      fiscalPositionEntries.remove(fiscalPositionId);
+    }
+  }
+
+  protected TaxEntry buildTaxEntry(Tax tax) {
+
+    List<TaxLineEntry> taxLines = new ArrayList<>();
+
+    if (tax.getTaxLineList() != null) {
+      for (TaxLine taxLine : tax.getTaxLineList()) {
+        if (taxLine.getId() != null && taxLine.getStartDate() != null) {
+          taxLines.add(new TaxLineEntry(taxLine));
+        }
+      }
+    }
+
+    // stable sort, so that the first line of the list wins between lines starting the same day
+    Collections.reverse(taxLines);
+    taxLines.sort(Comparator.comparing(taxLine -> taxLine.startDate));
+
+    return new TaxEntry(taxLines.toArray(new TaxLineEntry[taxLines.size()]));
+  }
+
+  protected FiscalPositionEntry buildFiscalPositionEntry(FiscalPosition fiscalPosition) {
+
+    Map<Long, Long> taxEquivs = new HashMap<>();
+
+    if (fiscalPosition.getTaxEquivList() != null) {
+      for (TaxEquiv taxEquiv : fiscalPosition.getTaxEquivList()) {
+        if (taxEquiv.getId() != null
+            && taxEquiv.getFromTax() != null
+            && taxEquiv.getToTax() != null) {
+          taxEquivs.putIfAbsent(taxEquiv.getFromTax().getId(), taxEquiv.getId());
+        }
+      }
+    }
+
+    return new FiscalPositionEntry(taxEquivs);
+  }
+}
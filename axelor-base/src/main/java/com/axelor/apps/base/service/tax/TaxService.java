@@ -21,9 +21,11 @@ import com.axelor.apps.account.db.Tax;
 import com.axelor.apps.account.db.TaxLine;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.tool.date.DateTool;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -31,6 +33,8 @@ import java.time.LocalDate;
 @Singleton
 public class TaxService {
 
+  @Inject protected TaxIndex taxIndex;
+
   /**
    * Fonction permettant de récupérer le taux de TVA d'une TVA
    *
@@ -61,7 +65,15 @@ public class TaxService {
       return tax.getActiveTaxLine();
     }
 
-    if (tax.getTaxLineList() != null && !tax.getTaxLineList().isEmpty()) {
+    if (tax.getId() != null) {
+
+      Long taxLineId = taxIndex.findTaxLineId(tax, localDate);
+
+      if (taxLineId != null) {
+        return JPA.find(TaxLine.class, taxLineId);
+      }
+
+    } else if (tax.getTaxLineList() != null && !tax.getTaxLineList().isEmpty()) {
 
       for (TaxLine taxLine : tax.getTaxLineList()) {
 
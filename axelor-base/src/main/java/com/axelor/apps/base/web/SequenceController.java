@@ -18,8 +18,11 @@
 package com.axelor.apps.base.web;
 
 import com.axelor.apps.base.db.Sequence;
+import com.axelor.apps.base.exceptions.IExceptionMessage;
+import com.axelor.apps.base.service.administration.SequenceBlockAllocator;
 import com.axelor.apps.base.service.administration.SequenceService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
 import com.google.common.base.Strings;
@@ -44,4 +47,14 @@ public class SequenceController {
     String fullName = sequenceService.computeFullName(sequence);
     response.setValue("fullName", fullName);
   }
+
+  public void showBlockAllocationStats(ActionRequest request, ActionResponse response) {
+    SequenceBlockAllocator allocator = Beans.get(SequenceBlockAllocator.class);
+    response.setFlash(
+        String.format(
+            I18n.get(IExceptionMessage.SEQUENCE_BLOCK_ALLOCATION_STATS),
+            allocator.getWaitCount(),
+            allocator.getWaitMillis(),
+            allocator.getAverageWaitMillis()));
+  }
 }
@@ -0,0 +1,66 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.service.administration.SequenceTemplate;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSequenceTemplate {
+
+  private static final String[] PATTERNS = {
+    "", "INV", "INV%YYYY", "%YY%FM-", "F%M/%D-%WY", "%YYY%%M", "A%YYYY%YY%FM%M%D%WY%Z", "%"
+  };
+
+  private static final LocalDate[] DATES = {
+    LocalDate.of(2019, 1, 1),
+    LocalDate.of(2019, 12, 31),
+    LocalDate.of(2020, 2, 29),
+    LocalDate.of(2005, 10, 9)
+  };
+
+  @Test
+  public void testRenderMatchesReplaceAll() {
+    for (String pattern : PATTERNS) {
+      SequenceTemplate template = SequenceTemplate.compile(pattern);
+      for (LocalDate date : DATES) {
+        Assert.assertEquals(pattern, replaceAll(pattern, date), template.render(date));
+      }
+    }
+  }
+
+  @Test
+  public void testDateDependent() {
+    Assert.assertFalse(SequenceTemplate.compile("INV-").isDateDependent());
+    Assert.assertTrue(SequenceTemplate.compile("INV-%YY").isDateDependent());
+  }
+
+  private String replaceAll(String pattern, LocalDate refDate) {
+    return pattern
+        .replaceAll("%YYYY", Integer.toString(refDate.get(ChronoField.YEAR_OF_ERA)))
+        .replaceAll("%YY", refDate.format(DateTimeFormatter.ofPattern("yy")))
+        .replaceAll("%M", Integer.toString(refDate.getMonthValue()))
+        .replaceAll("%FM", refDate.format(DateTimeFormatter.ofPattern("MM")))
+        .replaceAll("%D", Integer.toString(refDate.getDayOfMonth()))
+        .replaceAll("%WY", Integer.toString(refDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)));
+  }
+}
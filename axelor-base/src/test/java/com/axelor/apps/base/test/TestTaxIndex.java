@@ -0,0 +1,109 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.account.db.FiscalPosition;
+import com.axelor.apps.account.db.Tax;
+import com.axelor.apps.account.db.TaxEquiv;
+import com.axelor.apps.account.db.TaxLine;
+import com.axelor.apps.base.service.tax.TaxIndex;
+import java.time.LocalDate;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTaxIndex {
+
+  private final TaxIndex taxIndex = new TaxIndex();
+
+  @Test
+  public void testFindTaxLine() {
+    Tax tax = createTax(1L);
+    addTaxLine(tax, 10L, LocalDate.of(2018, 1, 1), LocalDate.of(2018, 12, 31));
+    addTaxLine(tax, 11L, LocalDate.of(2019, 1, 1), null);
+
+    Assert.assertNull(taxIndex.findTaxLineId(tax, LocalDate.of(2017, 6, 1)));
+    Assert.assertEquals(Long.valueOf(10L), taxIndex.findTaxLineId(tax, LocalDate.of(2018, 6, 1)));
+    Assert.assertEquals(Long.valueOf(11L), taxIndex.findTaxLineId(tax, LocalDate.of(2019, 1, 1)));
+  }
+
+  @Test
+  public void testTaxLineEditedThenInvalidated() {
+    Tax tax = createTax(2L);
+    TaxLine taxLine = addTaxLine(tax, 20L, LocalDate.of(2018, 1, 1), LocalDate.of(2018, 12, 31));
+    addTaxLine(tax, 21L, LocalDate.of(2019, 1, 1), null);
+
+    LocalDate date = LocalDate.of(2019, 6, 1);
+    Assert.assertEquals(Long.valueOf(21L), taxIndex.findTaxLineId(tax, date));
+
+    taxLine.setStartDate(LocalDate.of(2019, 6, 1));
+    taxLine.setEndDate(null);
+
+    // the lines are not read again until the repository drops the entry
+    Assert.assertEquals(Long.valueOf(21L), taxIndex.findTaxLineId(tax, date));
+
+    taxIndex.invalidateTax(tax.getId());
+
+    Assert.assertEquals(Long.valueOf(20L), taxIndex.findTaxLineId(tax, date));
+  }
+
+  @Test
+  public void testTaxEquivEditedThenInvalidated() {
+    Tax fromTax = createTax(3L);
+    Tax toTax = createTax(4L);
+    Tax otherTax = createTax(5L);
+
+    FiscalPosition fiscalPosition = new FiscalPosition();
+    fiscalPosition.setId(30L);
+    fiscalPosition.setVersion(0);
+    TaxEquiv taxEquiv = new TaxEquiv();
+    taxEquiv.setId(31L);
+    taxEquiv.setVersion(0);
+    taxEquiv.setFromTax(fromTax);
+    taxEquiv.setToTax(toTax);
+    fiscalPosition.addTaxEquivListItem(taxEquiv);
+
+    Assert.assertEquals(Long.valueOf(31L), taxIndex.findTaxEquivId(fiscalPosition, fromTax));
+    Assert.assertNull(taxIndex.findTaxEquivId(fiscalPosition, otherTax));
+
+    taxEquiv.setFromTax(otherTax);
+
+    Assert.assertEquals(Long.valueOf(31L), taxIndex.findTaxEquivId(fiscalPosition, fromTax));
+
+    taxIndex.invalidateFiscalPosition(fiscalPosition.getId());
+
+    Assert.assertNull(taxIndex.findTaxEquivId(fiscalPosition, fromTax));
+    Assert.assertEquals(Long.valueOf(31L), taxIndex.findTaxEquivId(fiscalPosition, otherTax));
+  }
+
+  private Tax createTax(Long id) {
+    Tax tax = new Tax();
+    tax.setId(id);
+    tax.setVersion(0);
+    return tax;
+  }
+
+  private TaxLine addTaxLine(Tax tax, Long id, LocalDate startDate, LocalDate endDate) {
+    TaxLine taxLine = new TaxLine();
+    taxLine.setId(id);
+    taxLine.setVersion(0);
+    taxLine.setStartDate(startDate);
+    taxLine.setEndDate(endDate);
+    tax.addTaxLineListItem(taxLine);
+    return taxLine;
+  }
+}
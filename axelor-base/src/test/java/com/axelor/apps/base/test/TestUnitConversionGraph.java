@@ -0,0 +1,59 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.service.UnitConversionGraph;
+import com.google.common.collect.ImmutableMap;
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import java.math.BigDecimal;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestUnitConversionGraph {
+
+  private static final String FORMULA = "$Product.netMass$ * 2 + sqrt(4)";
+
+  private final UnitConversionGraph unitConversionGraph = new UnitConversionGraph(null);
+
+  @Test
+  public void testFormulaCompiledOncePerFormula() throws Exception {
+    Class<? extends Script> scriptClass = unitConversionGraph.getScriptClass(FORMULA);
+
+    Assert.assertSame(scriptClass, unitConversionGraph.getScriptClass(FORMULA));
+    Assert.assertEquals(0, new BigDecimal("5").compareTo(run(scriptClass, new BigDecimal("1.5"))));
+    Assert.assertEquals(0, new BigDecimal("22").compareTo(run(scriptClass, BigDecimal.TEN)));
+  }
+
+  @Test
+  public void testFormulaWithoutProduct() throws Exception {
+    Class<? extends Script> scriptClass = unitConversionGraph.getScriptClass("1000 / 4");
+
+    Assert.assertEquals(0, new BigDecimal("250").compareTo(run(scriptClass, null)));
+  }
+
+  private BigDecimal run(Class<? extends Script> scriptClass, BigDecimal netMass) {
+    Binding binding = new Binding();
+    binding.setVariable(
+        UnitConversionGraph.PRODUCT_VARIABLE,
+        netMass != null ? ImmutableMap.of("netMass", netMass) : null);
+    Script script = InvokerHelper.createScript(scriptClass, binding);
+    return new BigDecimal(script.run().toString());
+  }
+}
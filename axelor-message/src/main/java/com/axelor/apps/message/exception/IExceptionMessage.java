@@ -54,4 +54,11 @@ public interface IExceptionMessage {
       "%d messages has been regenerated successfully and %d errors append." /*)*/;
   static final String SET_EMAIL_TEMPLATE_MESSAGE = /*$$(*/
       "Please set the email template to send" /*)*/;
+
+  /** Mail dispatcher */
+  static final String MAIL_DISPATCHER_QUEUE_FULL = /*$$(*/
+      "Too many emails waiting to be sent, the message stays in draft." /*)*/;
+
+  static final String MAIL_DISPATCHER_STATUS = /*$$(*/
+      "Emails in queue: %d, being sent: %d, sent: %d, failed: %d" /*)*/;
 }
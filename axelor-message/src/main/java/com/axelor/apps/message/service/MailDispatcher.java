@@ -0,0 +1,562 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.app.AppSettings;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.apps.message.db.EmailAccount;
+import com.axelor.apps.message.db.Message;
+import com.axelor.apps.message.db.repo.MessageRepository;
+import com.axelor.apps.message.exception.IExceptionMessage;
+import com.axelor.auth.AuthUtils;
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.axelor.mail.MailSender;
+import com.axelor.mail.SmtpAccount;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the emails of messages in the background, shared between sessions.
+ *
+ * <p>Emails are sent by a fixed number of workers fed by a bounded queue: when the queue is full,
+ * the email is refused and its message stays in draft. Each worker keeps its SMTP connection to an
+ * account open between emails, and sends are throttled per account if a rate is configured. A
+ * failed send is retried with an increasing delay. Emails are only queued once the transaction of
+ * their message is committed. Sent messages are marked as such in batches, through the message
+ * repository; a message that could not be sent stays in draft and can be sent again. On shutdown
+ * of the application, the queued emails are sent for a bounded time before the connections are
+ * closed.
+ *
+ * <p>The dispatcher is configured in the application settings with {@code mail.dispatcher.threads},
+ * {@code mail.dispatcher.queue.size}, {@code mail.dispatcher.rate} (emails per second and per
+ * account, 0 for no limit) and {@code mail.dispatcher.max.attempts}.
+ */
+@ThreadSafe
+@Singleton
+public class MailDispatcher {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int DEFAULT_THREADS = 4;
+  private static final int DEFAULT_QUEUE_SIZE = 1000;
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  private static final long RETRY_DELAY = 5000; // milliseconds, doubled on each attempt
+  private static final long FLUSH_DELAY = 1000; // milliseconds
+  private static final long SHUTDOWN_DELAY = 30; // seconds
+
+  protected static final int QUERY_CHUNK_SIZE = 1000;
+
+  private final int maxAttempts;
+  private final int rate;
+  private final long retryDelay;
+
+  private final ThreadPoolExecutor workers;
+  private final ScheduledExecutorService scheduler;
+
+  private final ConcurrentMap<Long, Account> accounts = new ConcurrentHashMap<>();
+
+  // account id -> open connection of the current worker
+  private final ThreadLocal<Map<Long, Connection>> connections =
+      ThreadLocal.withInitial(HashMap::new);
+  // connections of all the workers, closed on shutdown
+  private final Set<Connection> openConnections = ConcurrentHashMap.newKeySet();
+
+  private final Queue<Delivery> sentDeliveries = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger pendingRetryCount = new AtomicInteger();
+  private final AtomicLong sentCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+
+  protected MailAccountService mailAccountService;
+  protected MessageRepository messageRepository;
+
+  @Inject
+  public MailDispatcher(
+      MailAccountService mailAccountService, MessageRepository messageRepository) {
+    this(
+        mailAccountService,
+        messageRepository,
+        AppSettings.get().getInt("mail.dispatcher.threads", DEFAULT_THREADS),
+        AppSettings.get().getInt("mail.dispatcher.queue.size", DEFAULT_QUEUE_SIZE),
+        AppSettings.get().getInt("mail.dispatcher.max.attempts", DEFAULT_MAX_ATTEMPTS),
+        AppSettings.get().getInt("mail.dispatcher.rate", 0),
+        RETRY_DELAY,
+        FLUSH_DELAY);
+  }
+
+  /**
+   * @param retryDelay delay before the first retry of a failed send, in milliseconds
+   * @param flushDelay delay between two markings of the sent messages, in milliseconds
+   */
+  protected MailDispatcher(
+      MailAccountService mailAccountService,
+      MessageRepository messageRepository,
+      int threads,
+      int queueSize,
+      int maxAttempts,
+      int rate,
+      long retryDelay,
+      long flushDelay) {
+    this.mailAccountService = mailAccountService;
+    this.messageRepository = messageRepository;
+    this.maxAttempts = maxAttempts;
+    this.rate = rate;
+    this.retryDelay = retryDelay;
+
+    this.workers =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(queueSize),
+            new ThreadFactoryBuilder().setNameFormat("mail-dispatcher-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("mail-dispatcher-scheduler")
+                .setDaemon(true)
+                .build());
+    scheduler.scheduleWithFixedDelay(
+        this::flushSentMessages, flushDelay, flushDelay, TimeUnit.MILLISECONDS);
+  }
+
+  /** An email account, reduced to what is needed to send. */
+  protected static class Account {
+
+    private final Long id;
+    private final Integer version;
+    private final String host;
+    private final int port;
+    private final String login;
+    private final String password;
+    private final MailSender sender;
+    private final Session session;
+    private final RateLimiter rateLimiter;
+
+    protected Account(EmailAccount emailAccount, MailAccountService mailAccountService, int rate) {
+      this.id = emailAccount.getId();
+      this.version = emailAccount.getVersion();
+      this.host = emailAccount.getHost();
+      this.port = emailAccount.getPort() > 0 ? emailAccount.getPort() : -1;
+      this.login = emailAccount.getLogin();
+      this.password = mailAccountService.getDecryptPassword(emailAccount.getPassword());
+
+      com.axelor.mail.MailAccount account =
+          new SmtpAccount(
+              host,
+              emailAccount.getPort().toString(),
+              login,
+              password,
+              mailAccountService.getSecurity(emailAccount));
+      this.sender = new MailSender(account);
+      this.session = account.getSession();
+      this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+    }
+  }
+
+  protected static class Connection {
+
+    private final Account account;
+    private final Transport transport;
+
+    protected Connection(Account account, Transport transport) {
+      this.account = account;
+      this.transport = transport;
+    }
+  }
+
+  protected static class Delivery {
+
+    private final Long messageId;
+    private final Long senderUserId;
+    private final Account account;
+    private final MimeMessage email;
+
+    // failed attempts to mark the message as sent, only used by the thread marking them
+    private int markAttempts;
+
+    protected Delivery(Long messageId, Long senderUserId, Account account, MimeMessage email) {
+      this.messageId = messageId;
+      this.senderUserId = senderUserId;
+      this.account = account;
+      this.email = email;
+    }
+  }
+
+  /**
+   * Get the sender of the email account, to compose emails.
+   *
+   * @param emailAccount a saved email account
+   * @return
+   */
+  public MailSender getMailSender(EmailAccount emailAccount) {
+    return getAccount(emailAccount).sender;
+  }
+
+  /**
+   * Queue an email to send with the email account, once the current transaction is committed:
+   * nothing is sent if it is rolled back. The message is marked as sent by the current user once
+   * the email has been sent.
+   *
+   * @param messageId id of the message the email was built from
+   * @param emailAccount a saved email account
+   * @param email
+   * @throws MessagingException if the email can not be prepared for sending
+   * @throws AxelorException if the queue is full, the message is then left in draft
+   */
+  public void send(Long messageId, EmailAccount emailAccount, MimeMessage email)
+      throws MessagingException, AxelorException {
+
+    if (workers.getQueue().remainingCapacity() == 0) {
+      throw new AxelorException(
+          TraceBackRepository.CATEGORY_INCONSISTENCY,
+          I18n.get(IExceptionMessage.MAIL_DISPATCHER_QUEUE_FULL));
+    }
+
+    // Transport.sendMessage does not update the headers, unlike Transport.send
+    email.saveChanges();
+
+    User user = AuthUtils.getUser();
+    Long senderUserId = user != null ? user.getId() : null;
+    Delivery delivery = new Delivery(messageId, senderUserId, getAccount(emailAccount), email);
+
+    TransactionTool.afterCommit(
+        () -> {
+          // the queue filled up since the check above
+          if (!queue(delivery)) {
+            log.error(
+                "Email of message {} not sent: {}",
+                messageId,
+                I18n.get(IExceptionMessage.MAIL_DISPATCHER_QUEUE_FULL));
+          }
+        });
+  }
+
+  /**
+   * Stop the dispatcher: the queued emails are sent for a bounded time, pending retries are
+   * abandoned, the sent messages are marked and the connections are closed.
+   *
+   * <p>Called when the application stops, while the database is still available.
+   */
+  public void shutdown() {
+    workers.shutdown();
+    scheduler.shutdownNow();
+    try {
+      if (!workers.awaitTermination(SHUTDOWN_DELAY, TimeUnit.SECONDS)) {
+        log.warn("{} emails not sent before shutdown", workers.getQueue().size());
+        workers.shutdownNow();
+      }
+      scheduler.awaitTermination(SHUTDOWN_DELAY, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      workers.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      flushSentMessages();
+    } catch (Exception e) {
+      log.error("Sent messages not marked on shutdown", e);
+    }
+
+    for (Connection connection : openConnections) {
+      close(connection);
+    }
+  }
+
+  /** Number of emails waiting to be sent, including those waiting for a retry. */
+  public int getQueueSize() {
+    return workers.getQueue().size() + pendingRetryCount.get();
+  }
+
+  /** Number of emails being sent. */
+  public int getActiveCount() {
+    return workers.getActiveCount();
+  }
+
+  public long getSentCount() {
+    return sentCount.get();
+  }
+
+  /** Number of emails given up after the last attempt. */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  protected Account getAccount(EmailAccount emailAccount) {
+    Account account = accounts.get(emailAccount.getId());
+    if (account == null || !Objects.equals(account.version, emailAccount.getVersion())) {
+      account = new Account(emailAccount, mailAccountService, rate);
+      accounts.put(emailAccount.getId(), account);
+    }
+    return account;
+  }
+
+  /**
+   * Hand the email to the workers.
+   *
+   * @return false if the queue is full or the dispatcher is stopped, the message is then left in
+   *     draft
+   */
+  protected boolean queue(Delivery delivery) {
+    try {
+      workers.execute(() -> deliver(delivery, 1));
+      return true;
+    } catch (RejectedExecutionException e) {
+      failedCount.incrementAndGet();
+      return false;
+    }
+  }
+
+  protected void deliver(Delivery delivery, int attempt) {
+    Account account = delivery.account;
+
+    try {
+      if (account.rateLimiter != null) {
+        account.rateLimiter.acquire();
+      }
+      getTransport(account).sendMessage(delivery.email, delivery.email.getAllRecipients());
+      sentDeliveries.add(delivery);
+      sentCount.incrementAndGet();
+      log.debug("Email of message {} sent, {} in queue", delivery.messageId, getQueueSize());
+
+    } catch (Exception e) {
+      // the connection may be broken, open a new one for the next email
+      closeTransport(account);
+      retry(delivery, attempt, e);
+    }
+  }
+
+  /** Send the email again after a delay, or give up after the last attempt. */
+  protected void retry(Delivery delivery, int attempt, Exception e) {
+    if (attempt >= maxAttempts) {
+      failedCount.incrementAndGet();
+      trace(e);
+      return;
+    }
+
+    long delay = retryDelay << (attempt - 1);
+    log.debug(
+        "Email of message {} not sent, retry in {}ms: {}",
+        delivery.messageId,
+        delay,
+        e.getMessage());
+    pendingRetryCount.incrementAndGet();
+    try {
+      scheduler.schedule(
+          () -> {
+            pendingRetryCount.decrementAndGet();
+            try {
+              workers.execute(() -> deliver(delivery, attempt + 1));
+            } catch (RejectedExecutionException rejected) {
+              // the queue is full, this counts as a failed attempt
+              retry(delivery, attempt + 1, rejected);
+            }
+          },
+          delay,
+          TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException rejected) {
+      // shutting down, the message stays in draft
+      pendingRetryCount.decrementAndGet();
+      failedCount.incrementAndGet();
+      log.warn("Email of message {} not sent before shutdown", delivery.messageId);
+    }
+  }
+
+  protected Transport getTransport(Account account) throws MessagingException {
+    Map<Long, Connection> workerConnections = connections.get();
+    Connection connection = workerConnections.get(account.id);
+
+    if (connection != null
+        && (connection.account != account || !connection.transport.isConnected())) {
+      closeTransport(account);
+      connection = null;
+    }
+
+    if (connection == null) {
+      connection = new Connection(account, openTransport(account));
+      workerConnections.put(account.id, connection);
+      openConnections.add(connection);
+    }
+
+    return connection.transport;
+  }
+
+  /** Open a new SMTP connection to the account. */
+  protected Transport openTransport(Account account) throws MessagingException {
+    Transport transport = account.session.getTransport("smtp");
+    transport.connect(account.host, account.port, account.login, account.password);
+    return transport;
+  }
+
+  protected void closeTransport(Account account) {
+    Connection connection = connections.get().remove(account.id);
+    if (connection != null) {
+      close(connection);
+    }
+  }
+
+  protected void close(Connection connection) {
+    openConnections.remove(connection);
+    try {
+      connection.transport.close();
+    } catch (MessagingException e) {
+      log.debug("Error while closing SMTP connection: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Mark the messages whose email has been sent, one transaction per chunk. The messages of a chunk
+   * that fails, or that are not found, are marked again at the next flush, up to the maximum number
+   * of attempts.
+   */
+  protected void flushSentMessages() {
+    List<Delivery> deliveries = new ArrayList<>();
+    Delivery delivery;
+    while ((delivery = sentDeliveries.poll()) != null) {
+      deliveries.add(delivery);
+    }
+    if (deliveries.isEmpty()) {
+      return;
+    }
+
+    LocalDateTime sentDateT = LocalDateTime.now();
+
+    for (List<Delivery> chunk : Lists.partition(deliveries, QUERY_CHUNK_SIZE)) {
+      List<Delivery> notFound;
+      try {
+        notFound = markSent(chunk, sentDateT);
+      } catch (Exception e) {
+        requeue(chunk, e);
+        continue;
+      }
+      if (!notFound.isEmpty()) {
+        requeue(notFound, null);
+      }
+    }
+  }
+
+  /**
+   * Mark the messages as sent, saving them through the repository in one transaction.
+   *
+   * @return the deliveries whose message was not found
+   */
+  protected List<Delivery> markSent(List<Delivery> deliveries, LocalDateTime sentDateT) {
+    Map<Long, Delivery> deliveryMap =
+        deliveries
+            .stream()
+            .collect(Collectors.toMap(d -> d.messageId, Function.identity(), (d1, d2) -> d2));
+    List<Long> messageIds = new ArrayList<>(deliveryMap.keySet());
+
+    try {
+      JPA.runInTransaction(
+          () -> {
+            List<Message> messageList =
+                messageRepository
+                    .all()
+                    .filter("self.id IN (:messageIds)")
+                    .bind("messageIds", messageIds)
+                    .fetch();
+
+            for (Message message : messageList) {
+              Long senderUserId = deliveryMap.remove(message.getId()).senderUserId;
+              message.setSentByEmail(true);
+              message.setStatusSelect(MessageRepository.STATUS_SENT);
+              message.setSentDateT(sentDateT);
+              message.setSenderUser(
+                  senderUserId != null ? JPA.em().getReference(User.class, senderUserId) : null);
+              messageRepository.save(message);
+            }
+          });
+    } finally {
+      JPA.clear();
+    }
+
+    return new ArrayList<>(deliveryMap.values());
+  }
+
+  /**
+   * Mark the messages again at the next flush, or give up after the last attempt.
+   *
+   * @param e the marking error, null if the messages were not found
+   */
+  protected void requeue(List<Delivery> deliveries, Exception e) {
+    List<Long> droppedMessageIds = new ArrayList<>();
+    for (Delivery delivery : deliveries) {
+      if (++delivery.markAttempts < maxAttempts) {
+        sentDeliveries.add(delivery);
+      } else {
+        droppedMessageIds.add(delivery.messageId);
+      }
+    }
+
+    if (droppedMessageIds.isEmpty()) {
+      log.debug(
+          "Sent messages not marked, retry at next flush: {}",
+          e != null ? e.getMessage() : "messages not found");
+    } else if (e != null) {
+      log.error("Messages {} sent by email but not marked as sent", droppedMessageIds, e);
+      trace(e);
+    } else {
+      log.error("Messages {} sent by email but not found to be marked as sent", droppedMessageIds);
+    }
+  }
+
+  protected void trace(Exception e) {
+    TraceBackService.trace(e);
+  }
+}
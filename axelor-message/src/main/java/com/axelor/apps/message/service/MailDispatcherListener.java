@@ -0,0 +1,39 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.inject.Beans;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Stops the mail dispatcher when the application is undeployed. The listeners declared by the
+ * platform are destroyed last, so the database is still available to mark the sent messages.
+ */
+@WebListener
+public class MailDispatcherListener implements ServletContextListener {
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {}
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    Beans.get(MailDispatcher.class).shutdown();
+  }
+}
@@ -33,8 +33,6 @@ import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.axelor.mail.MailBuilder;
-import com.axelor.mail.MailSender;
-import com.axelor.mail.SmtpAccount;
 import com.axelor.meta.MetaFiles;
 import com.axelor.meta.db.MetaAttachment;
 import com.axelor.meta.db.MetaFile;
@@ -52,9 +50,6 @@ import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.mail.MessagingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,8 +60,6 @@ public class MessageServiceImpl implements MessageService {
   private MetaAttachmentRepository metaAttachmentRepository;
   protected MessageRepository messageRepository;
 
-  private ExecutorService executor = Executors.newCachedThreadPool();
-
   @Inject
   public MessageServiceImpl(
       MetaAttachmentRepository metaAttachmentRepository, MessageRepository messageRepository) {
@@ -260,14 +253,6 @@ public class MessageServiceImpl implements MessageService {
     }
 
     log.debug("Sent email");
-    MailAccountService mailAccountService = Beans.get(MailAccountService.class);
-    com.axelor.mail.MailAccount account =
-        new SmtpAccount(
-            mailAccount.getHost(),
-            mailAccount.getPort().toString(),
-            mailAccount.getLogin(),
-            mailAccountService.getDecryptPassword(mailAccount.getPassword()),
-            mailAccountService.getSecurity(mailAccount));
 
     List<String> replytoRecipients = this.getEmailAddresses(message.getReplyToEmailAddressSet()),
         toRecipients = this.getEmailAddresses(message.getToEmailAddressSet()),
@@ -281,8 +266,8 @@ public class MessageServiceImpl implements MessageService {
           I18n.get(IExceptionMessage.MESSAGE_6));
     }
 
-    MailSender sender = new MailSender(account);
-    MailBuilder mailBuilder = sender.compose();
+    MailDispatcher mailDispatcher = Beans.get(MailDispatcher.class);
+    MailBuilder mailBuilder = mailDispatcher.getMailSender(mailAccount).compose();
 
     mailBuilder.subject(message.getSubject());
 
@@ -316,27 +301,8 @@ public class MessageServiceImpl implements MessageService {
       mailBuilder.attach(metaFile.getFileName(), MetaFiles.getPath(metaFile).toString());
     }
 
-    // send email using a separate process to avoid thread blocking
-    executor.submit(
-        new Callable<Boolean>() {
-          @Override
-          public Boolean call() {
-            try {
-              mailBuilder.send();
-              Message updateMessage = messageRepository.find(message.getId());
-              JPA.em().getTransaction().begin();
-              updateMessage.setSentByEmail(true);
-              updateMessage.setStatusSelect(MessageRepository.STATUS_SENT);
-              updateMessage.setSentDateT(LocalDateTime.now());
-              updateMessage.setSenderUser(AuthUtils.getUser());
-              messageRepository.save(updateMessage);
-              JPA.em().getTransaction().commit();
-            } catch (Exception e) {
-              TraceBackService.trace(e);
-            }
-            return true;
-          }
-        });
+    // sent by the dispatcher workers once committed, to avoid thread blocking
+    mailDispatcher.send(message.getId(), mailAccount, mailBuilder.build());
 
     return message;
   }
@@ -20,6 +20,7 @@ package com.axelor.apps.message.web;
 import com.axelor.apps.message.db.Message;
 import com.axelor.apps.message.db.repo.MessageRepository;
 import com.axelor.apps.message.exception.IExceptionMessage;
+import com.axelor.apps.message.service.MailDispatcher;
 import com.axelor.apps.message.service.MessageService;
 import com.axelor.apps.tool.ModelTool;
 import com.axelor.exception.AxelorException;
@@ -44,6 +45,8 @@ public class MessageController {
 
   @Inject private MessageService messageService;
 
+  @Inject private MailDispatcher mailDispatcher;
+
   public void sendMessage(ActionRequest request, ActionResponse response) {
     Message message = request.getContext().asType(Message.class);
 
@@ -94,4 +97,14 @@ public class MessageController {
       TraceBackService.trace(response, e);
     }
   }
+
+  public void showMailDispatcherStatus(ActionRequest request, ActionResponse response) {
+    response.setFlash(
+        String.format(
+            I18n.get(IExceptionMessage.MAIL_DISPATCHER_STATUS),
+            mailDispatcher.getQueueSize(),
+            mailDispatcher.getActiveCount(),
+            mailDispatcher.getSentCount(),
+            mailDispatcher.getFailedCount()));
+  }
 }
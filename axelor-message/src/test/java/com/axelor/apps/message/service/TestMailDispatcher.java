@@ -0,0 +1,243 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.apps.message.db.EmailAccount;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMailDispatcher {
+
+  private static final int MAX_ATTEMPTS = 3;
+
+  private static final MailAccountService MAIL_ACCOUNT_SERVICE =
+      (MailAccountService)
+          Proxy.newProxyInstance(
+              MailAccountService.class.getClassLoader(),
+              new Class<?>[] {MailAccountService.class},
+              (proxy, method, args) ->
+                  "getDecryptPassword".equals(method.getName()) ? args[0] : null);
+
+  private final Session session = Session.getInstance(new Properties());
+
+  private TestDispatcher dispatcher;
+
+  /** Sends through stub connections and records the messages marked as sent. */
+  private class TestDispatcher extends MailDispatcher {
+
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger attemptCount = new AtomicInteger();
+    private final List<Exception> traced = new CopyOnWriteArrayList<>();
+    private final List<List<Delivery>> marked = new CopyOnWriteArrayList<>();
+
+    private volatile boolean failing;
+    private volatile CountDownLatch blocker;
+    // returns the deliveries whose message was not found
+    private volatile Function<List<Delivery>, List<Delivery>> marker =
+        deliveries -> Collections.emptyList();
+
+    private TestDispatcher(int threads, int queueSize) {
+      super(MAIL_ACCOUNT_SERVICE, null, threads, queueSize, MAX_ATTEMPTS, 0, 10, 3_600_000);
+    }
+
+    @Override
+    protected Transport openTransport(Account account) {
+      openCount.incrementAndGet();
+
+      return new Transport(session, null) {
+
+        private boolean connected = true;
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+          attemptCount.incrementAndGet();
+          if (blocker != null) {
+            try {
+              blocker.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          if (failing) {
+            throw new MessagingException("Connection refused");
+          }
+        }
+
+        @Override
+        public boolean isConnected() {
+          return connected;
+        }
+
+        @Override
+        public void close() {
+          connected = false;
+        }
+      };
+    }
+
+    @Override
+    protected List<Delivery> markSent(List<Delivery> deliveries, LocalDateTime sentDateT) {
+      marked.add(new ArrayList<>(deliveries));
+      return marker.apply(deliveries);
+    }
+
+    @Override
+    protected void trace(Exception e) {
+      traced.add(e);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void testFullQueueRefused() throws Exception {
+    dispatcher = new TestDispatcher(1, 1);
+    dispatcher.blocker = new CountDownLatch(1);
+    MailDispatcher.Account account = createAccount(1L);
+
+    // the first email is taken by the worker, the second one fills the queue
+    Assert.assertTrue(dispatcher.queue(createDelivery(1L, account)));
+    Assert.assertTrue(dispatcher.queue(createDelivery(2L, account)));
+    Assert.assertFalse(dispatcher.queue(createDelivery(3L, account)));
+    Assert.assertEquals(1, dispatcher.getFailedCount());
+
+    dispatcher.blocker.countDown();
+    await(() -> dispatcher.getSentCount() == 2);
+  }
+
+  @Test
+  public void testRetryStopsAfterMaxAttempts() throws Exception {
+    dispatcher = new TestDispatcher(1, 10);
+    dispatcher.failing = true;
+
+    Assert.assertTrue(dispatcher.queue(createDelivery(1L, createAccount(1L))));
+    await(() -> dispatcher.traced.size() == 1);
+
+    Assert.assertEquals(1, dispatcher.getFailedCount());
+    Assert.assertEquals(MAX_ATTEMPTS, dispatcher.attemptCount.get());
+    // a failed send closes the connection
+    Assert.assertEquals(MAX_ATTEMPTS, dispatcher.openCount.get());
+    Assert.assertEquals(0, dispatcher.getSentCount());
+    Assert.assertEquals(0, dispatcher.getQueueSize());
+  }
+
+  @Test
+  public void testConnectionReusedPerAccount() throws Exception {
+    dispatcher = new TestDispatcher(1, 10);
+    MailDispatcher.Account account1 = createAccount(1L);
+    MailDispatcher.Account account2 = createAccount(2L);
+
+    dispatcher.queue(createDelivery(1L, account1));
+    dispatcher.queue(createDelivery(2L, account1));
+    dispatcher.queue(createDelivery(3L, account2));
+    dispatcher.queue(createDelivery(4L, account1));
+    await(() -> dispatcher.getSentCount() == 4);
+
+    Assert.assertEquals(2, dispatcher.openCount.get());
+  }
+
+  @Test
+  public void testFailedMarkingRequeued() throws Exception {
+    dispatcher = new TestDispatcher(1, 10);
+    MailDispatcher.Account account = createAccount(1L);
+    MailDispatcher.Delivery delivery1 = createDelivery(1L, account);
+    MailDispatcher.Delivery delivery2 = createDelivery(2L, account);
+
+    dispatcher.queue(delivery1);
+    dispatcher.queue(delivery2);
+    await(() -> dispatcher.getSentCount() == 2);
+
+    dispatcher.marker =
+        deliveries -> {
+          throw new IllegalStateException("Lock wait timeout");
+        };
+    dispatcher.flushSentMessages();
+    dispatcher.marker = deliveries -> Collections.emptyList();
+    dispatcher.flushSentMessages();
+    dispatcher.flushSentMessages();
+
+    Assert.assertEquals(2, dispatcher.marked.size());
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(delivery1, delivery2)),
+        new HashSet<>(dispatcher.marked.get(1)));
+    Assert.assertTrue(dispatcher.traced.isEmpty());
+  }
+
+  @Test
+  public void testMissingMessagesRequeued() throws Exception {
+    dispatcher = new TestDispatcher(1, 10);
+    MailDispatcher.Delivery delivery = createDelivery(1L, createAccount(1L));
+
+    dispatcher.queue(delivery);
+    await(() -> dispatcher.getSentCount() == 1);
+
+    // the message is never found, it is marked again until the last attempt
+    dispatcher.marker = deliveries -> deliveries;
+    for (int i = 0; i <= MAX_ATTEMPTS; i++) {
+      dispatcher.flushSentMessages();
+    }
+
+    Assert.assertEquals(MAX_ATTEMPTS, dispatcher.marked.size());
+    for (List<MailDispatcher.Delivery> deliveries : dispatcher.marked) {
+      Assert.assertEquals(Collections.singletonList(delivery), deliveries);
+    }
+  }
+
+  private MailDispatcher.Account createAccount(Long id) {
+    EmailAccount emailAccount = new EmailAccount();
+    emailAccount.setId(id);
+    emailAccount.setHost("localhost");
+    emailAccount.setPort(25);
+    return dispatcher.getAccount(emailAccount);
+  }
+
+  private MailDispatcher.Delivery createDelivery(Long messageId, MailDispatcher.Account account) {
+    return new MailDispatcher.Delivery(messageId, null, account, new MimeMessage(session));
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      Assert.assertTrue("Timed out", System.currentTimeMillis() < timeout);
+      Thread.sleep(10);
+    }
+  }
+}
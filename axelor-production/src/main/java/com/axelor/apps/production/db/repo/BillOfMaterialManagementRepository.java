@@ -18,7 +18,11 @@
 package com.axelor.apps.production.db.repo;
 
 import com.axelor.apps.production.db.BillOfMaterial;
+import com.axelor.apps.production.service.BillOfMaterialService;
+import com.axelor.inject.Beans;
 import java.math.BigDecimal;
+import java.util.Set;
+import javax.persistence.PersistenceException;
 
 public class BillOfMaterialManagementRepository extends BillOfMaterialRepository {
 
@@ -32,7 +36,33 @@ public class BillOfMaterialManagementRepository extends BillOfMaterialRepository
       billOfMaterial.setFullName(billOfMaterial.getName());
     }
 
-    return super.save(billOfMaterial);
+    BillOfMaterialService billOfMaterialService = Beans.get(BillOfMaterialService.class);
+    Set<Long> productIdSet = billOfMaterialService.getLowLevelCodeProductIds(billOfMaterial);
+
+    billOfMaterial = super.save(billOfMaterial);
+
+    try {
+      billOfMaterialService.updateLowLevelCodes(productIdSet);
+    } catch (Exception e) {
+      throw new PersistenceException(e.getLocalizedMessage());
+    }
+
+    return billOfMaterial;
+  }
+
+  @Override
+  public void remove(BillOfMaterial billOfMaterial) {
+
+    BillOfMaterialService billOfMaterialService = Beans.get(BillOfMaterialService.class);
+    Set<Long> productIdSet = billOfMaterialService.getLowLevelCodeProductIds(billOfMaterial);
+
+    super.remove(billOfMaterial);
+
+    try {
+      billOfMaterialService.updateLowLevelCodes(productIdSet);
+    } catch (Exception e) {
+      throw new PersistenceException(e.getLocalizedMessage());
+    }
   }
 
   @Override
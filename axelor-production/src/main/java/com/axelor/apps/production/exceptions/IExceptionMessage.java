@@ -41,6 +41,9 @@ public interface IExceptionMessage {
 
   /** Batch Compute work in progress valuation */
   static final String BATCH_COMPUTE_VALUATION = /*$$(*/ "Computed work in progress valuation" /*)*/;
+  static final String BATCH_COMPUTE_COST_PRICE = /*$$(*/ "product(s) cost price computed" /*)*/;
+  static final String BATCH_SCHEDULE_OPERATION_ORDERS = /*$$(*/
+      "operation order(s) scheduled" /*)*/;
 
   static final String IN_OR_OUT_INVALID_ARG = /*$$(*/ "inOrOut is invalid" /*)*/;
 
@@ -100,6 +103,12 @@ public interface IExceptionMessage {
 
   static final String MAX_DEPTH_REACHED = /*$$(*/ "Max depth reached when copying BOM." /*)*/;
 
+  static final String BOM_CYCLE = /*$$(*/
+      "The product %s is a component of its own bill of material." /*)*/;
+
+  static final String BOM_LOW_LEVEL_CODES_COMPUTED = /*$$(*/
+      "The low level codes of the products have been computed." /*)*/;
+
   /** Configurator Controller */
   String BILL_OF_MATERIAL_GENERATED = /*$$(*/ "The bill of material %s has been generated" /*)*/;
 
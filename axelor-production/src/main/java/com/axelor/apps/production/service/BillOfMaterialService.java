@@ -26,6 +26,7 @@ import com.google.inject.persist.Transactional;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
 
 public interface BillOfMaterialService {
 
@@ -55,6 +56,36 @@ public interface BillOfMaterialService {
   @Transactional
   public void setBillOfMaterialAsDefault(BillOfMaterial billOfMaterial);
 
+  /**
+   * Compute the low level code of every product: 0 for products which are not a component of any
+   * bill of material, else the highest level at which they are used. Only the changed codes are
+   * saved. This walks all the bills of materials, the batch and the MRP use it, saving a bill of
+   * material only updates its components.
+   *
+   * @throws AxelorException if a product is a component of itself
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeLowLevelCodes() throws AxelorException;
+
+  /**
+   * Get the products whose low level code can change with the bill of material: its product and
+   * components, as they are in the bill of material and as they are stored.
+   *
+   * @param billOfMaterial
+   * @return
+   */
+  public Set<Long> getLowLevelCodeProductIds(BillOfMaterial billOfMaterial);
+
+  /**
+   * Compute again the low level code of the given products and of their components, directly or
+   * not. The codes of the other products are not changed.
+   *
+   * @param productIdSet
+   * @throws AxelorException if a product is a component of itself
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateLowLevelCodes(Set<Long> productIdSet) throws AxelorException;
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   BillOfMaterial customizeBillOfMaterial(BillOfMaterial billOfMaterial) throws AxelorException;
 
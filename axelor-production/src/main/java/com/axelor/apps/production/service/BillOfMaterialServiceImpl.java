@@ -35,18 +35,26 @@ import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.persistence.FlushModeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,13 +62,15 @@ public class BillOfMaterialServiceImpl implements BillOfMaterialService {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  protected static final int QUERY_CHUNK_SIZE = 1000;
+
   @Inject protected BillOfMaterialRepository billOfMaterialRepo;
 
   @Inject private TempBomTreeRepository tempBomTreeRepo;
 
   @Inject private ProductRepository productRepo;
 
-  private List<Long> processedBom;
+  @Inject private BillOfMaterialTreeCache billOfMaterialTreeCache;
 
   @Override
   public List<BillOfMaterial> getBillOfMaterialSet(Product product) {
@@ -215,91 +225,200 @@ public class BillOfMaterialServiceImpl implements BillOfMaterialService {
   }
 
   @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public TempBomTree generateTree(BillOfMaterial billOfMaterial) {
 
-    processedBom = new ArrayList<>();
+    // bill of material id -> bill of material, for the whole subtree
+    Map<Long, BillOfMaterial> billOfMaterialMap = new HashMap<>();
 
-    return getBomTree(billOfMaterial, null, null);
-  }
+    // bill of material id -> ids of the bills of materials of its set, by priority
+    Map<Long, List<Long>> childIdMap = new HashMap<>();
 
-  @Transactional
-  public TempBomTree getBomTree(BillOfMaterial bom, BillOfMaterial parentBom, TempBomTree parent) {
+    this.loadBomSubtree(billOfMaterial, billOfMaterialMap, childIdMap);
 
-    TempBomTree bomTree;
-    if (parentBom == null) {
-      bomTree =
-          tempBomTreeRepo.all().filter("self.bom = ?1 and self.parentBom = null", bom).fetchOne();
-    } else {
-      bomTree =
-          tempBomTreeRepo
-              .all()
-              .filter("self.bom = ?1 and self.parentBom = ?2", bom, parentBom)
-              .fetchOne();
+    Map<Long, Integer> versionMap = new HashMap<>();
+    for (BillOfMaterial bom : billOfMaterialMap.values()) {
+      versionMap.put(bom.getId(), bom.getVersion());
     }
 
-    if (bomTree == null) {
-      bomTree = new TempBomTree();
+    Long tempBomTreeId = billOfMaterialTreeCache.find(billOfMaterial.getId(), versionMap);
+    if (tempBomTreeId != null) {
+      TempBomTree bomTree = tempBomTreeRepo.find(tempBomTreeId);
+      if (bomTree != null) {
+        return bomTree;
+      }
     }
-    bomTree.setProdProcess(bom.getProdProcess());
-    bomTree.setProduct(bom.getProduct());
-    bomTree.setQty(bom.getQty());
-    bomTree.setUnit(bom.getUnit());
-    bomTree.setParentBom(parentBom);
-    bomTree.setParent(parent);
-    bomTree.setBom(bom);
-    bomTree = tempBomTreeRepo.save(bomTree);
 
-    processedBom.add(bom.getId());
+    TempBomTree bomTree = this.saveBomTree(billOfMaterial, billOfMaterialMap, childIdMap);
 
-    List<Long> validBomIds = processChildBom(bom, bomTree);
+    billOfMaterialTreeCache.put(billOfMaterial.getId(), versionMap, bomTree.getId());
 
-    validBomIds.add(0L);
+    return bomTree;
+  }
 
-    removeInvalidTree(validBomIds, bom);
+  /**
+   * Load the bills of materials of the subtree, one level at a time, instead of going through the
+   * bill of material set of each of them.
+   */
+  protected void loadBomSubtree(
+      BillOfMaterial billOfMaterial,
+      Map<Long, BillOfMaterial> billOfMaterialMap,
+      Map<Long, List<Long>> childIdMap) {
+
+    billOfMaterialMap.put(billOfMaterial.getId(), billOfMaterial);
+
+    Set<Long> loadedIdSet = new HashSet<>();
+    loadedIdSet.add(billOfMaterial.getId());
+    List<Long> levelIdList = Collections.singletonList(billOfMaterial.getId());
+
+    while (!levelIdList.isEmpty()) {
+
+      List<Long> nextLevelIdList = new ArrayList<>();
+
+      for (List<Long> idList : Lists.partition(levelIdList, QUERY_CHUNK_SIZE)) {
+        List<Object[]> linkList =
+            JPA.em()
+                .createQuery(
+                    "SELECT self.id, subBillOfMaterial.id FROM BillOfMaterial self "
+                        + "JOIN self.billOfMaterialSet subBillOfMaterial "
+                        + "WHERE self.id IN (:idList) "
+                        + "ORDER BY subBillOfMaterial.priority, subBillOfMaterial.id",
+                    Object[].class)
+                .setParameter("idList", idList)
+                .getResultList();
+
+        for (Object[] link : linkList) {
+          Long childId = (Long) link[1];
+          childIdMap.computeIfAbsent((Long) link[0], id -> new ArrayList<>()).add(childId);
+          if (loadedIdSet.add(childId)) {
+            nextLevelIdList.add(childId);
+          }
+        }
+      }
 
-    return bomTree;
+      for (List<Long> idList : Lists.partition(nextLevelIdList, QUERY_CHUNK_SIZE)) {
+        for (BillOfMaterial bom :
+            billOfMaterialRepo.all().filter("self.id IN (?1)", idList).fetch()) {
+          billOfMaterialMap.put(bom.getId(), bom);
+        }
+      }
+
+      levelIdList = nextLevelIdList;
+    }
   }
 
-  private List<Long> processChildBom(BillOfMaterial bom, TempBomTree bomTree) {
+  /**
+   * Save the rows of the tree: the existing rows are loaded at once and updated, the missing ones
+   * are created, and the rows of components no longer in a bill of material are removed with bulk
+   * queries.
+   *
+   * <p>As before, a bill of material which appears several times in the tree is only expanded the
+   * first time it is reached.
+   */
+  protected TempBomTree saveBomTree(
+      BillOfMaterial billOfMaterial,
+      Map<Long, BillOfMaterial> billOfMaterialMap,
+      Map<Long, List<Long>> childIdMap) {
+
+    // rows by bill of material id and parent bill of material id
+    Map<String, TempBomTree> bomTreeMap = new HashMap<>();
+    List<TempBomTree> bomTreeList = new ArrayList<>();
+
+    bomTreeList.addAll(
+        tempBomTreeRepo
+            .all()
+            .filter("self.bom.id = ?1 AND self.parentBom IS NULL", billOfMaterial.getId())
+            .fetch());
+    for (List<Long> idList :
+        Lists.partition(new ArrayList<>(billOfMaterialMap.keySet()), QUERY_CHUNK_SIZE)) {
+      bomTreeList.addAll(tempBomTreeRepo.all().filter("self.parentBom.id IN (?1)", idList).fetch());
+    }
 
-    List<Long> validBomIds = new ArrayList<Long>();
+    Set<String> validKeySet = new HashSet<>();
+    validKeySet.add(this.getBomTreeKey(billOfMaterial.getId(), null));
+    for (Map.Entry<Long, List<Long>> entry : childIdMap.entrySet()) {
+      for (Long childId : entry.getValue()) {
+        validKeySet.add(this.getBomTreeKey(childId, entry.getKey()));
+      }
+    }
 
-    for (BillOfMaterial childBom : bom.getBillOfMaterialSet()) {
-      if (!processedBom.contains(childBom.getId())) {
-        getBomTree(childBom, bom, bomTree);
-      } else {
-        log.debug("Already processed: {}", childBom.getId());
+    List<Long> invalidIdList = new ArrayList<>();
+    for (TempBomTree bomTree : bomTreeList) {
+      String key =
+          this.getBomTreeKey(
+              bomTree.getBom() != null ? bomTree.getBom().getId() : null,
+              bomTree.getParentBom() != null ? bomTree.getParentBom().getId() : null);
+      // duplicated rows are removed as well
+      if (!validKeySet.contains(key) || bomTreeMap.putIfAbsent(key, bomTree) != null) {
+        invalidIdList.add(bomTree.getId());
       }
-      validBomIds.add(childBom.getId());
     }
 
-    return validBomIds;
-  }
+    TempBomTree rootBomTree = null;
+    Set<Long> processedIdSet = new HashSet<>();
 
-  @Transactional
-  public void removeInvalidTree(List<Long> validBomIds, BillOfMaterial bom) {
+    // bill of material, parent bill of material and parent row of the rows to save
+    Deque<Object[]> nodeStack = new ArrayDeque<>();
+    nodeStack.push(new Object[] {billOfMaterial, null, null});
 
-    List<TempBomTree> invalidBomTrees =
-        tempBomTreeRepo
-            .all()
-            .filter("self.bom.id not in (?1) and self.parentBom = ?2", validBomIds, bom)
-            .fetch();
+    while (!nodeStack.isEmpty()) {
 
-    log.debug("Invalid bom trees: {}", invalidBomTrees);
+      Object[] node = nodeStack.pop();
+      BillOfMaterial bom = (BillOfMaterial) node[0];
+      BillOfMaterial parentBom = (BillOfMaterial) node[1];
 
-    if (!invalidBomTrees.isEmpty()) {
-      List<TempBomTree> childBomTrees =
-          tempBomTreeRepo.all().filter("self.parent in (?1)", invalidBomTrees).fetch();
+      if (!processedIdSet.add(bom.getId())) {
+        log.debug("Already processed: {}", bom.getId());
+        continue;
+      }
 
-      for (TempBomTree childBomTree : childBomTrees) {
-        childBomTree.setParent(null);
-        tempBomTreeRepo.save(childBomTree);
+      TempBomTree bomTree =
+          bomTreeMap.get(
+              this.getBomTreeKey(bom.getId(), parentBom != null ? parentBom.getId() : null));
+      if (bomTree == null) {
+        bomTree = new TempBomTree();
+      }
+      bomTree.setProdProcess(bom.getProdProcess());
+      bomTree.setProduct(bom.getProduct());
+      bomTree.setQty(bom.getQty());
+      bomTree.setUnit(bom.getUnit());
+      bomTree.setParentBom(parentBom);
+      bomTree.setParent((TempBomTree) node[2]);
+      bomTree.setBom(bom);
+      if (bomTree.getId() == null) {
+        tempBomTreeRepo.save(bomTree);
+      }
+
+      if (rootBomTree == null) {
+        rootBomTree = bomTree;
+      }
+
+      // pushed in reverse order, so that components are expanded by priority
+      List<Long> childIdList = childIdMap.getOrDefault(bom.getId(), Collections.emptyList());
+      for (int i = childIdList.size() - 1; i >= 0; i--) {
+        nodeStack.push(new Object[] {billOfMaterialMap.get(childIdList.get(i)), bom, bomTree});
       }
     }
 
-    for (TempBomTree invalidBomTree : invalidBomTrees) {
-      tempBomTreeRepo.remove(invalidBomTree);
+    log.debug("Invalid bom trees: {}", invalidIdList);
+
+    for (List<Long> idList : Lists.partition(invalidIdList, QUERY_CHUNK_SIZE)) {
+      JPA.em()
+          .createQuery(
+              "UPDATE TempBomTree self SET self.parent = NULL WHERE self.parent.id IN (:idList)")
+          .setParameter("idList", idList)
+          .executeUpdate();
+      JPA.em()
+          .createQuery("DELETE FROM TempBomTree self WHERE self.id IN (:idList)")
+          .setParameter("idList", idList)
+          .executeUpdate();
     }
+
+    return rootBomTree;
+  }
+
+  protected String getBomTreeKey(Long billOfMaterialId, Long parentBillOfMaterialId) {
+    return billOfMaterialId + ":" + parentBillOfMaterialId;
   }
 
   @Override
@@ -308,6 +427,290 @@ public class BillOfMaterialServiceImpl implements BillOfMaterialService {
     billOfMaterial.getProduct().setDefaultBillOfMaterial(billOfMaterial);
   }
 
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeLowLevelCodes() throws AxelorException {
+
+    // product id -> component product ids
+    Map<Long, Set<Long>> componentMap = new HashMap<>();
+    List<Object[]> linkList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, subBillOfMaterial.product.id FROM BillOfMaterial self "
+                    + "JOIN self.billOfMaterialSet subBillOfMaterial "
+                    + "WHERE self.statusSelect != :statusSelect",
+                Object[].class)
+            .setParameter("statusSelect", BillOfMaterialRepository.STATUS_OBSOLETE)
+            .getResultList();
+    for (Object[] link : linkList) {
+      componentMap.computeIfAbsent((Long) link[0], id -> new HashSet<>()).add((Long) link[1]);
+    }
+
+    Map<Long, Integer> lowLevelCodeMap = this.computeLowLevelCodes(componentMap, new HashMap<>());
+
+    Map<Long, Integer> currentLowLevelCodeMap = new HashMap<>();
+    List<Object[]> currentList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, self.lowLevelCode FROM Product self WHERE self.lowLevelCode != 0",
+                Object[].class)
+            .getResultList();
+    for (Object[] current : currentList) {
+      currentLowLevelCodeMap.put((Long) current[0], (Integer) current[1]);
+    }
+
+    Set<Long> productIdSet = new HashSet<>(lowLevelCodeMap.keySet());
+    productIdSet.addAll(currentLowLevelCodeMap.keySet());
+
+    int changedCount =
+        this.saveLowLevelCodes(productIdSet, lowLevelCodeMap, currentLowLevelCodeMap);
+
+    log.debug(
+        "Low level codes computed for {} products, {} changed",
+        lowLevelCodeMap.size(),
+        changedCount);
+  }
+
+  @Override
+  public Set<Long> getLowLevelCodeProductIds(BillOfMaterial billOfMaterial) {
+
+    Set<Long> productIdSet = new HashSet<>();
+
+    if (billOfMaterial.getProduct() != null) {
+      productIdSet.add(billOfMaterial.getProduct().getId());
+    }
+    if (billOfMaterial.getBillOfMaterialSet() != null) {
+      for (BillOfMaterial subBillOfMaterial : billOfMaterial.getBillOfMaterialSet()) {
+        if (subBillOfMaterial.getProduct() != null) {
+          productIdSet.add(subBillOfMaterial.getProduct().getId());
+        }
+      }
+    }
+
+    if (billOfMaterial.getId() == null) {
+      return productIdSet;
+    }
+
+    // products as stored, the pending changes of the bill of material are not flushed
+    productIdSet.addAll(
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id FROM BillOfMaterial self WHERE self.id = :id", Long.class)
+            .setParameter("id", billOfMaterial.getId())
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList());
+    productIdSet.addAll(
+        JPA.em()
+            .createQuery(
+                "SELECT subBillOfMaterial.product.id FROM BillOfMaterial self "
+                    + "JOIN self.billOfMaterialSet subBillOfMaterial WHERE self.id = :id",
+                Long.class)
+            .setParameter("id", billOfMaterial.getId())
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList());
+
+    productIdSet.remove(null);
+
+    return productIdSet;
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateLowLevelCodes(Set<Long> productIdSet) throws AxelorException {
+
+    // the given products and their components, directly or not
+    Set<Long> subtreeIdSet = new HashSet<>(productIdSet);
+    Map<Long, Set<Long>> componentMap = new HashMap<>();
+    List<Long> parentIdList = new ArrayList<>(productIdSet);
+
+    while (!parentIdList.isEmpty()) {
+
+      List<Long> componentIdList = new ArrayList<>();
+
+      for (List<Long> idList : Lists.partition(parentIdList, QUERY_CHUNK_SIZE)) {
+        List<Object[]> linkList =
+            JPA.em()
+                .createQuery(
+                    "SELECT self.product.id, subBillOfMaterial.product.id "
+                        + "FROM BillOfMaterial self "
+                        + "JOIN self.billOfMaterialSet subBillOfMaterial "
+                        + "WHERE self.product.id IN (:idList) "
+                        + "AND self.statusSelect != :statusSelect",
+                    Object[].class)
+                .setParameter("idList", idList)
+                .setParameter("statusSelect", BillOfMaterialRepository.STATUS_OBSOLETE)
+                .getResultList();
+
+        for (Object[] link : linkList) {
+          componentMap.computeIfAbsent((Long) link[0], id -> new HashSet<>()).add((Long) link[1]);
+          if (subtreeIdSet.add((Long) link[1])) {
+            componentIdList.add((Long) link[1]);
+          }
+        }
+      }
+
+      parentIdList = componentIdList;
+    }
+
+    // codes given by the parents outside of the subtree, which do not change
+    Map<Long, Integer> baseLowLevelCodeMap = new HashMap<>();
+    Map<Long, Integer> currentLowLevelCodeMap = new HashMap<>();
+
+    for (List<Long> idList : Lists.partition(new ArrayList<>(subtreeIdSet), QUERY_CHUNK_SIZE)) {
+
+      List<Object[]> parentList =
+          JPA.em()
+              .createQuery(
+                  "SELECT subBillOfMaterial.product.id, self.product.id, self.product.lowLevelCode "
+                      + "FROM BillOfMaterial self "
+                      + "JOIN self.billOfMaterialSet subBillOfMaterial "
+                      + "WHERE subBillOfMaterial.product.id IN (:idList) "
+                      + "AND self.statusSelect != :statusSelect",
+                  Object[].class)
+              .setParameter("idList", idList)
+              .setParameter("statusSelect", BillOfMaterialRepository.STATUS_OBSOLETE)
+              .getResultList();
+      for (Object[] parent : parentList) {
+        if (!subtreeIdSet.contains(parent[1])) {
+          int parentLowLevelCode = parent[2] != null ? (Integer) parent[2] : 0;
+          baseLowLevelCodeMap.merge((Long) parent[0], parentLowLevelCode + 1, Math::max);
+        }
+      }
+
+      List<Object[]> currentList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.lowLevelCode FROM Product self WHERE self.id IN (:idList)",
+                  Object[].class)
+              .setParameter("idList", idList)
+              .getResultList();
+      for (Object[] current : currentList) {
+        currentLowLevelCodeMap.put(
+            (Long) current[0], current[1] != null ? (Integer) current[1] : 0);
+      }
+    }
+
+    for (Long productId : subtreeIdSet) {
+      componentMap.computeIfAbsent(productId, id -> new HashSet<>());
+    }
+
+    Map<Long, Integer> lowLevelCodeMap =
+        this.computeLowLevelCodes(componentMap, baseLowLevelCodeMap);
+
+    int changedCount =
+        this.saveLowLevelCodes(subtreeIdSet, lowLevelCodeMap, currentLowLevelCodeMap);
+
+    log.debug(
+        "Low level codes updated for {} products, {} changed", subtreeIdSet.size(), changedCount);
+  }
+
+  /**
+   * Save the low level codes which changed. Products are updated through the entities, so that
+   * their version is incremented and a product loaded before cannot be saved back with its previous
+   * code.
+   *
+   * @param productIds
+   * @param lowLevelCodeMap
+   * @param currentLowLevelCodeMap
+   * @return the number of products whose code changed
+   */
+  protected int saveLowLevelCodes(
+      Collection<Long> productIds,
+      Map<Long, Integer> lowLevelCodeMap,
+      Map<Long, Integer> currentLowLevelCodeMap) {
+
+    List<Long> changedProductIdList = new ArrayList<>();
+
+    for (Long productId : productIds) {
+      int lowLevelCode = lowLevelCodeMap.getOrDefault(productId, 0);
+      if (lowLevelCode != currentLowLevelCodeMap.getOrDefault(productId, 0)) {
+        changedProductIdList.add(productId);
+      }
+    }
+
+    for (List<Long> productIdList : Lists.partition(changedProductIdList, QUERY_CHUNK_SIZE)) {
+      for (Product product : productRepo.all().filter("self.id IN (?1)", productIdList).fetch()) {
+        product.setLowLevelCode(lowLevelCodeMap.getOrDefault(product.getId(), 0));
+      }
+    }
+
+    return changedProductIdList.size();
+  }
+
+  /**
+   * Compute the longest path from a root to each product of the graph. Products are sorted first
+   * with a depth-first search, which also finds the cycles, so that each product is visited once.
+   *
+   * @param componentMap
+   * @param baseLowLevelCodeMap lowest code of the products, given by parents outside of the graph
+   * @return
+   * @throws AxelorException if a product is a component of itself
+   */
+  protected Map<Long, Integer> computeLowLevelCodes(
+      Map<Long, Set<Long>> componentMap, Map<Long, Integer> baseLowLevelCodeMap)
+      throws AxelorException {
+
+    // products in reverse topological order
+    List<Long> sortedProductIdList = new ArrayList<>();
+
+    // false while the components of the product are visited, true once they all are
+    Map<Long, Boolean> visitedMap = new HashMap<>();
+
+    for (Long rootProductId : componentMap.keySet()) {
+
+      if (visitedMap.containsKey(rootProductId)) {
+        continue;
+      }
+
+      Deque<Long> productIdStack = new ArrayDeque<>();
+      Deque<Iterator<Long>> componentIdStack = new ArrayDeque<>();
+      visitedMap.put(rootProductId, false);
+      productIdStack.push(rootProductId);
+      componentIdStack.push(componentMap.get(rootProductId).iterator());
+
+      while (!productIdStack.isEmpty()) {
+
+        Iterator<Long> componentIdIterator = componentIdStack.peek();
+
+        if (!componentIdIterator.hasNext()) {
+          Long productId = productIdStack.pop();
+          componentIdStack.pop();
+          visitedMap.put(productId, true);
+          sortedProductIdList.add(productId);
+          continue;
+        }
+
+        Long componentId = componentIdIterator.next();
+        Boolean visited = visitedMap.get(componentId);
+
+        if (visited == null) {
+          visitedMap.put(componentId, false);
+          productIdStack.push(componentId);
+          componentIdStack.push(
+              componentMap.getOrDefault(componentId, Collections.emptySet()).iterator());
+        } else if (!visited) {
+          throw new AxelorException(
+              TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+              I18n.get(IExceptionMessage.BOM_CYCLE),
+              productRepo.find(componentId).getFullName());
+        }
+      }
+    }
+
+    Collections.reverse(sortedProductIdList);
+
+    Map<Long, Integer> lowLevelCodeMap = new HashMap<>(baseLowLevelCodeMap);
+
+    for (Long productId : sortedProductIdList) {
+      int lowLevelCode = lowLevelCodeMap.computeIfAbsent(productId, id -> 0);
+      for (Long componentId : componentMap.getOrDefault(productId, Collections.emptySet())) {
+        lowLevelCodeMap.merge(componentId, lowLevelCode + 1, Math::max);
+      }
+    }
+
+    return lowLevelCodeMap;
+  }
+
   @Override
   public String computeName(BillOfMaterial bom) {
     Integer nbDecimalDigitForBomQty =
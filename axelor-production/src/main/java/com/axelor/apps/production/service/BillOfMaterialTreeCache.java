@@ -0,0 +1,82 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service;
+
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Last bill of material tree saved, along with the versions of the bills of materials it was
+ * built from.
+ *
+ * <p>Tree rows are shared between trees: a row is kept by bill of material and parent bill of
+ * material, so saving the tree of another bill of material may move rows of the previous one. Only
+ * the last tree saved is kept for this reason.
+ */
+@ThreadSafe
+@Singleton
+public class BillOfMaterialTreeCache {
+
+  private volatile Entry lastEntry;
+
+  protected static class Entry {
+
+    private final Long billOfMaterialId;
+
+    // bill of material id -> version, for the whole subtree
+    private final Map<Long, Integer> versionMap;
+
+    private final Long tempBomTreeId;
+
+    protected Entry(Long billOfMaterialId, Map<Long, Integer> versionMap, Long tempBomTreeId) {
+      this.billOfMaterialId = billOfMaterialId;
+      this.versionMap = versionMap;
+      this.tempBomTreeId = tempBomTreeId;
+    }
+  }
+
+  /**
+   * Find the tree saved for the bill of material.
+   *
+   * @param billOfMaterialId
+   * @param versionMap the current version of each bill of material of the subtree
+   * @return the id of the root row of the tree, or null if the tree has to be saved again
+   */
+  public Long find(Long billOfMaterialId, Map<Long, Integer> versionMap) {
+
+    Entry entry = lastEntry;
+
+    if (entry == null
+        || !Objects.equals(entry.billOfMaterialId, billOfMaterialId)
+        || !entry.versionMap.equals(versionMap)) {
+      return null;
+    }
+
+    return entry.tempBomTreeId;
+  }
+
+  public void put(Long billOfMaterialId, Map<Long, Integer> versionMap, Long tempBomTreeId) {
+    lastEntry = new Entry(billOfMaterialId, versionMap, tempBomTreeId);
+  }
+
+  public void invalidate() {
+    lastEntry = null;
+  }
+}
@@ -52,7 +52,14 @@ import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +69,9 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
 
   protected ManufOrderRepository manufOrderRepository;
 
+  // bills of materials already walked while assigning the product levels
+  protected Set<Long> assignedBillOfMaterialIdSet;
+
   @Inject
   public MrpServiceProductionImpl(
       AppProductionService appProductionService,
@@ -98,16 +108,122 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
   }
 
   @Override
-  protected void completeMrp(Mrp mrp) throws AxelorException {
+  protected void createMrpLines() throws AxelorException {
 
-    super.completeMrp(mrp);
+    super.createMrpLines();
 
     this.createManufOrderMrpLines();
   }
 
+  @Override
+  protected Set<Long> getChangedProductIds(LocalDateTime since) {
+
+    Set<Long> productIdSet = super.getChangedProductIds(since);
+
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.product.id FROM ManufOrder self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since",
+        since);
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.manufOrder.product.id FROM OperationOrder self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since",
+        since);
+    return productIdSet;
+  }
+
+  /** The components removed from a bill of material cannot be found from the existing lines. */
+  @Override
+  protected boolean isProductStructureChanged(LocalDateTime since) {
+
+    return super.isProductStructureChanged(since)
+        || JPA.em()
+                .createQuery(
+                    "SELECT COUNT(self.id) FROM BillOfMaterial self "
+                        + "WHERE self.createdOn > :since OR self.updatedOn > :since",
+                    Long.class)
+                .setParameter("since", since)
+                .getSingleResult()
+            > 0;
+  }
+
+  /** The manufacturing orders of the kept products give needs on the recomputed products. */
+  @Override
+  protected void createKeptNeedMrpLines() throws AxelorException {
+
+    super.createKeptNeedMrpLines();
+
+    Set<Long> keptProductIdSet = this.getPreviousProductLevelMap(mrp).keySet();
+    keptProductIdSet.removeAll(this.productMap.keySet());
+
+    if (!keptProductIdSet.isEmpty()) {
+      this.createManufOrderMrpLines(keptProductIdSet);
+    }
+  }
+
+  /**
+   * Link the products of the bills of materials with their components, and the products of the
+   * manufacturing orders with the products they consume.
+   */
+  @Override
+  protected void addProductLinks(Map<Long, Set<Long>> productLinkMap) {
+
+    super.addProductLinks(productLinkMap);
+
+    this.addProductLinks(
+        productLinkMap,
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, subBillOfMaterial.product.id FROM BillOfMaterial self "
+                    + "JOIN self.billOfMaterialSet subBillOfMaterial",
+                Object[].class)
+            .getResultList());
+    this.addProductLinks(
+        productLinkMap,
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, prodProduct.product.id FROM ManufOrder self "
+                    + "JOIN self.toConsumeProdProductList prodProduct "
+                    + "WHERE self.plannedStartDateT > :date",
+                Object[].class)
+            .setParameter("date", today.atStartOfDay())
+            .getResultList());
+    this.addProductLinks(
+        productLinkMap,
+        JPA.em()
+            .createQuery(
+                "SELECT self.manufOrder.product.id, prodProduct.product.id "
+                    + "FROM OperationOrder self JOIN self.toConsumeProdProductList prodProduct "
+                    + "WHERE self.manufOrder.plannedStartDateT > :date",
+                Object[].class)
+            .setParameter("date", today.atStartOfDay())
+            .getResultList());
+  }
+
+  protected void addProductLinks(Map<Long, Set<Long>> productLinkMap, List<Object[]> linkList) {
+
+    for (Object[] link : linkList) {
+      this.addProductLink(productLinkMap, (Long) link[0], (Long) link[1]);
+    }
+  }
+
   // Manufacturing order AND manufacturing order need
   protected void createManufOrderMrpLines() throws AxelorException {
 
+    this.createManufOrderMrpLines(this.productMap.keySet());
+  }
+
+  /**
+   * Create the lines of the manufacturing orders of the given products. Only the lines of the MRP
+   * products are created, so the manufacturing orders of the products kept by a net change
+   * calculation only give their needs on the recomputed products.
+   *
+   * @param productIds
+   * @throws AxelorException
+   */
+  protected void createManufOrderMrpLines(Collection<Long> productIds) throws AxelorException {
+
     MrpLineType manufOrderMrpLineType =
         this.getMrpLineType(MrpLineTypeRepository.ELEMENT_MANUFACTURING_ORDER);
     MrpLineType manufOrderNeedMrpLineType =
@@ -126,7 +242,7 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
             .filter(
                 "self.product.id in (?1) AND self.prodProcess.stockLocation in (?2) "
                     + "AND self.statusSelect NOT IN (?3) AND self.plannedStartDateT > ?4",
-                this.productMap.keySet(),
+                productIds,
                 this.stockLocationList,
                 statusList, // TODO ETRANGE ICI : DEVRAIT ETRE
                 // L'INVERSE.!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
@@ -230,7 +346,8 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
           // BOM or
           // because the component of manuf order is not a component of the bill of material, we
           // add it with the level of manuf order product + 1.
-          if (!this.productMap.containsKey(product.getId())) {
+          if (!this.productMap.containsKey(product.getId())
+              && this.productMap.containsKey(manufOrder.getProduct().getId())) {
             this.assignProductAndLevel(product, manufOrder.getProduct());
             this.createAvailableStockMrpLine(
                 product, manufOrder.getProdProcess().getStockLocation());
@@ -276,6 +393,30 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
         mrpLineOriginList,
         relatedToSelectName);
 
+    this.createProposalNeedMrpLines(
+        mrp,
+        product,
+        mrpLineType,
+        reorderQty,
+        stockLocation,
+        maturityDate,
+        mrpLineOriginList,
+        relatedToSelectName);
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void createProposalNeedMrpLines(
+      Mrp mrp,
+      Product product,
+      MrpLineType mrpLineType,
+      BigDecimal reorderQty,
+      StockLocation stockLocation,
+      LocalDate maturityDate,
+      List<MrpLineOrigin> mrpLineOriginList,
+      String relatedToSelectName)
+      throws AxelorException {
+
     BillOfMaterial defaultBillOfMaterial = product.getDefaultBillOfMaterial();
 
     if (mrpLineType.getElementSelect() == MrpLineTypeRepository.ELEMENT_MANUFACTURING_PROPOSAL
@@ -288,7 +429,8 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
 
         Product subProduct = billOfMaterial.getProduct();
 
-        if (this.isMrpProduct(subProduct)) {
+        // the components not recomputed by a net change calculation keep their needs
+        if (this.isMrpProduct(subProduct) && this.productMap.containsKey(subProduct.getId())) {
           // TODO take the time to do the Manuf order (use machine planning)
           super.createProposalMrpLine(
               mrp,
@@ -344,14 +486,26 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
     return false;
   }
 
+  @Override
+  protected void assignProductAndLevel(Set<Product> productList) {
+
+    this.assignedBillOfMaterialIdSet = new HashSet<>();
+
+    try {
+      super.assignProductAndLevel(productList);
+    } finally {
+      this.assignedBillOfMaterialIdSet = null;
+    }
+  }
+
   @Override
   protected void assignProductAndLevel(Product product) {
 
     log.debug("Add of the product : {}", product.getFullName());
-    this.productMap.put(product.getId(), this.getMaxLevel(product, 0));
+    this.productMap.put(product.getId(), this.getMaxLevel(product, product.getLowLevelCode()));
 
     if (product.getDefaultBillOfMaterial() != null) {
-      this.assignProductLevel(product.getDefaultBillOfMaterial(), 0);
+      this.assignProductLevel(product.getDefaultBillOfMaterial());
     }
   }
 
@@ -365,36 +519,48 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
   }
 
   /**
-   * Update the level of Bill of material. The highest for each product (0: product with parent, 1:
-   * product with a parent, 2: product with a parent that have a parent, ...)
+   * Add the components of the bill of material, with their low level code as level. Each bill of
+   * material is only walked once per calculation, even when it is shared between several products.
    *
    * @param billOfMaterial
-   * @param level
    */
-  protected void assignProductLevel(BillOfMaterial billOfMaterial, int level) {
+  protected void assignProductLevel(BillOfMaterial billOfMaterial) {
 
-    if (billOfMaterial.getBillOfMaterialSet() == null
-        || billOfMaterial.getBillOfMaterialSet().isEmpty()
-        || level > 100) {
+    Deque<BillOfMaterial> billOfMaterialQueue = new ArrayDeque<>();
+    billOfMaterialQueue.add(billOfMaterial);
 
-      Product subProduct = billOfMaterial.getProduct();
+    while (!billOfMaterialQueue.isEmpty()) {
 
-      log.debug("Add of the sub product : {} for the level : {} ", subProduct.getFullName(), level);
-      this.productMap.put(subProduct.getId(), this.getMaxLevel(subProduct, level));
+      billOfMaterial = billOfMaterialQueue.poll();
 
-    } else {
+      if (!this.assignedBillOfMaterialIdSet.add(billOfMaterial.getId())) {
+        continue;
+      }
+
+      if (billOfMaterial.getBillOfMaterialSet() == null
+          || billOfMaterial.getBillOfMaterialSet().isEmpty()) {
+
+        Product subProduct = billOfMaterial.getProduct();
+
+        log.debug(
+            "Add of the sub product : {} for the level : {} ",
+            subProduct.getFullName(),
+            subProduct.getLowLevelCode());
+        this.productMap.put(
+            subProduct.getId(), this.getMaxLevel(subProduct, subProduct.getLowLevelCode()));
 
-      level = level + 1;
+      } else {
 
-      for (BillOfMaterial subBillOfMaterial : billOfMaterial.getBillOfMaterialSet()) {
+        for (BillOfMaterial subBillOfMaterial : billOfMaterial.getBillOfMaterialSet()) {
 
-        Product subProduct = subBillOfMaterial.getProduct();
+          Product subProduct = subBillOfMaterial.getProduct();
 
-        if (this.isMrpProduct(subProduct)) {
-          this.assignProductLevel(subBillOfMaterial, level);
+          if (this.isMrpProduct(subProduct)) {
+            billOfMaterialQueue.add(subBillOfMaterial);
 
-          if (subProduct.getDefaultBillOfMaterial() != null) {
-            this.assignProductLevel(subProduct.getDefaultBillOfMaterial(), level);
+            if (subProduct.getDefaultBillOfMaterial() != null) {
+              billOfMaterialQueue.add(subProduct.getDefaultBillOfMaterial());
+            }
           }
         }
       }
@@ -413,7 +579,10 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
 
     log.debug("Add of the product : {}", manufOrderComponentProduct.getFullName());
     this.productMap.put(
-        manufOrderComponentProduct.getId(), this.getMaxLevel(manufOrderProducedProduct, 0) + 1);
+        manufOrderComponentProduct.getId(),
+        Math.max(
+            this.getMaxLevel(manufOrderProducedProduct, 0) + 1,
+            manufOrderComponentProduct.getLowLevelCode()));
   }
 
   protected void createAvailableStockMrpLine(Product product, StockLocation stockLocation)
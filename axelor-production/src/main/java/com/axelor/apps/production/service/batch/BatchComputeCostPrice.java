@@ -0,0 +1,138 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.batch;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.apps.production.db.BillOfMaterial;
+import com.axelor.apps.production.db.repo.BillOfMaterialRepository;
+import com.axelor.apps.production.exceptions.IExceptionMessage;
+import com.axelor.apps.production.service.BillOfMaterialService;
+import com.axelor.apps.production.service.costsheet.CostSheetService;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.util.List;
+
+/**
+ * Compute the cost sheet of the default bill of material of each product with a standard cost,
+ * and update the cost price of the product.
+ *
+ * <p>Products are taken by decreasing low level code, so that the cost price of a component is
+ * updated before the bills of materials using it are costed.
+ */
+public class BatchComputeCostPrice extends AbstractBatch {
+
+  protected CostSheetService costSheetService;
+  protected BillOfMaterialService billOfMaterialService;
+  protected ProductRepository productRepository;
+  protected BillOfMaterialRepository billOfMaterialRepository;
+
+  @Inject
+  public BatchComputeCostPrice(
+      CostSheetService costSheetService,
+      BillOfMaterialService billOfMaterialService,
+      ProductRepository productRepository,
+      BillOfMaterialRepository billOfMaterialRepository) {
+    this.costSheetService = costSheetService;
+    this.billOfMaterialService = billOfMaterialService;
+    this.productRepository = productRepository;
+    this.billOfMaterialRepository = billOfMaterialRepository;
+  }
+
+  @Override
+  protected void process() {
+
+    try {
+      // bills of materials may have been imported without going through the repository
+      billOfMaterialService.computeLowLevelCodes();
+    } catch (Exception e) {
+      incrementAnomaly();
+      TraceBackService.trace(e, null, batch.getId());
+      return;
+    }
+    JPA.clear();
+
+    Company company = batch.getProductionBatch().getCompany();
+
+    Query<Product> productQuery =
+        productRepository
+            .all()
+            .filter(
+                "self.defaultBillOfMaterial IS NOT NULL AND self.costTypeSelect = :costTypeSelect"
+                    + (company != null
+                        ? " AND self.defaultBillOfMaterial.company.id = :companyId"
+                        : ""))
+            .bind("costTypeSelect", ProductRepository.COST_TYPE_STANDARD)
+            .order("-lowLevelCode")
+            .order("id");
+    if (company != null) {
+      productQuery.bind("companyId", company.getId());
+    }
+
+    List<Product> productList;
+    int offset = 0;
+
+    while (!(productList = productQuery.fetch(FETCH_LIMIT, offset)).isEmpty()) {
+
+      for (Product product : productList) {
+        ++offset;
+        try {
+          this.computeCostPrice(
+              billOfMaterialRepository.find(product.getDefaultBillOfMaterial().getId()));
+          incrementDone();
+        } catch (Exception e) {
+          incrementAnomaly();
+          TraceBackService.trace(e, null, batch.getId());
+        }
+      }
+
+      JPA.clear();
+    }
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void computeCostPrice(BillOfMaterial billOfMaterial) throws AxelorException {
+
+    costSheetService.computeCostPrice(billOfMaterial);
+    billOfMaterialService.updateProductCostPrice(billOfMaterial);
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s " + I18n.get(IExceptionMessage.BATCH_COMPUTE_COST_PRICE) + "\n",
+            batch.getDone());
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+
+    addComment(comment);
+    super.stop();
+  }
+}
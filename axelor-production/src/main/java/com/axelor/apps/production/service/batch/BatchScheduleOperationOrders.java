@@ -0,0 +1,88 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.batch;
+
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.apps.production.exceptions.IExceptionMessage;
+import com.axelor.apps.production.service.operationorder.OperationOrderPlanningService;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schedule the planned operation orders with finite machine capacity, see {@link
+ * OperationOrderPlanningService}.
+ *
+ * <p>All operation orders are scheduled in one transaction, only the ones which can not be
+ * scheduled are reported as anomalies.
+ */
+public class BatchScheduleOperationOrders extends AbstractBatch {
+
+  protected OperationOrderPlanningService operationOrderPlanningService;
+
+  @Inject
+  public BatchScheduleOperationOrders(OperationOrderPlanningService operationOrderPlanningService) {
+    this.operationOrderPlanningService = operationOrderPlanningService;
+  }
+
+  @Override
+  protected void process() {
+
+    // traced once the scheduling transaction is over
+    List<Exception> exceptionList = new ArrayList<>();
+    int count;
+
+    try {
+      count =
+          operationOrderPlanningService.schedule(
+              batch.getProductionBatch().getCompany(),
+              (operationOrder, e) -> exceptionList.add(e));
+    } catch (Exception e) {
+      incrementAnomaly();
+      TraceBackService.trace(e, null, batch.getId());
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      incrementDone();
+    }
+    for (Exception e : exceptionList) {
+      incrementAnomaly();
+      TraceBackService.trace(e, null, batch.getId());
+    }
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s " + I18n.get(IExceptionMessage.BATCH_SCHEDULE_OPERATION_ORDERS) + "\n",
+            batch.getDone());
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+
+    addComment(comment);
+    super.stop();
+  }
+}
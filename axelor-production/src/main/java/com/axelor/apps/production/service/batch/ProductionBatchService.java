@@ -45,6 +45,12 @@ public class ProductionBatchService extends AbstractBatchService {
       case ProductionBatchRepository.ACTION_COMPUTE_WORK_IN_PROGRESS_VALUATION:
         batch = computeValuation(productionBatch);
         break;
+      case ProductionBatchRepository.ACTION_COMPUTE_COST_PRICE:
+        batch = computeCostPrice(productionBatch);
+        break;
+      case ProductionBatchRepository.ACTION_SCHEDULE_OPERATION_ORDERS:
+        batch = scheduleOperationOrders(productionBatch);
+        break;
       default:
         throw new AxelorException(
             TraceBackRepository.CATEGORY_INCONSISTENCY,
@@ -58,4 +64,12 @@ public class ProductionBatchService extends AbstractBatchService {
   public Batch computeValuation(ProductionBatch productionBatch) {
     return Beans.get(BatchComputeWorkInProgressValuation.class).run(productionBatch);
   }
+
+  public Batch computeCostPrice(ProductionBatch productionBatch) {
+    return Beans.get(BatchComputeCostPrice.class).run(productionBatch);
+  }
+
+  public Batch scheduleOperationOrders(ProductionBatch productionBatch) {
+    return Beans.get(BatchScheduleOperationOrders.class).run(productionBatch);
+  }
 }
@@ -0,0 +1,433 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.DayPlanning;
+import com.axelor.apps.base.db.WeeklyPlanning;
+import com.axelor.apps.base.service.weeklyplanning.WeeklyPlanningService;
+import com.axelor.apps.production.db.Machine;
+import com.axelor.apps.production.db.ManufOrder;
+import com.axelor.apps.production.db.OperationOrder;
+import com.axelor.apps.production.db.WorkCenter;
+import com.axelor.apps.production.db.repo.ManufOrderRepository;
+import com.axelor.apps.production.db.repo.OperationOrderRepository;
+import com.axelor.apps.production.service.app.AppProductionService;
+import com.axelor.apps.tool.date.DurationTool;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.lang.invoke.MethodHandles;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward scheduling of the planned operation orders with finite machine capacity.
+ *
+ * <p>All open operation orders are read in one query. Operation orders already started, and the
+ * ones out of the scheduled scope, keep their dates and book their machine. The other ones are
+ * then taken by manufacturing order priority and planned start date, and each is put at the first
+ * free slot of its machine, within the machine weekly planning, after the operation orders of
+ * lower priority of its manufacturing order. Operation orders of the same priority can run in
+ * parallel, as in {@link OperationOrderWorkflowService#getLastOperationOrder(OperationOrder)}.
+ * Work centers without machine are not limited.
+ */
+public class OperationOrderPlanningService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Days searched for the next working period, plannings being weekly. */
+  protected static final int MAX_DAYS_WITHOUT_WORKING_PERIOD = 7;
+
+  protected static final List<Integer> OPEN_STATUS_LIST =
+      ImmutableList.of(
+          OperationOrderRepository.STATUS_PLANNED,
+          OperationOrderRepository.STATUS_IN_PROGRESS,
+          OperationOrderRepository.STATUS_STANDBY);
+
+  protected static final List<Integer> SCHEDULED_MANUF_ORDER_STATUS_LIST =
+      ImmutableList.of(
+          ManufOrderRepository.STATUS_PLANNED, ManufOrderRepository.STATUS_IN_PROGRESS);
+
+  protected OperationOrderWorkflowService operationOrderWorkflowService;
+  protected WeeklyPlanningService weeklyPlanningService;
+  protected AppProductionService appProductionService;
+
+  @Inject
+  public OperationOrderPlanningService(
+      OperationOrderWorkflowService operationOrderWorkflowService,
+      WeeklyPlanningService weeklyPlanningService,
+      AppProductionService appProductionService) {
+    this.operationOrderWorkflowService = operationOrderWorkflowService;
+    this.weeklyPlanningService = weeklyPlanningService;
+    this.appProductionService = appProductionService;
+  }
+
+  /** Working periods of a machine by day of week, sorted by start time. */
+  protected static class MachineCalendar {
+
+    private final Map<DayOfWeek, List<LocalTime[]>> periods;
+
+    protected MachineCalendar(Map<DayOfWeek, List<LocalTime[]>> periods) {
+      this.periods = periods;
+    }
+
+    /**
+     * Find the working period containing the given date time, or the next one.
+     *
+     * @return start and end of the period, the start being the given date time if it is in the
+     *     period
+     */
+    protected LocalDateTime[] findPeriod(LocalDateTime dateTime) {
+      LocalDate date = dateTime.toLocalDate();
+      for (int day = 0; day <= MAX_DAYS_WITHOUT_WORKING_PERIOD; day++) {
+        for (LocalTime[] period : periods.get(date.getDayOfWeek())) {
+          LocalDateTime start = date.atTime(period[0]);
+          LocalDateTime end = date.atTime(period[1]);
+          if (end.isAfter(dateTime)) {
+            return new LocalDateTime[] {start.isAfter(dateTime) ? start : dateTime, end};
+          }
+        }
+        date = date.plusDays(1);
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Get the date time at which the given working duration, started at the date time, ends. */
+    protected LocalDateTime addWorkingSeconds(LocalDateTime dateTime, long seconds) {
+      long remaining = seconds;
+      LocalDateTime[] period = findPeriod(dateTime);
+      while (true) {
+        long available = Duration.between(period[0], period[1]).getSeconds();
+        if (remaining <= available) {
+          return period[0].plusSeconds(remaining);
+        }
+        remaining -= available;
+        period = findPeriod(period[1]);
+      }
+    }
+  }
+
+  /** Scheduling state of a manufacturing order, its operation orders being read by priority. */
+  protected static class ManufOrderState {
+
+    private final ManufOrder manufOrder;
+    private final LocalDateTime startDateT;
+    private Integer priority;
+    private LocalDateTime previousPriorityEndDateT;
+    private LocalDateTime currentPriorityEndDateT;
+    private LocalDateTime endDateT;
+
+    protected ManufOrderState(ManufOrder manufOrder, LocalDateTime startDateT) {
+      this.manufOrder = manufOrder;
+      this.startDateT = startDateT;
+    }
+
+    /** Earliest start of an operation order of the given priority. */
+    protected LocalDateTime getEarliestStartDateT(Integer operationPriority) {
+      if (!Objects.equals(priority, operationPriority)) {
+        previousPriorityEndDateT = max(previousPriorityEndDateT, currentPriorityEndDateT);
+        currentPriorityEndDateT = null;
+        priority = operationPriority;
+      }
+      return max(startDateT, previousPriorityEndDateT);
+    }
+
+    protected void addOperationOrderEnd(LocalDateTime operationEndDateT) {
+      currentPriorityEndDateT = max(currentPriorityEndDateT, operationEndDateT);
+      endDateT = max(endDateT, operationEndDateT);
+    }
+  }
+
+  /**
+   * Schedule the planned operation orders of planned or started manufacturing orders, and save
+   * their planned dates along with the planned end date of their manufacturing order.
+   *
+   * @param company the company of the manufacturing orders to schedule, or null for all
+   * @param errorHandler called with the operation orders which can not be scheduled, their dates
+   *     are left unchanged. It is called within the scheduling transaction, so it should only
+   *     collect the errors, they can be traced once this method returns.
+   * @return the number of scheduled operation orders
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public int schedule(Company company, BiConsumer<OperationOrder, Exception> errorHandler) {
+
+    long startMillis = System.currentTimeMillis();
+    LocalDateTime now = appProductionService.getTodayDateTime().toLocalDateTime();
+
+    List<OperationOrder> operationOrderList = getOpenOperationOrderList();
+
+    // machine id -> booked intervals, by start date, which never overlap
+    Map<Long, TreeMap<LocalDateTime, LocalDateTime>> bookingMap = new HashMap<>();
+    Map<Long, MachineCalendar> calendarMap = new HashMap<>();
+    Map<Long, ManufOrderState> manufOrderStateMap = new HashMap<>();
+    Set<Long> toScheduleIdSet = new HashSet<>();
+
+    for (OperationOrder operationOrder : operationOrderList) {
+      if (isToSchedule(operationOrder, company)) {
+        toScheduleIdSet.add(operationOrder.getId());
+        continue;
+      }
+      Machine machine = getMachine(operationOrder);
+      if (machine != null
+          && operationOrder.getPlannedStartDateT() != null
+          && operationOrder.getPlannedEndDateT() != null) {
+        book(
+            bookingMap.computeIfAbsent(machine.getId(), id -> new TreeMap<>()),
+            operationOrder.getPlannedStartDateT(),
+            operationOrder.getPlannedEndDateT());
+      }
+    }
+
+    int count = 0;
+
+    for (OperationOrder operationOrder : operationOrderList) {
+
+      ManufOrder manufOrder = operationOrder.getManufOrder();
+      ManufOrderState state =
+          manufOrderStateMap.computeIfAbsent(
+              manufOrder.getId(),
+              id -> new ManufOrderState(manufOrder, max(manufOrder.getPlannedStartDateT(), now)));
+      LocalDateTime earliestStartDateT = state.getEarliestStartDateT(operationOrder.getPriority());
+
+      if (!toScheduleIdSet.contains(operationOrder.getId())) {
+        state.addOperationOrderEnd(operationOrder.getPlannedEndDateT());
+        continue;
+      }
+
+      try {
+        long duration =
+            operationOrder.getWorkCenter() != null
+                ? operationOrderWorkflowService.computeEntireCycleDuration(
+                    operationOrder, manufOrder.getQty())
+                : 0;
+
+        Machine machine = getMachine(operationOrder);
+        LocalDateTime[] slot;
+        if (machine == null) {
+          slot =
+              new LocalDateTime[] {earliestStartDateT, earliestStartDateT.plusSeconds(duration)};
+        } else {
+          slot =
+              findSlot(
+                  bookingMap.computeIfAbsent(machine.getId(), id -> new TreeMap<>()),
+                  calendarMap.computeIfAbsent(machine.getId(), id -> getCalendar(machine)),
+                  earliestStartDateT,
+                  duration);
+        }
+
+        operationOrder.setPlannedStartDateT(slot[0]);
+        operationOrder.setPlannedEndDateT(slot[1]);
+        operationOrder.setPlannedDuration(
+            DurationTool.getSecondsDuration(Duration.between(slot[0], slot[1])));
+        state.addOperationOrderEnd(slot[1]);
+        count++;
+      } catch (Exception e) {
+        state.addOperationOrderEnd(operationOrder.getPlannedEndDateT());
+        errorHandler.accept(operationOrder, e);
+      }
+    }
+
+    for (ManufOrderState state : manufOrderStateMap.values()) {
+      ManufOrder manufOrder = state.manufOrder;
+      if (state.endDateT != null
+          && SCHEDULED_MANUF_ORDER_STATUS_LIST.contains(manufOrder.getStatusSelect())
+          && (company == null || company.equals(manufOrder.getCompany()))) {
+        manufOrder.setPlannedEndDateT(state.endDateT);
+      }
+    }
+
+    long millis = Math.max(System.currentTimeMillis() - startMillis, 1);
+    log.debug(
+        "{} operation orders scheduled in {} ms ({} per second)",
+        count,
+        millis,
+        count * 1000L / millis);
+
+    return count;
+  }
+
+  /**
+   * Get the open operation orders with their manufacturing order and work centers, by
+   * manufacturing order then by priority.
+   */
+  protected List<OperationOrder> getOpenOperationOrderList() {
+    return JPA.em()
+        .createQuery(
+            "SELECT self FROM OperationOrder self "
+                + "JOIN FETCH self.manufOrder "
+                + "LEFT JOIN FETCH self.prodProcessLine "
+                + "LEFT JOIN FETCH self.workCenter "
+                + "LEFT JOIN FETCH self.machineWorkCenter "
+                + "WHERE self.statusSelect IN (:statusList) "
+                + "ORDER BY self.manufOrder.prioritySelect DESC, "
+                + "self.manufOrder.plannedStartDateT, self.manufOrder.id, "
+                + "self.priority, self.id",
+            OperationOrder.class)
+        .setParameter("statusList", OPEN_STATUS_LIST)
+        .getResultList();
+  }
+
+  protected boolean isToSchedule(OperationOrder operationOrder, Company company) {
+    ManufOrder manufOrder = operationOrder.getManufOrder();
+    return operationOrder.getStatusSelect() == OperationOrderRepository.STATUS_PLANNED
+        && SCHEDULED_MANUF_ORDER_STATUS_LIST.contains(manufOrder.getStatusSelect())
+        && (company == null || company.equals(manufOrder.getCompany()));
+  }
+
+  protected Machine getMachine(OperationOrder operationOrder) {
+    WorkCenter workCenter =
+        operationOrder.getMachineWorkCenter() != null
+            ? operationOrder.getMachineWorkCenter()
+            : operationOrder.getWorkCenter();
+    return workCenter != null ? workCenter.getMachine() : null;
+  }
+
+  /**
+   * Get the working periods of the machine.
+   *
+   * @return the calendar, or null if the machine has no planning or no working period at all
+   */
+  protected MachineCalendar getCalendar(Machine machine) {
+
+    WeeklyPlanning weeklyPlanning = machine.getWeeklyPlanning();
+    if (weeklyPlanning == null) {
+      return null;
+    }
+
+    Map<DayOfWeek, List<LocalTime[]>> periods = new EnumMap<>(DayOfWeek.class);
+    boolean hasPeriod = false;
+    LocalDate date = appProductionService.getTodayDateTime().toLocalDate();
+
+    for (int day = 0; day < 7; day++) {
+      List<LocalTime[]> dayPeriods = new ArrayList<>();
+      DayPlanning dayPlanning = weeklyPlanningService.findDayPlanning(weeklyPlanning, date);
+      if (dayPlanning != null) {
+        addPeriod(dayPeriods, dayPlanning.getMorningFrom(), dayPlanning.getMorningTo());
+        addPeriod(dayPeriods, dayPlanning.getAfternoonFrom(), dayPlanning.getAfternoonTo());
+      }
+      dayPeriods.sort((first, second) -> first[0].compareTo(second[0]));
+      hasPeriod |= !dayPeriods.isEmpty();
+      periods.put(date.getDayOfWeek(), dayPeriods);
+      date = date.plusDays(1);
+    }
+
+    return hasPeriod ? new MachineCalendar(periods) : null;
+  }
+
+  protected void addPeriod(List<LocalTime[]> dayPeriods, LocalTime from, LocalTime to) {
+    if (from != null && to != null && from.isBefore(to)) {
+      dayPeriods.add(new LocalTime[] {from, to});
+    }
+  }
+
+  /**
+   * Find the first slot of the machine starting at or after the given date time, in which the
+   * operation can be done without interruption by another booking.
+   *
+   * @param bookings the booked intervals of the machine, the slot found is added to them
+   * @param calendar the machine working periods, or null if the machine is always available
+   * @param earliestStartDateT
+   * @param duration the working duration of the operation, in seconds
+   * @return the start and end of the slot
+   */
+  protected LocalDateTime[] findSlot(
+      TreeMap<LocalDateTime, LocalDateTime> bookings,
+      MachineCalendar calendar,
+      LocalDateTime earliestStartDateT,
+      long duration) {
+
+    LocalDateTime startDateT = earliestStartDateT;
+
+    while (true) {
+      if (calendar != null) {
+        startDateT = calendar.findPeriod(startDateT)[0];
+      }
+      LocalDateTime endDateT =
+          calendar != null
+              ? calendar.addWorkingSeconds(startDateT, duration)
+              : startDateT.plusSeconds(duration);
+
+      Entry<LocalDateTime, LocalDateTime> previous = bookings.floorEntry(startDateT);
+      if (previous != null && previous.getValue().isAfter(startDateT)) {
+        startDateT = previous.getValue();
+        continue;
+      }
+      Entry<LocalDateTime, LocalDateTime> next = bookings.higherEntry(startDateT);
+      if (next != null && next.getKey().isBefore(endDateT)) {
+        startDateT = next.getValue();
+        continue;
+      }
+
+      book(bookings, startDateT, endDateT);
+      return new LocalDateTime[] {startDateT, endDateT};
+    }
+  }
+
+  /** Add an interval to the bookings, merging it with the ones it overlaps. */
+  protected void book(
+      TreeMap<LocalDateTime, LocalDateTime> bookings,
+      LocalDateTime startDateT,
+      LocalDateTime endDateT) {
+
+    if (!endDateT.isAfter(startDateT)) {
+      return;
+    }
+
+    Entry<LocalDateTime, LocalDateTime> previous = bookings.floorEntry(startDateT);
+    if (previous != null && !previous.getValue().isBefore(startDateT)) {
+      startDateT = previous.getKey();
+      endDateT = max(endDateT, previous.getValue());
+      bookings.remove(previous.getKey());
+    }
+
+    Entry<LocalDateTime, LocalDateTime> next = bookings.ceilingEntry(startDateT);
+    while (next != null && !next.getKey().isAfter(endDateT)) {
+      endDateT = max(endDateT, next.getValue());
+      bookings.remove(next.getKey());
+      next = bookings.ceilingEntry(startDateT);
+    }
+
+    bookings.put(startDateT, endDateT);
+  }
+
+  protected static LocalDateTime max(LocalDateTime first, LocalDateTime second) {
+    if (first == null) {
+      return second;
+    }
+    return second == null || first.isAfter(second) ? first : second;
+  }
+}
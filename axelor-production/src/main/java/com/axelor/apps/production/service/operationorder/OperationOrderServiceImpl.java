@@ -20,12 +20,14 @@ package com.axelor.apps.production.service.operationorder;
 import com.axelor.apps.base.db.DayPlanning;
 import com.axelor.apps.base.service.BarcodeGeneratorService;
 import com.axelor.apps.base.service.weeklyplanning.WeeklyPlanningService;
+import com.axelor.apps.production.db.Machine;
 import com.axelor.apps.production.db.ManufOrder;
 import com.axelor.apps.production.db.OperationOrder;
 import com.axelor.apps.production.db.ProdHumanResource;
 import com.axelor.apps.production.db.ProdProcessLine;
 import com.axelor.apps.production.db.ProdProduct;
 import com.axelor.apps.production.db.WorkCenter;
+import com.axelor.apps.production.db.repo.MachineRepository;
 import com.axelor.apps.production.db.repo.OperationOrderRepository;
 import com.axelor.apps.production.exceptions.IExceptionMessage;
 import com.axelor.apps.production.service.app.AppProductionService;
@@ -35,6 +37,7 @@ import com.axelor.apps.stock.db.StockMove;
 import com.axelor.apps.stock.db.StockMoveLine;
 import com.axelor.apps.stock.db.repo.StockMoveRepository;
 import com.axelor.apps.stock.service.StockMoveService;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -49,6 +52,7 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -73,6 +77,11 @@ public class OperationOrderServiceImpl implements OperationOrderService {
   private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
   private static final DateTimeFormatter DATE_TIME_FORMAT =
       DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+  private static final long SECONDS_PER_HOUR = 3600;
+
+  /** Longest range of the charge per hour, in days. */
+  protected static final int CHARGE_MACHINE_HOURS_MAX_DAYS = 100;
   private final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -191,95 +200,169 @@ public class OperationOrderServiceImpl implements OperationOrderService {
     return operationOrder;
   }
 
+  /** Planned operation order on a machine, reduced to what is needed to compute the charge. */
+  protected static class PlannedInterval {
+
+    protected final Long machineId;
+    protected final String machineName;
+    protected final LocalDateTime startDateT;
+    protected final LocalDateTime endDateT;
+
+    protected PlannedInterval(
+        Long machineId, String machineName, LocalDateTime startDateT, LocalDateTime endDateT) {
+      this.machineId = machineId;
+      this.machineName = machineName;
+      this.startDateT = startDateT;
+      this.endDateT = endDateT;
+    }
+  }
+
+  @FunctionalInterface
+  protected interface ChargeFunction {
+
+    /** Charge of the interval for its minutes within the hour, null to leave them out. */
+    BigDecimal getCharge(
+        PlannedInterval plannedInterval, LocalDateTime itDateTime, long numberOfMinutes);
+  }
+
+  /**
+   * Get the operation orders planned on a machine over the given range, with a single query.
+   *
+   * @param fromDateTime
+   * @param toDateTime
+   * @return
+   */
+  protected List<PlannedInterval> getPlannedIntervals(
+      LocalDateTime fromDateTime, LocalDateTime toDateTime) {
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT machine.id, machine.name, self.plannedStartDateT, self.plannedEndDateT "
+                    + "FROM OperationOrder self "
+                    + "JOIN self.workCenter workCenter "
+                    + "JOIN workCenter.machine machine "
+                    + "WHERE self.plannedStartDateT <= :toDateTime "
+                    + "AND self.plannedEndDateT >= :fromDateTime",
+                Object[].class)
+            .setParameter("fromDateTime", fromDateTime)
+            .setParameter("toDateTime", toDateTime)
+            .getResultList();
+
+    List<PlannedInterval> plannedIntervalList = new ArrayList<>(resultList.size());
+    for (Object[] result : resultList) {
+      plannedIntervalList.add(
+          new PlannedInterval(
+              (Long) result[0],
+              (String) result[1],
+              (LocalDateTime) result[2],
+              (LocalDateTime) result[3]));
+    }
+    return plannedIntervalList;
+  }
+
+  /**
+   * Spread the planned minutes of each operation order over the hours of the range, instead of
+   * querying the operation orders hour by hour.
+   *
+   * @param plannedIntervalList
+   * @param fromDateTime start of the first hour
+   * @param hourCount
+   * @param chargeFunction
+   * @return for each hour, the charge by machine name
+   */
+  protected List<Map<String, BigDecimal>> computeHourlyCharges(
+      List<PlannedInterval> plannedIntervalList,
+      LocalDateTime fromDateTime,
+      int hourCount,
+      ChargeFunction chargeFunction) {
+
+    List<Map<String, BigDecimal>> chargeList = new ArrayList<>(hourCount);
+    for (int i = 0; i < hourCount; i++) {
+      chargeList.add(new HashMap<>());
+    }
+
+    for (PlannedInterval plannedInterval : plannedIntervalList) {
+
+      // hours overlapping the interval, bounds included
+      long startSeconds = Duration.between(fromDateTime, plannedInterval.startDateT).getSeconds();
+      long endSeconds = Duration.between(fromDateTime, plannedInterval.endDateT).getSeconds();
+      long firstHour =
+          Math.max(0, -Math.floorDiv(SECONDS_PER_HOUR - startSeconds, SECONDS_PER_HOUR));
+      long lastHour = Math.min(hourCount - 1, Math.floorDiv(endSeconds, SECONDS_PER_HOUR));
+
+      for (long hour = firstHour; hour <= lastHour; hour++) {
+        LocalDateTime itDateTime = fromDateTime.plusHours(hour);
+        BigDecimal percentage =
+            chargeFunction.getCharge(
+                plannedInterval, itDateTime, this.getPlannedMinutes(plannedInterval, itDateTime));
+        if (percentage != null) {
+          chargeList
+              .get((int) hour)
+              .merge(plannedInterval.machineName, percentage, BigDecimal::add);
+        }
+      }
+    }
+
+    return chargeList;
+  }
+
+  /** Minutes of the interval within the hour starting at the given date time, at most 60. */
+  protected long getPlannedMinutes(PlannedInterval plannedInterval, LocalDateTime itDateTime) {
+
+    long numberOfMinutes;
+    if (plannedInterval.startDateT.isBefore(itDateTime)) {
+      numberOfMinutes = Duration.between(itDateTime, plannedInterval.endDateT).toMinutes();
+    } else if (plannedInterval.endDateT.isAfter(itDateTime.plusHours(1))) {
+      numberOfMinutes =
+          Duration.between(plannedInterval.startDateT, itDateTime.plusHours(1)).toMinutes();
+    } else {
+      numberOfMinutes =
+          Duration.between(plannedInterval.startDateT, plannedInterval.endDateT).toMinutes();
+    }
+    return Math.min(numberOfMinutes, 60);
+  }
+
+  protected int getHourCount(LocalDateTime fromDateTime, LocalDateTime toDateTime) {
+    return (int) (Duration.between(fromDateTime, toDateTime).getSeconds() / SECONDS_PER_HOUR) + 1;
+  }
+
   public List<Map<String, Object>> chargeByMachineHours(
       LocalDateTime fromDateTime, LocalDateTime toDateTime) throws AxelorException {
     List<Map<String, Object>> dataList = new ArrayList<Map<String, Object>>();
-    LocalDateTime itDateTime =
-        LocalDateTime.parse(fromDateTime.toString(), DateTimeFormatter.ISO_DATE_TIME);
-    OperationOrderRepository operationOrderRepo = Beans.get(OperationOrderRepository.class);
-    if (Duration.between(fromDateTime, toDateTime).toDays() > 20) {
+    if (Duration.between(fromDateTime, toDateTime).toDays() > CHARGE_MACHINE_HOURS_MAX_DAYS) {
       throw new AxelorException(
           TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
           I18n.get(IExceptionMessage.CHARGE_MACHINE_DAYS));
     }
 
-    List<OperationOrder> operationOrderListTemp =
-        operationOrderRepo
-            .all()
-            .filter(
-                "self.plannedStartDateT <= ?2 AND self.plannedEndDateT >= ?1",
-                fromDateTime,
-                toDateTime)
-            .fetch();
+    List<PlannedInterval> plannedIntervalList = this.getPlannedIntervals(fromDateTime, toDateTime);
     Set<String> machineNameList = new HashSet<String>();
-    for (OperationOrder operationOrder : operationOrderListTemp) {
-      if (operationOrder.getWorkCenter() != null
-          && operationOrder.getWorkCenter().getMachine() != null) {
-        if (!machineNameList.contains(operationOrder.getWorkCenter().getMachine().getName())) {
-          machineNameList.add(operationOrder.getWorkCenter().getMachine().getName());
-        }
-      }
+    for (PlannedInterval plannedInterval : plannedIntervalList) {
+      machineNameList.add(plannedInterval.machineName);
     }
-    while (!itDateTime.isAfter(toDateTime)) {
-      List<OperationOrder> operationOrderList =
-          operationOrderRepo
-              .all()
-              .filter(
-                  "self.plannedStartDateT <= ?2 AND self.plannedEndDateT >= ?1",
-                  itDateTime,
-                  itDateTime.plusHours(1))
-              .fetch();
-      Map<String, BigDecimal> map = new HashMap<String, BigDecimal>();
-      for (OperationOrder operationOrder : operationOrderList) {
-        if (operationOrder.getWorkCenter() != null
-            && operationOrder.getWorkCenter().getMachine() != null) {
-          String machine = operationOrder.getWorkCenter().getMachine().getName();
-          long numberOfMinutes = 0;
-          if (operationOrder.getPlannedStartDateT().isBefore(itDateTime)) {
-            numberOfMinutes =
-                Duration.between(itDateTime, operationOrder.getPlannedEndDateT()).toMinutes();
-          } else if (operationOrder.getPlannedEndDateT().isAfter(itDateTime.plusHours(1))) {
-            numberOfMinutes =
-                Duration.between(operationOrder.getPlannedStartDateT(), itDateTime.plusHours(1))
-                    .toMinutes();
-          } else {
-            numberOfMinutes =
-                Duration.between(
-                        operationOrder.getPlannedStartDateT(), operationOrder.getPlannedEndDateT())
-                    .toMinutes();
-          }
-          if (numberOfMinutes > 60) {
-            numberOfMinutes = 60;
-          }
-          BigDecimal percentage =
-              new BigDecimal(numberOfMinutes)
-                  .multiply(new BigDecimal(100))
-                  .divide(new BigDecimal(60), 2, RoundingMode.HALF_UP);
-          if (map.containsKey(machine)) {
-            map.put(machine, map.get(machine).add(percentage));
-          } else {
-            map.put(machine, percentage);
-          }
-        }
-      }
-      Set<String> keyList = map.keySet();
+
+    int hourCount = this.getHourCount(fromDateTime, toDateTime);
+    List<Map<String, BigDecimal>> chargeList =
+        this.computeHourlyCharges(
+            plannedIntervalList,
+            fromDateTime,
+            hourCount,
+            (plannedInterval, itDateTime, numberOfMinutes) ->
+                new BigDecimal(numberOfMinutes)
+                    .multiply(new BigDecimal(100))
+                    .divide(new BigDecimal(60), 2, RoundingMode.HALF_UP));
+
+    for (int hour = 0; hour < hourCount; hour++) {
+      LocalDateTime itDateTime = fromDateTime.plusHours(hour);
+      Map<String, BigDecimal> map = chargeList.get(hour);
       for (String key : machineNameList) {
-        if (keyList.contains(key)) {
-          Map<String, Object> dataMap = new HashMap<String, Object>();
-          dataMap.put("dateTime", (Object) itDateTime.format(DATE_TIME_FORMAT));
-          dataMap.put("charge", (Object) map.get(key));
-          dataMap.put("machine", (Object) key);
-          dataList.add(dataMap);
-        } else {
-          Map<String, Object> dataMap = new HashMap<String, Object>();
-          dataMap.put("dateTime", (Object) itDateTime.format(DATE_TIME_FORMAT));
-          dataMap.put("charge", (Object) BigDecimal.ZERO);
-          dataMap.put("machine", (Object) key);
-          dataList.add(dataMap);
-        }
+        Map<String, Object> dataMap = new HashMap<String, Object>();
+        dataMap.put("dateTime", (Object) itDateTime.format(DATE_TIME_FORMAT));
+        dataMap.put("charge", (Object) map.getOrDefault(key, BigDecimal.ZERO));
+        dataMap.put("machine", (Object) key);
+        dataList.add(dataMap);
       }
-
-      itDateTime = itDateTime.plusHours(1);
     }
     return dataList;
   }
@@ -290,124 +373,95 @@ public class OperationOrderServiceImpl implements OperationOrderService {
     List<Map<String, Object>> dataList = new ArrayList<Map<String, Object>>();
     fromDateTime = fromDateTime.withHour(0).withMinute(0);
     toDateTime = toDateTime.withHour(23).withMinute(59);
-    LocalDateTime itDateTime =
-        LocalDateTime.parse(fromDateTime.toString(), DateTimeFormatter.ISO_DATE_TIME);
     if (Duration.between(fromDateTime, toDateTime).toDays() > 500) {
       throw new AxelorException(
           TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
           I18n.get(IExceptionMessage.CHARGE_MACHINE_DAYS));
     }
 
-    List<OperationOrder> operationOrderListTemp =
-        Beans.get(OperationOrderRepository.class)
-            .all()
-            .filter(
-                "self.plannedStartDateT <= ?2 AND self.plannedEndDateT >= ?1",
-                fromDateTime,
-                toDateTime)
-            .fetch();
+    List<PlannedInterval> plannedIntervalList = this.getPlannedIntervals(fromDateTime, toDateTime);
     Set<String> machineNameList = new HashSet<String>();
-    for (OperationOrder operationOrder : operationOrderListTemp) {
-      if (operationOrder.getWorkCenter() != null
-          && operationOrder.getWorkCenter().getMachine() != null) {
-        if (!machineNameList.contains(operationOrder.getWorkCenter().getMachine().getName())) {
-          machineNameList.add(operationOrder.getWorkCenter().getMachine().getName());
-        }
-      }
+    for (PlannedInterval plannedInterval : plannedIntervalList) {
+      machineNameList.add(plannedInterval.machineName);
     }
-    while (!itDateTime.isAfter(toDateTime)) {
-      List<OperationOrder> operationOrderList =
-          Beans.get(OperationOrderRepository.class)
-              .all()
-              .filter(
-                  "self.plannedStartDateT <= ?2 AND self.plannedEndDateT >= ?1",
-                  itDateTime,
-                  itDateTime.plusHours(1))
-              .fetch();
-      Map<String, BigDecimal> map = new HashMap<String, BigDecimal>();
-      WeeklyPlanningService weeklyPlanningService = Beans.get(WeeklyPlanningService.class);
-      for (OperationOrder operationOrder : operationOrderList) {
-        if (operationOrder.getWorkCenter() != null
-            && operationOrder.getWorkCenter().getMachine() != null) {
-          String machine = operationOrder.getWorkCenter().getMachine().getName();
-          long numberOfMinutes = 0;
-          if (operationOrder.getPlannedStartDateT().isBefore(itDateTime)) {
-            numberOfMinutes =
-                Duration.between(itDateTime, operationOrder.getPlannedEndDateT()).toMinutes();
-          } else if (operationOrder.getPlannedEndDateT().isAfter(itDateTime.plusHours(1))) {
-            numberOfMinutes =
-                Duration.between(operationOrder.getPlannedStartDateT(), itDateTime.plusHours(1))
-                    .toMinutes();
-          } else {
-            numberOfMinutes =
-                Duration.between(
-                        operationOrder.getPlannedStartDateT(), operationOrder.getPlannedEndDateT())
-                    .toMinutes();
-          }
-          if (numberOfMinutes > 60) {
-            numberOfMinutes = 60;
-          }
-          long numberOfMinutesPerDay = 0;
-          if (operationOrder.getWorkCenter().getMachine().getWeeklyPlanning() != null) {
-            DayPlanning dayPlanning =
-                weeklyPlanningService.findDayPlanning(
-                    operationOrder.getWorkCenter().getMachine().getWeeklyPlanning(),
-                    LocalDateTime.parse(itDateTime.toString(), DateTimeFormatter.ISO_DATE_TIME)
-                        .toLocalDate());
-            if (dayPlanning != null) {
-              numberOfMinutesPerDay =
-                  Duration.between(dayPlanning.getMorningFrom(), dayPlanning.getMorningTo())
-                      .toMinutes();
-              numberOfMinutesPerDay +=
-                  Duration.between(dayPlanning.getAfternoonFrom(), dayPlanning.getAfternoonTo())
-                      .toMinutes();
-            } else {
-              numberOfMinutesPerDay = 0;
-            }
-          } else {
-            numberOfMinutesPerDay = 60 * 8;
-          }
-          if (numberOfMinutesPerDay != 0) {
-            BigDecimal percentage =
-                new BigDecimal(numberOfMinutes)
-                    .multiply(new BigDecimal(100))
-                    .divide(new BigDecimal(numberOfMinutesPerDay), 2, RoundingMode.HALF_UP);
-            if (map.containsKey(machine)) {
-              map.put(machine, map.get(machine).add(percentage));
-            } else {
-              map.put(machine, percentage);
-            }
-          }
-        }
-      }
-      Set<String> keyList = map.keySet();
+
+    // minutes of work of a machine per day, by machine id and date
+    Map<String, Long> minutesPerDayMap = new HashMap<>();
+
+    int hourCount = this.getHourCount(fromDateTime, toDateTime);
+    List<Map<String, BigDecimal>> chargeList =
+        this.computeHourlyCharges(
+            plannedIntervalList,
+            fromDateTime,
+            hourCount,
+            (plannedInterval, itDateTime, numberOfMinutes) -> {
+              long numberOfMinutesPerDay =
+                  minutesPerDayMap.computeIfAbsent(
+                      plannedInterval.machineId + ":" + itDateTime.toLocalDate(),
+                      key ->
+                          this.getNumberOfMinutesPerDay(
+                              plannedInterval.machineId, itDateTime.toLocalDate()));
+              if (numberOfMinutesPerDay == 0) {
+                return null;
+              }
+              return new BigDecimal(numberOfMinutes)
+                  .multiply(new BigDecimal(100))
+                  .divide(new BigDecimal(numberOfMinutesPerDay), 2, RoundingMode.HALF_UP);
+            });
+
+    // data by day and machine name
+    Map<String, Map<String, Object>> dataMapByKey = new HashMap<>();
+
+    for (int hour = 0; hour < hourCount; hour++) {
+      String day = fromDateTime.plusHours(hour).format(DATE_FORMAT);
+      Map<String, BigDecimal> map = chargeList.get(hour);
       for (String key : machineNameList) {
-        if (keyList.contains(key)) {
-          int found = 0;
-          for (Map<String, Object> mapIt : dataList) {
-            if (mapIt.get("dateTime").equals((Object) itDateTime.format(DATE_FORMAT))
-                && mapIt.get("machine").equals((Object) key)) {
-              mapIt.put("charge", new BigDecimal(mapIt.get("charge").toString()).add(map.get(key)));
-              found = 1;
-              break;
-            }
-          }
-          if (found == 0) {
-            Map<String, Object> dataMap = new HashMap<String, Object>();
-
-            dataMap.put("dateTime", (Object) itDateTime.format(DATE_FORMAT));
-            dataMap.put("charge", (Object) map.get(key));
-            dataMap.put("machine", (Object) key);
-            dataList.add(dataMap);
-          }
+        if (!map.containsKey(key)) {
+          continue;
+        }
+        Map<String, Object> dataMap = dataMapByKey.get(day + ":" + key);
+        if (dataMap != null) {
+          dataMap.put("charge", ((BigDecimal) dataMap.get("charge")).add(map.get(key)));
+        } else {
+          dataMap = new HashMap<String, Object>();
+          dataMap.put("dateTime", (Object) day);
+          dataMap.put("charge", (Object) map.get(key));
+          dataMap.put("machine", (Object) key);
+          dataList.add(dataMap);
+          dataMapByKey.put(day + ":" + key, dataMap);
         }
       }
-
-      itDateTime = itDateTime.plusHours(1);
     }
     return dataList;
   }
 
+  protected long getNumberOfMinutesPerDay(Long machineId, LocalDate date) {
+
+    Machine machine = Beans.get(MachineRepository.class).find(machineId);
+
+    if (machine.getWeeklyPlanning() == null) {
+      return 60 * 8;
+    }
+
+    DayPlanning dayPlanning =
+        Beans.get(WeeklyPlanningService.class).findDayPlanning(machine.getWeeklyPlanning(), date);
+    if (dayPlanning == null) {
+      return 0;
+    }
+
+    long numberOfMinutesPerDay = 0;
+    if (dayPlanning.getMorningFrom() != null && dayPlanning.getMorningTo() != null) {
+      numberOfMinutesPerDay +=
+          Duration.between(dayPlanning.getMorningFrom(), dayPlanning.getMorningTo()).toMinutes();
+    }
+    if (dayPlanning.getAfternoonFrom() != null && dayPlanning.getAfternoonTo() != null) {
+      numberOfMinutesPerDay +=
+          Duration.between(dayPlanning.getAfternoonFrom(), dayPlanning.getAfternoonTo())
+              .toMinutes();
+    }
+    return numberOfMinutesPerDay;
+  }
+
   @Override
   public List<ProdProduct> createDiffProdProductList(
       OperationOrder operationOrder,
@@ -21,6 +21,7 @@ import com.axelor.apps.production.db.BillOfMaterial;
 import com.axelor.apps.production.db.CostSheet;
 import com.axelor.apps.production.db.TempBomTree;
 import com.axelor.apps.production.db.repo.BillOfMaterialRepository;
+import com.axelor.apps.production.exceptions.IExceptionMessage;
 import com.axelor.apps.production.service.BillOfMaterialService;
 import com.axelor.apps.production.service.ProdProcessService;
 import com.axelor.apps.production.service.costsheet.CostSheetService;
@@ -86,6 +87,16 @@ public class BillOfMaterialController {
     response.setReload(true);
   }
 
+  public void computeLowLevelCodes(ActionRequest request, ActionResponse response) {
+
+    try {
+      billOfMaterialService.computeLowLevelCodes();
+      response.setFlash(I18n.get(IExceptionMessage.BOM_LOW_LEVEL_CODES_COMPUTED));
+    } catch (AxelorException e) {
+      TraceBackService.trace(response, e);
+    }
+  }
+
   public void checkOriginalBillOfMaterial(ActionRequest request, ActionResponse response) {
 
     BillOfMaterial billOfMaterial =
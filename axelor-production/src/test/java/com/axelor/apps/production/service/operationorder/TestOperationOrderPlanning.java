@@ -0,0 +1,166 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.production.service.operationorder.OperationOrderPlanningService.MachineCalendar;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestOperationOrderPlanning {
+
+  private static final LocalDate MONDAY = LocalDate.of(2019, 1, 7);
+
+  private static final long HOUR = 3600;
+
+  private final OperationOrderPlanningService planningService =
+      new OperationOrderPlanningService(null, null, null);
+
+  @Test
+  public void testBookMergesOverlappingAndAdjacentIntervals() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+
+    planningService.book(bookings, at(MONDAY, 8, 0), at(MONDAY, 10, 0));
+    planningService.book(bookings, at(MONDAY, 9, 0), at(MONDAY, 11, 0));
+    planningService.book(bookings, at(MONDAY, 12, 0), at(MONDAY, 13, 0));
+    Assert.assertEquals(2, bookings.size());
+    Assert.assertEquals(at(MONDAY, 11, 0), bookings.get(at(MONDAY, 8, 0)));
+
+    planningService.book(bookings, at(MONDAY, 11, 0), at(MONDAY, 12, 0));
+    Assert.assertEquals(1, bookings.size());
+    Assert.assertEquals(at(MONDAY, 13, 0), bookings.get(at(MONDAY, 8, 0)));
+  }
+
+  @Test
+  public void testBookIgnoresEmptyInterval() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+
+    planningService.book(bookings, at(MONDAY, 8, 0), at(MONDAY, 8, 0));
+
+    Assert.assertTrue(bookings.isEmpty());
+  }
+
+  @Test
+  public void testSlotAfterOverlappingBooking() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+    planningService.book(bookings, at(MONDAY, 8, 0), at(MONDAY, 10, 0));
+
+    LocalDateTime[] slot = planningService.findSlot(bookings, null, at(MONDAY, 9, 0), HOUR);
+
+    assertSlot(slot, at(MONDAY, 10, 0), at(MONDAY, 11, 0));
+    Assert.assertEquals(at(MONDAY, 11, 0), bookings.get(at(MONDAY, 8, 0)));
+  }
+
+  @Test
+  public void testSlotSkipsTooShortGap() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+    planningService.book(bookings, at(MONDAY, 8, 0), at(MONDAY, 10, 0));
+    planningService.book(bookings, at(MONDAY, 10, 30), at(MONDAY, 12, 0));
+
+    LocalDateTime[] slot = planningService.findSlot(bookings, null, at(MONDAY, 8, 0), HOUR);
+
+    assertSlot(slot, at(MONDAY, 12, 0), at(MONDAY, 13, 0));
+  }
+
+  @Test
+  public void testSlotFitsExactGap() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+    planningService.book(bookings, at(MONDAY, 8, 0), at(MONDAY, 10, 0));
+    planningService.book(bookings, at(MONDAY, 11, 0), at(MONDAY, 12, 0));
+
+    LocalDateTime[] slot = planningService.findSlot(bookings, null, at(MONDAY, 8, 0), HOUR);
+
+    assertSlot(slot, at(MONDAY, 10, 0), at(MONDAY, 11, 0));
+    Assert.assertEquals(1, bookings.size());
+  }
+
+  @Test
+  public void testSlotSpansCalendarBreak() {
+    LocalDateTime[] slot =
+        planningService.findSlot(
+            new TreeMap<>(), createCalendar(), at(MONDAY, 11, 0), 2 * HOUR);
+
+    // one hour in the morning, one after the lunch break
+    assertSlot(slot, at(MONDAY, 11, 0), at(MONDAY, 14, 0));
+  }
+
+  @Test
+  public void testSlotStartsAtNextWorkingPeriod() {
+    LocalDate friday = MONDAY.plusDays(4);
+
+    LocalDateTime[] slot =
+        planningService.findSlot(new TreeMap<>(), createCalendar(), at(friday, 18, 0), HOUR);
+
+    assertSlot(slot, at(MONDAY.plusDays(7), 8, 0), at(MONDAY.plusDays(7), 9, 0));
+  }
+
+  @Test
+  public void testSlotAfterBookingEndingBeforeBreak() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+    planningService.book(bookings, at(MONDAY, 8, 0), at(MONDAY, 12, 0));
+
+    LocalDateTime[] slot =
+        planningService.findSlot(bookings, createCalendar(), at(MONDAY, 8, 0), HOUR);
+
+    assertSlot(slot, at(MONDAY, 13, 0), at(MONDAY, 14, 0));
+  }
+
+  @Test
+  public void testSlotAcrossBreakOverlappingBooking() {
+    TreeMap<LocalDateTime, LocalDateTime> bookings = new TreeMap<>();
+    planningService.book(bookings, at(MONDAY, 13, 0), at(MONDAY, 14, 0));
+
+    LocalDateTime[] slot =
+        planningService.findSlot(bookings, createCalendar(), at(MONDAY, 11, 0), 2 * HOUR);
+
+    assertSlot(slot, at(MONDAY, 14, 0), at(MONDAY, 16, 0));
+  }
+
+  /** Working days from 8:00 to 12:00 and from 13:00 to 17:00, no work on weekends. */
+  private MachineCalendar createCalendar() {
+    Map<DayOfWeek, List<LocalTime[]>> periods = new EnumMap<>(DayOfWeek.class);
+
+    for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+      List<LocalTime[]> dayPeriods = new ArrayList<>();
+      if (dayOfWeek != DayOfWeek.SATURDAY && dayOfWeek != DayOfWeek.SUNDAY) {
+        dayPeriods.add(new LocalTime[] {LocalTime.of(8, 0), LocalTime.of(12, 0)});
+        dayPeriods.add(new LocalTime[] {LocalTime.of(13, 0), LocalTime.of(17, 0)});
+      }
+      periods.put(dayOfWeek, dayPeriods);
+    }
+
+    return new MachineCalendar(periods);
+  }
+
+  private LocalDateTime at(LocalDate date, int hour, int minute) {
+    return date.atTime(hour, minute);
+  }
+
+  private void assertSlot(LocalDateTime[] slot, LocalDateTime start, LocalDateTime end) {
+    Assert.assertEquals(start, slot[0]);
+    Assert.assertEquals(end, slot[1]);
+  }
+}
@@ -23,7 +23,6 @@ import com.axelor.apps.base.service.UnitConversionService;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.apps.stock.db.StockLocationLine;
-import com.axelor.apps.stock.db.StockMoveLine;
 import com.axelor.apps.stock.db.StockRules;
 import com.axelor.apps.stock.db.TrackingNumber;
 import com.axelor.apps.stock.db.repo.StockLocationLineRepository;
@@ -32,7 +31,7 @@ import com.axelor.apps.stock.db.repo.StockMoveLineRepository;
 import com.axelor.apps.stock.db.repo.StockMoveRepository;
 import com.axelor.apps.stock.db.repo.StockRulesRepository;
 import com.axelor.apps.stock.exception.IExceptionMessage;
-import com.axelor.db.Query;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -44,7 +43,9 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -560,11 +561,6 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
     return stockLocationLine;
   }
 
-  protected static final String STOCK_MOVE_LINE_FILTER =
-      "(self.stockMove.archived IS NULL OR self.archived IS FALSE) "
-          + "AND self.stockMove.statusSelect = :planned "
-          + "AND self.product.id = :productId ";
-
   @Override
   public BigDecimal computeFutureQty(StockLocationLine stockLocationLine) throws AxelorException {
     // future quantity is current quantity minus planned outgoing stock move lines plus planned
@@ -572,87 +568,79 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
 
     UnitConversionService unitConversionService = Beans.get(UnitConversionService.class);
     Product product = stockLocationLine.getProduct();
+    TrackingNumber trackingNumber = stockLocationLine.getTrackingNumber();
+    boolean isDetailsStockLocationLine = stockLocationLine.getDetailsStockLocation() != null;
+    Long stockLocationId = getStockLocation(stockLocationLine).getId();
 
-    BigDecimal futureQty = stockLocationLine.getCurrentQty();
-
-    List<StockMoveLine> incomingStockMoveLineList =
-        findIncomingPlannedStockMoveLines(stockLocationLine);
-    List<StockMoveLine> outgoingStockMoveLineList =
-        findOutgoingPlannedStockMoveLines(stockLocationLine);
+    // unit id -> planned incoming quantity minus planned outgoing quantity
+    Map<Long, BigDecimal> qtyByUnitMap = new HashMap<>();
 
-    for (StockMoveLine incomingStockMoveLine : incomingStockMoveLineList) {
-      BigDecimal qtyToAdd =
-          unitConversionService.convert(
-              incomingStockMoveLine.getUnit(),
-              stockLocationLine.getUnit(),
-              incomingStockMoveLine.getRealQty(),
-              incomingStockMoveLine.getRealQty().scale(),
-              product);
-      futureQty = futureQty.add(qtyToAdd);
+    for (Object[] plannedQty : findPlannedQtyList(stockLocationLine)) {
+      if (isDetailsStockLocationLine
+          && (trackingNumber == null || !trackingNumber.getId().equals(plannedQty[2]))) {
+        continue;
+      }
+      BigDecimal qty = (BigDecimal) plannedQty[4];
+      if (stockLocationId.equals(plannedQty[1])) {
+        qtyByUnitMap.merge((Long) plannedQty[3], qty, BigDecimal::add);
+      }
+      if (stockLocationId.equals(plannedQty[0])) {
+        qtyByUnitMap.merge((Long) plannedQty[3], qty.negate(), BigDecimal::add);
+      }
     }
 
-    for (StockMoveLine outgoingStockMoveLine : outgoingStockMoveLineList) {
-      BigDecimal qtyToSubtract =
-          unitConversionService.convert(
-              outgoingStockMoveLine.getUnit(),
-              stockLocationLine.getUnit(),
-              outgoingStockMoveLine.getRealQty(),
-              outgoingStockMoveLine.getRealQty().scale(),
-              product);
-      futureQty = futureQty.subtract(qtyToSubtract);
+    BigDecimal futureQty = stockLocationLine.getCurrentQty();
+    for (Map.Entry<Long, BigDecimal> entry : qtyByUnitMap.entrySet()) {
+      Unit unit = entry.getKey() != null ? JPA.em().find(Unit.class, entry.getKey()) : null;
+      futureQty =
+          futureQty.add(
+              unitConversionService.convert(
+                  unit,
+                  stockLocationLine.getUnit(),
+                  entry.getValue(),
+                  entry.getValue().scale(),
+                  product));
     }
-
     return futureQty;
   }
 
-  protected List<StockMoveLine> findIncomingPlannedStockMoveLines(
-      StockLocationLine stockLocationLine) {
-    boolean isDetailsStockLocationLine = stockLocationLine.getDetailsStockLocation() != null;
-    String incomingStockMoveLineFilter =
-        STOCK_MOVE_LINE_FILTER + "AND self.stockMove.toStockLocation.id = :stockLocationId";
-    if (isDetailsStockLocationLine) {
-      incomingStockMoveLineFilter =
-          incomingStockMoveLineFilter + " AND self.trackingNumber.id = :trackingNumberId";
-    }
-    Query<StockMoveLine> stockMoveLineQuery =
-        stockMoveLineRepository
-            .all()
-            .filter(incomingStockMoveLineFilter)
-            .bind("planned", StockMoveRepository.STATUS_PLANNED)
-            .bind("productId", stockLocationLine.getProduct().getId());
-    if (isDetailsStockLocationLine) {
-      stockMoveLineQuery
-          .bind("stockLocationId", stockLocationLine.getDetailsStockLocation().getId())
-          .bind("trackingNumberId", stockLocationLine.getTrackingNumber().getId());
-    } else {
-      stockMoveLineQuery.bind("stockLocationId", stockLocationLine.getStockLocation().getId());
-    }
-    return stockMoveLineQuery.fetch();
+  protected StockLocation getStockLocation(StockLocationLine stockLocationLine) {
+    return stockLocationLine.getDetailsStockLocation() != null
+        ? stockLocationLine.getDetailsStockLocation()
+        : stockLocationLine.getStockLocation();
   }
 
-  protected List<StockMoveLine> findOutgoingPlannedStockMoveLines(
-      StockLocationLine stockLocationLine) {
-    boolean isDetailsStockLocationLine = stockLocationLine.getDetailsStockLocation() != null;
-    String outgoingStockMoveLineFilter =
-        STOCK_MOVE_LINE_FILTER + "AND self.stockMove.fromStockLocation.id = :stockLocationId";
-    if (isDetailsStockLocationLine) {
-      outgoingStockMoveLineFilter =
-          outgoingStockMoveLineFilter + " AND self.trackingNumber.id = :trackingNumberId";
-    }
-    Query<StockMoveLine> stockMoveLineQuery =
-        stockMoveLineRepository
-            .all()
-            .filter(outgoingStockMoveLineFilter)
-            .bind("planned", StockMoveRepository.STATUS_PLANNED)
-            .bind("productId", stockLocationLine.getProduct().getId());
-
-    if (isDetailsStockLocationLine) {
-      stockMoveLineQuery
-          .bind("stockLocationId", stockLocationLine.getDetailsStockLocation().getId())
-          .bind("trackingNumberId", stockLocationLine.getTrackingNumber().getId());
-    } else {
-      stockMoveLineQuery.bind("stockLocationId", stockLocationLine.getStockLocation().getId());
-    }
-    return stockMoveLineQuery.fetch();
+  /**
+   * Sum the real quantities of the planned stock move lines from or to the location of the given
+   * stock location line, with a single query.
+   *
+   * @param stockLocationLine
+   * @return the sums, as from stock location id, to stock location id, tracking number id, unit id
+   *     and quantity
+   */
+  protected List<Object[]> findPlannedQtyList(StockLocationLine stockLocationLine) {
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT stockMove.fromStockLocation.id, stockMove.toStockLocation.id, "
+                    + "trackingNumber.id, self.unit.id, SUM(self.realQty) "
+                    + "FROM StockMoveLine self "
+                    + "JOIN self.stockMove stockMove "
+                    + "LEFT JOIN self.trackingNumber trackingNumber "
+                    + "WHERE (stockMove.archived IS NULL OR self.archived IS FALSE) "
+                    + "AND stockMove.statusSelect = :planned "
+                    + "AND self.product.id = :productId "
+                    + "AND (stockMove.fromStockLocation.id = :stockLocationId "
+                    + "OR stockMove.toStockLocation.id = :stockLocationId) "
+                    + "GROUP BY stockMove.fromStockLocation.id, stockMove.toStockLocation.id, "
+                    + "trackingNumber.id, self.unit.id",
+                Object[].class)
+            .setParameter("planned", StockMoveRepository.STATUS_PLANNED)
+            .setParameter("productId", stockLocationLine.getProduct().getId())
+            .setParameter("stockLocationId", getStockLocation(stockLocationLine).getId())
+            .getResultList();
+
+    resultList.removeIf(result -> result[4] == null);
+    return resultList;
   }
 }
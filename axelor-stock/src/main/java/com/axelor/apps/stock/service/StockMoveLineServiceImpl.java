@@ -436,6 +436,7 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
       throws AxelorException {
 
     stockMoveLineList = MoreObjects.firstNonNull(stockMoveLineList, Collections.emptyList());
+    List<Product> productList = new ArrayList<>();
 
     for (StockMoveLine stockMoveLine : stockMoveLineList) {
 
@@ -465,9 +466,12 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
             toStatus,
             lastFutureStockMoveDate,
             stockMoveLine.getTrackingNumber());
-        weightedAveragePriceService.computeAvgPriceForProduct(stockMoveLine.getProduct());
+        productList.add(product);
       }
     }
+
+    // once per product, after all the location lines have been updated
+    weightedAveragePriceService.computeAvgPriceForProducts(productList);
   }
 
   @Override
@@ -154,6 +154,15 @@ public interface StockMoveService {
       StockMove originalStockMove, List<StockMoveLine> modifiedStockMoveLines)
       throws AxelorException;
 
+  /**
+   * Get the quantity of the product in the location for each day of the period.
+   *
+   * @param locationId
+   * @param productId
+   * @param fromDate
+   * @param toDate
+   * @return a list of maps with the date as "$date" and the quantity as "$qty"
+   */
   public List<Map<String, Object>> getStockPerDate(
       Long locationId, Long productId, LocalDate fromDate, LocalDate toDate);
 
@@ -51,6 +51,7 @@ import com.axelor.apps.stock.db.repo.StockMoveRepository;
 import com.axelor.apps.stock.exception.IExceptionMessage;
 import com.axelor.apps.stock.report.IReport;
 import com.axelor.common.ObjectUtils;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -67,8 +68,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -967,11 +970,21 @@ public class StockMoveServiceImpl implements StockMoveService {
 
     List<Map<String, Object>> stock = new ArrayList<>();
 
+    NavigableMap<LocalDate, BigDecimal> qtyChangeMap =
+        getStockQtyChangeMap(locationId, productId, toDate);
+
+    BigDecimal qty =
+        qtyChangeMap
+            .headMap(fromDate, false)
+            .values()
+            .stream()
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+
     while (!fromDate.isAfter(toDate)) {
-      Double qty = getStock(locationId, productId, fromDate);
+      qty = qty.add(qtyChangeMap.getOrDefault(fromDate, BigDecimal.ZERO));
       Map<String, Object> dateStock = new HashMap<>();
       dateStock.put("$date", fromDate);
-      dateStock.put("$qty", new BigDecimal(qty));
+      dateStock.put("$qty", qty);
       stock.add(dateStock);
       fromDate = fromDate.plusDays(1);
     }
@@ -979,39 +992,67 @@ public class StockMoveServiceImpl implements StockMoveService {
     return stock;
   }
 
-  private Double getStock(Long locationId, Long productId, LocalDate date) {
-
-    List<StockMoveLine> inLines =
-        stockMoveLineRepo
-            .all()
-            .filter(
-                "self.product.id = ?1 AND self.stockMove.toStockLocation.id = ?2 AND self.stockMove.statusSelect != ?3 AND (self.stockMove.estimatedDate <= ?4 OR self.stockMove.realDate <= ?4)",
-                productId,
-                locationId,
-                StockMoveRepository.STATUS_CANCELED,
-                date)
-            .fetch();
-
-    List<StockMoveLine> outLines =
-        stockMoveLineRepo
-            .all()
-            .filter(
-                "self.product.id = ?1 AND self.stockMove.fromStockLocation.id = ?2 AND self.stockMove.statusSelect != ?3 AND (self.stockMove.estimatedDate <= ?4 OR self.stockMove.realDate <= ?4)",
-                productId,
-                locationId,
-                StockMoveRepository.STATUS_CANCELED,
-                date)
-            .fetch();
-
-    Double inQty =
-        inLines.stream().mapToDouble(inl -> Double.parseDouble(inl.getQty().toString())).sum();
-
-    Double outQty =
-        outLines.stream().mapToDouble(out -> Double.parseDouble(out.getQty().toString())).sum();
+  /**
+   * Get the quantity changes of the product in the location up to the given date, from the stock
+   * moves which are not canceled, with a single aggregate query.
+   *
+   * <p>A stock move line counts from the earliest of the estimated and the real date of its stock
+   * move.
+   *
+   * @param locationId
+   * @param productId
+   * @param toDate
+   * @return the quantity entered minus the quantity left, by date
+   */
+  protected NavigableMap<LocalDate, BigDecimal> getStockQtyChangeMap(
+      Long locationId, Long productId, LocalDate toDate) {
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT stockMove.estimatedDate, stockMove.realDate, "
+                    + "stockMove.fromStockLocation.id, stockMove.toStockLocation.id, "
+                    + "SUM(self.qty) "
+                    + "FROM StockMoveLine self JOIN self.stockMove stockMove "
+                    + "WHERE self.product.id = :productId "
+                    + "AND (stockMove.fromStockLocation.id = :locationId "
+                    + "OR stockMove.toStockLocation.id = :locationId) "
+                    + "AND stockMove.statusSelect != :statusCanceled "
+                    + "AND (stockMove.estimatedDate <= :toDate OR stockMove.realDate <= :toDate) "
+                    + "GROUP BY stockMove.estimatedDate, stockMove.realDate, "
+                    + "stockMove.fromStockLocation.id, stockMove.toStockLocation.id",
+                Object[].class)
+            .setParameter("productId", productId)
+            .setParameter("locationId", locationId)
+            .setParameter("statusCanceled", StockMoveRepository.STATUS_CANCELED)
+            .setParameter("toDate", toDate)
+            .getResultList();
+
+    NavigableMap<LocalDate, BigDecimal> qtyChangeMap = new TreeMap<>();
+
+    for (Object[] result : resultList) {
+      LocalDate estimatedDate = (LocalDate) result[0];
+      LocalDate realDate = (LocalDate) result[1];
+      BigDecimal qty = result[4] != null ? (BigDecimal) result[4] : BigDecimal.ZERO;
+
+      LocalDate date;
+      if (estimatedDate == null || realDate != null && realDate.isBefore(estimatedDate)) {
+        date = realDate;
+      } else {
+        date = estimatedDate;
+      }
 
-    Double qty = inQty - outQty;
+      BigDecimal qtyChange = BigDecimal.ZERO;
+      if (locationId.equals(result[3])) {
+        qtyChange = qtyChange.add(qty);
+      }
+      if (locationId.equals(result[2])) {
+        qtyChange = qtyChange.subtract(qty);
+      }
+      qtyChangeMap.merge(date, qtyChange, BigDecimal::add);
+    }
 
-    return qty;
+    return qtyChangeMap;
   }
 
   @Override
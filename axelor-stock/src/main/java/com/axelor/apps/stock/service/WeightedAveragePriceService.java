@@ -22,11 +22,32 @@ import com.axelor.apps.base.db.Product;
 import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
 
 public interface WeightedAveragePriceService {
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void computeAvgPriceForProduct(Product product);
 
+  /**
+   * Compute and save the average price of the given products, each product being computed once,
+   * with one query for all of them.
+   *
+   * @param productList
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeAvgPriceForProducts(Collection<Product> productList);
+
   public BigDecimal computeAvgPriceForCompany(Product product, Company company);
+
+  /**
+   * Compute the average price of the given products from the stock location lines of the company.
+   *
+   * @param productIdList
+   * @param company the company of the stock locations, or null for all companies
+   * @return the average prices by product id, products without quantity in stock being left out
+   */
+  public Map<Long, BigDecimal> computeAvgPriceForCompany(
+      Collection<Long> productIdList, Company company);
 }
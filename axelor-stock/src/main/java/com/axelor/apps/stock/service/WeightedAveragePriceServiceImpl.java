@@ -26,15 +26,25 @@ import com.axelor.apps.stock.db.repo.StockLocationRepository;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.inject.Beans;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import com.google.inject.servlet.RequestScoped;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import javax.persistence.TypedQuery;
 
 @RequestScoped
 public class WeightedAveragePriceServiceImpl implements WeightedAveragePriceService {
 
+  protected static final int QUERY_CHUNK_SIZE = 1000;
+
   protected ProductRepository productRepo;
   protected AppBaseService appBaseService;
 
@@ -48,8 +58,31 @@ public class WeightedAveragePriceServiceImpl implements WeightedAveragePriceServ
   @Override
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void computeAvgPriceForProduct(Product product) {
+    computeAvgPriceForProducts(Collections.singletonList(product));
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeAvgPriceForProducts(Collection<Product> productList) {
+
+    Map<Long, Product> productMap = new LinkedHashMap<>();
+    for (Product product : productList) {
+      productMap.putIfAbsent(product.getId(), product);
+    }
+
+    for (List<Long> productIdList :
+        Lists.partition(new ArrayList<>(productMap.keySet()), QUERY_CHUNK_SIZE)) {
+
+      Map<Long, BigDecimal> avgPriceMap = this.computeAvgPriceForCompany(productIdList, null);
+
+      for (Long productId : productIdList) {
+        this.updateAvgPrice(
+            productMap.get(productId), avgPriceMap.getOrDefault(productId, BigDecimal.ZERO));
+      }
+    }
+  }
 
-    BigDecimal productAvgPrice = this.computeAvgPriceForCompany(product, null);
+  protected void updateAvgPrice(Product product, BigDecimal productAvgPrice) {
 
     if (productAvgPrice.compareTo(BigDecimal.ZERO) == 0) {
       return;
@@ -67,35 +100,47 @@ public class WeightedAveragePriceServiceImpl implements WeightedAveragePriceServ
 
   @Override
   public BigDecimal computeAvgPriceForCompany(Product product, Company company) {
-    Long productId = product.getId();
-    String query =
-        "SELECT new list(self.id, self.avgPrice, self.currentQty) FROM StockLocationLine as self "
-            + "WHERE self.product.id = "
-            + productId
-            + " AND self.stockLocation.typeSelect != "
-            + StockLocationRepository.TYPE_VIRTUAL;
+    return this.computeAvgPriceForCompany(Collections.singletonList(product.getId()), company)
+        .getOrDefault(product.getId(), BigDecimal.ZERO);
+  }
 
+  @Override
+  public Map<Long, BigDecimal> computeAvgPriceForCompany(
+      Collection<Long> productIdList, Company company) {
+
+    Map<Long, BigDecimal> avgPriceMap = new HashMap<>();
+    if (productIdList.isEmpty()) {
+      return avgPriceMap;
+    }
+
+    TypedQuery<Object[]> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, SUM(self.avgPrice * self.currentQty), "
+                    + "SUM(self.currentQty) "
+                    + "FROM StockLocationLine self "
+                    + "WHERE self.product.id IN (:productIds) "
+                    + "AND self.stockLocation.typeSelect != :typeVirtual "
+                    + (company != null ? "AND self.stockLocation.company.id = :companyId " : "")
+                    + "GROUP BY self.product.id",
+                Object[].class)
+            .setParameter("productIds", productIdList)
+            .setParameter("typeVirtual", StockLocationRepository.TYPE_VIRTUAL);
     if (company != null) {
-      query += " AND self.stockLocation.company = " + company.getId();
+      query.setParameter("companyId", company.getId());
     }
 
     int scale = appBaseService.getNbDecimalDigitForUnitPrice();
-    BigDecimal productAvgPrice = BigDecimal.ZERO;
-    BigDecimal qtyTot = BigDecimal.ZERO;
-    List<List<Object>> results = JPA.em().createQuery(query).getResultList();
-    if (results.isEmpty()) {
-      return BigDecimal.ZERO;
-    }
-    for (List<Object> result : results) {
-      BigDecimal avgPrice = (BigDecimal) result.get(1);
-      BigDecimal qty = (BigDecimal) result.get(2);
-      productAvgPrice = productAvgPrice.add(avgPrice.multiply(qty));
-      qtyTot = qtyTot.add(qty);
-    }
-    if (qtyTot.compareTo(BigDecimal.ZERO) == 0) {
-      return BigDecimal.ZERO;
+
+    for (Object[] result : query.getResultList()) {
+      BigDecimal totalPrice = (BigDecimal) result[1];
+      BigDecimal qtyTot = (BigDecimal) result[2];
+      if (totalPrice == null || qtyTot == null || qtyTot.compareTo(BigDecimal.ZERO) == 0) {
+        continue;
+      }
+      avgPriceMap.put(
+          (Long) result[0], totalPrice.divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP));
     }
-    productAvgPrice = productAvgPrice.divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP);
-    return productAvgPrice;
+    return avgPriceMap;
   }
 }
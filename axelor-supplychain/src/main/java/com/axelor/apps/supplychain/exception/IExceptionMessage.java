@@ -110,6 +110,9 @@ public interface IExceptionMessage {
   String BATCH_ORDER_INVOICING_DONE_SINGULAR = /*$$(*/ "%d order invoiced successfully," /*)*/;
   String BATCH_ORDER_INVOICING_DONE_PLURAL = /*$$(*/ "%d orders invoiced successfully," /*)*/;
 
+  /** Batch Update average price */
+  String BATCH_UPDATE_AVG_PRICE = /*$$(*/ "product(s) average price updated" /*)*/;
+
   /** Mrp Line Service */
   static final String MRP_LINE_1 = /*$$(*/
       "No default supplier is defined for the product %s" /*)*/;
@@ -25,6 +25,7 @@ import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
 
 public class AccountCustomerServiceSupplyChain extends AccountCustomerService {
 
@@ -40,19 +41,16 @@ public class AccountCustomerServiceSupplyChain extends AccountCustomerService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public AccountingSituation updateAccountingSituationCustomerAccount(
       AccountingSituation accountingSituation,
-      boolean updateCustAccount,
-      boolean updateDueCustAccount,
-      boolean updateDueDebtRecoveryCustAccount)
+      BigDecimal balance,
+      BigDecimal balanceDue,
+      BigDecimal balanceDueDebtRecovery)
       throws AxelorException {
 
     accountingSituation =
         super.updateAccountingSituationCustomerAccount(
-            accountingSituation,
-            updateCustAccount,
-            updateDueCustAccount,
-            updateDueDebtRecoveryCustAccount);
+            accountingSituation, balance, balanceDue, balanceDueDebtRecovery);
 
-    if (updateCustAccount) {
+    if (balance != null) {
       accountingSituationService.updateCustomerCredit(accountingSituation.getPartner());
     }
 
@@ -66,11 +66,20 @@ import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import javax.persistence.TypedQuery;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +88,8 @@ public class MrpServiceImpl implements MrpService {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  protected static final int QUERY_CHUNK_SIZE = 1000;
+
   protected MrpRepository mrpRepository;
   protected StockLocationRepository stockLocationRepository;
   protected ProductRepository productRepository;
@@ -96,6 +107,8 @@ public class MrpServiceImpl implements MrpService {
 
   protected List<StockLocation> stockLocationList;
   protected Map<Long, Integer> productMap;
+  // product id:stock location id -> current qty, while available stock lines are created
+  protected Map<String, BigDecimal> currentQtyMap;
   protected Mrp mrp;
   protected LocalDate today;
 
@@ -134,6 +147,16 @@ public class MrpServiceImpl implements MrpService {
   @Override
   public void runCalculation(Mrp mrp) throws AxelorException {
 
+    if (this.isNetChangeCalculation(mrp)) {
+      this.runNetChangeCalculation(mrp);
+      return;
+    }
+
+    this.runFullCalculation(mrp);
+  }
+
+  protected void runFullCalculation(Mrp mrp) throws AxelorException {
+
     this.reset(mrp);
 
     this.startMrp(mrpRepository.find(mrp.getId()));
@@ -142,6 +165,382 @@ public class MrpServiceImpl implements MrpService {
     this.finish(mrpRepository.find(mrp.getId()));
   }
 
+  protected boolean isNetChangeCalculation(Mrp mrp) {
+
+    return mrp.getNetChangeOk()
+        && mrp.getStatusSelect() == MrpRepository.STATUS_CALCULATION_ENDED
+        && mrp.getStartDateTime() != null;
+  }
+
+  /**
+   * Recompute only the products which changed since the start of the last calculation, along with
+   * their components. The lines of the other products are kept as they are. A full calculation is
+   * done instead when the MRP itself, the product structure or the products of the MRP changed.
+   *
+   * @param mrp
+   * @throws AxelorException
+   */
+  protected void runNetChangeCalculation(Mrp mrp) throws AxelorException {
+
+    LocalDateTime since = mrp.getStartDateTime();
+
+    if (this.isMrpChanged(mrp)) {
+      log.debug("Net change MRP : the MRP changed since {}", since);
+      this.runFullCalculation(mrp);
+      return;
+    }
+
+    this.startMrp(mrpRepository.find(mrp.getId()));
+    this.initializeMrp(mrpRepository.find(mrp.getId()));
+
+    Set<Long> productIdSet = this.getChangedProductIds(since);
+    productIdSet.addAll(this.getChangedOriginProductIds(mrp, since));
+    productIdSet.addAll(this.getDeletedStockProductIds(mrp));
+
+    if (this.isProductStructureChanged(since) || !this.keepPreviousProducts(mrp, productIdSet)) {
+      log.debug("Net change MRP : the products or their structure changed since {}", since);
+      this.runFullCalculation(mrpRepository.find(mrp.getId()));
+      return;
+    }
+
+    productIdSet = this.getLinkedProductIds(productIdSet);
+    this.productMap.keySet().retainAll(productIdSet);
+
+    log.debug(
+        "Net change MRP : {} products changed since {}, {} recomputed",
+        productIdSet.size(),
+        since,
+        this.productMap.size());
+
+    this.removeMrpLines(mrpRepository.find(mrp.getId()), productIdSet);
+
+    if (!this.productMap.isEmpty()) {
+      this.createMrpLines();
+      this.createKeptNeedMrpLines();
+      this.doCalulation(mrpRepository.find(mrp.getId()));
+    }
+    this.finish(mrpRepository.find(mrp.getId()));
+  }
+
+  /**
+   * Check whether the MRP was saved since the end of its last calculation: its stock location, end
+   * date or products may have changed, and the previous lines may not match them anymore.
+   *
+   * @param mrp
+   * @return
+   */
+  protected boolean isMrpChanged(Mrp mrp) {
+
+    return !Objects.equals(mrp.getVersion(), mrp.getCalculationVersion());
+  }
+
+  /**
+   * Get the products of the orders, forecasts and stock changed since the given date.
+   *
+   * @param since
+   * @return
+   */
+  protected Set<Long> getChangedProductIds(LocalDateTime since) {
+
+    Set<Long> productIdSet = new HashSet<>();
+
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.product.id FROM SaleOrderLine self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since "
+            + "OR self.saleOrder.updatedOn > :since",
+        since);
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.product.id FROM PurchaseOrderLine self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since "
+            + "OR self.purchaseOrder.updatedOn > :since",
+        since);
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.product.id FROM MrpForecast self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since",
+        since);
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.product.id FROM StockLocationLine self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since",
+        since);
+    this.addChangedProductIds(
+        productIdSet,
+        "SELECT self.product.id FROM StockRules self "
+            + "WHERE self.createdOn > :since OR self.updatedOn > :since",
+        since);
+
+    return productIdSet;
+  }
+
+  protected void addChangedProductIds(
+      Set<Long> productIdSet, String queryStr, LocalDateTime since) {
+
+    TypedQuery<Long> query = JPA.em().createQuery(queryStr, Long.class);
+    query.setParameter("since", since);
+    productIdSet.addAll(query.getResultList());
+  }
+
+  /**
+   * Get the products of the lines whose origin has been updated or deleted since the given date.
+   * This covers the deleted orders, and the lines created on other products than the one of the
+   * order, such as the needs of a manufacturing order.
+   *
+   * @param mrp
+   * @param since
+   * @return
+   */
+  protected Set<Long> getChangedOriginProductIds(Mrp mrp, LocalDateTime since) {
+
+    Set<Long> productIdSet = new HashSet<>();
+
+    List<String> relatedToSelectList =
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.relatedToSelect FROM MrpLineOrigin self "
+                    + "WHERE self.mrpLine.mrp.id = :mrpId",
+                String.class)
+            .setParameter("mrpId", mrp.getId())
+            .getResultList();
+
+    for (String relatedToSelect : relatedToSelectList) {
+
+      String entityName = relatedToSelect.substring(relatedToSelect.lastIndexOf('.') + 1);
+
+      productIdSet.addAll(
+          JPA.em()
+              .createQuery(
+                  "SELECT DISTINCT self.mrpLine.product.id FROM MrpLineOrigin self "
+                      + "WHERE self.mrpLine.mrp.id = :mrpId "
+                      + "AND self.relatedToSelect = :relatedToSelect "
+                      + "AND self.relatedToSelectId NOT IN (SELECT origin.id FROM "
+                      + entityName
+                      + " origin WHERE origin.updatedOn IS NULL OR origin.updatedOn <= :since)",
+                  Long.class)
+              .setParameter("mrpId", mrp.getId())
+              .setParameter("relatedToSelect", relatedToSelect)
+              .setParameter("since", since)
+              .getResultList());
+    }
+
+    return productIdSet;
+  }
+
+  /**
+   * Get the products of the lines whose stock location line or stock rules have been deleted since
+   * the last calculation.
+   *
+   * @param mrp
+   * @return
+   */
+  protected Set<Long> getDeletedStockProductIds(Mrp mrp) {
+
+    Set<Long> productIdSet = new HashSet<>();
+
+    productIdSet.addAll(
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.product.id FROM MrpLine self "
+                    + "WHERE self.mrp.id = :mrpId AND self.mrpLineType.elementSelect = :element "
+                    + "AND self.qty <> 0 AND NOT EXISTS (SELECT stockLocationLine.id "
+                    + "FROM StockLocationLine stockLocationLine "
+                    + "WHERE stockLocationLine.product = self.product "
+                    + "AND stockLocationLine.stockLocation = self.stockLocation)",
+                Long.class)
+            .setParameter("mrpId", mrp.getId())
+            .setParameter("element", MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK)
+            .getResultList());
+    productIdSet.addAll(
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.product.id FROM MrpLine self "
+                    + "WHERE self.mrp.id = :mrpId AND self.minQty <> 0 "
+                    + "AND NOT EXISTS (SELECT stockRules.id FROM StockRules stockRules "
+                    + "WHERE stockRules.product = self.product "
+                    + "AND stockRules.stockLocation = self.stockLocation)",
+                Long.class)
+            .setParameter("mrpId", mrp.getId())
+            .getResultList());
+
+    return productIdSet;
+  }
+
+  /**
+   * Check whether the links between the products changed since the given date, in a way the
+   * existing lines cannot tell. Products are not linked on this module.
+   *
+   * @param since
+   * @return
+   */
+  protected boolean isProductStructureChanged(LocalDateTime since) {
+
+    return false;
+  }
+
+  /**
+   * Compare the products of the previous calculation with the current ones. The products added
+   * while creating the lines, which are not found again here, are kept with their previous level.
+   *
+   * @param mrp
+   * @param changedProductIdSet
+   * @return false if a product is new to the MRP, if a product changed its level, or if a product
+   *     added while creating the lines changed, as the previous lines cannot be kept then
+   */
+  protected boolean keepPreviousProducts(Mrp mrp, Set<Long> changedProductIdSet) {
+
+    Map<Long, Integer> previousProductLevelMap = this.getPreviousProductLevelMap(mrp);
+
+    // every product of the MRP has at least an available stock line
+    if (!previousProductLevelMap.keySet().containsAll(this.productMap.keySet())) {
+      return false;
+    }
+
+    for (Map.Entry<Long, Integer> entry : previousProductLevelMap.entrySet()) {
+
+      Integer level = this.productMap.get(entry.getKey());
+
+      if (level == null) {
+        if (changedProductIdSet.contains(entry.getKey())) {
+          return false;
+        }
+        this.productMap.put(entry.getKey(), entry.getValue());
+      } else if (!level.equals(entry.getValue())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the level of the products of the previous calculation.
+   *
+   * @param mrp
+   * @return
+   */
+  protected Map<Long, Integer> getPreviousProductLevelMap(Mrp mrp) {
+
+    Map<Long, Integer> productLevelMap = new HashMap<>();
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.product.id, self.maxLevel FROM MrpLine self "
+                    + "WHERE self.mrp.id = :mrpId",
+                Object[].class)
+            .setParameter("mrpId", mrp.getId())
+            .getResultList();
+
+    for (Object[] result : resultList) {
+      productLevelMap.merge((Long) result[0], (Integer) result[1], Math::max);
+    }
+
+    return productLevelMap;
+  }
+
+  /**
+   * Get the given products along with their components, directly or not. The lines of a component
+   * depend on the proposals of the products using it, so they have to be recomputed after them.
+   *
+   * @param productIdSet
+   * @return
+   */
+  protected Set<Long> getLinkedProductIds(Set<Long> productIdSet) {
+
+    Map<Long, Set<Long>> productLinkMap = new HashMap<>();
+    this.addProductLinks(productLinkMap);
+
+    Set<Long> linkedProductIdSet = new HashSet<>(productIdSet);
+    Deque<Long> queue = new ArrayDeque<>(productIdSet);
+
+    while (!queue.isEmpty()) {
+      for (Long linkedProductId :
+          productLinkMap.getOrDefault(queue.poll(), Collections.emptySet())) {
+        if (linkedProductIdSet.add(linkedProductId)) {
+          queue.add(linkedProductId);
+        }
+      }
+    }
+
+    return linkedProductIdSet;
+  }
+
+  /**
+   * Add the links from the products to their components. Products are not linked on this module.
+   *
+   * @param productLinkMap
+   */
+  protected void addProductLinks(Map<Long, Set<Long>> productLinkMap) {}
+
+  protected void addProductLink(
+      Map<Long, Set<Long>> productLinkMap, Long productId, Long componentProductId) {
+
+    if (productId == null || componentProductId == null) {
+      return;
+    }
+    productLinkMap.computeIfAbsent(productId, id -> new HashSet<>()).add(componentProductId);
+  }
+
+  /**
+   * Create again on the recomputed products the needs of the products kept from the last
+   * calculation, that is the needs of their proposals.
+   *
+   * @throws AxelorException
+   */
+  protected void createKeptNeedMrpLines() throws AxelorException {
+
+    for (MrpLine mrpLine : this.getKeptProposalMrpLineList()) {
+
+      this.createProposalNeedMrpLines(
+          mrpLine.getMrp(),
+          mrpLine.getProduct(),
+          mrpLine.getMrpLineType(),
+          mrpLine.getQty(),
+          mrpLine.getStockLocation(),
+          mrpLine.getMaturityDate(),
+          mrpLine.getMrpLineOriginList(),
+          mrpLine.getRelatedToSelectName());
+    }
+  }
+
+  /**
+   * Get the proposals of the products which are not recomputed.
+   *
+   * @return
+   */
+  protected List<MrpLine> getKeptProposalMrpLineList() {
+
+    List<MrpLine> mrpLineList =
+        mrpLineRepository
+            .all()
+            .filter(
+                "self.mrp.id = ?1 AND self.mrpLineType.elementSelect IN (?2)",
+                mrp.getId(),
+                Arrays.asList(
+                    MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL,
+                    MrpLineTypeRepository.ELEMENT_MANUFACTURING_PROPOSAL))
+            .order("id")
+            .fetch();
+
+    mrpLineList.removeIf(mrpLine -> this.productMap.containsKey(mrpLine.getProduct().getId()));
+
+    return mrpLineList;
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void removeMrpLines(Mrp mrp, Set<Long> productIdSet) {
+
+    for (List<Long> productIdList :
+        Lists.partition(new ArrayList<>(productIdSet), QUERY_CHUNK_SIZE)) {
+      mrpLineRepository
+          .all()
+          .filter("self.mrp.id = ?1 AND self.product.id IN (?2)", mrp.getId(), productIdList)
+          .remove();
+    }
+  }
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected void startMrp(Mrp mrp) {
 
@@ -173,11 +572,20 @@ public class MrpServiceImpl implements MrpService {
 
     log.debug("Complete MRP");
 
-    // Initialize
+    this.initializeMrp(mrp);
+
+    this.createMrpLines();
+  }
+
+  protected void initializeMrp(Mrp mrp) throws AxelorException {
+
     this.mrp = mrp;
     this.stockLocationList =
         stockLocationService.getAllLocationAndSubLocation(mrp.getStockLocation(), false);
     this.assignProductAndLevel(this.getProductList());
+  }
+
+  protected void createMrpLines() throws AxelorException {
 
     // Get the stock for each product on each stock location
     this.createAvailableStockMrpLines();
@@ -209,15 +617,31 @@ public class MrpServiceImpl implements MrpService {
     mrp.setStatusSelect(MrpRepository.STATUS_CALCULATION_ENDED);
     mrp.setEndDateTime(appBaseService.getTodayDateTime().toLocalDateTime());
     mrpRepository.save(mrp);
+    JPA.flush();
+
+    // without saving the MRP again, so that its version only changes when it is edited
+    JPA.em()
+        .createQuery(
+            "UPDATE Mrp self SET self.calculationVersion = self.version WHERE self.id = :id")
+        .setParameter("id", mrp.getId())
+        .executeUpdate();
   }
 
   protected void checkInsufficientCumulativeQty() throws AxelorException {
 
-    for (int level = 0; level <= this.getMaxLevel(); level++) {
+    // product ids by level, lowest level first
+    Map<Integer, List<Long>> productIdsByLevel = new TreeMap<>();
+    for (Map.Entry<Long, Integer> entry : this.productMap.entrySet()) {
+      productIdsByLevel
+          .computeIfAbsent(entry.getValue(), level -> new ArrayList<>())
+          .add(entry.getKey());
+    }
+
+    for (List<Long> productIdList : productIdsByLevel.values()) {
 
-      for (Product product : this.getProductList(level)) {
+      for (Long productId : productIdList) {
 
-        this.checkInsufficientCumulativeQty(product, true);
+        this.checkInsufficientCumulativeQty(productRepository.find(productId), true);
       }
     }
   }
@@ -256,42 +680,60 @@ public class MrpServiceImpl implements MrpService {
     return maxLevel;
   }
 
+  /**
+   * Create the proposals needed for a product. Each pass computes the cumulative quantities and
+   * creates a proposal at the first line where the quantity is insufficient, a new pass is done
+   * until no proposal is needed.
+   *
+   * @param product
+   * @param firstPass
+   * @throws AxelorException
+   */
   protected void checkInsufficientCumulativeQty(Product product, boolean firstPass)
       throws AxelorException {
 
-    boolean doASecondPass = false;
+    Long productId = product.getId();
+    boolean doASecondPass = this.checkInsufficientCumulativeQtyPass(product, firstPass);
+    this.clearSession();
+
+    while (doASecondPass) {
+      doASecondPass =
+          this.checkInsufficientCumulativeQtyPass(productRepository.find(productId), false);
+      this.clearSession();
+    }
+  }
 
-    this.computeCumulativeQty(productRepository.find(product.getId()));
+  /** Clear the session between two passes, the next pass reads the lines again. */
+  protected void clearSession() {
 
     JPA.clear();
+  }
 
-    List<MrpLine> mrpLineList =
-        mrpLineRepository
-            .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
-            .order("maturityDate")
-            .order("mrpLineType.typeSelect")
-            .order("mrpLineType.sequence")
-            .order("id")
-            .fetch();
+  /**
+   * Compute the cumulative quantities of the product and create a proposal at the first line where
+   * the quantity is insufficient. The lines are loaded once and checked in a single transaction.
+   *
+   * @param product
+   * @param firstPass
+   * @return true if a proposal has been created, so that another pass is needed
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected boolean checkInsufficientCumulativeQtyPass(Product product, boolean firstPass)
+      throws AxelorException {
+
+    List<MrpLine> mrpLineList = this.getMrpLineList(product);
+
+    this.computeCumulativeQty(mrpLineList);
 
     for (MrpLine mrpLine : mrpLineList) {
 
-      doASecondPass =
-          this.checkInsufficientCumulativeQty(
-              mrpLineRepository.find(mrpLine.getId()),
-              productRepository.find(product.getId()),
-              firstPass);
-      JPA.clear();
-      if (doASecondPass) {
-        break;
+      if (this.checkInsufficientCumulativeQty(mrpLine, product, firstPass)) {
+        return true;
       }
     }
 
-    if (doASecondPass) {
-
-      this.checkInsufficientCumulativeQty(product, false);
-    }
+    return false;
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -436,6 +878,31 @@ public class MrpServiceImpl implements MrpService {
     this.copyMrpLineOrigins(mrpLine, mrpLineOriginList);
   }
 
+  /**
+   * Create the lines needed by a proposal on the components of its product. There are none on this
+   * module.
+   *
+   * @param mrp
+   * @param product
+   * @param mrpLineType
+   * @param reorderQty
+   * @param stockLocation
+   * @param maturityDate
+   * @param mrpLineOriginList
+   * @param relatedToSelectName
+   * @throws AxelorException
+   */
+  protected void createProposalNeedMrpLines(
+      Mrp mrp,
+      Product product,
+      MrpLineType mrpLineType,
+      BigDecimal reorderQty,
+      StockLocation stockLocation,
+      LocalDate maturityDate,
+      List<MrpLineOrigin> mrpLineOriginList,
+      String relatedToSelectName)
+      throws AxelorException {}
+
   protected BigDecimal getSupplierCatalogMinQty(Product product) {
 
     Partner supplierPartner = product.getDefaultSupplierPartner();
@@ -521,15 +988,28 @@ public class MrpServiceImpl implements MrpService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected void computeCumulativeQty(Product product) {
 
-    List<MrpLine> mrpLineList =
-        mrpLineRepository
-            .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
-            .order("maturityDate")
-            .order("mrpLineType.typeSelect")
-            .order("mrpLineType.sequence")
-            .order("id")
-            .fetch();
+    this.computeCumulativeQty(this.getMrpLineList(product));
+  }
+
+  /**
+   * Get the lines of the product, in the order used to compute the cumulative quantities.
+   *
+   * @param product
+   * @return
+   */
+  protected List<MrpLine> getMrpLineList(Product product) {
+
+    return mrpLineRepository
+        .all()
+        .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
+        .order("maturityDate")
+        .order("mrpLineType.typeSelect")
+        .order("mrpLineType.sequence")
+        .order("id")
+        .fetch();
+  }
+
+  protected void computeCumulativeQty(List<MrpLine> mrpLineList) {
 
     BigDecimal previousCumulativeQty = BigDecimal.ZERO;
 
@@ -824,21 +1304,86 @@ public class MrpServiceImpl implements MrpService {
     MrpLineType availableStockMrpLineType =
         this.getMrpLineType(MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK);
 
-    for (Long productId : this.productMap.keySet()) {
+    this.loadCurrentQtyMap();
 
-      for (StockLocation stockLocation : this.stockLocationList) {
+    try {
+      for (Long productId : this.productMap.keySet()) {
 
-        this.createAvailableStockMrpLine(
-            mrpRepository.find(mrp.getId()),
-            productRepository.find(productId),
-            stockLocationRepository.find(stockLocation.getId()),
-            mrpLineTypeRepository.find(availableStockMrpLineType.getId()));
+        for (StockLocation stockLocation : this.stockLocationList) {
+
+          this.createAvailableStockMrpLine(
+              mrpRepository.find(mrp.getId()),
+              productRepository.find(productId),
+              stockLocationRepository.find(stockLocation.getId()),
+              mrpLineTypeRepository.find(availableStockMrpLineType.getId()));
+        }
 
         JPA.clear();
       }
+    } finally {
+      this.currentQtyMap = null;
+    }
+  }
+
+  /**
+   * Load the current quantity of all the products of the MRP on all its stock locations with one
+   * query, instead of one query per product and stock location.
+   */
+  @SuppressWarnings("unchecked")
+  protected void loadCurrentQtyMap() {
+
+    this.currentQtyMap = new HashMap<>();
+
+    if (this.productMap.isEmpty() || this.stockLocationList.isEmpty()) {
+      return;
+    }
+
+    List<Long> stockLocationIdList = new ArrayList<>();
+    for (StockLocation stockLocation : this.stockLocationList) {
+      stockLocationIdList.add(stockLocation.getId());
+    }
+
+    // products by chunks, to keep the number of query parameters bounded
+    for (List<Long> productIdList :
+        Lists.partition(new ArrayList<>(this.productMap.keySet()), QUERY_CHUNK_SIZE)) {
+
+      List<Object[]> resultList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.product.id, self.stockLocation.id, self.currentQty "
+                      + "FROM StockLocationLine self "
+                      + "WHERE self.product.id IN (:productIdList) "
+                      + "AND self.stockLocation.id IN (:stockLocationIdList)")
+              .setParameter("productIdList", productIdList)
+              .setParameter("stockLocationIdList", stockLocationIdList)
+              .getResultList();
+
+      for (Object[] result : resultList) {
+        this.currentQtyMap.putIfAbsent(result[0] + ":" + result[1], (BigDecimal) result[2]);
+      }
     }
   }
 
+  /**
+   * Get the current quantity of a product on a stock location, zero if there is no stock location
+   * line.
+   *
+   * @param product
+   * @param stockLocation
+   * @return
+   */
+  protected BigDecimal getCurrentQty(Product product, StockLocation stockLocation) {
+
+    if (this.currentQtyMap != null) {
+      BigDecimal qty = this.currentQtyMap.get(product.getId() + ":" + stockLocation.getId());
+      return qty != null ? qty : BigDecimal.ZERO;
+    }
+
+    StockLocationLine stockLocationLine = this.getStockLocationLine(product, stockLocation);
+
+    return stockLocationLine != null ? stockLocationLine.getCurrentQty() : BigDecimal.ZERO;
+  }
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected MrpLine createAvailableStockMrpLine(
       Mrp mrp,
@@ -846,14 +1391,7 @@ public class MrpServiceImpl implements MrpService {
       StockLocation stockLocation,
       MrpLineType availableStockMrpLineType) {
 
-    BigDecimal qty = BigDecimal.ZERO;
-
-    StockLocationLine stockLocationLine = this.getStockLocationLine(product, stockLocation);
-
-    if (stockLocationLine != null) {
-
-      qty = stockLocationLine.getCurrentQty();
-    }
+    BigDecimal qty = this.getCurrentQty(product, stockLocation);
 
     return mrpLineRepository.save(
         this.createMrpLine(
@@ -979,7 +1517,7 @@ public class MrpServiceImpl implements MrpService {
       StockLocation stockLocation,
       Model model) {
 
-    if (productMap != null && product != null) {
+    if (productMap != null && product != null && productMap.containsKey(product.getId())) {
       return mrpLineService.createMrpLine(
           mrp,
           product,
@@ -0,0 +1,116 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.supplychain.service.batch;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
+import com.axelor.apps.stock.service.WeightedAveragePriceService;
+import com.axelor.apps.supplychain.exception.IExceptionMessage;
+import com.axelor.db.JPA;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+import java.util.List;
+
+/**
+ * Recompute the average price of the products stored in the stock locations of the batch company,
+ * by pages of products, each page being computed with one aggregate query.
+ */
+public class BatchUpdateAvgPrice extends AbstractBatch {
+
+  protected static final int PRODUCT_PAGE_SIZE = 1000;
+
+  protected WeightedAveragePriceService weightedAveragePriceService;
+  protected ProductRepository productRepository;
+
+  @Inject
+  public BatchUpdateAvgPrice(
+      WeightedAveragePriceService weightedAveragePriceService,
+      ProductRepository productRepository) {
+    this.weightedAveragePriceService = weightedAveragePriceService;
+    this.productRepository = productRepository;
+  }
+
+  @Override
+  protected void process() {
+
+    Long companyId = batch.getSupplychainBatch().getCompany().getId();
+    Long lastProductId = 0L;
+    List<Long> productIdList;
+
+    while (!(productIdList = findProductIdList(companyId, lastProductId)).isEmpty()) {
+
+      lastProductId = productIdList.get(productIdList.size() - 1);
+      List<Product> productList =
+          productRepository
+              .all()
+              .filter("self.id IN (:productIds)")
+              .bind("productIds", productIdList)
+              .fetch();
+
+      try {
+        weightedAveragePriceService.computeAvgPriceForProducts(productList);
+        for (int i = 0; i < productList.size(); i++) {
+          incrementDone();
+        }
+      } catch (Exception e) {
+        for (int i = 0; i < productList.size(); i++) {
+          incrementAnomaly();
+        }
+        TraceBackService.trace(e, null, batch.getId());
+      }
+
+      JPA.clear();
+    }
+  }
+
+  protected List<Long> findProductIdList(Long companyId, Long lastProductId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT DISTINCT self.product.id FROM StockLocationLine self "
+                + "WHERE self.stockLocation.company.id = :companyId "
+                + "AND self.stockLocation.typeSelect != :typeVirtual "
+                + "AND self.product.id > :lastProductId "
+                + "ORDER BY self.product.id",
+            Long.class)
+        .setParameter("companyId", companyId)
+        .setParameter("typeVirtual", StockLocationRepository.TYPE_VIRTUAL)
+        .setParameter("lastProductId", lastProductId)
+        .setMaxResults(PRODUCT_PAGE_SIZE)
+        .getResultList();
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s " + I18n.get(IExceptionMessage.BATCH_UPDATE_AVG_PRICE) + "\n",
+            batch.getDone());
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+
+    addComment(comment);
+    super.stop();
+  }
+}
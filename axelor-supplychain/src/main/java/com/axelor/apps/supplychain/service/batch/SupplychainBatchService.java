@@ -51,6 +51,9 @@ public class SupplychainBatchService extends AbstractBatchService {
       case SupplychainBatchRepository.ACTION_INVOICE_ORDERS:
         batch = invoiceOrders(supplychainBatch);
         break;
+      case SupplychainBatchRepository.ACTION_UPDATE_AVG_PRICE:
+        batch = updateAvgPrice(supplychainBatch);
+        break;
       default:
         throw new AxelorException(
             TraceBackRepository.CATEGORY_INCONSISTENCY,
@@ -70,6 +73,10 @@ public class SupplychainBatchService extends AbstractBatchService {
     return Beans.get(BatchOutgoingStockMoveInvoicing.class).run(supplychainBatch);
   }
 
+  public Batch updateAvgPrice(SupplychainBatch supplychainBatch) {
+    return Beans.get(BatchUpdateAvgPrice.class).run(supplychainBatch);
+  }
+
   public Batch invoiceOrders(SupplychainBatch supplychainBatch) {
     switch (supplychainBatch.getInvoiceOrdersTypeSelect()) {
       case SupplychainBatchRepository.INVOICE_ORDERS_TYPE_SALE:
@@ -49,6 +49,14 @@ public class SupplychainBatchController {
     response.setReload(true);
   }
 
+  public void updateAvgPrice(ActionRequest request, ActionResponse response) {
+    SupplychainBatch supplychainBatch = request.getContext().asType(SupplychainBatch.class);
+    supplychainBatch = supplychainBatchRepo.find(supplychainBatch.getId());
+    Batch batch = supplychainBatchService.updateAvgPrice(supplychainBatch);
+    response.setFlash(batch.getComments());
+    response.setReload(true);
+  }
+
   public void accountingCutOff(ActionRequest request, ActionResponse response) {
     SupplychainBatch supplychainBatch = request.getContext().asType(SupplychainBatch.class);
     supplychainBatch = supplychainBatchRepo.find(supplychainBatch.getId());
@@ -0,0 +1,430 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.supplychain.test;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.stock.db.StockLocation;
+import com.axelor.apps.stock.db.StockRules;
+import com.axelor.apps.stock.service.StockRulesService;
+import com.axelor.apps.supplychain.db.Mrp;
+import com.axelor.apps.supplychain.db.MrpLine;
+import com.axelor.apps.supplychain.db.MrpLineOrigin;
+import com.axelor.apps.supplychain.db.MrpLineType;
+import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
+import com.axelor.apps.supplychain.db.repo.MrpRepository;
+import com.axelor.apps.supplychain.service.MrpServiceImpl;
+import com.axelor.exception.AxelorException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * MRP calculation on in-memory lines, used to check the results of the calculations on a fixture.
+ * The lines added to the fixture are created again by each calculation, as the lines of the orders.
+ * Proposals add a line for the product and need lines for its components, as a manufacturing
+ * proposal does.
+ */
+public class MrpServiceHarness extends MrpServiceImpl {
+
+  public static final MrpLineType AVAILABLE_STOCK =
+      createMrpLineType(
+          MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK, MrpLineTypeRepository.TYPE_IN, 0);
+  public static final MrpLineType PURCHASE_ORDER =
+      createMrpLineType(
+          MrpLineTypeRepository.ELEMENT_PURCHASE_ORDER, MrpLineTypeRepository.TYPE_IN, 1);
+  public static final MrpLineType SALE_ORDER =
+      createMrpLineType(
+          MrpLineTypeRepository.ELEMENT_SALE_ORDER, MrpLineTypeRepository.TYPE_OUT, 2);
+  public static final MrpLineType PROPOSAL =
+      createMrpLineType(
+          MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL, MrpLineTypeRepository.TYPE_IN, 3);
+  public static final MrpLineType PROPOSAL_NEED =
+      createMrpLineType(
+          MrpLineTypeRepository.ELEMENT_MANUFACTURING_PROPOSAL_NEED,
+          MrpLineTypeRepository.TYPE_OUT,
+          4);
+
+  protected final Map<Long, Product> productById;
+  protected final Map<Long, StockRules> stockRulesMap;
+  protected final Map<Long, Integer> productLevelMap = new HashMap<>();
+  // product id -> component -> qty for one unit of the product
+  protected final Map<Long, Map<Product, BigDecimal>> componentMap = new HashMap<>();
+  protected final List<MrpLine> fixtureMrpLineList = new ArrayList<>();
+  protected final List<MrpLine> mrpLineList = new ArrayList<>();
+  protected final StockLocation stockLocation = new StockLocation();
+  protected Set<Long> changedProductIdSet = new HashSet<>();
+  private long nextMrpLineId = 1;
+
+  public MrpServiceHarness() {
+    this(new HashMap<>(), new HashMap<>(), new Mrp());
+  }
+
+  protected MrpServiceHarness(
+      Map<Long, Product> productById, Map<Long, StockRules> stockRulesMap, Mrp mrp) {
+
+    super(
+        null,
+        createMrpRepository(mrp),
+        null,
+        createProductRepository(productById),
+        null,
+        null,
+        null,
+        null,
+        null,
+        createStockRulesService(stockRulesMap),
+        null,
+        null,
+        null);
+
+    this.productById = productById;
+    this.stockRulesMap = stockRulesMap;
+    this.mrp = mrp;
+    this.mrp.setId(1L);
+    this.stockLocation.setName("Stock");
+  }
+
+  public Product addProduct(long id, String code, int level) {
+
+    Product product = new Product();
+    product.setId(id);
+    product.setCode(code);
+    product.setFullName(code);
+
+    productById.put(id, product);
+    productLevelMap.put(id, level);
+
+    return product;
+  }
+
+  public void addComponent(Product product, Product component, String qty) {
+
+    componentMap
+        .computeIfAbsent(product.getId(), id -> new HashMap<>())
+        .put(component, new BigDecimal(qty));
+  }
+
+  public void addStockRules(Product product, String minQty, String reOrderQty) {
+
+    StockRules stockRules = new StockRules();
+    stockRules.setProduct(product);
+    stockRules.setMinQty(new BigDecimal(minQty));
+    stockRules.setReOrderQty(new BigDecimal(reOrderQty));
+
+    stockRulesMap.put(product.getId(), stockRules);
+  }
+
+  /** Add a line to the fixture, it is created again by each calculation. */
+  public void addMrpLine(
+      Product product, MrpLineType mrpLineType, BigDecimal qty, LocalDate maturityDate) {
+
+    MrpLine mrpLine = new MrpLine();
+    mrpLine.setProduct(product);
+    mrpLine.setMrpLineType(mrpLineType);
+    mrpLine.setQty(qty);
+    mrpLine.setMaturityDate(maturityDate);
+
+    fixtureMrpLineList.add(mrpLine);
+  }
+
+  /** Run a full calculation of the service. */
+  public void runCalculation() throws AxelorException {
+
+    this.initializeMrp(mrp);
+    this.createMrpLines();
+    this.checkInsufficientCumulativeQty();
+  }
+
+  /** Run a net change calculation of the service, after a first calculation. */
+  public void runNetChangeCalculation(Set<Long> changedProductIdSet) throws AxelorException {
+
+    this.changedProductIdSet = changedProductIdSet;
+    this.mrp.setStartDateTime(LocalDateTime.of(2019, 1, 1, 0, 0));
+
+    this.runNetChangeCalculation(mrp);
+  }
+
+  /**
+   * Get the lines of every product, in the order of the calculation, as "code element date qty
+   * cumulative qty".
+   */
+  public List<String> getResult() {
+
+    List<String> result = new ArrayList<>();
+
+    for (Product product : new TreeMap<>(productById).values()) {
+
+      for (MrpLine mrpLine : this.getMrpLineList(product)) {
+        result.add(
+            String.format(
+                "%s %d %s %s %s",
+                product.getCode(),
+                mrpLine.getMrpLineType().getElementSelect(),
+                mrpLine.getMaturityDate(),
+                mrpLine.getQty().stripTrailingZeros().toPlainString(),
+                mrpLine.getCumulativeQty().stripTrailingZeros().toPlainString()));
+      }
+    }
+
+    return result;
+  }
+
+  public List<MrpLine> getProposalList(Product product) {
+
+    return this.getMrpLineList(product)
+        .stream()
+        .filter(mrpLine -> mrpLine.getMrpLineType() == PROPOSAL)
+        .collect(Collectors.toList());
+  }
+
+  /** Create a line the way MrpLineService does, the quantity of out lines is negated. */
+  protected MrpLine createMrpLine(
+      Product product, MrpLineType mrpLineType, BigDecimal qty, LocalDate maturityDate) {
+
+    MrpLine mrpLine = new MrpLine();
+    mrpLine.setId(nextMrpLineId++);
+    mrpLine.setMrp(mrp);
+    mrpLine.setProduct(product);
+    mrpLine.setMaxLevel(productMap.get(product.getId()));
+    mrpLine.setMrpLineType(mrpLineType);
+    mrpLine.setQty(
+        mrpLineType.getTypeSelect() == MrpLineTypeRepository.TYPE_OUT ? qty.negate() : qty);
+    mrpLine.setCumulativeQty(BigDecimal.ZERO);
+    mrpLine.setMaturityDate(maturityDate);
+    mrpLine.setStockLocation(stockLocation);
+
+    StockRules stockRules = stockRulesMap.get(product.getId());
+    mrpLine.setMinQty(stockRules != null ? stockRules.getMinQty() : BigDecimal.ZERO);
+
+    mrpLineList.add(mrpLine);
+
+    return mrpLine;
+  }
+
+  @Override
+  public void reset(Mrp mrp) {
+
+    mrpLineList.clear();
+  }
+
+  @Override
+  protected void startMrp(Mrp mrp) {}
+
+  @Override
+  protected void initializeMrp(Mrp mrp) {
+
+    this.mrp = mrp;
+    this.productMap = new HashMap<>(productLevelMap);
+  }
+
+  @Override
+  protected void createMrpLines() {
+
+    for (MrpLine mrpLine : fixtureMrpLineList) {
+      if (productMap.containsKey(mrpLine.getProduct().getId())) {
+        this.createMrpLine(
+            mrpLine.getProduct(),
+            mrpLine.getMrpLineType(),
+            mrpLine.getQty(),
+            mrpLine.getMaturityDate());
+      }
+    }
+  }
+
+  @Override
+  protected void finish(Mrp mrp) {}
+
+  @Override
+  protected Set<Long> getChangedProductIds(LocalDateTime since) {
+
+    return new HashSet<>(changedProductIdSet);
+  }
+
+  @Override
+  protected Set<Long> getChangedOriginProductIds(Mrp mrp, LocalDateTime since) {
+
+    return new HashSet<>();
+  }
+
+  @Override
+  protected Set<Long> getDeletedStockProductIds(Mrp mrp) {
+
+    return new HashSet<>();
+  }
+
+  @Override
+  protected Map<Long, Integer> getPreviousProductLevelMap(Mrp mrp) {
+
+    Map<Long, Integer> previousProductLevelMap = new HashMap<>();
+
+    for (MrpLine mrpLine : mrpLineList) {
+      previousProductLevelMap.put(mrpLine.getProduct().getId(), mrpLine.getMaxLevel());
+    }
+
+    return previousProductLevelMap;
+  }
+
+  @Override
+  protected void addProductLinks(Map<Long, Set<Long>> productLinkMap) {
+
+    for (Map.Entry<Long, Map<Product, BigDecimal>> entry : componentMap.entrySet()) {
+      for (Product component : entry.getValue().keySet()) {
+        this.addProductLink(productLinkMap, entry.getKey(), component.getId());
+      }
+    }
+  }
+
+  @Override
+  protected void removeMrpLines(Mrp mrp, Set<Long> productIdSet) {
+
+    mrpLineList.removeIf(mrpLine -> productIdSet.contains(mrpLine.getProduct().getId()));
+  }
+
+  @Override
+  protected List<MrpLine> getKeptProposalMrpLineList() {
+
+    return mrpLineList
+        .stream()
+        .filter(
+            mrpLine ->
+                mrpLine.getMrpLineType() == PROPOSAL
+                    && !productMap.containsKey(mrpLine.getProduct().getId()))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  protected List<MrpLine> getMrpLineList(Product product) {
+
+    return mrpLineList
+        .stream()
+        .filter(mrpLine -> mrpLine.getProduct().getId().equals(product.getId()))
+        .sorted(
+            Comparator.comparing(MrpLine::getMaturityDate)
+                .thenComparing(mrpLine -> mrpLine.getMrpLineType().getTypeSelect())
+                .thenComparing(mrpLine -> mrpLine.getMrpLineType().getSequence())
+                .thenComparing(MrpLine::getId))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  protected MrpLineType getMrpLineTypeForProposal(StockRules stockRules, Product product) {
+
+    return PROPOSAL;
+  }
+
+  @Override
+  protected void createProposalMrpLine(
+      Mrp mrp,
+      Product product,
+      MrpLineType mrpLineType,
+      BigDecimal reorderQty,
+      StockLocation stockLocation,
+      LocalDate maturityDate,
+      List<MrpLineOrigin> mrpLineOriginList,
+      String relatedToSelectName) {
+
+    this.createMrpLine(product, mrpLineType, reorderQty, maturityDate);
+
+    this.createProposalNeedMrpLines(
+        mrp,
+        product,
+        mrpLineType,
+        reorderQty,
+        stockLocation,
+        maturityDate,
+        mrpLineOriginList,
+        relatedToSelectName);
+  }
+
+  @Override
+  protected void createProposalNeedMrpLines(
+      Mrp mrp,
+      Product product,
+      MrpLineType mrpLineType,
+      BigDecimal reorderQty,
+      StockLocation stockLocation,
+      LocalDate maturityDate,
+      List<MrpLineOrigin> mrpLineOriginList,
+      String relatedToSelectName) {
+
+    for (Map.Entry<Product, BigDecimal> entry :
+        componentMap.getOrDefault(product.getId(), new HashMap<>()).entrySet()) {
+      if (productMap.containsKey(entry.getKey().getId())) {
+        this.createMrpLine(
+            entry.getKey(), PROPOSAL_NEED, reorderQty.multiply(entry.getValue()), maturityDate);
+      }
+    }
+  }
+
+  @Override
+  protected void clearSession() {}
+
+  protected static MrpLineType createMrpLineType(int elementSelect, int typeSelect, int sequence) {
+
+    MrpLineType mrpLineType = new MrpLineType();
+    mrpLineType.setName("Element " + elementSelect);
+    mrpLineType.setElementSelect(elementSelect);
+    mrpLineType.setTypeSelect(typeSelect);
+    mrpLineType.setSequence(sequence);
+
+    return mrpLineType;
+  }
+
+  protected static MrpRepository createMrpRepository(Mrp mrp) {
+
+    return new MrpRepository() {
+      @Override
+      public Mrp find(Long id) {
+        return mrp;
+      }
+    };
+  }
+
+  protected static ProductRepository createProductRepository(Map<Long, Product> productById) {
+
+    return new ProductRepository() {
+      @Override
+      public Product find(Long id) {
+        return productById.get(id);
+      }
+    };
+  }
+
+  protected static StockRulesService createStockRulesService(Map<Long, StockRules> stockRulesMap) {
+
+    return (StockRulesService)
+        Proxy.newProxyInstance(
+            StockRulesService.class.getClassLoader(),
+            new Class<?>[] {StockRulesService.class},
+            (proxy, method, args) ->
+                "getStockRules".equals(method.getName())
+                    ? stockRulesMap.get(((Product) args[0]).getId())
+                    : null);
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.supplychain.test;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.supplychain.db.MrpLine;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMrpCalculation {
+
+  private static final LocalDate TODAY = LocalDate.of(2019, 1, 1);
+
+  /**
+   * Lines of the fixture as computed by the baseline calculation, which checked the lines of a pass
+   * one by one, as "code element date qty cumulative qty".
+   */
+  private static final List<String> BASELINE_RESULT =
+      Arrays.asList(
+          "A 1 2019-01-01 5 5",
+          "A 5 2019-01-06 5 10",
+          "A 3 2019-01-06 -10 0",
+          "A 5 2019-01-11 20 20",
+          "A 3 2019-01-11 -20 0",
+          "B 1 2019-01-01 10 10",
+          "B 9 2019-01-06 -10 0",
+          "B 2 2019-01-09 15 15",
+          "B 5 2019-01-11 25 40",
+          "B 9 2019-01-11 -40 0",
+          "C 1 2019-01-01 0 0",
+          "C 5 2019-01-01 50 50",
+          "C 9 2019-01-06 -5 45",
+          "C 5 2019-01-11 70 115",
+          "C 9 2019-01-11 -20 95",
+          "C 9 2019-01-11 -75 20");
+
+  private static final List<String> BASELINE_RESULT_WITHOUT_PROPOSAL =
+      Arrays.asList(
+          "A 1 2019-01-01 30 30",
+          "A 2 2019-01-06 10 40",
+          "A 3 2019-01-06 -10 30",
+          "A 3 2019-01-07 -30 0");
+
+  @Test
+  public void testSameResultAsBaseline() throws Exception {
+    MrpServiceHarness harness = createFixture();
+    harness.runCalculation();
+
+    Assert.assertEquals(BASELINE_RESULT, harness.getResult());
+  }
+
+  @Test
+  public void testSameResultAsBaselineWithoutProposal() throws Exception {
+    MrpServiceHarness harness = new MrpServiceHarness();
+    addStockAndSale(harness);
+    harness.runCalculation();
+
+    Assert.assertEquals(BASELINE_RESULT_WITHOUT_PROPOSAL, harness.getResult());
+    Assert.assertTrue(harness.getProposalList(harness.productById.get(1L)).isEmpty());
+  }
+
+  @Test
+  public void testProposals() throws Exception {
+    MrpServiceHarness harness = createFixture();
+    harness.runCalculation();
+
+    Product productA = harness.productById.get(1L);
+    Product productB = harness.productById.get(2L);
+    Product productC = harness.productById.get(3L);
+
+    assertProposals(harness.getProposalList(productA), TODAY.plusDays(5), "5", 10, "20");
+    assertProposals(harness.getProposalList(productB), TODAY.plusDays(10), "25");
+    // the stock rule min qty is checked on the available stock on the first pass only
+    assertProposals(harness.getProposalList(productC), TODAY, "50", 10, "70");
+
+    List<MrpLine> mrpLineList = harness.getMrpLineList(productC);
+    Assert.assertEquals(
+        0,
+        new BigDecimal("20")
+            .compareTo(mrpLineList.get(mrpLineList.size() - 1).getCumulativeQty()));
+  }
+
+  @Test
+  public void testNetChangeOnComponent() throws Exception {
+    MrpServiceHarness netChange = createFixture();
+    netChange.runCalculation();
+    Product productA = netChange.productById.get(1L);
+    List<Long> proposalIdList = getIdList(netChange.getProposalList(productA));
+
+    addSale(netChange, 2L, "12", 7);
+    netChange.runNetChangeCalculation(Collections.singleton(2L));
+
+    MrpServiceHarness full = createFixture();
+    addSale(full, 2L, "12", 7);
+    full.runCalculation();
+
+    Assert.assertEquals(full.getResult(), netChange.getResult());
+    // the product using the changed component is not recomputed
+    Assert.assertEquals(proposalIdList, getIdList(netChange.getProposalList(productA)));
+  }
+
+  @Test
+  public void testNetChangeOnLowestLevel() throws Exception {
+    MrpServiceHarness netChange = createFixture();
+    netChange.runCalculation();
+
+    addSale(netChange, 3L, "30", 3);
+    netChange.runNetChangeCalculation(Collections.singleton(3L));
+
+    MrpServiceHarness full = createFixture();
+    addSale(full, 3L, "30", 3);
+    full.runCalculation();
+
+    Assert.assertEquals(full.getResult(), netChange.getResult());
+  }
+
+  @Test
+  public void testNetChangeOnTopLevel() throws Exception {
+    MrpServiceHarness netChange = createFixture();
+    netChange.runCalculation();
+
+    addSale(netChange, 1L, "8", 2);
+    netChange.runNetChangeCalculation(Collections.singleton(1L));
+
+    MrpServiceHarness full = createFixture();
+    addSale(full, 1L, "8", 2);
+    full.runCalculation();
+
+    Assert.assertEquals(full.getResult(), netChange.getResult());
+  }
+
+  @Test
+  public void testNetChangeOnNewProduct() throws Exception {
+    MrpServiceHarness netChange = createFixture();
+    netChange.runCalculation();
+
+    // a product now in the MRP, whose orders did not change since the last calculation
+    addNewProduct(netChange);
+    netChange.runNetChangeCalculation(Collections.emptySet());
+
+    MrpServiceHarness full = createFixture();
+    addNewProduct(full);
+    full.runCalculation();
+
+    Assert.assertEquals(full.getResult(), netChange.getResult());
+    Assert.assertEquals(1, netChange.getProposalList(netChange.productById.get(4L)).size());
+  }
+
+  /**
+   * A is made of 2 B and 1 C, B is made of 3 C. A is sold twice, B is purchased and C has a stock
+   * rule, so proposals are created on every level and on several passes.
+   */
+  private MrpServiceHarness createFixture() {
+    MrpServiceHarness harness = new MrpServiceHarness();
+
+    Product productA = harness.addProduct(1L, "A", 0);
+    Product productB = harness.addProduct(2L, "B", 1);
+    Product productC = harness.addProduct(3L, "C", 2);
+    harness.addComponent(productA, productB, "2");
+    harness.addComponent(productA, productC, "1");
+    harness.addComponent(productB, productC, "3");
+    harness.addStockRules(productC, "20", "50");
+
+    harness.addMrpLine(productA, MrpServiceHarness.AVAILABLE_STOCK, new BigDecimal("5"), TODAY);
+    harness.addMrpLine(
+        productA, MrpServiceHarness.SALE_ORDER, new BigDecimal("10"), TODAY.plusDays(5));
+    harness.addMrpLine(
+        productA, MrpServiceHarness.SALE_ORDER, new BigDecimal("20"), TODAY.plusDays(10));
+    harness.addMrpLine(productB, MrpServiceHarness.AVAILABLE_STOCK, new BigDecimal("10"), TODAY);
+    harness.addMrpLine(
+        productB, MrpServiceHarness.PURCHASE_ORDER, new BigDecimal("15"), TODAY.plusDays(8));
+    harness.addMrpLine(productC, MrpServiceHarness.AVAILABLE_STOCK, BigDecimal.ZERO, TODAY);
+
+    return harness;
+  }
+
+  private void addStockAndSale(MrpServiceHarness harness) {
+    Product product = harness.addProduct(1L, "A", 0);
+
+    harness.addMrpLine(product, MrpServiceHarness.AVAILABLE_STOCK, new BigDecimal("30"), TODAY);
+    harness.addMrpLine(
+        product, MrpServiceHarness.SALE_ORDER, new BigDecimal("10"), TODAY.plusDays(5));
+    harness.addMrpLine(
+        product, MrpServiceHarness.PURCHASE_ORDER, new BigDecimal("10"), TODAY.plusDays(5));
+    harness.addMrpLine(
+        product, MrpServiceHarness.SALE_ORDER, new BigDecimal("30"), TODAY.plusDays(6));
+  }
+
+  private void addNewProduct(MrpServiceHarness harness) {
+    Product product = harness.addProduct(4L, "D", 0);
+
+    harness.addMrpLine(product, MrpServiceHarness.AVAILABLE_STOCK, new BigDecimal("2"), TODAY);
+    harness.addMrpLine(
+        product, MrpServiceHarness.SALE_ORDER, new BigDecimal("6"), TODAY.plusDays(4));
+  }
+
+  private void addSale(MrpServiceHarness harness, long productId, String qty, int days) {
+    harness.addMrpLine(
+        harness.productById.get(productId),
+        MrpServiceHarness.SALE_ORDER,
+        new BigDecimal(qty),
+        TODAY.plusDays(days));
+  }
+
+  private List<Long> getIdList(List<MrpLine> mrpLineList) {
+    return mrpLineList.stream().map(MrpLine::getId).collect(Collectors.toList());
+  }
+
+  private void assertProposals(List<MrpLine> proposalList, LocalDate date, String qty) {
+    Assert.assertEquals(1, proposalList.size());
+    assertProposal(proposalList.get(0), date, qty);
+  }
+
+  private void assertProposals(
+      List<MrpLine> proposalList, LocalDate date, String qty, int days, String secondQty) {
+    Assert.assertEquals(2, proposalList.size());
+    assertProposal(proposalList.get(0), date, qty);
+    assertProposal(proposalList.get(1), TODAY.plusDays(days), secondQty);
+  }
+
+  private void assertProposal(MrpLine mrpLine, LocalDate date, String qty) {
+    Assert.assertEquals(date, mrpLine.getMaturityDate());
+    Assert.assertEquals(0, new BigDecimal(qty).compareTo(mrpLine.getQty()));
+  }
+}
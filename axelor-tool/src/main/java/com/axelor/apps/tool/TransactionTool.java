@@ -0,0 +1,64 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool;
+
+import com.axelor.db.JPA;
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import org.hibernate.Session;
+
+public final class TransactionTool {
+
+  private TransactionTool() {}
+
+  /**
+   * Run an action once the current transaction is committed, or right away if no transaction is
+   * in progress. The action is not run if the transaction is rolled back.
+   *
+   * <p>This is meant for in-memory caches built from the database: dropping them before the
+   * commit would let another session rebuild them from the old data. It also delays side effects,
+   * like sending an email, that must not happen if the transaction is rolled back.
+   *
+   * @param action
+   */
+  public static void afterCommit(Runnable action) {
+
+    EntityManager em = JPA.em();
+
+    if (!em.getTransaction().isActive()) {
+      action.run();
+      return;
+    }
+
+    em.unwrap(Session.class)
+        .getTransaction()
+        .registerSynchronization(
+            new Synchronization() {
+              @Override
+              public void beforeCompletion() {}
+
+              @Override
+              public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                  action.run();
+                }
+              }
+            });
+  }
+}